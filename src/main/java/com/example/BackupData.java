@@ -2,6 +2,7 @@ package com.example;
 
 import software.amazon.awssdk.regions.Region;
 
+import java.io.Serializable;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Date;
@@ -9,7 +10,8 @@ import java.util.Date;
 /**
  * Class to store the information of Recovery Points aka Backups aka Snapshots.
  */
-class BackupData implements Comparable<BackupData>{
+class BackupData implements Serializable, Comparable<BackupData>{
+    private static final long serialVersionUID = 1L;
     private BackupVaultData vault; // Object of the backup vault in which the current backup lies
     private Date creationDate;
     private Date completionDate;
@@ -22,7 +24,7 @@ class BackupData implements Comparable<BackupData>{
     private Long size;
     private Long deleteAfterDays;
     private Long moveToColdStorageAfterDays;
-    private Region region;
+    private String region; // Stored as the region id, so that the object can be serialized to the journal
 
     /**
      * Public Builder class to create the BackupData Object. The Constructor of the BackupData Class
@@ -252,7 +254,7 @@ class BackupData implements Comparable<BackupData>{
      * @param region Region class object of the region in which the current backup in context is located
      */
     public void setRegion(Region region){
-        this.region = region;
+        this.region = region.toString();
     }
 
     /**
@@ -260,7 +262,7 @@ class BackupData implements Comparable<BackupData>{
      * @return the string form of the region associated with the backup in context
      */
     public String getRegion(){
-        return this.region.toString();
+        return this.region;
     }
 
     /**
@@ -2,19 +2,21 @@ package com.example;
 
 import software.amazon.awssdk.regions.Region;
 
+import java.io.Serializable;
 import java.util.Date;
 
 /**
  * The class to create objects of Backup Vaults which will store the information of the vault.
  */
-class BackupVaultData {
+class BackupVaultData implements Serializable {
+    private static final long serialVersionUID = 1L;
     private String vaultArn;
     private String vaultName;
     private Date creationDate;
     private Long maxRetentionDays;
     private Long minRetentionDays;
     private Long numberOfBackups;
-    private Region region;
+    private String region; // Stored as the region id, so that the object can be serialized to the journal
 
     /**
      * The builder class which is used to create the object of the BackupVaultData class. We can chain the methods of this class
@@ -97,7 +99,7 @@ class BackupVaultData {
      * @param region the Region class object corresponding to the region in which the backup vault in context lies
      */
     public void setRegion(Region region){
-        this.region = region;
+        this.region = region.toString();
     }
 
     /**
@@ -105,7 +107,7 @@ class BackupVaultData {
      * @return the region in string form of the backup vault in context
      */
     public String getRegion(){
-        return this.region.toString();
+        return this.region;
     }
 
     @Override
@@ -0,0 +1,296 @@
+package com.example;
+
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.auth.AWSCredentials;
+import com.amazonaws.auth.AWSCredentialsProvider;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.retry.PredefinedRetryPolicies;
+import com.amazonaws.services.backup.AWSBackup;
+import com.amazonaws.services.backup.AWSBackupClient;
+import com.amazonaws.services.ec2.AmazonEC2;
+import com.amazonaws.services.ec2.AmazonEC2Client;
+import com.amazonaws.services.elasticloadbalancingv2.AmazonElasticLoadBalancing;
+import com.amazonaws.services.elasticloadbalancingv2.AmazonElasticLoadBalancingClient;
+import com.amazonaws.services.pricing.AWSPricing;
+import com.amazonaws.services.pricing.AWSPricingClient;
+import com.amazonaws.services.resourcegroupstaggingapi.AWSResourceGroupsTaggingAPI;
+import com.amazonaws.services.resourcegroupstaggingapi.AWSResourceGroupsTaggingAPIClient;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.AmazonS3Client;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.AwsCredentials;
+import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
+import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
+import software.amazon.awssdk.core.retry.RetryPolicy;
+import software.amazon.awssdk.http.SdkHttpClient;
+import software.amazon.awssdk.http.SdkHttpConfigurationOption;
+import software.amazon.awssdk.http.SdkHttpService;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.cloudwatch.CloudWatchClient;
+import software.amazon.awssdk.services.cloudwatch.CloudWatchClientBuilder;
+import software.amazon.awssdk.utils.AttributeMap;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.ServiceLoader;
+
+/**
+ * Class to create the AWS clients once per (service, region) and to reuse them for the whole run, instead of building
+ * (and closing) a new client for every region, page or resource.
+ *
+ * All the clients share
+ * 1. One credentials source, which serves both the SDK v1 and the SDK v2 clients
+ * 2. One connection configuration (pool size, keep alive, idle timeout). Pooled connections are kept alive, so the TLS
+ *    handshake is done once per connection and not once per call
+ * 3. One HTTP client for all the SDK v2 clients, so the cloudwatch clients of all the regions draw from one pool
+ *
+ * The retries of the SDKs are turned off as the throttled calls, and the calls failing for the other reasons the SDKs
+ * retry, are retried by the RateController.
+ */
+class ClientRegistry implements AutoCloseable {
+    private static final Duration CONNECTION_MAX_IDLE_TIME = Duration.ofSeconds(60);
+    private static final Duration CONNECTION_TIME_TO_LIVE = Duration.ofMinutes(10);
+
+    private final SharedCredentials credentials;
+    private final ClientConfiguration v1Configuration;
+    private final ClientOverrideConfiguration v2Configuration;
+    private final int maxConnections;
+    private SdkHttpClient sharedHttpClient = null; // Created along with the first SDK v2 client, null if no HTTP client implementation is on the classpath
+
+    private final HashMap<String, AmazonEC2> ec2Clients = new HashMap<>();
+    private final HashMap<String, AmazonElasticLoadBalancing> elbClients = new HashMap<>();
+    private final HashMap<String, AWSBackup> backupClients = new HashMap<>();
+    private final HashMap<String, AWSPricing> pricingClients = new HashMap<>();
+    private final HashMap<String, AWSResourceGroupsTaggingAPI> taggingClients = new HashMap<>();
+    private final HashMap<String, CloudWatchClient> cloudWatchClients = new HashMap<>();
+    private final HashMap<String, AmazonS3> regionalS3Clients = new HashMap<>();
+    private AmazonS3 s3Client = null;
+
+    /**
+     * Class to serve the same access key to the clients of both the SDKs
+     */
+    private static class SharedCredentials implements AWSCredentialsProvider, AwsCredentialsProvider {
+        private final BasicAWSCredentials v1Credentials;
+        private final AwsBasicCredentials v2Credentials;
+
+        private SharedCredentials(String keyId, String secretKey) {
+            this.v1Credentials = new BasicAWSCredentials(keyId, secretKey);
+            this.v2Credentials = AwsBasicCredentials.create(keyId, secretKey);
+        }
+
+        @Override
+        public AWSCredentials getCredentials() {
+            return this.v1Credentials;
+        }
+
+        @Override
+        public void refresh() {
+            /*
+             * Static credentials, nothing to refresh
+             * */
+        }
+
+        @Override
+        public AwsCredentials resolveCredentials() {
+            return this.v2Credentials;
+        }
+    }
+
+    /**
+     * Constructor
+     * @param keyId the AWS access key id
+     * @param secretKey the AWS secret access key
+     * @param maxConnections the size of the connection pool of a client
+     */
+    public ClientRegistry(String keyId, String secretKey, int maxConnections) {
+        this.credentials = new SharedCredentials(keyId, secretKey);
+        this.maxConnections = maxConnections;
+        this.v1Configuration = new ClientConfiguration()
+                .withRetryPolicy(PredefinedRetryPolicies.NO_RETRY_POLICY)
+                .withMaxConnections(maxConnections)
+                .withTcpKeepAlive(true)
+                .withConnectionMaxIdleMillis(CONNECTION_MAX_IDLE_TIME.toMillis())
+                .withConnectionTTL(CONNECTION_TIME_TO_LIVE.toMillis());
+        this.v2Configuration = ClientOverrideConfiguration.builder().retryPolicy(RetryPolicy.none()).build();
+    }
+
+    /**
+     * Method to return the credentials in the form required by the SDK v2 clients
+     * @return the credentials provider shared by all the clients
+     */
+    public AwsCredentialsProvider getCredentialsProvider() {
+        return this.credentials;
+    }
+
+    /**
+     * Method to return the EC2 client of a region
+     * @param region the region in context
+     * @return the EC2 client of the region, created if it does not exist
+     */
+    public synchronized AmazonEC2 ec2(Region region) {
+        AmazonEC2 client = this.ec2Clients.get(region.id());
+        if (client == null) {
+            client = AmazonEC2Client.builder().withCredentials(this.credentials).withClientConfiguration(this.v1Configuration).withRegion(region.id()).build();
+            this.ec2Clients.put(region.id(), client);
+        }
+        return client;
+    }
+
+    /**
+     * Method to return the Elastic Load Balancing client of a region
+     * @param region the region in context
+     * @return the ELB client of the region, created if it does not exist
+     */
+    public synchronized AmazonElasticLoadBalancing elb(Region region) {
+        AmazonElasticLoadBalancing client = this.elbClients.get(region.id());
+        if (client == null) {
+            client = AmazonElasticLoadBalancingClient.builder().withCredentials(this.credentials).withClientConfiguration(this.v1Configuration).withRegion(region.id()).build();
+            this.elbClients.put(region.id(), client);
+        }
+        return client;
+    }
+
+    /**
+     * Method to return the AWS Backup client of a region
+     * @param region the region in context
+     * @return the backup client of the region, created if it does not exist
+     */
+    public synchronized AWSBackup backup(Region region) {
+        AWSBackup client = this.backupClients.get(region.id());
+        if (client == null) {
+            client = AWSBackupClient.builder().withCredentials(this.credentials).withClientConfiguration(this.v1Configuration).withRegion(region.id()).build();
+            this.backupClients.put(region.id(), client);
+        }
+        return client;
+    }
+
+    /**
+     * Method to return the Pricing client of a region, the pricing API is only available in a few regions
+     * @param region the region in context
+     * @return the pricing client of the region, created if it does not exist
+     */
+    public synchronized AWSPricing pricing(Region region) {
+        AWSPricing client = this.pricingClients.get(region.id());
+        if (client == null) {
+            client = AWSPricingClient.builder().withCredentials(this.credentials).withClientConfiguration(this.v1Configuration).withRegion(region.id()).build();
+            this.pricingClients.put(region.id(), client);
+        }
+        return client;
+    }
+
+    /**
+     * Method to return the Resource Groups Tagging API client of a region
+     * @param region the region in context
+     * @return the tagging client of the region, created if it does not exist
+     */
+    public synchronized AWSResourceGroupsTaggingAPI tagging(Region region) {
+        AWSResourceGroupsTaggingAPI client = this.taggingClients.get(region.id());
+        if (client == null) {
+            client = AWSResourceGroupsTaggingAPIClient.builder().withCredentials(this.credentials).withClientConfiguration(this.v1Configuration).withRegion(region.id()).build();
+            this.taggingClients.put(region.id(), client);
+        }
+        return client;
+    }
+
+    /**
+     * Method to return the S3 client. Buckets are global, so a single client with global bucket access is used for
+     * the buckets of every region
+     * @return the S3 client, created if it does not exist
+     */
+    public synchronized AmazonS3 s3() {
+        if (this.s3Client == null)
+            this.s3Client = AmazonS3Client.builder().withCredentials(this.credentials).withClientConfiguration(this.v1Configuration).withRegion(Region.US_EAST_1.id()).enableForceGlobalBucketAccess().build();
+        return this.s3Client;
+    }
+
+    /**
+     * Method to return the S3 client of a region. The calls made on the objects of a bucket are sent straight to the
+     * region of the bucket with it, instead of being redirected by the global client
+     * @param region the region in context
+     * @return the S3 client of the region, created if it does not exist
+     */
+    public synchronized AmazonS3 s3(Region region) {
+        AmazonS3 client = this.regionalS3Clients.get(region.id());
+        if (client == null) {
+            client = AmazonS3Client.builder().withCredentials(this.credentials).withClientConfiguration(this.v1Configuration).withRegion(region.id()).build();
+            this.regionalS3Clients.put(region.id(), client);
+        }
+        return client;
+    }
+
+    /**
+     * Method to return the cloudwatch client of a region
+     * @param region the region in context
+     * @return the cloudwatch client of the region, created if it does not exist
+     */
+    public synchronized CloudWatchClient cloudWatch(Region region) {
+        CloudWatchClient client = this.cloudWatchClients.get(region.id());
+        if (client == null) {
+            CloudWatchClientBuilder builder = CloudWatchClient.builder().credentialsProvider(this.credentials).overrideConfiguration(this.v2Configuration).region(region);
+            SdkHttpClient httpClient = getSharedHttpClient();
+            if (httpClient != null)
+                builder.httpClient(httpClient);
+            client = builder.build();
+            this.cloudWatchClients.put(region.id(), client);
+        }
+        return client;
+    }
+
+    /**
+     * Method to return the HTTP client shared by all the SDK v2 clients. It is created through the service loader of
+     * the SDK, so whichever HTTP client implementation is on the classpath is used
+     * @return the shared HTTP client, null if no implementation is on the classpath
+     */
+    private SdkHttpClient getSharedHttpClient() {
+        if (this.sharedHttpClient == null) {
+            Iterator<SdkHttpService> services = ServiceLoader.load(SdkHttpService.class).iterator();
+            if (!services.hasNext())
+                return null;
+            this.sharedHttpClient = services.next().createHttpClientBuilder().buildWithDefaults(AttributeMap.builder()
+                    .put(SdkHttpConfigurationOption.MAX_CONNECTIONS, this.maxConnections)
+                    .put(SdkHttpConfigurationOption.TCP_KEEPALIVE, true)
+                    .put(SdkHttpConfigurationOption.CONNECTION_MAX_IDLE_TIMEOUT, CONNECTION_MAX_IDLE_TIME)
+                    .put(SdkHttpConfigurationOption.CONNECTION_TIME_TO_LIVE, CONNECTION_TIME_TO_LIVE)
+                    .put(SdkHttpConfigurationOption.REAP_IDLE_CONNECTIONS, true)
+                    .build());
+        }
+        return this.sharedHttpClient;
+    }
+
+    /**
+     * Method to shut down all the clients created so far. The registry can still be used afterwards, the clients are
+     * created again when asked for
+     */
+    @Override
+    public synchronized void close() {
+        for (AmazonEC2 client : this.ec2Clients.values())
+            client.shutdown();
+        for (AmazonElasticLoadBalancing client : this.elbClients.values())
+            client.shutdown();
+        for (AWSBackup client : this.backupClients.values())
+            client.shutdown();
+        for (AWSPricing client : this.pricingClients.values())
+            client.shutdown();
+        for (AWSResourceGroupsTaggingAPI client : this.taggingClients.values())
+            client.shutdown();
+        for (CloudWatchClient client : this.cloudWatchClients.values())
+            client.close();
+        for (AmazonS3 client : this.regionalS3Clients.values())
+            client.shutdown();
+        if (this.s3Client != null)
+            this.s3Client.shutdown();
+        if (this.sharedHttpClient != null)
+            this.sharedHttpClient.close();
+
+        this.ec2Clients.clear();
+        this.elbClients.clear();
+        this.backupClients.clear();
+        this.pricingClients.clear();
+        this.taggingClients.clear();
+        this.cloudWatchClients.clear();
+        this.regionalS3Clients.clear();
+        this.s3Client = null;
+        this.sharedHttpClient = null;
+    }
+}
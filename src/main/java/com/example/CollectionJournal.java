@@ -0,0 +1,222 @@
+package com.example;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+
+/**
+ * Class to checkpoint the data collected by the collectors to a local journal, so that a failed run can be resumed
+ * from where it stopped instead of fetching everything again.
+ *
+ * The journal has one directory per (region, service) and one file per page which has been collected completely.
+ * A page file has the objects built from that page along with the token of the next page. Once all the pages of a
+ * service are collected a marker file is written, so that on resume the service is restored without any API call.
+ * Every file is first written to a temporary file and then renamed, so a crash never leaves a half written page.
+ *
+ * Every class written to the journal declares its serialVersionUID, so the pages stay readable across rebuilds. It is
+ * to be changed only when the fields of the class change in a way that the pages written earlier can not be read.
+ */
+class CollectionJournal {
+    private static final String PAGE_PREFIX = "page-";
+    private static final String PAGE_EXTENSION = ".ser";
+    private static final String COMPLETE_MARKER = "complete";
+
+    private final File directory;
+    private final boolean resume;
+
+    /**
+     * Class to store one checkpointed page of a collector
+     * @param <T> the type of the objects built from the page
+     */
+    public static class Page<T extends Serializable> implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private final ArrayList<T> items;
+        private final String nextToken;
+        private final boolean metricsComplete;
+
+        /**
+         * Constructor
+         * @param items the objects built from the page
+         * @param nextToken the token to be used for fetching the next page, null if this was the last page
+         * @param metricsComplete false if some metric batch of the objects of this page failed
+         */
+        private Page(ArrayList<T> items, String nextToken, boolean metricsComplete){
+            this.items = items;
+            this.nextToken = nextToken;
+            this.metricsComplete = metricsComplete;
+        }
+
+        /**
+         * Method to return the objects built from the page
+         * @return the objects of the page in context
+         */
+        public ArrayList<T> getItems(){
+            return this.items;
+        }
+
+        /**
+         * Method to return the token of the next page
+         * @return the token of the next page, null if this was the last page
+         */
+        public String getNextToken(){
+            return this.nextToken;
+        }
+
+        /**
+         * Method to tell if the cloudwatch metrics of all the objects of the page were fetched
+         * @return false if the metrics are to be fetched again on resume
+         */
+        public boolean isMetricsComplete(){
+            return this.metricsComplete;
+        }
+    }
+
+    /**
+     * Constructor
+     * @param directory the directory in which the journal is to be kept
+     * @param resume if true then the existing journal is kept and replayed, else it is cleared for a fresh run
+     * @throws IOException if the journal directory can not be created
+     */
+    public CollectionJournal(String directory, boolean resume) throws IOException {
+        this.directory = new File(directory);
+        this.resume = resume;
+        if(!resume)
+            deleteRecursively(this.directory);
+        if(!this.directory.exists() && !this.directory.mkdirs())
+            throw new IOException("Unable to create the journal directory " + directory);
+    }
+
+    /**
+     * Method to tell if the run is resuming a previous run
+     * @return true if the journal is being replayed
+     */
+    public boolean isResuming(){
+        return this.resume;
+    }
+
+    /**
+     * Method to checkpoint a page which has been collected completely
+     * @param region the region of the collector, "global" for services like S3
+     * @param service the name of the collector, for example "ebs-volumes"
+     * @param pageNumber the number of the page, pages are numbered from 0
+     * @param items the objects built from the page
+     * @param nextToken the token of the next page, null if this was the last page
+     * @param metricsComplete false if some metric batch of the objects of this page failed
+     * @param <T> the type of the objects built from the page
+     * @throws IOException if the page can not be written
+     */
+    public <T extends Serializable> void savePage(String region, String service, int pageNumber, ArrayList<T> items, String nextToken, boolean metricsComplete) throws IOException {
+        File serviceDirectory = getServiceDirectory(region, service);
+        if(!serviceDirectory.exists() && !serviceDirectory.mkdirs())
+            throw new IOException("Unable to create the journal directory " + serviceDirectory);
+        writeAtomically(new File(serviceDirectory, String.format("%s%06d%s", PAGE_PREFIX, pageNumber, PAGE_EXTENSION)),
+                new Page<>(new ArrayList<>(items), nextToken, metricsComplete));
+    }
+
+    /**
+     * Method to mark a service of a region as collected completely
+     * @param region the region of the collector
+     * @param service the name of the collector
+     * @throws IOException if the marker can not be written
+     */
+    public void markComplete(String region, String service) throws IOException {
+        File serviceDirectory = getServiceDirectory(region, service);
+        if(!serviceDirectory.exists() && !serviceDirectory.mkdirs())
+            throw new IOException("Unable to create the journal directory " + serviceDirectory);
+        writeAtomically(new File(serviceDirectory, COMPLETE_MARKER), Boolean.TRUE);
+    }
+
+    /**
+     * Method to tell if a service of a region was collected completely in the run being resumed
+     * @param region the region of the collector
+     * @param service the name of the collector
+     * @return true if nothing is to be fetched for the service in context
+     */
+    public boolean isComplete(String region, String service){
+        return this.resume && new File(getServiceDirectory(region, service), COMPLETE_MARKER).exists();
+    }
+
+    /**
+     * Method to read back the checkpointed pages of a service of a region. Only the pages numbered contiguously from 0
+     * are returned, as the collector resumes from the token of the last of them.
+     * @param region the region of the collector
+     * @param service the name of the collector
+     * @param <T> the type of the objects built from the pages
+     * @return the pages in order of their number, empty if the run is not resuming or nothing was checkpointed
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends Serializable> ArrayList<Page<T>> restorePages(String region, String service){
+        ArrayList<Page<T>> pages = new ArrayList<>();
+        if(!this.resume)
+            return pages;
+
+        File serviceDirectory = getServiceDirectory(region, service);
+        for(int pageNumber = 0; ; pageNumber++){
+            File file = new File(serviceDirectory, String.format("%s%06d%s", PAGE_PREFIX, pageNumber, PAGE_EXTENSION));
+            if(!file.exists())
+                break;
+            try (ObjectInputStream input = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                pages.add((Page<T>) input.readObject());
+            } catch (Exception e) {
+                /*
+                 * A page which can not be read is fetched again along with the pages after it
+                 * */
+                e.printStackTrace();
+                break;
+            }
+        }
+        return pages;
+    }
+
+    /**
+     * Method to return the directory of a service of a region
+     * @param region the region of the collector
+     * @param service the name of the collector
+     * @return the directory in which the pages of the service in context are kept
+     */
+    private File getServiceDirectory(String region, String service){
+        return new File(new File(this.directory, region), service);
+    }
+
+    /**
+     * Method to write an object to a file by first writing it to a temporary file and then renaming it
+     * @param file the file to be written
+     * @param object the object to be written
+     * @throws IOException if the file can not be written
+     */
+    private static void writeAtomically(File file, Serializable object) throws IOException {
+        File temporary = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (ObjectOutputStream output = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)))) {
+            output.writeObject(object);
+        }
+        try {
+            Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Method to delete a directory along with everything inside it
+     * @param file the file or the directory to be deleted
+     */
+    private static void deleteRecursively(File file){
+        File[] children = file.listFiles();
+        if(children != null) {
+            for (File child : children)
+                deleteRecursively(child);
+        }
+        if(file.exists() && !file.delete())
+            file.deleteOnExit();
+    }
+}
@@ -0,0 +1,271 @@
+package com.example;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Class to find how many reserved instances to buy for every pool (region, tenancy, platform, family or type) so that
+ * the total cost of its usage is the least, for the 1 year and the 3 year terms.
+ *
+ * The usage profile of a pool is its hourly usage over the past hours of its ReservedCoverageTimeline less the capacity
+ * of the reserved instances active now, that is the usage which is billed on demand once the current reservations are
+ * taken into account. For a commitment of c units the cost over the H hours is
+ *     c * H * (reserved price per unit) + (on demand price per unit) * sum over the hours of max(0, usage - c)
+ * which is convex in c, and whose slope only changes at the hourly usages. So the usages are sorted and the least c at
+ * which the slope is not negative is found by a binary search over them. A pool costs time in H log H.
+ *
+ * The pools are split across the threads of a fork/join pool.
+ */
+class CommitmentOptimizer {
+    private static final int POOLS_PER_TASK = 16; // A task having at most these many pools optimizes them itself instead of splitting
+    private static final String[] TERMS = {"1yr", "3yr"};
+
+    private final InstancePriceIndex priceIndex;
+    private final String offeringClass;
+    private final String purchaseOption;
+    private final int parallelism;
+
+    /**
+     * Class to hold the commitment found for a pool and a term
+     */
+    public static class Recommendation {
+        private final ReservedCoverageTimeline.PoolTimeline pool;
+        private final String term;
+        private final double commitment; // Units (or instances, if the pool is not size flexible) to buy
+        private final double onDemandPricePerUnit;
+        private final double reservedPricePerUnit;
+        private final double averageOnDemandUsage;
+        private final double currentCostPerHour; // Cost per hour of the usage profile billed on demand
+        private final double optimizedCostPerHour; // Cost per hour of the usage profile with the commitment bought
+
+        private Recommendation(ReservedCoverageTimeline.PoolTimeline pool, String term, double commitment, double onDemandPricePerUnit, double reservedPricePerUnit, double averageOnDemandUsage, double currentCostPerHour, double optimizedCostPerHour) {
+            this.pool = pool;
+            this.term = term;
+            this.commitment = commitment;
+            this.onDemandPricePerUnit = onDemandPricePerUnit;
+            this.reservedPricePerUnit = reservedPricePerUnit;
+            this.averageOnDemandUsage = averageOnDemandUsage;
+            this.currentCostPerHour = currentCostPerHour;
+            this.optimizedCostPerHour = optimizedCostPerHour;
+        }
+
+        public ReservedCoverageTimeline.PoolTimeline getPool() {
+            return this.pool;
+        }
+
+        public String getTerm() {
+            return this.term;
+        }
+
+        public double getCommitment() {
+            return this.commitment;
+        }
+
+        public double getOnDemandPricePerUnit() {
+            return this.onDemandPricePerUnit;
+        }
+
+        public double getReservedPricePerUnit() {
+            return this.reservedPricePerUnit;
+        }
+
+        public double getAverageOnDemandUsage() {
+            return this.averageOnDemandUsage;
+        }
+
+        public double getCurrentCostPerHour() {
+            return this.currentCostPerHour;
+        }
+
+        public double getOptimizedCostPerHour() {
+            return this.optimizedCostPerHour;
+        }
+
+        /**
+         * Method to return the savings of buying the commitment over a year
+         * @return the savings in USD
+         */
+        public double getYearlySavings() {
+            return (this.currentCostPerHour - this.optimizedCostPerHour) * 365 * 24;
+        }
+    }
+
+    /**
+     * Constructor
+     * @param priceIndex the index of the on demand and reserved prices
+     * @param offeringClass the class of the reserved instances to buy, "standard" or "convertible"
+     * @param purchaseOption the payment option of the reserved instances to buy, like "No Upfront"
+     * @param parallelism the number of threads of the fork/join pool
+     */
+    public CommitmentOptimizer(InstancePriceIndex priceIndex, String offeringClass, String purchaseOption, int parallelism) {
+        this.priceIndex = priceIndex;
+        this.offeringClass = offeringClass;
+        this.purchaseOption = purchaseOption;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Method to find the commitment to buy for every pool and term. The pools having no on demand usage, or no price, or
+     * for which buying nothing is the cheapest are left out
+     * @param pools the timelines of the pools, built with every pool
+     * @return the recommendations, in the order of the pools (1 year term first)
+     */
+    public ArrayList<Recommendation> optimize(ArrayList<ReservedCoverageTimeline.PoolTimeline> pools) {
+        Recommendation[][] found = new Recommendation[pools.size()][];
+        ForkJoinPool forkJoinPool = new ForkJoinPool(this.parallelism);
+        try {
+            forkJoinPool.invoke(new OptimizeTask(pools, found, 0, pools.size()));
+        } finally {
+            forkJoinPool.shutdown();
+        }
+        ArrayList<Recommendation> recommendations = new ArrayList<>();
+        for (Recommendation[] poolRecommendations : found) {
+            for (Recommendation recommendation : poolRecommendations) {
+                if (recommendation != null)
+                    recommendations.add(recommendation);
+            }
+        }
+        return recommendations;
+    }
+
+    /**
+     * Task to optimize a range of the pools, split in halves until it is small enough
+     */
+    private class OptimizeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final ArrayList<ReservedCoverageTimeline.PoolTimeline> pools;
+        private final Recommendation[][] found;
+        private final int from;
+        private final int to;
+
+        private OptimizeTask(ArrayList<ReservedCoverageTimeline.PoolTimeline> pools, Recommendation[][] found, int from, int to) {
+            this.pools = pools;
+            this.found = found;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.to - this.from <= POOLS_PER_TASK) {
+                for (int i = this.from; i < this.to; i++)
+                    this.found[i] = optimize(this.pools.get(i));
+                return;
+            }
+            int middle = (this.from + this.to) >>> 1;
+            invokeAll(new OptimizeTask(this.pools, this.found, this.from, middle), new OptimizeTask(this.pools, this.found, middle, this.to));
+        }
+    }
+
+    /**
+     * Method to find the commitment of every term for a pool
+     * @return the recommendation of every term, null for a term for which nothing is to be bought
+     */
+    private Recommendation[] optimize(ReservedCoverageTimeline.PoolTimeline pool) {
+        Recommendation[] recommendations = new Recommendation[TERMS.length];
+        int hours = pool.getCurrentHour();
+        if (hours == 0 || pool.spillsOver()) // The usage beyond the zonal reserved instances is optimized in the size flexible pool
+            return recommendations;
+        double reservedNow = pool.getReserved(pool.getCurrentHour());
+        double[] usage = new double[hours];
+        double total = 0;
+        for (int hour = 0; hour < hours; hour++) {
+            usage[hour] = Math.max(0, pool.getUsed(hour) - reservedNow);
+            total += usage[hour];
+        }
+        if (total == 0)
+            return recommendations;
+        Arrays.sort(usage);
+
+        Double onDemandPrice = pricePerUnit(pool, InstancePriceIndex.ON_DEMAND);
+        if (onDemandPrice == null)
+            return recommendations;
+        for (int t = 0; t < TERMS.length; t++) {
+            Double reservedPrice = pricePerUnit(pool, InstancePriceIndex.reservedTerm(TERMS[t], this.offeringClass, this.purchaseOption));
+            if (reservedPrice == null || reservedPrice >= onDemandPrice)
+                continue;
+            double commitment = leastCostCommitment(usage, onDemandPrice, reservedPrice);
+            if (commitment <= 0)
+                continue;
+            double currentCost = onDemandPrice * total / hours;
+            double optimizedCost = (commitment * reservedPrice * hours + onDemandPrice * excess(usage, commitment)) / hours;
+            recommendations[t] = new Recommendation(pool, TERMS[t], commitment, onDemandPrice, reservedPrice, total / hours, currentCost, optimizedCost);
+        }
+        return recommendations;
+    }
+
+    /**
+     * Method to find the least commitment at which the slope of the cost is not negative. The slope just above a
+     * commitment c is hours * reservedPrice - onDemandPrice * (number of hours with usage greater than c)
+     * @param usage the hourly usages, sorted
+     * @return the commitment, one of the usages or 0
+     */
+    static double leastCostCommitment(double[] usage, double onDemandPrice, double reservedPrice) {
+        int hours = usage.length;
+        if (slopeAbove(usage, 0, onDemandPrice, reservedPrice) >= 0)
+            return 0;
+        int low = 0, high = hours - 1; // The slope above the largest usage is hours * reservedPrice, which is positive
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (slopeAbove(usage, usage[middle], onDemandPrice, reservedPrice) >= 0)
+                high = middle;
+            else
+                low = middle + 1;
+        }
+        return usage[low];
+    }
+
+    private static double slopeAbove(double[] usage, double commitment, double onDemandPrice, double reservedPrice) {
+        return usage.length * reservedPrice - onDemandPrice * (usage.length - upperBound(usage, commitment));
+    }
+
+    /**
+     * Method to return the usage above a commitment, summed over the hours
+     */
+    private static double excess(double[] usage, double commitment) {
+        double excess = 0;
+        for (int hour = upperBound(usage, commitment); hour < usage.length; hour++)
+            excess += usage[hour] - commitment;
+        return excess;
+    }
+
+    /**
+     * Method to return the index of the first usage greater than a value
+     */
+    private static int upperBound(double[] usage, double value) {
+        int low = 0, high = usage.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (usage[middle] <= value)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    /**
+     * Method to return the price per unit of a pool, averaged over the instance types running in it (weighted by their
+     * units). The types of the pool without a price are left out
+     * @return the price per hour of a unit, null if no type of the pool has a price
+     */
+    private Double pricePerUnit(ReservedCoverageTimeline.PoolTimeline pool, String term) {
+        String operatingSystem = InstancePriceIndex.operatingSystem(pool.getPlatform());
+        String preInstalledSoftware = InstancePriceIndex.preInstalledSoftware(pool.getPlatform());
+        String tenancy = InstancePriceIndex.tenancy(pool.getTenancy());
+        double price = 0, units = 0;
+        for (Map.Entry<String, Double> entry : pool.getUnitsByType().entrySet()) {
+            Double typePrice = this.priceIndex.getEffectiveHourlyPrice(pool.getRegion(), entry.getKey(), operatingSystem, preInstalledSoftware, tenancy, term);
+            if (typePrice == null)
+                continue;
+            double unitsPerInstance = pool.isSizeFlexible() ? ReservedInstanceMatcher.normalizationFactor(entry.getKey()) : 1;
+            price += typePrice / unitsPerInstance * entry.getValue();
+            units += entry.getValue();
+        }
+        return units == 0 ? null : price / units;
+    }
+}
@@ -1,12 +1,14 @@
 package com.example;
 
+import java.io.Serializable;
 import java.util.Date;
 
 /**
  * Class to store data of EBS attachments, one EBS volume can be attached to multiple
  * instances if multi attach is enabled
  */
-class EbsAttachmentData {
+class EbsAttachmentData implements Serializable {
+    private static final long serialVersionUID = 1L;
     private Date attachTime;
     private String device;
     private String instanceId;
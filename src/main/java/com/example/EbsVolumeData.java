@@ -3,6 +3,7 @@ package com.example;
 import com.amazonaws.services.ec2.model.VolumeAttachment;
 import software.amazon.awssdk.regions.Region;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
@@ -10,7 +11,8 @@ import java.util.List;
 /**
  * Class to store data of EBS Volumes as objects
  */
-class EbsVolumeData implements Comparable<EbsVolumeData>{
+class EbsVolumeData implements Serializable, Comparable<EbsVolumeData>{
+    private static final long serialVersionUID = 1L;
     private String availabilityZone = "-";
     private String snapshotId = "-";
     private ArrayList<EbsAttachmentData> attachments = new ArrayList<>();
@@ -23,7 +25,7 @@ class EbsVolumeData implements Comparable<EbsVolumeData>{
     private String volumeId;
     private String state;
 
-    private Region region;
+    private String region; // Stored as the region id, so that the object can be serialized to the journal
 
     private int statHours;
 
@@ -180,7 +182,7 @@ class EbsVolumeData implements Comparable<EbsVolumeData>{
      * @param region the Region class object corresponding to the region of the EBS Volume in context
      */
     public void setRegion(Region region){
-        this.region = region;
+        this.region = region.toString();
     }
 
     /**
@@ -188,7 +190,7 @@ class EbsVolumeData implements Comparable<EbsVolumeData>{
      * @return the region in string form of the region of the EBS Volume in Context
      */
     public String getRegion(){
-        return this.region.toString();
+        return this.region;
     }
 
     /**
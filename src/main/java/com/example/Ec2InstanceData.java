@@ -1,18 +1,17 @@
 package com.example;
 
 
-import com.amazonaws.services.ec2.AmazonEC2;
-import com.amazonaws.services.ec2.model.*;
 import software.amazon.awssdk.regions.Region;
 
-import java.time.Instant;
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Date;
 
 /**
  * Class to create objects to store information about the EC2 instances
  */
-class Ec2InstanceData {
+class Ec2InstanceData implements Serializable {
+    private static final long serialVersionUID = 1L;
     private String id;
     private String state;
     private String publicIpv4 ="";
@@ -24,6 +23,7 @@ class Ec2InstanceData {
     private String tenancy = "";
     private String type = "";
     private String spotRequestId;
+    private Date launchTime; // Null if it was not returned
     private Integer vcpuCount;
     private ArrayList<StatisticRecord> averageCpuUtilizationData = new ArrayList<>();
     private ArrayList<StatisticRecord> minimumCpuUtilizationData = new ArrayList<>();
@@ -31,10 +31,12 @@ class Ec2InstanceData {
     private ArrayList<StatisticRecord> memoryUsedPercentData = new ArrayList<>();
     private ArrayList<StatisticRecord> diskUsedPercentData = new ArrayList<>();
     private Double spotPrice = null;
+    private Double spotPriceMaximum = null;
+    private Double spotPriceVolatility = null;
     private Double reservedPrice = null;
     private Double demandPrice = null;
     private boolean memoryData = false;
-    private Region region;
+    private String region; // Stored as the region id, so that the object can be serialized to the journal
 
     /**
      * Builder class to help in creating objects of the parent class. The parent class's constructor is made private which
@@ -263,12 +265,20 @@ class Ec2InstanceData {
         this.spotRequestId = spotRequestId;
     }
 
+    /**
+     * Method to set the time at which the ec2 instance in context was last launched
+     * @param launchTime the launch time as returned by DescribeInstances
+     */
+    public void setLaunchTime(Date launchTime) {
+        this.launchTime = launchTime;
+    }
+
     /**
      * Method to set the region of an instance
      * @param region The Region class object corresponding to the region in which the instance in context lies
      */
     public void setRegion(Region region){
-        this.region = region;
+        this.region = region.toString();
     }
 
     /**
@@ -276,7 +286,7 @@ class Ec2InstanceData {
      * @return the region in string format of the ec2 instance in context
      */
     public String getRegion(){
-        return this.region.toString();
+        return this.region;
     }
 
     /**
@@ -287,6 +297,14 @@ class Ec2InstanceData {
         return this.spotRequestId;
     }
 
+    /**
+     * The method to return the time at which the ec2 instance in context was last launched
+     * @return the launch time, null if it is not known
+     */
+    public Date getLaunchTime(){
+        return this.launchTime;
+    }
+
     /**
      * Method to check if an ec2 instance is a spot instance or not
      * @return return true if the instance in context is a spot instance else returns false
@@ -376,44 +394,12 @@ class Ec2InstanceData {
     }
 
     /**
-     * Method to retrieve the cost of a reserved instance and spot instance(REMOVED), if it is created with the same configuration as
-     * the instance in context. This method is invoked only if the PRICE_COMPARISON is true.
-     * @param client the EC2 client object which is to be used to make the API calls
+     * Method to set the cost of a reserved instance, if it is created with the same configuration as the instance in
+     * context. It is found by the ReservedOfferingPriceCache only if the PRICE_COMPARISON is true.
+     * @param reservedPrice the price per hour, null if there is no such reserved instance offering
      */
-    public void getAndStoreCostImplication(AmazonEC2 client){
-        /*
-        if(this.type.equals("") || this.platformDetails.equals(""))
-            return;
-        Instant endInstant = Instant.now();
-        Instant startInstant = Instant.ofEpochSecond(endInstant.getEpochSecond()-3600L);
-        DescribeSpotPriceHistoryResult result = client.describeSpotPriceHistory(new DescribeSpotPriceHistoryRequest()
-                .withAvailabilityZone(this.availabilityZone)
-                .withProductDescriptions(this.platformDetails)
-                .withStartTime(Date.from(startInstant))
-                .withEndTime(Date.from(endInstant))
-                .withInstanceTypes(this.type));
-        if(result.getSpotPriceHistory().size() == 0)
-            return;
-        this.spotPrice =  Double.valueOf(result.getSpotPriceHistory().get(0).getSpotPrice());
-        */
-
-        if(this.type.equals("") || this.platformDetails.equals("") || this.tenancy.equals(""))
-            return;
-
-        DescribeReservedInstancesOfferingsResult resultReserved = client.describeReservedInstancesOfferings(new DescribeReservedInstancesOfferingsRequest()
-                .withAvailabilityZone(this.availabilityZone)
-                .withInstanceTenancy(this.tenancy)
-                .withInstanceType(this.type)
-                .withMaxInstanceCount(1)
-                .withMaxDuration(94608000L)
-                .withMinDuration(94608000L)
-                .withOfferingType("All Upfront")
-                .withOfferingClass("standard")
-                .withProductDescription(this.platformDetails));
-        if(resultReserved.getReservedInstancesOfferings().size() == 0)
-            return;
-        Double price = (resultReserved.getReservedInstancesOfferings().get(0).getFixedPrice()*3600.0)/94608000.0;
-        this.reservedPrice = price;
+    public void setReservedPrice(Double reservedPrice){
+        this.reservedPrice = reservedPrice;
     }
 
     /**
@@ -424,6 +410,33 @@ class Ec2InstanceData {
         return this.spotPrice;
     }
 
+    /**
+     * Method to set the spot price of the configuration of the ec2 instance in context, from its spot price history.
+     * It is found by the SpotPriceCache only if the PRICE_COMPARISON is true.
+     * @param series the spot price history of the availability zone, instance type and platform of the instance
+     */
+    public void setSpotPrice(SpotPriceCache.Series series){
+        this.spotPrice = series.getLatestPrice();
+        this.spotPriceMaximum = series.getMaximumPrice();
+        this.spotPriceVolatility = series.getVolatility();
+    }
+
+    /**
+     * Method to retrieve the highest spot price of the configuration of the ec2 instance in context over the history
+     * @return the highest spot price, null if it is not known
+     */
+    public Double getSpotPriceMaximum(){
+        return this.spotPriceMaximum;
+    }
+
+    /**
+     * Method to retrieve how much the spot price of the configuration of the ec2 instance in context moved over the history
+     * @return the standard deviation of the spot price over its average, null if it is not known
+     */
+    public Double getSpotPriceVolatility(){
+        return this.spotPriceVolatility;
+    }
+
     /**
      * Method to retrieve the reserved price if a reserved instance is made with the same configuration as that of the ec2 instance in cntext
      * @return the reserved price of the instance (if made with the same configuration as that of the ec2 instance in context)
@@ -2,10 +2,13 @@ package com.example;
 
 import software.amazon.awssdk.regions.Region;
 
+import java.io.Serializable;
+
 /**
  * Class to store information of the Elastic Ips as Objects
  */
-class ElasticIpData {
+class ElasticIpData implements Serializable {
+    private static final long serialVersionUID = 1L;
     private String instanceId = "";
     private String publicIp;
     private String associationId = "";
@@ -13,7 +16,7 @@ class ElasticIpData {
     private String publicIpv4Pool;
     private String allocationId;
     private boolean isAttached = false;
-    private Region region;
+    private String region; // Stored as the region id, so that the object can be serialized to the journal
 
     /**
      * Builder class to help in creating the objects of the parent class. There is no other way to create the parent
@@ -107,12 +110,20 @@ class ElasticIpData {
         return this.publicIp;
     }
 
+    /**
+     * Method to return the allocation id of an elastic ip
+     * @return returns the allocation id of the elastic ip in context
+     */
+    public String getAllocationId(){
+        return this.allocationId;
+    }
+
     /**
      * Method to set the region of an elastic ip
      * @param region the Region class object of the region of the elastic ip in context
      */
     public void setRegion(Region region){
-        this.region = region;
+        this.region = region.toString();
     }
 
     /**
@@ -120,7 +131,7 @@ class ElasticIpData {
      * @return the region in string format of the elastic ip in context
      */
     public String getRegion(){
-        return this.region.toString();
+        return this.region;
     }
 
     @Override
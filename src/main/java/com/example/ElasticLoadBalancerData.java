@@ -2,12 +2,14 @@ package com.example;
 
 import software.amazon.awssdk.regions.Region;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 
 /**
  * Class to store the information of load balancers in form objects
  */
-class ElasticLoadBalancerData {
+class ElasticLoadBalancerData implements Serializable {
+    private static final long serialVersionUID = 1L;
     private String name;
     private String arn;
     private String dnsName;
@@ -24,7 +26,7 @@ class ElasticLoadBalancerData {
     private ArrayList<StatisticRecord> maximumMetricData = new ArrayList<>();
     private ArrayList<StatisticRecord> sumMetricData = new ArrayList<>();
 
-    private Region region;
+    private String region; // Stored as the region id, so that the object can be serialized to the journal
     private int totalTargets = 0;
     private  int totalHealthyTargets = 0;
 
@@ -187,6 +189,14 @@ class ElasticLoadBalancerData {
         return this.name;
     }
 
+    /**
+     * Method to return the arn of the load balancer
+     * @return the arn of the load balancer in context
+     */
+    public String getArn(){
+        return this.arn;
+    }
+
     /**
      * Method to check whether the load balancer in context is under utilized or not. It is decided based on the threshold passed as a parameter.
      * @param statistic the statistic which is to be used. it can be "average", "maximum", "minimum" or "sum"
@@ -235,7 +245,7 @@ class ElasticLoadBalancerData {
      * @param region the Region class object corresponding to the region of the load balancer in context
      */
     public void setRegion(Region region){
-        this.region = region;
+        this.region = region.toString();
     }
 
     /**
@@ -243,7 +253,7 @@ class ElasticLoadBalancerData {
      * @return The region in string format of the load balancer in context
      */
     public String getRegion(){
-        return this.region.toString();
+        return this.region;
     }
 
     @Override
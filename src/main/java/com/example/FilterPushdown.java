@@ -0,0 +1,89 @@
+package com.example;
+
+import com.amazonaws.services.backup.model.ListRecoveryPointsByBackupVaultRequest;
+import com.amazonaws.services.ec2.model.DescribeInstancesRequest;
+import com.amazonaws.services.ec2.model.DescribeVolumesRequest;
+import com.amazonaws.services.ec2.model.Filter;
+
+import java.time.Instant;
+import java.util.Date;
+import java.util.TreeMap;
+
+/**
+ * Class to translate the thresholds of the report into the filters of the describe and list calls, so that AWS only
+ * returns what the report can use instead of the collectors fetching everything and filtering it afterwards.
+ *
+ * 1. Instances : only the running ones, as they are the only ones which get metrics or findings
+ * 2. Volumes : only the available (unused) and in-use ones, the ones being created, deleted or in error are skipped
+ * 3. Recovery points : only the ones created before the backups threshold, the younger ones never make it to the report
+ *
+ * If the pushdown is disabled the requests are returned without any filter. As the resources filtered out are also
+ * not part of the inventory snapshot, the filters of every type of resource are recorded in the snapshot (see
+ * getFilters) and the delta report only compares the types collected with the same filters in both the snapshots.
+ */
+class FilterPushdown {
+    private final boolean enabled;
+    private final int backupsThresholdDays;
+
+    /**
+     * Constructor
+     * @param enabled if false then no filter is added to any request
+     * @param backupsThresholdDays the age (in days) after which a backup is reported
+     */
+    public FilterPushdown(boolean enabled, int backupsThresholdDays) {
+        this.enabled = enabled;
+        this.backupsThresholdDays = backupsThresholdDays;
+    }
+
+    /**
+     * Method to describe the filters applied, per type of the records of the inventory snapshot
+     * @return the type of the record (like "ec2-instance") -> its filters, empty if the pushdown is disabled
+     */
+    public TreeMap<String, String> getFilters() {
+        TreeMap<String, String> filters = new TreeMap<>();
+        if (this.enabled) {
+            filters.put("ec2-instance", "instance-state-name=running");
+            filters.put("ebs-volume", "status=available,in-use");
+            filters.put("backup", "created-before=" + this.backupsThresholdDays + " days ago");
+        }
+        return filters;
+    }
+
+    /**
+     * Method to return the request for a page of instances
+     * @param nextToken the token of the page, null for the first page
+     * @return the request with the filters of the report
+     */
+    public DescribeInstancesRequest describeInstances(String nextToken) {
+        DescribeInstancesRequest request = new DescribeInstancesRequest().withNextToken(nextToken);
+        if (this.enabled)
+            request.withFilters(new Filter("instance-state-name").withValues("running"));
+        return request;
+    }
+
+    /**
+     * Method to return the request for a page of volumes
+     * @param nextToken the token of the page, null for the first page
+     * @param maxResults the size of the page
+     * @return the request with the filters of the report
+     */
+    public DescribeVolumesRequest describeVolumes(String nextToken, int maxResults) {
+        DescribeVolumesRequest request = new DescribeVolumesRequest().withMaxResults(maxResults).withNextToken(nextToken);
+        if (this.enabled)
+            request.withFilters(new Filter("status").withValues("available", "in-use"));
+        return request;
+    }
+
+    /**
+     * Method to return the request for a page of recovery points of a vault
+     * @param vaultName the name of the vault
+     * @param nextToken the token of the page, null for the first page
+     * @return the request with the filters of the report
+     */
+    public ListRecoveryPointsByBackupVaultRequest listRecoveryPoints(String vaultName, String nextToken) {
+        ListRecoveryPointsByBackupVaultRequest request = new ListRecoveryPointsByBackupVaultRequest().withBackupVaultName(vaultName).withNextToken(nextToken);
+        if (this.enabled)
+            request.withByCreatedBefore(Date.from(Instant.ofEpochSecond(Instant.now().getEpochSecond() - (long) this.backupsThresholdDays * 24 * 3600)));
+        return request;
+    }
+}
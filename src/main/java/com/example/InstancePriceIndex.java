@@ -0,0 +1,516 @@
+package com.example;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Class to look up the EC2 prices (on demand and reserved) of every region, operating system, tenancy and term from an
+ * index built out of the bulk price list of EC2, instead of paging through the Pricing GetProducts API.
+ *
+ * The bulk price list (the index.json or index.csv of the AmazonEC2 offer, several GBs) is read from the local disk in a
+ * streaming manner by build, and the prices of the shared/dedicated instances are written to the index file as an open
+ * addressing hash table. A slot of the table is the 64 bit hash of the key (region, instance type, operating system,
+ * pre installed software, tenancy, term) followed by the hourly and the upfront price, as doubles so that a price is
+ * read back exactly as it is in the price list. The index file is memory mapped, so a lookup is a hash
+ * and a few probes without reading the index on to the heap. Two keys having the same 64 bit hash are not told apart,
+ * which is unlikely enough for the few million keys of the price list.
+ */
+class InstancePriceIndex {
+    public static final String ON_DEMAND = "OnDemand";
+
+    private static final int MAGIC = 0x45433250; // "EC2P"
+    private static final int FORMAT_VERSION = 2;
+    private static final int HEADER_BYTES = 16;
+    private static final int SLOT_BYTES = Long.BYTES + 2 * Double.BYTES;
+    private static final String SEPARATOR = "|";
+    private static final String SQL_SERVER = " with SQL Server ";
+
+    private final ByteBuffer slots;
+    private final int mask;
+    private final int count;
+
+    /**
+     * Class to gather the prices while the price list is read, it is the same hash table as the one of the index file
+     * but on the heap and growing with the keys
+     */
+    private static class Table {
+        private long[] hashes = new long[1 << 16];
+        private double[] hourlyPrices = new double[1 << 16];
+        private double[] upfrontPrices = new double[1 << 16];
+        private int count = 0;
+
+        private int slot(long hash) {
+            int mask = this.hashes.length - 1;
+            int slot = (int) (hash ^ (hash >>> 32)) & mask;
+            while (this.hashes[slot] != 0 && this.hashes[slot] != hash)
+                slot = (slot + 1) & mask;
+            if (this.hashes[slot] == 0) {
+                if (2 * (this.count + 1) > this.hashes.length) {
+                    grow();
+                    return slot(hash);
+                }
+                this.hashes[slot] = hash;
+                this.count += 1;
+            }
+            return slot;
+        }
+
+        private void grow() {
+            long[] hashes = this.hashes;
+            double[] hourlyPrices = this.hourlyPrices;
+            double[] upfrontPrices = this.upfrontPrices;
+            this.hashes = new long[hashes.length * 2];
+            this.hourlyPrices = new double[hashes.length * 2];
+            this.upfrontPrices = new double[hashes.length * 2];
+            this.count = 0;
+            for (int i = 0; i < hashes.length; i++) {
+                if (hashes[i] == 0)
+                    continue;
+                int slot = slot(hashes[i]);
+                this.hourlyPrices[slot] = hourlyPrices[i];
+                this.upfrontPrices[slot] = upfrontPrices[i];
+            }
+        }
+
+        /**
+         * Method to add a price dimension of a key, the hourly one if the unit is hours else the upfront one
+         */
+        private void add(String key, String unit, double price) {
+            int slot = slot(hash(key));
+            if ("Quantity".equals(unit))
+                this.upfrontPrices[slot] = price;
+            else
+                this.hourlyPrices[slot] = price;
+        }
+    }
+
+    /**
+     * Constructor, it maps an index file made by build
+     * @param indexFile the index file
+     * @throws IOException if the file can not be read or is not an index of this format
+     */
+    public InstancePriceIndex(String indexFile) throws IOException {
+        try (RandomAccessFile input = new RandomAccessFile(indexFile, "r"); FileChannel channel = input.getChannel()) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (!isCurrentFormat(buffer))
+                throw new IOException(indexFile + " is not a price index of the current format");
+            this.mask = buffer.getInt(8) - 1;
+            this.count = buffer.getInt(12);
+            buffer.position(HEADER_BYTES);
+            this.slots = buffer.slice();
+        }
+    }
+
+    /**
+     * Method to check if an index file was made by build in the current format, an index of an older format is to be
+     * built again
+     * @param indexFile the index file
+     * @return true if the index can be mapped
+     */
+    public static boolean isCurrentFormat(String indexFile) {
+        try (RandomAccessFile input = new RandomAccessFile(indexFile, "r"); FileChannel channel = input.getChannel()) {
+            return channel.size() >= HEADER_BYTES && isCurrentFormat(channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static boolean isCurrentFormat(ByteBuffer header) {
+        return header.getInt(0) == MAGIC && header.getInt(4) == FORMAT_VERSION;
+    }
+
+    /**
+     * Method to return the number of keys having a price
+     * @return the number of (region, instance type, operating system, pre installed software, tenancy, term) in the index
+     */
+    public int size() {
+        return this.count;
+    }
+
+    /**
+     * Method to return the effective hourly price of an instance, that is the hourly price along with the upfront price
+     * spread over the hours of the term
+     * @param region the region code, like "us-east-1"
+     * @param instanceType the instance type, like "m5.large"
+     * @param operatingSystem the operating system as named in the price list, see operatingSystem
+     * @param preInstalledSoftware the pre installed software as named in the price list, see preInstalledSoftware
+     * @param tenancy the tenancy as named in the price list, see tenancy
+     * @param term ON_DEMAND or a reserved term made by reservedTerm
+     * @return the price in USD per hour, null if the price list has no such price
+     */
+    public Double getEffectiveHourlyPrice(String region, String instanceType, String operatingSystem, String preInstalledSoftware, String tenancy, String term) {
+        int slot = find(region + SEPARATOR + instanceType + SEPARATOR + operatingSystem + SEPARATOR + preInstalledSoftware + SEPARATOR + tenancy + SEPARATOR + term);
+        if (slot < 0)
+            return null;
+        double price = price(slot, 0);
+        double upfront = price(slot, 1);
+        if (upfront > 0)
+            price += upfront / termHours(term);
+        return price;
+    }
+
+    /**
+     * Method to return the upfront price of a reserved term
+     * @return the price in USD, null if the price list has no such price
+     */
+    public Double getUpfrontPrice(String region, String instanceType, String operatingSystem, String preInstalledSoftware, String tenancy, String term) {
+        int slot = find(region + SEPARATOR + instanceType + SEPARATOR + operatingSystem + SEPARATOR + preInstalledSoftware + SEPARATOR + tenancy + SEPARATOR + term);
+        return slot < 0 ? null : price(slot, 1);
+    }
+
+    private double price(int slot, int column) {
+        return this.slots.getDouble(slot * SLOT_BYTES + Long.BYTES + column * Double.BYTES);
+    }
+
+    private int find(String key) {
+        long hash = hash(key);
+        int slot = (int) (hash ^ (hash >>> 32)) & this.mask;
+        while (true) {
+            long current = this.slots.getLong(slot * SLOT_BYTES);
+            if (current == hash)
+                return slot;
+            if (current == 0)
+                return -1;
+            slot = (slot + 1) & this.mask;
+        }
+    }
+
+    /**
+     * Method to name a reserved term the way the index does
+     * @param leaseContractLength "1yr" or "3yr"
+     * @param offeringClass "standard" or "convertible"
+     * @param purchaseOption "No Upfront", "Partial Upfront" or "All Upfront"
+     * @return the term, to be used for the lookups
+     */
+    public static String reservedTerm(String leaseContractLength, String offeringClass, String purchaseOption) {
+        return leaseContractLength + "/" + offeringClass + "/" + purchaseOption;
+    }
+
+    /**
+     * Method to map the platform details of an instance (as given by DescribeInstances) to the operating system of the
+     * price list, the SQL Server edition is left to preInstalledSoftware
+     * @param platformDetails the platform details, like "Linux/UNIX" or "Windows with SQL Server Standard"
+     * @return the operating system, like "Linux" or "Windows"
+     */
+    public static String operatingSystem(String platformDetails) {
+        int sqlServer = platformDetails.indexOf(SQL_SERVER);
+        if (sqlServer >= 0)
+            platformDetails = platformDetails.substring(0, sqlServer);
+        switch (platformDetails) {
+            case "Linux/UNIX": return "Linux";
+            case "Red Hat Enterprise Linux": return "RHEL";
+            case "Red Hat Enterprise Linux with HA": return "Red Hat Enterprise Linux with HA";
+            case "Linux": return "Linux";
+            case "SUSE Linux": return "SUSE";
+            case "Ubuntu Pro": return "Ubuntu Pro";
+            default: return platformDetails.startsWith("Windows") ? "Windows" : platformDetails;
+        }
+    }
+
+    /**
+     * Method to map the platform details of an instance (as given by DescribeInstances) to the pre installed software of
+     * the price list
+     * @param platformDetails the platform details, like "Windows with SQL Server Standard"
+     * @return the pre installed software, like "SQL Std", "NA" if there is none
+     */
+    public static String preInstalledSoftware(String platformDetails) {
+        int sqlServer = platformDetails.indexOf(SQL_SERVER);
+        if (sqlServer < 0)
+            return "NA";
+        switch (platformDetails.substring(sqlServer + SQL_SERVER.length())) {
+            case "Standard": return "SQL Std";
+            case "Web": return "SQL Web";
+            case "Enterprise": return "SQL Ent";
+            default: return platformDetails.substring(sqlServer + SQL_SERVER.length());
+        }
+    }
+
+    /**
+     * Method to map the tenancy of an instance (as given by DescribeInstances) to the tenancy of the price list
+     * @param instanceTenancy the tenancy, like "default"
+     * @return the tenancy, like "Shared"
+     */
+    public static String tenancy(String instanceTenancy) {
+        switch (instanceTenancy) {
+            case "dedicated": return "Dedicated";
+            case "host": return "Host";
+            default: return "Shared";
+        }
+    }
+
+    private static double termHours(String term) {
+        return (term.startsWith("3yr") ? 3 : 1) * 365 * 24;
+    }
+
+    /**
+     * Method to build the index file out of the bulk price list. Only the prices of the instances (in the AWS regions,
+     * with the license included) are kept
+     * @param offerFile the bulk price list of EC2 in JSON or CSV format, it may be gzipped
+     * @param indexFile the index file to be made, it is written to a temporary file which is then renamed
+     * @return the number of keys in the index
+     * @throws Exception if the price list can not be read or is not of a known format
+     */
+    public static int build(String offerFile, String indexFile) throws Exception {
+        Table table = new Table();
+        InputStream input = new BufferedInputStream(new FileInputStream(offerFile), 1 << 16);
+        if (offerFile.endsWith(".gz"))
+            input = new BufferedInputStream(new GZIPInputStream(input, 1 << 16), 1 << 16);
+        try (InputStream stream = input) {
+            stream.mark(1);
+            int first = stream.read();
+            stream.reset();
+            if (first == '{')
+                readJson(stream, table);
+            else
+                readCsv(stream, table);
+        }
+        if (table.count == 0)
+            throw new Exception("No instance prices found in " + offerFile);
+
+        File file = new File(indexFile);
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (directory != null && !directory.exists() && !directory.mkdirs())
+            throw new IOException("Unable to create the directory " + directory);
+        File temporary = new File(directory, file.getName() + ".tmp");
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary), 1 << 16))) {
+            output.writeInt(MAGIC);
+            output.writeInt(FORMAT_VERSION);
+            output.writeInt(table.hashes.length);
+            output.writeInt(table.count);
+            for (int i = 0; i < table.hashes.length; i++) {
+                output.writeLong(table.hashes[i]);
+                output.writeDouble(table.hourlyPrices[i]);
+                output.writeDouble(table.upfrontPrices[i]);
+            }
+        }
+        try {
+            Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        return table.count;
+    }
+
+    /**
+     * Method to make the key of a product out of its attributes (named as in the JSON price list)
+     * @return the region, instance type, operating system, pre installed software and tenancy of the product, null if it
+     *         is not an instance of interest
+     */
+    private static String productKey(HashMap<String, String> attributes) {
+        String region = attributes.get("regionCode");
+        String instanceType = attributes.get("instanceType");
+        String operatingSystem = attributes.get("operatingSystem");
+        String tenancy = attributes.get("tenancy");
+        if (region == null || instanceType == null || operatingSystem == null || tenancy == null)
+            return null;
+        if (!"Compute Instance".equals(attributes.get("productFamily")) && !"Compute Instance (bare metal)".equals(attributes.get("productFamily")))
+            return null;
+        if (!"Used".equalsIgnoreCase(attributes.getOrDefault("capacitystatus", "Used"))
+                || !"AWS Region".equals(attributes.getOrDefault("locationType", "AWS Region"))
+                || !"OnDemand".equals(attributes.getOrDefault("marketoption", "OnDemand"))
+                || "Bring your own license".equals(attributes.get("licenseModel")))
+            return null;
+        return region + SEPARATOR + instanceType + SEPARATOR + operatingSystem + SEPARATOR + attributes.getOrDefault("preInstalledSw", "NA") + SEPARATOR + tenancy;
+    }
+
+    /**
+     * Method to stream the JSON price list. The products come before the terms in the price list, so the key of every
+     * product of interest is held (by its SKU) until its terms are read
+     */
+    private static void readJson(InputStream stream, Table table) throws IOException {
+        HashMap<String, String> productKeys = new HashMap<>(); // SKU -> key of the product
+        JsonReader reader = new JsonReader(new InputStreamReader(stream, StandardCharsets.UTF_8));
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals("products")) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String sku = reader.nextName();
+                    HashMap<String, String> attributes = new HashMap<>();
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        String field = reader.nextName();
+                        if (field.equals("attributes"))
+                            readStrings(reader, attributes);
+                        else if (field.equals("productFamily"))
+                            attributes.put("productFamily", reader.nextString());
+                        else
+                            reader.skipValue();
+                    }
+                    reader.endObject();
+                    String key = productKey(attributes);
+                    if (key != null)
+                        productKeys.put(sku, key);
+                }
+                reader.endObject();
+            } else if (name.equals("terms")) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    boolean onDemand = reader.nextName().equals(ON_DEMAND);
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        String key = productKeys.get(reader.nextName());
+                        if (key == null) {
+                            reader.skipValue();
+                            continue;
+                        }
+                        reader.beginObject();
+                        while (reader.hasNext()) {
+                            reader.nextName(); // Offer term code
+                            readOfferTerm(reader, key, onDemand, table);
+                        }
+                        reader.endObject();
+                    }
+                    reader.endObject();
+                }
+                reader.endObject();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Method to read an offer term of a product, its price dimensions are held until the term attributes (which may
+     * come after them) are read
+     */
+    private static void readOfferTerm(JsonReader reader, String productKey, boolean onDemand, Table table) throws IOException {
+        HashMap<String, String> termAttributes = new HashMap<>();
+        HashMap<String, Double> prices = new HashMap<>(); // Unit -> price
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String field = reader.nextName();
+            if (field.equals("termAttributes")) {
+                readStrings(reader, termAttributes);
+            } else if (field.equals("priceDimensions")) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    reader.nextName(); // Rate code
+                    HashMap<String, String> dimension = new HashMap<>();
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        String dimensionField = reader.nextName();
+                        if (dimensionField.equals("pricePerUnit")) {
+                            HashMap<String, String> pricePerUnit = new HashMap<>();
+                            readStrings(reader, pricePerUnit);
+                            dimension.put("USD", pricePerUnit.get("USD"));
+                        } else if (reader.peek() == JsonToken.STRING) {
+                            dimension.put(dimensionField, reader.nextString());
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                    if (dimension.get("USD") != null)
+                        prices.put(dimension.get("unit"), Double.parseDouble(dimension.get("USD")));
+                }
+                reader.endObject();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        String term = onDemand ? ON_DEMAND : reservedTerm(termAttributes.get("LeaseContractLength"), termAttributes.get("OfferingClass"), termAttributes.get("PurchaseOption"));
+        for (Map.Entry<String, Double> price : prices.entrySet())
+            table.add(productKey + SEPARATOR + term, price.getKey(), price.getValue());
+    }
+
+    private static void readStrings(JsonReader reader, HashMap<String, String> values) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.STRING)
+                values.put(name, reader.nextString());
+            else
+                reader.skipValue();
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Method to stream the CSV price list. It has a few lines of metadata, then the header and then one line per price
+     * dimension of every term of every product
+     */
+    private static void readCsv(InputStream stream, Table table) throws Exception {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8), 1 << 16);
+        HashMap<String, Integer> columns = null;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (columns == null) {
+                if (line.startsWith("\"SKU\"")) {
+                    columns = new HashMap<>();
+                    String[] header = S3InventoryReader.parseCsvLine(line);
+                    for (int i = 0; i < header.length; i++)
+                        columns.put(header[i], i);
+                }
+                continue;
+            }
+            String[] row = S3InventoryReader.parseCsvLine(line);
+            HashMap<String, String> attributes = new HashMap<>();
+            attributes.put("regionCode", field(row, columns, "Region Code"));
+            attributes.put("instanceType", field(row, columns, "Instance Type"));
+            attributes.put("operatingSystem", field(row, columns, "Operating System"));
+            attributes.put("tenancy", field(row, columns, "Tenancy"));
+            attributes.put("productFamily", field(row, columns, "Product Family"));
+            attributes.put("preInstalledSw", field(row, columns, "Pre Installed S/W"));
+            attributes.put("capacitystatus", field(row, columns, "CapacityStatus"));
+            attributes.put("locationType", field(row, columns, "Location Type"));
+            attributes.put("marketoption", field(row, columns, "MarketOption"));
+            attributes.put("licenseModel", field(row, columns, "License Model"));
+            attributes.values().removeIf(value -> value == null || value.isEmpty());
+            String key = productKey(attributes);
+            String price = field(row, columns, "PricePerUnit");
+            if (key == null || price == null || price.isEmpty() || !"USD".equals(field(row, columns, "Currency")))
+                continue;
+
+            String term = ON_DEMAND.equals(field(row, columns, "TermType")) ? ON_DEMAND
+                    : reservedTerm(field(row, columns, "LeaseContractLength"), field(row, columns, "OfferingClass"), field(row, columns, "PurchaseOption"));
+            table.add(key + SEPARATOR + term, field(row, columns, "Unit"), Double.parseDouble(price));
+        }
+        if (columns == null)
+            throw new Exception("The price list is neither JSON nor CSV with a header");
+    }
+
+    private static String field(String[] row, HashMap<String, Integer> columns, String name) {
+        Integer index = columns.get(name);
+        if (index == null || index >= row.length)
+            return null;
+        return row[index];
+    }
+
+    /**
+     * Method to hash a key (FNV-1a), 0 marks an empty slot so it is never returned
+     */
+    private static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash == 0 ? 1 : hash;
+    }
+}
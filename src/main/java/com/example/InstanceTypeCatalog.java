@@ -0,0 +1,324 @@
+package com.example;
+
+import com.amazonaws.services.ec2.AmazonEC2;
+import com.amazonaws.services.ec2.model.DescribeInstanceTypesRequest;
+import com.amazonaws.services.ec2.model.DescribeInstanceTypesResult;
+import com.amazonaws.services.ec2.model.InstanceTypeInfo;
+import software.amazon.awssdk.regions.Region;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class to hold the attributes (vcpus, memory, network performance and architectures) of the EC2 instance types of
+ * every region, so that DescribeInstanceTypes is not paged through on every run.
+ *
+ * The catalog of a region is a binary file in the cache directory. It starts with a header (format version and the
+ * time at which it was fetched) followed by the sorted names of the instance types, the index of a type in that order
+ * being its dense id, and then one primitive column per attribute. The columns are memory mapped, only the names are
+ * read on to the heap.
+ *
+ * The catalog of a region is loaded on its first use. It is fetched right away if the region has no catalog yet (or it
+ * is of an older format), and if it is older than the time to live then the old catalog is used for this run while the
+ * new one is fetched in the background.
+ */
+class InstanceTypeCatalog {
+    private static final int MAGIC = 0x45433254; // "EC2T"
+    private static final int FORMAT_VERSION = 1;
+
+    public static final int ARCHITECTURE_I386 = 1;
+    public static final int ARCHITECTURE_X86_64 = 2;
+    public static final int ARCHITECTURE_ARM64 = 4;
+    public static final int ARCHITECTURE_X86_64_MAC = 8;
+    public static final int ARCHITECTURE_ARM64_MAC = 16;
+
+    private final ClientRegistry clients;
+    private final RateController rateController;
+    private final File directory;
+    private final long ttlMillis;
+    private final ConcurrentHashMap<String, Table> tables = new ConcurrentHashMap<>(); // Region id -> catalog of the region
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet(); // Regions of which a new catalog is being fetched
+    private final ExecutorService refresher = Executors.newSingleThreadExecutor();
+
+    /**
+     * Class to hold the catalog of a region. The attributes are looked up by the dense id of the instance type
+     */
+    public static class Table {
+        private final long fetchedAt;
+        private final String[] names;
+        private final String[] networkPerformances;
+        private final ByteBuffer columns;
+        private final int memoryOffset;
+        private final int vcpuOffset;
+        private final int networkOffset;
+        private final int architectureOffset;
+
+        private Table(long fetchedAt, String[] names, String[] networkPerformances, ByteBuffer columns, int columnsStart) {
+            this.fetchedAt = fetchedAt;
+            this.names = names;
+            this.networkPerformances = networkPerformances;
+            this.columns = columns;
+            this.memoryOffset = columnsStart;
+            this.vcpuOffset = this.memoryOffset + names.length * Long.BYTES;
+            this.networkOffset = this.vcpuOffset + names.length * Integer.BYTES;
+            this.architectureOffset = this.networkOffset + names.length * Short.BYTES;
+        }
+
+        /**
+         * Method to return the time at which the catalog was fetched from AWS
+         * @return the time in milliseconds since the epoch
+         */
+        public long getFetchedAt() {
+            return this.fetchedAt;
+        }
+
+        /**
+         * Method to return the number of instance types, the ids are 0 to size - 1
+         * @return the number of instance types in the region
+         */
+        public int size() {
+            return this.names.length;
+        }
+
+        /**
+         * Method to return the dense id of an instance type
+         * @param instanceType the name of the instance type, like "t3.micro"
+         * @return the id, -1 if the instance type is not offered in the region
+         */
+        public int getId(String instanceType) {
+            if (instanceType == null)
+                return -1;
+            int id = Arrays.binarySearch(this.names, instanceType);
+            return id < 0 ? -1 : id;
+        }
+
+        public String getName(int id) {
+            return this.names[id];
+        }
+
+        public long getMemorySizeInMB(int id) {
+            return this.columns.getLong(this.memoryOffset + id * Long.BYTES);
+        }
+
+        public int getVcpuCount(int id) {
+            return this.columns.getInt(this.vcpuOffset + id * Integer.BYTES);
+        }
+
+        public String getNetworkPerformance(int id) {
+            return this.networkPerformances[this.columns.getShort(this.networkOffset + id * Short.BYTES)];
+        }
+
+        /**
+         * Method to return the architectures supported by an instance type
+         * @param id the id of the instance type
+         * @return the ARCHITECTURE_* flags of the supported architectures ORed together
+         */
+        public int getArchitectures(int id) {
+            return this.columns.get(this.architectureOffset + id);
+        }
+
+        private boolean isStale(long ttlMillis) {
+            return System.currentTimeMillis() - this.fetchedAt > ttlMillis;
+        }
+    }
+
+    /**
+     * Constructor, nothing is read or fetched until a region is asked for
+     * @param clients the registry from which the ec2 client of a region is taken
+     * @param rateController the rate controller through which DescribeInstanceTypes is called
+     * @param directory the directory in which the catalogs are stored, one file per region
+     * @param ttlMillis the age after which the catalog of a region is fetched again
+     */
+    public InstanceTypeCatalog(ClientRegistry clients, RateController rateController, String directory, long ttlMillis) {
+        this.clients = clients;
+        this.rateController = rateController;
+        this.directory = new File(directory);
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * Method to return the catalog of a region. The catalog stored in the file is used if there is one, it is fetched in
+     * the background if it is stale
+     * @param region the region in context
+     * @return the catalog of the region
+     * @throws Exception if the region has no stored catalog and it can not be fetched either
+     */
+    public Table get(Region region) throws Exception {
+        Table table = this.tables.get(region.id());
+        if (table == null) {
+            synchronized (this) {
+                table = this.tables.get(region.id());
+                if (table == null) {
+                    table = load(region);
+                    if (table == null)
+                        table = fetchAndStore(region);
+                    this.tables.put(region.id(), table);
+                }
+            }
+        }
+        if (table.isStale(this.ttlMillis) && this.refreshing.add(region.id())) {
+            this.refresher.submit(() -> {
+                try {
+                    this.tables.put(region.id(), fetchAndStore(region));
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            });
+        }
+        return table;
+    }
+
+    /**
+     * Method to wait for the catalogs being fetched in the background to be stored, it is to be called once the catalog
+     * is no longer needed
+     * @throws InterruptedException if the wait is interrupted
+     */
+    public void shutdown() throws InterruptedException {
+        this.refresher.shutdown();
+        this.refresher.awaitTermination(10, TimeUnit.MINUTES);
+    }
+
+    private File file(Region region) {
+        return new File(this.directory, "instance-types-" + region.id() + ".bin");
+    }
+
+    /**
+     * Method to map the stored catalog of a region
+     * @return the catalog, null if there is none or it is of another format
+     */
+    private Table load(Region region) {
+        File file = file(region);
+        if (!file.isFile())
+            return null;
+        try (RandomAccessFile input = new RandomAccessFile(file, "r"); FileChannel channel = input.getChannel()) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION)
+                return null;
+            long fetchedAt = buffer.getLong();
+            String[] networkPerformances = new String[buffer.getInt()];
+            for (int i = 0; i < networkPerformances.length; i++)
+                networkPerformances[i] = readString(buffer);
+            String[] names = new String[buffer.getInt()];
+            for (int i = 0; i < names.length; i++)
+                names[i] = readString(buffer);
+            return new Table(fetchedAt, names, networkPerformances, buffer, buffer.position());
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Method to page through DescribeInstanceTypes for a region and to store the result as its catalog. The file is
+     * written to a temporary file which is then renamed, so the catalog mapped by a concurrent reader stays intact
+     * @return the catalog just fetched
+     * @throws Exception if the instance types can not be fetched
+     */
+    private Table fetchAndStore(Region region) throws Exception {
+        AmazonEC2 client = this.clients.ec2(region);
+        ArrayList<InstanceTypeInfo> types = new ArrayList<>();
+        DescribeInstanceTypesRequest request = new DescribeInstanceTypesRequest().withMaxResults(100);
+        while (true) {
+            DescribeInstanceTypesResult result = this.rateController.call(region.id(), "DescribeInstanceTypes", client::describeInstanceTypes, request);
+            types.addAll(result.getInstanceTypes());
+            if (result.getNextToken() == null || result.getNextToken().equals("") || result.getInstanceTypes().size() == 0)
+                break;
+            request = new DescribeInstanceTypesRequest().withMaxResults(100).withNextToken(result.getNextToken());
+        }
+        types.sort((first, second) -> first.getInstanceType().compareTo(second.getInstanceType()));
+
+        String[] names = new String[types.size()];
+        ArrayList<String> networkPerformances = new ArrayList<>();
+        HashMap<String, Short> networkIds = new HashMap<>();
+        ByteBuffer columns = ByteBuffer.allocate(types.size() * (Long.BYTES + Integer.BYTES + Short.BYTES + 1));
+        Table table = new Table(System.currentTimeMillis(), names, null, columns, 0); // Only its offsets are used until the columns are filled
+        for (int id = 0; id < types.size(); id++) {
+            InstanceTypeInfo type = types.get(id);
+            names[id] = type.getInstanceType();
+            String network = type.getNetworkInfo() == null || type.getNetworkInfo().getNetworkPerformance() == null ? "" : type.getNetworkInfo().getNetworkPerformance();
+            Short networkId = networkIds.get(network);
+            if (networkId == null) {
+                networkId = (short) networkPerformances.size();
+                networkIds.put(network, networkId);
+                networkPerformances.add(network);
+            }
+            columns.putLong(table.memoryOffset + id * Long.BYTES, type.getMemoryInfo() == null ? 0 : type.getMemoryInfo().getSizeInMiB());
+            columns.putInt(table.vcpuOffset + id * Integer.BYTES, type.getVCpuInfo() == null ? 0 : type.getVCpuInfo().getDefaultVCpus());
+            columns.putShort(table.networkOffset + id * Short.BYTES, networkId);
+            columns.put(table.architectureOffset + id, (byte) architectures(type.getProcessorInfo() == null ? null : type.getProcessorInfo().getSupportedArchitectures()));
+        }
+        table = new Table(table.fetchedAt, names, networkPerformances.toArray(new String[0]), columns, 0);
+        if (types.isEmpty())
+            throw new Exception("No instance types found in the region " + region.id());
+
+        if (!this.directory.exists() && !this.directory.mkdirs())
+            throw new IOException("Unable to create the cache directory " + this.directory);
+        File file = file(region);
+        File temporary = new File(this.directory, file.getName() + ".tmp");
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)))) {
+            output.writeInt(MAGIC);
+            output.writeInt(FORMAT_VERSION);
+            output.writeLong(table.fetchedAt);
+            output.writeInt(table.networkPerformances.length);
+            for (String network : table.networkPerformances)
+                writeString(output, network);
+            output.writeInt(names.length);
+            for (String name : names)
+                writeString(output, name);
+            output.write(columns.array());
+        }
+        try {
+            Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        return table;
+    }
+
+    private static int architectures(List<String> supported) {
+        int flags = 0;
+        for (String architecture : supported == null ? Collections.<String>emptyList() : supported) {
+            switch (architecture) {
+                case "i386": flags |= ARCHITECTURE_I386; break;
+                case "x86_64": flags |= ARCHITECTURE_X86_64; break;
+                case "arm64": flags |= ARCHITECTURE_ARM64; break;
+                case "x86_64_mac": flags |= ARCHITECTURE_X86_64_MAC; break;
+                case "arm64_mac": flags |= ARCHITECTURE_ARM64_MAC; break;
+                default: break;
+            }
+        }
+        return flags;
+    }
+
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        output.writeShort(bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
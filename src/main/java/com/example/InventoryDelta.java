@@ -0,0 +1,118 @@
+package com.example;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Class to store one change between two inventory snapshots. A change is either a resource which was added,
+ * a resource which was removed or a resource whose attributes have changed since the previous snapshot.
+ */
+class InventoryDelta {
+    public static final String ADDED = "added";
+    public static final String REMOVED = "removed";
+    public static final String CHANGED = "changed";
+
+    private String change;
+    private String type;
+    private String id;
+    private String region;
+    private TreeMap<String, String> before;
+    private TreeMap<String, String> after;
+
+    /**
+     * Constructor
+     * @param change the kind of change, one of "added", "removed" and "changed"
+     * @param previous the record of the resource in the previous snapshot, null if the resource was added
+     * @param current the record of the resource in the current snapshot, null if the resource was removed
+     * @throws Exception if both the records are null
+     */
+    public InventoryDelta(String change, InventoryRecord previous, InventoryRecord current) throws Exception {
+        InventoryRecord record = current != null ? current : previous;
+        if(record == null)
+            throw new Exception("Either the previous or the current record must be provided");
+        this.change = change;
+        this.type = record.getType();
+        this.id = record.getId();
+        this.region = record.getRegion();
+        if(previous != null)
+            this.before = previous.getAttributes();
+        if(current != null)
+            this.after = current.getAttributes();
+    }
+
+    /**
+     * Method to return the kind of change
+     * @return "added", "removed" or "changed"
+     */
+    public String getChange(){
+        return this.change;
+    }
+
+    /**
+     * Method to return the type of the resource
+     * @return the type of the resource in context
+     */
+    public String getType(){
+        return this.type;
+    }
+
+    /**
+     * Method to return the id of the resource
+     * @return the id of the resource in context
+     */
+    public String getId(){
+        return this.id;
+    }
+
+    /**
+     * Method to return the region of the resource
+     * @return the region of the resource in context
+     */
+    public String getRegion(){
+        return this.region;
+    }
+
+    /**
+     * Method to describe the change in a human-readable way, for example "idle: false -> true"
+     * For an added or a removed resource all of its attributes are listed down
+     * @return the description of the change in context
+     */
+    public String describe(){
+        StringBuilder description = new StringBuilder();
+        if(this.before == null || this.after == null) {
+            Map<String, String> attributes = this.before == null ? this.after : this.before;
+            for (Map.Entry<String, String> entry : attributes.entrySet()) {
+                if (description.length() > 0)
+                    description.append(", ");
+                description.append(entry.getKey()).append(": ").append(entry.getValue());
+            }
+            return description.toString();
+        }
+
+        TreeSet<String> names = new TreeSet<>(this.before.keySet());
+        names.addAll(this.after.keySet());
+        for(String name : names){
+            String previousValue = this.before.containsKey(name) ? this.before.get(name) : "-";
+            String currentValue = this.after.containsKey(name) ? this.after.get(name) : "-";
+            if(previousValue.equals(currentValue))
+                continue;
+            if(description.length() > 0)
+                description.append(", ");
+            description.append(name).append(": ").append(previousValue).append(" -> ").append(currentValue);
+        }
+        return description.toString();
+    }
+
+    @Override
+    public String toString() {
+        return "InventoryDelta{" +
+                "change='" + change + '\'' +
+                ", type='" + type + '\'' +
+                ", id='" + id + '\'' +
+                ", region='" + region + '\'' +
+                ", before=" + before +
+                ", after=" + after +
+                '}';
+    }
+}
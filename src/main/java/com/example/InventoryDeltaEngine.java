@@ -0,0 +1,317 @@
+package com.example;
+
+import com.google.gson.Gson;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Class to compare two inventory snapshots by resource id and to list down what has changed between them.
+ *
+ * Both the snapshots are first hash partitioned (on the record key) into a number of partition files, so that a
+ * resource always falls in the partition with the same index on both sides. Then each pair of partitions is joined
+ * independently and in parallel, only one partition of the previous snapshot is held in memory per worker. So the
+ * memory used depends on the number of partitions and not on the size of the snapshots.
+ *
+ * The filter records of the snapshots (see InventorySnapshot.addFilter) are picked up while partitioning, and the types
+ * of resources collected with different filters in the two snapshots are left out of the join, as a resource filtered
+ * out on one side only would show as added or removed.
+ */
+class InventoryDeltaEngine {
+    private final int partitions;
+    private final int threads;
+    private final Gson gson = new Gson();
+
+    /**
+     * Class to store the number of changes found while comparing two snapshots
+     */
+    public static class DeltaSummary {
+        private int added = 0;
+        private int removed = 0;
+        private int changed = 0;
+        private final TreeSet<String> notCompared = new TreeSet<>();
+
+        /**
+         * Method to add the counts of another summary into this one
+         * @param summary the summary whose counts are to be added
+         */
+        private void add(DeltaSummary summary){
+            this.added += summary.added;
+            this.removed += summary.removed;
+            this.changed += summary.changed;
+        }
+
+        /**
+         * Method to return the number of resources added since the previous snapshot
+         * @return the number of added resources
+         */
+        public int getAdded(){
+            return this.added;
+        }
+
+        /**
+         * Method to return the number of resources which do not exist anymore
+         * @return the number of removed resources
+         */
+        public int getRemoved(){
+            return this.removed;
+        }
+
+        /**
+         * Method to return the number of resources whose attributes have changed
+         * @return the number of changed resources
+         */
+        public int getChanged(){
+            return this.changed;
+        }
+
+        /**
+         * Method to return the types of resources which were not compared, as they were collected with different filters
+         * in the two snapshots
+         * @return the types, like "ec2-instance", empty if every type was compared
+         */
+        public TreeSet<String> getNotCompared(){
+            return this.notCompared;
+        }
+
+        @Override
+        public String toString() {
+            return "DeltaSummary{" +
+                    "added=" + added +
+                    ", removed=" + removed +
+                    ", changed=" + changed +
+                    ", notCompared=" + notCompared +
+                    '}';
+        }
+    }
+
+    /**
+     * Constructor
+     * @param partitions the number of partitions into which the snapshots are to be split. The larger the snapshots,
+     *                   the larger this number should be to keep the memory used per partition low
+     * @param threads the number of partitions which are to be joined in parallel
+     */
+    public InventoryDeltaEngine(int partitions, int threads){
+        this.partitions = Math.max(1, partitions);
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Method to compare two snapshots and to write the changes (one InventoryDelta in JSON format per line) to the output file
+     * @param previousFilename the snapshot of the previous run
+     * @param currentFilename the snapshot of the current run
+     * @param outputFilename the file in which the changes are to be written
+     * @return the summary of the number of changes found
+     * @throws Exception if any of the files can not be read or written, or if a partition could not be joined
+     */
+    public DeltaSummary compare(String previousFilename, String currentFilename, String outputFilename) throws Exception {
+        File workDirectory = Files.createTempDirectory("inventory-delta").toFile();
+        ExecutorService pool = Executors.newFixedThreadPool(this.threads);
+        try {
+            /*
+             * Partitioning both the sides, the two files are partitioned in parallel
+             * */
+            HashMap<String, String> previousFilters = new HashMap<>();
+            HashMap<String, String> currentFilters = new HashMap<>();
+            Future<File[]> previousPartitions = pool.submit(() -> partition(previousFilename, workDirectory, "previous", previousFilters));
+            Future<File[]> currentPartitions = pool.submit(() -> partition(currentFilename, workDirectory, "current", currentFilters));
+            File[] previous = previousPartitions.get();
+            File[] current = currentPartitions.get();
+
+            /*
+             * Only the types collected with the same filters on both the sides are compared
+             * */
+            HashSet<String> notCompared = new HashSet<>();
+            HashSet<String> filteredTypes = new HashSet<>(previousFilters.keySet());
+            filteredTypes.addAll(currentFilters.keySet());
+            for (String type : filteredTypes) {
+                if (!Objects.equals(previousFilters.get(type), currentFilters.get(type)))
+                    notCompared.add(type);
+            }
+
+            /*
+             * Joining each pair of partitions in parallel
+             * */
+            ArrayList<Future<DeltaSummary>> joins = new ArrayList<>();
+            File[] outputs = new File[this.partitions];
+            for (int i = 0; i < this.partitions; i++) {
+                final int index = i;
+                outputs[i] = new File(workDirectory, "delta-" + i);
+                joins.add(pool.submit((Callable<DeltaSummary>) () -> join(previous[index], current[index], outputs[index], notCompared)));
+            }
+
+            DeltaSummary summary = new DeltaSummary();
+            for (Future<DeltaSummary> join : joins)
+                summary.add(join.get());
+            summary.notCompared.addAll(notCompared);
+
+            /*
+             * Concatenating the output of the partitions in order of their index, so that the output is deterministic
+             * */
+            try (OutputStream output = new FileOutputStream(outputFilename)) {
+                for (File part : outputs)
+                    Files.copy(part.toPath(), output);
+            }
+            return summary;
+        } finally {
+            pool.shutdownNow();
+            deleteDirectory(workDirectory);
+        }
+    }
+
+    /**
+     * Method to split a snapshot into partition files based on the hash of the key of each record, the filter records
+     * are kept apart
+     * @param filename the snapshot to be partitioned
+     * @param workDirectory the directory in which the partition files are to be created
+     * @param prefix the prefix to be given to the partition files
+     * @param filters the map in which the filters of every filtered type of the snapshot are put
+     * @return the partition files, indexed by the partition number
+     * @throws IOException if the snapshot can not be read or the partitions can not be written
+     */
+    private File[] partition(String filename, File workDirectory, String prefix, HashMap<String, String> filters) throws IOException {
+        File[] files = new File[this.partitions];
+        BufferedWriter[] writers = new BufferedWriter[this.partitions];
+        try {
+            for (int i = 0; i < this.partitions; i++) {
+                files[i] = new File(workDirectory, prefix + "-" + i);
+                writers[i] = newWriter(new FileOutputStream(files[i]));
+            }
+            try (BufferedReader reader = newReader(new FileInputStream(filename))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.isEmpty())
+                        continue;
+                    InventoryRecord record = this.gson.fromJson(line, InventoryRecord.class);
+                    if (record.getType().equals(InventorySnapshot.FILTER_TYPE)) {
+                        filters.put(record.getId(), record.getAttributes().get("filters"));
+                        continue;
+                    }
+                    int index = (record.getKey().hashCode() & 0x7fffffff) % this.partitions;
+                    writers[index].write(line);
+                    writers[index].newLine();
+                }
+            }
+        } finally {
+            for (BufferedWriter writer : writers) {
+                if (writer != null)
+                    writer.close();
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Method to join one partition of the previous snapshot with the same partition of the current snapshot.
+     * The previous side is loaded into a hashmap and the current side is streamed against it.
+     * @param previous the partition file of the previous snapshot
+     * @param current the partition file of the current snapshot
+     * @param output the file in which the changes of this partition are to be written
+     * @param notCompared the types of resources which are to be left out
+     * @return the summary of the changes found in this partition
+     * @throws Exception if the partitions can not be read or the output can not be written
+     */
+    private DeltaSummary join(File previous, File current, File output, HashSet<String> notCompared) throws Exception {
+        DeltaSummary summary = new DeltaSummary();
+        HashMap<String, InventoryRecord> previousRecords = new HashMap<>();
+        try (BufferedReader reader = newReader(new FileInputStream(previous))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                InventoryRecord record = this.gson.fromJson(line, InventoryRecord.class);
+                if (!notCompared.contains(record.getType()))
+                    previousRecords.put(record.getKey(), record);
+            }
+        }
+
+        try (BufferedWriter writer = newWriter(new FileOutputStream(output));
+             BufferedReader reader = newReader(new FileInputStream(current))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                InventoryRecord record = this.gson.fromJson(line, InventoryRecord.class);
+                if (notCompared.contains(record.getType()))
+                    continue;
+                InventoryRecord previousRecord = previousRecords.remove(record.getKey());
+                if (previousRecord == null) {
+                    write(writer, new InventoryDelta(InventoryDelta.ADDED, null, record));
+                    summary.added += 1;
+                } else if (!previousRecord.getAttributes().equals(record.getAttributes())) {
+                    write(writer, new InventoryDelta(InventoryDelta.CHANGED, previousRecord, record));
+                    summary.changed += 1;
+                }
+            }
+
+            /*
+             * Whatever is left on the previous side does not exist anymore
+             * */
+            for (InventoryRecord record : previousRecords.values()) {
+                write(writer, new InventoryDelta(InventoryDelta.REMOVED, record, null));
+                summary.removed += 1;
+            }
+        }
+        return summary;
+    }
+
+    /**
+     * Method to write a change to the output of a partition
+     * @param writer the writer of the partition output
+     * @param delta the change to be written
+     * @throws IOException if the change can not be written
+     */
+    private void write(BufferedWriter writer, InventoryDelta delta) throws IOException {
+        writer.write(this.gson.toJson(delta));
+        writer.newLine();
+    }
+
+    /**
+     * Helper method to create a UTF-8 reader over a stream
+     * @param stream the stream to be read
+     * @return the buffered reader
+     */
+    private static BufferedReader newReader(InputStream stream){
+        return new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Helper method to create a UTF-8 writer over a stream
+     * @param stream the stream to be written
+     * @return the buffered writer
+     */
+    private static BufferedWriter newWriter(OutputStream stream){
+        return new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Method to delete the temporary directory along with the partition files inside it
+     * @param directory the directory to be deleted
+     */
+    private static void deleteDirectory(File directory){
+        File[] files = directory.listFiles();
+        if(files != null) {
+            for (File file : files) {
+                if (!file.delete())
+                    file.deleteOnExit();
+            }
+        }
+        if(!directory.delete())
+            directory.deleteOnExit();
+    }
+}
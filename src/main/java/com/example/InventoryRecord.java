@@ -0,0 +1,97 @@
+package com.example;
+
+import java.util.TreeMap;
+
+/**
+ * Class to store one resource of a persisted inventory snapshot. A snapshot file has one such record (in JSON format)
+ * per line, and the records of two snapshots are matched with each other using the key of the record.
+ */
+class InventoryRecord {
+    private String type;
+    private String id;
+    private String region;
+    private TreeMap<String, String> attributes = new TreeMap<>();
+
+    /**
+     * Constructor
+     * @param type the type of the resource for example "ebs-volume" or "load-balancer"
+     * @param id the id of the resource in context (volume id, arn etc.)
+     * @param region the region in which the resource in context lies
+     * @throws Exception if the type or the id of the resource is not provided
+     */
+    public InventoryRecord(String type, String id, String region) throws Exception {
+        this.type = type;
+        this.id = id;
+        this.region = region;
+        if(this.type == null)
+            throw new Exception("Type of the resource is a mandatory field");
+        if(this.id == null)
+            throw new Exception("Id of the resource is a mandatory field");
+    }
+
+    /**
+     * Method to add an attribute of the resource. Only the attributes which are stable between two runs should be
+     * added (finding flags, state, size etc.) as any difference in them will be reported as a change
+     * @param name the name of the attribute
+     * @param value the value of the attribute, it is stored in its string form
+     * @return the same record object so that the calls can be chained
+     */
+    public InventoryRecord withAttribute(String name, Object value){
+        this.attributes.put(name, value == null ? "-" : value.toString());
+        return this;
+    }
+
+    /**
+     * Method to return the key by which the records of two snapshots are matched
+     * @return the key of the record in context
+     */
+    public String getKey(){
+        return this.type + "|" + this.region + "|" + this.id;
+    }
+
+    /**
+     * Method to return the type of the resource
+     * @return the type of the resource in context
+     */
+    public String getType(){
+        return this.type;
+    }
+
+    /**
+     * Method to return the id of the resource
+     * @return the id of the resource in context
+     */
+    public String getId(){
+        return this.id;
+    }
+
+    /**
+     * Method to return the region of the resource
+     * @return the region of the resource in context
+     */
+    public String getRegion(){
+        if(this.region == null)
+            return "-";
+        return this.region;
+    }
+
+    /**
+     * Method to return the attributes of the resource
+     * @return the attributes sorted by their name
+     */
+    public TreeMap<String, String> getAttributes(){
+        if(this.attributes == null)
+            return new TreeMap<>();
+        return this.attributes;
+    }
+
+    @Override
+    public String toString() {
+        return "InventoryRecord{" +
+                "type='" + type + '\'' +
+                ", id='" + id + '\'' +
+                ", region='" + region + '\'' +
+                ", attributes=" + attributes +
+                '}';
+    }
+}
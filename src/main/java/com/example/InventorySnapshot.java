@@ -0,0 +1,168 @@
+package com.example;
+
+import com.google.gson.Gson;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+
+/**
+ * Class to persist the inventory of a run as a snapshot file. The snapshot has one InventoryRecord (in JSON format)
+ * per line, so it can be written and later read back in a streaming manner without holding it in memory.
+ *
+ * The filters with which a type of resource was collected (if any) are written as records of the type FILTER_TYPE,
+ * so that the types collected with other filters are not compared with each other.
+ *
+ * The records are written to a temporary file which is moved into place by commit, so a run which fails (or which is
+ * not committed) never leaves a partial snapshot behind to be compared with by the next run.
+ */
+class InventorySnapshot implements Closeable {
+    public static final String FILTER_TYPE = "snapshot-filter"; // Type of the records holding the filters of a type of resource, the id of which is that type
+    private static final String PREFIX = "inventory-";
+    private static final String EXTENSION = ".jsonl";
+    private static final String TEMPORARY_EXTENSION = ".tmp";
+
+    private final Gson gson = new Gson();
+    private final BufferedWriter writer;
+    private final String filename;
+    private final File temporary;
+    private boolean committed = false;
+    private int count = 0;
+
+    /**
+     * Constructor, it creates a new snapshot (named after the current time stamp) in the directory provided, as a
+     * temporary file until it is committed
+     * @param directory the directory in which the snapshots are to be stored, it is created if it does not exist
+     * @throws IOException if the snapshot file can not be created
+     */
+    public InventorySnapshot(String directory) throws IOException {
+        File dir = new File(directory);
+        if(!dir.exists() && !dir.mkdirs())
+            throw new IOException("Unable to create the inventory directory " + directory);
+        String timestamp = new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+        this.filename = new File(dir, PREFIX + timestamp + EXTENSION).getPath();
+        this.temporary = new File(this.filename + TEMPORARY_EXTENSION);
+        this.writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(this.temporary), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Method to append a record to the snapshot
+     * @param record the record of the resource which is to be persisted
+     * @throws IOException if the record can not be written
+     */
+    public void add(InventoryRecord record) throws IOException {
+        this.writer.write(this.gson.toJson(record));
+        this.writer.newLine();
+        this.count += 1;
+    }
+
+    /**
+     * Method to record the filters with which a type of resource was collected, a type without any is assumed to be
+     * collected completely
+     * @param type the type of the records, like "ec2-instance"
+     * @param filters the description of the filters
+     * @throws Exception if the record can not be written
+     */
+    public void addFilter(String type, String filters) throws Exception {
+        this.writer.write(this.gson.toJson(new InventoryRecord(FILTER_TYPE, type, null).withAttribute("filters", filters)));
+        this.writer.newLine();
+    }
+
+    /**
+     * Method to return the name (along with the path) of the snapshot file
+     * @return the filename of the snapshot in context
+     */
+    public String getFilename(){
+        return this.filename;
+    }
+
+    /**
+     * Method to return the number of records written to the snapshot
+     * @return the number of records in the snapshot in context
+     */
+    public int getCount(){
+        return this.count;
+    }
+
+    /**
+     * Method to complete the snapshot, it is moved from its temporary file to getFilename and so becomes the latest
+     * snapshot. Nothing can be added to it afterwards
+     * @throws IOException if the snapshot can not be written or moved
+     */
+    public void commit() throws IOException {
+        this.writer.close();
+        File file = new File(this.filename);
+        try {
+            Files.move(this.temporary.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(this.temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        this.committed = true;
+    }
+
+    /**
+     * Method to close the snapshot, its temporary file is deleted if it was not committed
+     * @throws IOException if the snapshot can not be closed
+     */
+    @Override
+    public void close() throws IOException {
+        this.writer.close();
+        if(!this.committed && this.temporary.exists() && !this.temporary.delete())
+            throw new IOException("Unable to delete the uncommitted snapshot " + this.temporary);
+    }
+
+    /**
+     * Method to find the latest snapshot present in a directory. Snapshot files are named after the time stamp on which
+     * they were created, so the latest one is the largest name.
+     * @param directory the directory in which the snapshots are stored
+     * @return the filename (along with the path) of the latest snapshot, null if there is none
+     */
+    public static String findLatest(String directory){
+        ArrayList<File> snapshots = list(directory);
+        return snapshots.isEmpty() ? null : snapshots.get(snapshots.size() - 1).getPath();
+    }
+
+    /**
+     * Method to delete all but the latest snapshots present in a directory
+     * @param directory the directory in which the snapshots are stored
+     * @param keep the number of latest snapshots to be kept
+     * @return the number of snapshots deleted
+     */
+    public static int prune(String directory, int keep){
+        ArrayList<File> snapshots = list(directory);
+        int deleted = 0;
+        for(int i = 0; i < snapshots.size() - keep; i++){
+            if(snapshots.get(i).delete())
+                deleted += 1;
+        }
+        return deleted;
+    }
+
+    /**
+     * Method to list the (committed) snapshots present in a directory, oldest first. Snapshot files are named after the
+     * time stamp on which they were created, so the order of their names is the order of their creation
+     */
+    private static ArrayList<File> list(String directory){
+        ArrayList<File> snapshots = new ArrayList<>();
+        File[] files = new File(directory).listFiles();
+        if(files == null)
+            return snapshots;
+        for(File file : files){
+            String name = file.getName();
+            if(name.startsWith(PREFIX) && name.endsWith(EXTENSION))
+                snapshots.add(file);
+        }
+        snapshots.sort((a, b) -> a.getName().compareTo(b.getName()));
+        return snapshots;
+    }
+}
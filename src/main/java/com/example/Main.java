@@ -8,34 +8,26 @@ import co.elastic.clients.elasticsearch.indices.CreateIndexResponse;
 import co.elastic.clients.json.jackson.JacksonJsonpMapper;
 import co.elastic.clients.transport.ElasticsearchTransport;
 import co.elastic.clients.transport.rest_client.RestClientTransport;
-import com.amazonaws.auth.AWSStaticCredentialsProvider;
-import com.amazonaws.auth.BasicAWSCredentials;
 import com.amazonaws.services.backup.AWSBackup;
-import com.amazonaws.services.backup.AWSBackupClient;
 import com.amazonaws.services.backup.model.*;
 import com.amazonaws.services.ec2.AmazonEC2;
-import com.amazonaws.services.ec2.AmazonEC2Client;
 import com.amazonaws.services.ec2.model.*;
 import com.amazonaws.services.ec2.model.DescribeInstancesResult;
 import com.amazonaws.services.ec2.model.Instance;
 import com.amazonaws.services.elasticloadbalancingv2.AmazonElasticLoadBalancing;
-import com.amazonaws.services.elasticloadbalancingv2.AmazonElasticLoadBalancingClient;
 import com.amazonaws.services.elasticloadbalancingv2.model.*;
 import com.amazonaws.services.elasticloadbalancingv2.model.TargetGroup;
-import com.amazonaws.services.pricing.AWSPricing;
-import com.amazonaws.services.pricing.AWSPricingClient;
-import com.amazonaws.services.pricing.model.Filter;
-import com.amazonaws.services.pricing.model.GetProductsRequest;
-import com.amazonaws.services.pricing.model.GetProductsResult;
+import com.amazonaws.services.resourcegroupstaggingapi.AWSResourceGroupsTaggingAPI;
+import com.amazonaws.services.resourcegroupstaggingapi.model.GetResourcesRequest;
+import com.amazonaws.services.resourcegroupstaggingapi.model.GetResourcesResult;
+import com.amazonaws.services.resourcegroupstaggingapi.model.ResourceTagMapping;
 import com.amazonaws.services.s3.AmazonS3;
-import com.amazonaws.services.s3.AmazonS3Client;
 import com.amazonaws.services.s3.model.Bucket;
 import com.amazonaws.services.s3.model.GetBucketLocationRequest;
 import com.amazonaws.services.s3.model.ObjectListing;
 import com.amazonaws.services.s3.model.S3ObjectSummary;
 import org.apache.http.HttpHost;
 import org.elasticsearch.client.RestClient;
-import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
 import software.amazon.awssdk.auth.credentials.AwsCredentials;
 import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
 import software.amazon.awssdk.regions.Region;
@@ -48,7 +40,11 @@ import software.amazon.awssdk.services.cloudwatch.model.*;
 import java.io.*;
 import java.time.Instant;
 import java.util.*;
-import org.json.JSONObject;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * AWSCostOptimizerAndReportGenerator is the primary class which takes care of all the actions.
@@ -100,12 +96,59 @@ class AWSCostOptimizerAndReportGenerator implements AwsCredentialsProvider {
      */
     private static final int GRANULARITY_IN_HOURS = 24;
     private static final String REPORT_FILENAME_WITH_PATH = "/Users/kartik-mdcharw/kartik/codes/testFile.xlsx";
+    private static final boolean GENERATE_DELTA_REPORT = true; // If true then the inventory of this run is persisted as a snapshot and compared with the snapshot of the previous run
+    private static final String INVENTORY_DIRECTORY = "inventory"; // The directory in which the inventory snapshots are persisted, one file per run
+    private static final String DELTA_FILENAME_WITH_PATH = "inventory/delta.jsonl"; // The file in which the changes since the previous snapshot are written (one change per line)
+    private static final int DELTA_PARTITIONS = 64; // The number of partitions in which the snapshots are split while comparing them, increase it for very large inventories
+    private static final int INVENTORY_SNAPSHOTS_TO_KEEP = 10; // The number of latest snapshots kept in INVENTORY_DIRECTORY, the older ones are deleted after every run (at least 2 are kept)
+    private static final int DELTA_MAX_ROWS_IN_REPORT = 60000; // A sheet can not have more than 65536 rows, so only these many changes are added to the report, the delta file has all of them
+    private static final String JOURNAL_DIRECTORY = "journal"; // The directory in which every collected page is checkpointed, so that a failed run can be resumed (run with --resume) from where it stopped
+    private static final int METRIC_BATCH_RETRY_ATTEMPTS = 3; // The number of times a failed cloudwatch metric batch is tried (including the first try) before giving up on it
+    private static final long METRIC_BATCH_RETRY_BACKOFF_MILLIS = 5000; // The wait before retrying the failed metric batches, it doubles after every round of retries
+    private static final String CACHE_DIRECTORY = "cache"; // The directory in which the results of the API calls which are reused across runs are cached
+    private static final int TARGET_HEALTH_THREADS = 8; // The number of target groups of which the health is fetched in parallel
+    private static final long TARGET_HEALTH_CACHE_TTL_MINUTES = 10; // The health of a target group fetched within these many minutes is reused instead of being fetched again
+    private static final int BUCKET_LOCATION_THREADS = 16; // The number of buckets of which the location is resolved in parallel
+    private static final boolean LIST_S3_OBJECTS = false; // If true then the objects of every bucket are listed for the "S3" sheet, the buckets are split into prefixes which are listed in parallel
+    private static final int S3_LISTING_THREADS = 32; // The number of prefixes/key ranges listed in parallel, across all the buckets
+    private static final int S3_TOP_COLD_OBJECTS = 500; // The number of largest objects older than S3_OBJECTS_THRESHOLD_DAYS reported per bucket, selected while listing. 0 to report all of them
+    private static final boolean S3_KEEP_ALL_OBJECTS = false; // If false (and S3_TOP_COLD_OBJECTS is not 0) then only the largest old objects of a bucket are kept in memory, not all of its objects
+    private static final int S3_PREFIX_DEPTH = 3; // The number of levels of "/" delimited prefixes of a bucket rolled up for the "Cold prefixes" sheet
+    private static final int S3_PREFIX_FAN_OUT = 100; // The number of sub prefixes kept per prefix, the rest are rolled up together
+    private static final int S3_PREFIX_MAX_NODES = 10000; // The number of prefixes kept per bucket
+    private static final int S3_COLD_PREFIX_ROWS = 1000; // The number of prefixes (across all the buckets) reported in the "Cold prefixes" sheet
+    private static final long S3_SAMPLING_MIN_OBJECTS = 10000000; // The buckets having at least these many objects (as per cloudwatch) are sampled instead of being listed completely, 0 to never sample
+    private static final double S3_SAMPLING_TARGET_RELATIVE_ERROR = 0.05; // The sampling of a bucket stops once the 95% confidence interval of its old bytes is within this fraction of the estimate
+    private static final int S3_SAMPLING_MAX_REQUESTS = 2000; // The number of list calls allowed per sampled bucket
+    private static final int S3_SAMPLING_MAX_SECONDS = 120; // The time allowed per sampled bucket
+    private static final int S3_SAMPLING_THREADS = 4; // The number of buckets sampled in parallel
+    private static final String S3_INVENTORY_DIRECTORY = ""; // Local copy of the S3 Inventory reports (CSV), the buckets having a report in it are read from it instead of being listed. Empty to not use any report
+    private static final int S3_INVENTORY_READER_THREADS = 8; // The number of data files of an inventory report decoded in parallel
+    private static final long INSTANCE_TYPE_CATALOG_TTL_HOURS = 24 * 7; // The instance types of a region fetched within these many hours are reused, an older catalog is used for the run while the new one is fetched in the background
+    private static final String EC2_OFFER_FILE = ""; // Local copy of the bulk price list of EC2 (index.json or index.csv of https://pricing.us-east-1.amazonaws.com/offers/v1.0/aws/AmazonEC2/current/, may be gzipped), used by PRICE_COMPARISON and SUGGESTION_MODE. Empty to use the price index built earlier
+    private static final String EC2_PRICE_INDEX_FILE = CACHE_DIRECTORY + "/ec2-prices.idx"; // The index of the prices built out of EC2_OFFER_FILE, it is built again whenever the offer file is newer than it
+    private static final int RESERVED_OFFERING_THREADS = 8; // The number of distinct (availability zone, tenancy, instance type, platform) of which the reserved instance offerings are described in parallel, used by PRICE_COMPARISON
+    private static final long RESERVED_OFFERING_CACHE_TTL_HOURS = 24; // The reserved instance price of a (availability zone, tenancy, instance type, platform) fetched within these many hours is reused instead of being fetched again
+    private static final int SPOT_PRICE_LOOKBACK_DAYS = 7; // The number of days of spot price history described (once per availability zone in use) for the spot price, savings and interruption risk of the instances, used by PRICE_COMPARISON
+    private static final int SPOT_PRICE_THREADS = 8; // The number of availability zones of which the spot price history is described in parallel
+    private static final int RESERVED_TIMELINE_LOOKBACK_DAYS = 30; // The number of past days over which the coverage and utilization of the reserved instance pools are found, hour by hour
+    private static final int RESERVED_TIMELINE_FORWARD_DAYS = 90; // The number of coming days over which the coverage and utilization of the reserved instance pools are projected, assuming the running instances keep running
+    private static final int RESERVED_TIMELINE_THREADS = 4; // The number of reserved instance pools of which the timeline is built in parallel
+    private static final boolean SUGGEST_RESERVATION_PURCHASES = true; // If true then the number of reserved instances to buy (1 year and 3 year terms) is found for every (region, family) from the on demand usage of the last RESERVED_TIMELINE_LOOKBACK_DAYS, it needs the price index (variable EC2_OFFER_FILE)
+    private static final String RESERVATION_OFFERING_CLASS = "standard"; // The class of the reserved instances suggested for purchase, "standard" or "convertible"
+    private static final String RESERVATION_PURCHASE_OPTION = "No Upfront"; // The payment option of the reserved instances suggested for purchase, "No Upfront", "Partial Upfront" or "All Upfront"
+    private static final int COMMITMENT_OPTIMIZER_THREADS = 4; // The number of threads across which the pools are split while finding the reserved instances to buy
+    private static final boolean COLLECT_TAGS = true; // If true then the tags of the resources are fetched in bulk (GetResources of the Resource Groups Tagging API, 100 resources per call) once per region and the findings are summed up per tag value in the "Findings By Tag" sheet
+    private static final String FINDINGS_TAG_KEYS = "Team,Owner,CostCenter"; // Comma separated tag keys by the values of which the findings are summed up, one table per key
+    private static final boolean PUSH_DOWN_FILTERS = true; // If true then the thresholds of the report are sent as filters of the describe/list calls (running instances, backups older than BACKUPS_THRESHOLD_DAYS etc.). The filters are recorded in the snapshot, and the delta report only compares the resources collected with the same filters
+    private static final boolean DISCOVER_REGIONS = true; // If true then the regions enabled for the account are found with DescribeRegions (the list in the constructor is the fallback) and the empty (region, service) pairs are skipped
+    private static final int REGION_PROBE_THREADS = 16; // The number of (region, service) pairs probed in parallel while looking for the empty ones
+    private static final int MAX_CONNECTIONS_PER_CLIENT = 50; // The size of the connection pool of an AWS client, the cloudwatch clients of all the regions share one pool of this size
 
     private String KEY_ID; // AWS Credentials Key ID
     private String SECRET_KEY; // AWS Credentials Secret Key
-    private AWSStaticCredentialsProvider CREDENTIALS;
     private Region REGION = Region.US_EAST_1; // Which AWS region we are talking about, this is the default value although the code supports multiple regions by default
-    private AwsBasicCredentials CREDS;
+    private ClientRegistry clients; // Every AWS client is created once per (service, region) by this and is reused for the whole run
 
     private ArrayList<Ec2InstanceData> ec2InstancesData = new ArrayList<>(); // ArrayList storing data of all EC2 Instances
     private ArrayList<Ec2InstanceData> ec2SpotInstancesData = new ArrayList<>(); // ArrayList storing data of all EC2 Spot Instances
@@ -125,13 +168,33 @@ class AWSCostOptimizerAndReportGenerator implements AwsCredentialsProvider {
 
     private ArrayList<EbsVolumeData> ebsVolumesData = new ArrayList<>(); // Arraylist Storing data of the EBS volumes
 
-    private HashMap<String, Long> ec2InstanceTypeToMemorySizeInMB = new HashMap<String, Long>(); // Hashmap storing the mapping between the instance type and the size of the memory associated with it
-    private HashMap<String, Integer> ec2InstanceTypeToVcpuCount = new HashMap<String, Integer>(); // Hashmap storing the mapping between the instance type and the number of vcpus associated with it
-    private HashMap<String, Double> ec2InstanceTypeToPrice = new HashMap<String, Double>(); // hashmap storing the mapping between the instance type and the on demand price of it for a specific region
+    private InstanceTypeCatalog instanceTypeCatalog; // The vcpus and memory of the instance types of every region, loaded (or fetched) on first use
+    private ReservedOfferingPriceCache reservedOfferingPrices; // The reserved instance prices of the on demand instances, fetched once per distinct configuration after the instances are collected
+    private SpotPriceCache spotPrices; // The spot price history of the configurations of the on demand and spot instances, fetched once per availability zone after the instances are collected
+    private ReservedInstanceLedger reservedInstanceLedger = new ReservedInstanceLedger(); // The capacity left of the purchased reserved instances, claimed by the instances as they are collected
+    private ArrayList<Ec2InstanceData> claimedInstances = new ArrayList<>(); // The running, non spot, instances, of which the claims are reconciled once they are all collected
+    private ArrayList<ReservedCoverageTimeline.PoolTimeline> reservedPoolTimelines = new ArrayList<>(); // The hourly coverage and utilization of every pool of reserved instances
+    private ResourceTagIndex resourceTags = new ResourceTagIndex(); // The tags of the resources of every region, by ARN and by id
+    private ArrayList<CommitmentOptimizer.Recommendation> reservationPurchases = new ArrayList<>(); // The reserved instances to buy for every pool and term, empty if SUGGEST_RESERVATION_PURCHASES is false or no price index is available
+    private InstancePriceIndex priceIndex = null; // The on demand and reserved prices of every region, null if PRICE_COMPARISON, SUGGESTION_MODE and SUGGEST_RESERVATION_PURCHASES are false or no price index is available
+
+    private boolean collectionComplete = true; // False if a collector failed, the snapshot of the run is then not kept as the resources it missed would show as removed
+    private InventoryDeltaEngine.DeltaSummary deltaSummary = null; // Summary of the changes since the previous snapshot, null if there was nothing to compare with
+
+    private boolean RESUME = false; // If true then the journal of the previous (failed) run is replayed and only what is missing is fetched
+    private CollectionJournal journal; // Journal in which the collectors checkpoint every page they complete
+    private RetryQueue retryQueue = new RetryQueue(); // Queue of the metric batches which failed and are to be retried at the end of the run
+    private RateController rateController = new RateController(); // Every AWS API call is made through this, so that the throttling limits of the APIs are respected
+    private FilterPushdown filters = new FilterPushdown(PUSH_DOWN_FILTERS, BACKUPS_THRESHOLD_DAYS); // Builds the describe/list requests with the filters of the report
+    private PersistentTtlCache<String> bucketLocationCache = new PersistentTtlCache<>(CACHE_DIRECTORY + "/bucket-locations.ser", Long.MAX_VALUE); // The region of every bucket by its name, the location of a bucket never changes
+    private PersistentTtlCache<int[]> targetHealthCache = new PersistentTtlCache<>(CACHE_DIRECTORY + "/target-health.ser", TARGET_HEALTH_CACHE_TTL_MINUTES * 60 * 1000); // {total targets, healthy targets} by the arn of the target group
 
-    /*
-     * Availability Zone, Tenancy, Instance Type, Product Description*/
-    private HashMap<String, ArrayList<Integer>> reservedInstanceMatcher = new HashMap<>();
+    /**
+     * Interface for the methods which fetch a batch of metric queries from cloudwatch, for example ec2GetMetrics
+     */
+    private interface MetricBatchFetcher {
+        void fetch(ArrayList<MetricDataQuery> queries) throws Exception;
+    }
     /**
      * Default Constructor
      * @param debugStatus If this is true then the code is run in DEBUG mode which will lead to printing of some extra information
@@ -143,8 +206,10 @@ class AWSCostOptimizerAndReportGenerator implements AwsCredentialsProvider {
         readProperties();
 
         AWSCostOptimizerAndReportGenerator.DEBUG = debugStatus;
-        CREDENTIALS = new AWSStaticCredentialsProvider(new BasicAWSCredentials(KEY_ID, SECRET_KEY));
-        CREDS = AwsBasicCredentials.create(KEY_ID, SECRET_KEY);
+        clients = new ClientRegistry(KEY_ID, SECRET_KEY, MAX_CONNECTIONS_PER_CLIENT);
+        reservedOfferingPrices = new ReservedOfferingPriceCache(clients, rateController, CACHE_DIRECTORY + "/reserved-offerings.ser", RESERVED_OFFERING_CACHE_TTL_HOURS * 3600 * 1000, RESERVED_OFFERING_THREADS);
+        spotPrices = new SpotPriceCache(clients, rateController, SPOT_PRICE_LOOKBACK_DAYS, SPOT_PRICE_THREADS);
+        instanceTypeCatalog = new InstanceTypeCatalog(clients, rateController, CACHE_DIRECTORY, INSTANCE_TYPE_CATALOG_TTL_HOURS * 3600 * 1000);
 
         ArrayList<Region> regions = new ArrayList<>();
         regions.add(Region.US_EAST_1);
@@ -157,7 +222,6 @@ class AWSCostOptimizerAndReportGenerator implements AwsCredentialsProvider {
         regions.add(Region.AP_NORTHEAST_1);
         regions.add(Region.AP_NORTHEAST_2);
         regions.add(Region.AP_SOUTHEAST_2);
-        regions.add(Region.AP_SOUTHEAST_2);
 
         regions.add(Region.CA_CENTRAL_1);
 
@@ -172,7 +236,10 @@ class AWSCostOptimizerAndReportGenerator implements AwsCredentialsProvider {
 //        regions.clear();
 //        regions.add(Region.US_EAST_1);
 
-        AllRegions = regions;
+        /*
+         * A region added twice would be collected twice
+         * */
+        AllRegions = new ArrayList<>(new LinkedHashSet<>(regions));
     }
 
     /**
@@ -202,6 +269,93 @@ class AWSCostOptimizerAndReportGenerator implements AwsCredentialsProvider {
         REGION = region;
     }
 
+    /**
+     * Function to set the resume mode. In resume mode the journal left by the previous run is replayed, so whatever
+     * was already collected (page by page) is restored and only the missing pages are fetched from AWS.
+     *
+     * @param resume true if the previous run is to be resumed
+     */
+    public void setResumeMode(boolean resume) {
+        RESUME = resume;
+    }
+
+    /**
+     * Method to fetch a batch of metric queries from cloudwatch. The queries list is cleared so that the caller can
+     * continue adding queries to it. If the fetch fails then the batch is added to the retry queue instead of being
+     * dropped.
+     *
+     * @param description the description of the batch, used while logging
+     * @param queries the queries to be fetched
+     * @param fetcher the method which fetches the queries and stores the results in the objects
+     * @return true if the batch was fetched, false if it has been queued for a retry
+     */
+    private boolean flushMetricBatch(String description, ArrayList<MetricDataQuery> queries, MetricBatchFetcher fetcher) {
+        if(queries.size() == 0)
+            return true;
+        ArrayList<MetricDataQuery> batch = new ArrayList<>(queries);
+        queries.clear();
+        try {
+            fetcher.fetch(batch);
+            return true;
+        } catch (Exception e) {
+            System.out.println("Metric batch failed, queued for retry: " + description + " (" + e.getMessage() + ")");
+            retryQueue.add(description, () -> fetcher.fetch(batch));
+            return false;
+        }
+    }
+
+    /**
+     * Method to fetch a page of metrics from cloudwatch under the limits of the rate controller
+     *
+     * @param region  the region of the cloudwatch client
+     * @param cw      the cloudwatch client to be used
+     * @param request the request to be made
+     * @return the response of cloudwatch
+     */
+    private GetMetricDataResponse getMetricData(Region region, CloudWatchClient cw, GetMetricDataRequest request) {
+        return rateController.call(region.id(), "GetMetricData", () -> cw.getMetricData(request));
+    }
+
+    /**
+     * Method to open the journal in which the collectors checkpoint their pages, if it is not already open
+     *
+     * @return false if the journal could not be opened
+     */
+    private boolean openJournal() {
+        if(journal != null)
+            return true;
+        try {
+            journal = new CollectionJournal(JOURNAL_DIRECTORY, RESUME);
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Method to checkpoint a page collected by a collector in the journal. Checkpointing is best effort, if it fails
+     * the run continues and the page is just fetched again on resume.
+     *
+     * @param region the region of the collector, "global" for services like S3
+     * @param service the name of the collector
+     * @param page the number of the page
+     * @param items the objects built from the page
+     * @param nextToken the token of the next page, null or empty if this was the last page
+     * @param metricsComplete false if some metric batch of the objects of this page failed
+     */
+    private <T extends Serializable> void checkpoint(String region, String service, int page, ArrayList<T> items, String nextToken, boolean metricsComplete) {
+        if(nextToken != null && nextToken.equals(""))
+            nextToken = null;
+        try {
+            journal.savePage(region, service, page, items, nextToken, metricsComplete);
+            if(nextToken == null)
+                journal.markComplete(region, service);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
     /**
      * Public Wrapper Function to hide the actual functionality (Abstraction). This method calls another
      * private method to fetch details of the S3 Buckets associated to our AWS account
@@ -210,14 +364,16 @@ class AWSCostOptimizerAndReportGenerator implements AwsCredentialsProvider {
      * @param hoursOverWhichStatsRequired the number of hours over which you want to take average, sum, minimum and maximum
      */
     public void getS3Info(int daysOfData, int hoursOverWhichStatsRequired) {
+        if(!openJournal())
+            return;
         ArrayList<Region> regions = AllRegions;
         HashMap<Region, CloudWatchClient> mapperRegionCwClient = new HashMap<>();
 
         for(Region region : regions){
-            CloudWatchClient cloudWatchClient = CloudWatchClient.builder().credentialsProvider(this).region(region).build();
+            CloudWatchClient cloudWatchClient = clients.cloudWatch(region);
             mapperRegionCwClient.put(region, cloudWatchClient);
         }
-        AmazonS3 s3c = AmazonS3Client.builder().withCredentials(CREDENTIALS).withRegion(REGION.toString()).enableForceGlobalBucketAccess().build();
+        AmazonS3 s3c = clients.s3();
         S3BasicInfo(daysOfData, hoursOverWhichStatsRequired, s3c, mapperRegionCwClient);
     }
 
@@ -230,7 +386,7 @@ class AWSCostOptimizerAndReportGenerator implements AwsCredentialsProvider {
      * @param hoursOverWhichStatsRequired the number of hours over which you want to take average, sum, minimum and maximum
      */
     public void getEc2InstancesInfo(int daysOfData, int hoursOverWhichStatsRequired) {
-        AmazonEC2 client = AmazonEC2Client.builder().withCredentials(CREDENTIALS).withRegion(REGION.toString()).build();
+        AmazonEC2 client = clients.ec2(REGION);
 //        ec2BasicInfo(REGION, daysOfData, hoursOverWhichStatsRequired, client);
     }
 
@@ -242,7 +398,7 @@ class AWSCostOptimizerAndReportGenerator implements AwsCredentialsProvider {
      * @param hoursOverWhichStatsRequired the number of hours over which you want to take average, sum, minimum and maximum
      */
     public void getLoadBalancerInfo(int daysOfData, int hoursOverWhichStatsRequired) {
-        AmazonElasticLoadBalancing elbc = AmazonElasticLoadBalancingClient.builder().withCredentials(CREDENTIALS).withRegion(REGION.toString()).build();
+        AmazonElasticLoadBalancing elbc = clients.elb(REGION);
 //        elbBasicInfo(REGION, daysOfData, hoursOverWhichStatsRequired, elbc);
     }
 
@@ -251,8 +407,9 @@ class AWSCostOptimizerAndReportGenerator implements AwsCredentialsProvider {
      * private method to fetch details of the Elastic IP Addresses allocated to our AWS account (for the region specified)
      */
     public void getElasticIpInfo() {
-        AmazonEC2 client = AmazonEC2Client.builder().withCredentials(CREDENTIALS).withRegion(REGION.toString()).build();
-        eipBasicInfo(REGION, client);
+        AmazonEC2 client = clients.ec2(REGION);
+        if(openJournal())
+            eipBasicInfo(REGION, client);
     }
 
     /**
@@ -260,8 +417,9 @@ class AWSCostOptimizerAndReportGenerator implements AwsCredentialsProvider {
      * private method to fetch details of the backups created by our AWS account
      */
     public void getBackupsInfo() {
-        AWSBackup client = AWSBackupClient.builder().withCredentials(CREDENTIALS).withRegion(REGION.toString()).build();
-        backupsBasicInfo(REGION, client);
+        AWSBackup client = clients.backup(REGION);
+        if(openJournal())
+            backupsBasicInfo(REGION, client);
     }
 
     /**
@@ -269,41 +427,277 @@ class AWSCostOptimizerAndReportGenerator implements AwsCredentialsProvider {
      * generate a report based on that data
      */
     public void getDataAndGenerateReport() {
+        if(!openJournal())
+            return;
+
+        /*
+         * Services having at least one resource, per region. Null if the regions are not probed, in which case every
+         * service of every region is collected
+         * */
+        HashMap<Region, HashSet<String>> servicesToCollect = null;
+        if(DISCOVER_REGIONS) {
+            RegionDiscovery discovery = new RegionDiscovery(clients, rateController, filters, REGION_PROBE_THREADS);
+            AllRegions = discovery.discoverRegions(AllRegions);
+            servicesToCollect = discovery.probe(AllRegions);
+            if(DEBUG)
+                System.out.println("Services to be collected per region: " + servicesToCollect);
+        }
         ArrayList<Region> regions = AllRegions;
         HashMap<Region, CloudWatchClient> mapperRegionCwClient = new HashMap<>();
 
         for(Region region : regions){
-            CloudWatchClient cloudWatchClient = CloudWatchClient.builder().credentialsProvider(this).region(region).build();
+            CloudWatchClient cloudWatchClient = clients.cloudWatch(region);
             mapperRegionCwClient.put(region, cloudWatchClient);
         }
 
 
-        AmazonS3 s3c = AmazonS3Client.builder().withCredentials(CREDENTIALS).withRegion(REGION.toString()).enableForceGlobalBucketAccess().build();
-        S3BasicInfo(DAYS_OF_DATA,GRANULARITY_IN_HOURS,s3c,mapperRegionCwClient);  // exceptions handled 2
+        AmazonS3 s3c = clients.s3();
+        try {
+            S3BasicInfo(DAYS_OF_DATA,GRANULARITY_IN_HOURS,s3c,mapperRegionCwClient);  // exceptions handled 2
+        } catch (Exception e) {
+            /*
+             * Whatever could not be collected can be fetched later by resuming the run
+             * */
+            e.printStackTrace();
+            collectionComplete = false;
+        }
+
+        /*
+         * The buckets are listed globally, so a region hosting buckets may still be one of the skipped regions
+         * */
+        HashSet<String> bucketRegions = new HashSet<>();
+        for (S3BucketData bucket : s3bucketsData)
+            bucketRegions.add(bucket.getLocation());
 
         for(Region region : regions) {
+            HashSet<String> services = servicesToCollect == null ? null : servicesToCollect.get(region);
+            if(COLLECT_TAGS && (services == null || !services.isEmpty() || bucketRegions.contains(region.id()))) {
+                try {
+                    tagsBasicInfo(region, clients.tagging(region));
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+            if(services != null && services.isEmpty()) {
+                if(DEBUG)
+                    System.out.println("SKIPPING REGION "+region.toString()+", nothing to collect");
+                continue;
+            }
             if(DEBUG)
                 System.out.println("FETCHING DATA FOR REGION "+region.toString()+": ");
             this.setRegion(region);
 
-            AmazonEC2 ec2Client = AmazonEC2Client.builder().withCredentials(CREDENTIALS).withRegion(REGION.toString()).build();
-            AmazonElasticLoadBalancing elbc = AmazonElasticLoadBalancingClient.builder().withCredentials(CREDENTIALS).withRegion(REGION.toString()).build();
-            AWSBackup backupClient = AWSBackupClient.builder().withCredentials(CREDENTIALS).withRegion(REGION.toString()).build();
+            AmazonEC2 ec2Client = clients.ec2(REGION);
+            AmazonElasticLoadBalancing elbc = clients.elb(REGION);
+            AWSBackup backupClient = clients.backup(REGION);
+
+
+            /*
+             * A failure in one collector does not stop the others, the pages it could not collect are not
+             * checkpointed and so are fetched again when the run is resumed
+             * */
+            if(services == null || services.contains(RegionDiscovery.EC2)) {
+                try {
+                    ec2BasicInfo(REGION, DAYS_OF_DATA, GRANULARITY_IN_HOURS, ec2Client, mapperRegionCwClient.get(REGION)); // exceptions handled 5
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    collectionComplete = false;
+                }
+            }
+            if(services == null || services.contains(RegionDiscovery.LOAD_BALANCERS)) {
+                try {
+                    elbBasicInfo(REGION, DAYS_OF_DATA, GRANULARITY_IN_HOURS, elbc, mapperRegionCwClient.get(REGION)); // exceptions handled 4
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    collectionComplete = false;
+                }
+            }
+            if(services == null || services.contains(RegionDiscovery.EBS_VOLUMES)) {
+                try {
+                    ebsBasicInfo(REGION, DAYS_OF_DATA, GRANULARITY_IN_HOURS, ec2Client, mapperRegionCwClient.get(REGION)); // exceptions handles 2
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    collectionComplete = false;
+                }
+            }
+            if(services == null || services.contains(RegionDiscovery.ELASTIC_IPS)) {
+                try {
+                    eipBasicInfo(REGION, ec2Client); // exceptions handled
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    collectionComplete = false;
+                }
+            }
+            if(services == null || services.contains(RegionDiscovery.BACKUPS)) {
+                try {
+                    backupsBasicInfo(REGION, backupClient); // exceptions handled
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    collectionComplete = false;
+                }
+            }
+        }
 
+        matchReservedInstances();
+
+        if(PRICE_COMPARISON) {
+            try {
+                reservedOfferingPrices.resolveAll();
+                spotPrices.resolveAll();
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+            for (ArrayList<Ec2InstanceData> instances : Arrays.asList(ec2OnDemandInstancesData, ec2SpotInstancesData)) {
+                for (Ec2InstanceData instance : instances) {
+                    SpotPriceCache.Series series = spotPrices.get(instance);
+                    if (series != null)
+                        instance.setSpotPrice(series);
+                }
+            }
+        }
 
-            ec2BasicInfo(REGION, DAYS_OF_DATA, GRANULARITY_IN_HOURS, ec2Client, mapperRegionCwClient.get(REGION)); // exceptions handled 5
-            elbBasicInfo(REGION, DAYS_OF_DATA, GRANULARITY_IN_HOURS, elbc, mapperRegionCwClient.get(REGION)); // exceptions handled 4
-            ebsBasicInfo(REGION, DAYS_OF_DATA, GRANULARITY_IN_HOURS, ec2Client, mapperRegionCwClient.get(REGION)); // exceptions handles 2
-            eipBasicInfo(REGION, ec2Client); // exceptions handled
-            backupsBasicInfo(REGION, backupClient); // exceptions handled
+        if(retryQueue.size() > 0) {
+            if(DEBUG)
+                System.out.println("Retrying " + retryQueue.size() + " failed metric batches");
+            int failed = retryQueue.drain(METRIC_BATCH_RETRY_ATTEMPTS, METRIC_BATCH_RETRY_BACKOFF_MILLIS);
+            if(failed > 0)
+                System.out.println(failed + " metric batches could not be fetched, run again with --resume to fetch them");
         }
 
-        if(SUGGESTION_MODE)
-            getAllInstanceTypesInfo(Region.US_EAST_1,true);
+        if(DEBUG)
+            System.out.print("API calls made per region:\n" + rateController.getSummary());
+
+        if(PRICE_COMPARISON || SUGGESTION_MODE || SUGGEST_RESERVATION_PURCHASES)
+            loadPriceIndex(); // exceptions handled
+
+        if(SUGGEST_RESERVATION_PURCHASES && priceIndex != null) {
+            long start = System.currentTimeMillis();
+            reservationPurchases = new CommitmentOptimizer(priceIndex, RESERVATION_OFFERING_CLASS, RESERVATION_PURCHASE_OPTION, COMMITMENT_OPTIMIZER_THREADS)
+                    .optimize(reservedPoolTimelines);
+            if(DEBUG)
+                System.out.println("Found the reserved instances to buy for " + reservedPoolTimelines.size() + " pools in " + (System.currentTimeMillis() - start) + " ms");
+        }
 
-        if(PRICE_COMPARISON)
-            getOneTimeEc2Info(Region.US_EAST_1, false);
+        if(GENERATE_DELTA_REPORT)
+            persistInventoryAndComputeDelta(); // exceptions handled
         makeExcelReportFile(REPORT_FILENAME_WITH_PATH); // exceptions handled
+
+        try {
+            instanceTypeCatalog.shutdown(); // The stale catalogs are being fetched in the background
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Method to persist the inventory collected in this run as a snapshot and to compare it with the snapshot of the
+     * previous run (if there is one). The changes are written to DELTA_FILENAME_WITH_PATH and are also added to the
+     * report as a separate sheet. The snapshot is only kept if every collector completed, and only the latest
+     * INVENTORY_SNAPSHOTS_TO_KEEP snapshots are kept.
+     *
+     * Only the attributes which are stable between two runs (state, size, finding flags etc.) are persisted so that
+     * the changes reported are actual changes and not the noise coming from the metric values.
+     */
+    private void persistInventoryAndComputeDelta() {
+        String previousSnapshot = InventorySnapshot.findLatest(INVENTORY_DIRECTORY);
+        String currentSnapshot;
+
+        try (InventorySnapshot snapshot = new InventorySnapshot(INVENTORY_DIRECTORY)) {
+            for (Map.Entry<String, String> filter : filters.getFilters().entrySet())
+                snapshot.addFilter(filter.getKey(), filter.getValue());
+
+            for (Ec2InstanceData instance : ec2InstancesData) {
+                InventoryRecord record = new InventoryRecord("ec2-instance", instance.getId(), instance.getRegion())
+                        .withAttribute("state", instance.getState())
+                        .withAttribute("instanceType", instance.getType());
+                try {
+                    record.withAttribute("underUtilizedCpu", instance.isUnderUtilizedCpu(EC2_CPU_STATISTIC_UNDER, EC2_CPU_THRESHOLD_IN_PERCENT_UNDER))
+                            .withAttribute("overUtilizedCpu", instance.isOverUtilizedCpu(EC2_CPU_STATISTIC_OVER, EC2_CPU_THRESHOLD_IN_PERCENT_OVER));
+                } catch (Exception e) {
+                    /*
+                     * No CPU data for this instance, so nothing can be said about its utilization
+                     * */
+                    if(DEBUG)
+                        System.out.println("No utilization data for the instance " + instance.getId());
+                }
+                snapshot.add(record);
+            }
+
+            for (ReservedInstanceData reservedInstance : reservedInstancesData) {
+                snapshot.add(new InventoryRecord("reserved-instance", reservedInstance.getReservedInstanceId(), reservedInstance.getRegion())
+                        .withAttribute("instanceType", reservedInstance.getInstanceType())
+                        .withAttribute("instanceCount", reservedInstance.getInstanceCount())
+                        .withAttribute("capacityInUse", reservedInstance.getCapacityInUse())
+                        .withAttribute("underUtilized", reservedInstance.isUnderUtilized(EC2_RESERVED_CAPACITY_THRESHOLD_IN_PERCENT))
+                        .withAttribute("expiring", reservedInstance.isExpiringInNextNDays(EC2_RESERVED_EXPIRING_IN_NEXT_N_DAYS_THRESHOLD)));
+            }
+
+            for (ElasticLoadBalancerData loadBalancer : elasticLoadBalancersData) {
+                snapshot.add(new InventoryRecord("load-balancer", loadBalancer.getArn(), loadBalancer.getRegion())
+                        .withAttribute("name", loadBalancer.getName())
+                        .withAttribute("type", loadBalancer.getType())
+                        .withAttribute("idle", loadBalancer.isIdle())
+                        .withAttribute("totalTargets", loadBalancer.getTotalTargets())
+                        .withAttribute("healthyTargets", loadBalancer.getTotalHealthyTargets()));
+            }
+
+            for (EbsVolumeData volume : ebsVolumesData) {
+                snapshot.add(new InventoryRecord("ebs-volume", volume.getVolumeId(), volume.getRegion())
+                        .withAttribute("size", volume.getSize())
+                        .withAttribute("attached", volume.isUsed()));
+            }
+
+            for (ElasticIpData ip : elasticIpsData) {
+                snapshot.add(new InventoryRecord("elastic-ip", ip.getIp(), ip.getRegion())
+                        .withAttribute("used", ip.isUsed()));
+            }
+
+            HashSet<BackupData> oldBackups = new HashSet<>(BackupData.getBackupsOlderThan(BACKUPS_THRESHOLD_DAYS, backupsData));
+            for (BackupData backup : backupsData) {
+                snapshot.add(new InventoryRecord("backup", backup.getArn(), backup.getRegion())
+                        .withAttribute("vault", backup.getVault().getName())
+                        .withAttribute("size", backup.getSize())
+                        .withAttribute("olderThanThreshold", oldBackups.contains(backup)));
+            }
+
+            for (S3BucketData bucket : s3bucketsData) {
+                snapshot.add(new InventoryRecord("s3-bucket", bucket.getName(), null)
+                        .withAttribute("location", bucket.getLocation()));
+            }
+
+            if(!collectionComplete) {
+                System.out.println("The collection was not complete, so its snapshot is not kept. Run again with --resume to complete it");
+                return;
+            }
+            snapshot.commit();
+            currentSnapshot = snapshot.getFilename();
+            if(DEBUG)
+                System.out.println("Persisted " + snapshot.getCount() + " resources in the snapshot " + currentSnapshot);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return;
+        }
+
+        if(previousSnapshot == null) {
+            if(DEBUG)
+                System.out.println("No previous snapshot found, so no changes to report");
+            return;
+        }
+
+        try {
+            InventoryDeltaEngine engine = new InventoryDeltaEngine(DELTA_PARTITIONS, Runtime.getRuntime().availableProcessors());
+            this.deltaSummary = engine.compare(previousSnapshot, currentSnapshot, DELTA_FILENAME_WITH_PATH);
+            if(DEBUG)
+                System.out.println("Changes since " + previousSnapshot + ": " + this.deltaSummary);
+            if(!this.deltaSummary.getNotCompared().isEmpty())
+                System.out.println("Not compared with " + previousSnapshot + " as they were collected with other filters: " + this.deltaSummary.getNotCompared());
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+
+        int pruned = InventorySnapshot.prune(INVENTORY_DIRECTORY, Math.max(2, INVENTORY_SNAPSHOTS_TO_KEEP));
+        if(DEBUG && pruned > 0)
+            System.out.println("Deleted " + pruned + " old snapshots");
     }
 
     /**
@@ -314,7 +708,7 @@ class AWSCostOptimizerAndReportGenerator implements AwsCredentialsProvider {
      */
     public void makeExcelReportFile(String filename) {
         try {
-            Report report = new Report(filename, SUGGESTION_MODE, ec2InstanceTypeToVcpuCount, ec2InstanceTypeToMemorySizeInMB, ec2InstanceTypeToPrice);
+            Report report = new Report(filename, SUGGESTION_MODE, instanceTypeCatalog, priceIndex);
 
             report.createSheetAndLoad("EC2 Utilization");
             report.addHeading("UNDER-UTILIZED EC2 INSTANCES / SERVERS", 2);
@@ -335,12 +729,21 @@ class AWSCostOptimizerAndReportGenerator implements AwsCredentialsProvider {
             report.addHeading("RESERVED INSTANCES ANALYSIS", 2);
             report.addReservedInstancesAtLowCapacity(reservedInstancesData, "RESERVED INSTANCES RUNNING AT LOW CAPACITY THAN BOUGHT", EC2_RESERVED_CAPACITY_THRESHOLD_IN_PERCENT);
             report.addExpiringReservedInstances(reservedInstancesData, "RESERVED INSTANCES EXPIRING IN NEXT", EC2_RESERVED_EXPIRING_IN_NEXT_N_DAYS_THRESHOLD);
+            report.addReservedCoverageTimeline(reservedPoolTimelines, "RESERVED INSTANCE POOLS COVERAGE AND UTILIZATION", RESERVED_TIMELINE_LOOKBACK_DAYS, RESERVED_TIMELINE_FORWARD_DAYS);
             report.addRowGaps(2);
 
             if(PRICE_COMPARISON) {
                 report.createSheetAndLoad("EC2 Cost Implication");
                 report.addHeading("ON DEMAND INSTANCE COST IMPLICATION", 2);
                 report.addOnDemandCostImplication(ec2OnDemandInstancesData, "COST IMPLICATIONS");
+                report.addSpotInstancesSavings(ec2SpotInstancesData, "SPOT INSTANCES SAVINGS (LAST " + SPOT_PRICE_LOOKBACK_DAYS + " DAYS)");
+                report.addRowGaps(2);
+            }
+
+            if(SUGGEST_RESERVATION_PURCHASES && priceIndex != null) {
+                report.createSheetAndLoad("Reservation Purchases");
+                report.addHeading("RESERVED INSTANCES TO BUY", 2);
+                report.addReservationPurchases(reservationPurchases, "LEAST COST COMMITMENT PER POOL (" + RESERVATION_OFFERING_CLASS + ", " + RESERVATION_PURCHASE_OPTION + ")", RESERVED_TIMELINE_LOOKBACK_DAYS);
                 report.addRowGaps(2);
             }
 
@@ -382,18 +785,51 @@ class AWSCostOptimizerAndReportGenerator implements AwsCredentialsProvider {
             report.addS3BucketData(s3bucketsData, "FOR EACH BUCKET OBJECTS OLDER THAN", S3_OBJECTS_THRESHOLD_DAYS);
             report.addRowGaps(2);
 
+            report.createSheetAndLoad("Cold prefixes");
+            report.addHeading("S3 PREFIXES", 3);
+            report.addColdPrefixes(s3bucketsData, "PREFIXES HOLDING OBJECTS OLDER THAN", S3_OBJECTS_THRESHOLD_DAYS, S3_COLD_PREFIX_ROWS);
+            report.addRowGaps(2);
+
+            if(COLLECT_TAGS) {
+                /*
+                 * Built after the S3 sheet, as the old objects of the buckets are found while adding it
+                 * */
+                LinkedHashMap<String, ArrayList<String>> findings = getFindings();
+                report.createSheetAndLoad("Findings By Tag");
+                report.addHeading("FINDINGS BY TAG", 3);
+                for (String key : FINDINGS_TAG_KEYS.split(",")) {
+                    report.addFindingsByTag(resourceTags.groupBy(key.trim(), findings), new ArrayList<>(findings.keySet()), "FINDINGS BY THE VALUE OF THE TAG '" + key.trim() + "'");
+                    report.addRowGaps(1);
+                }
+                report.addRowGaps(1);
+            }
+
+            if(this.deltaSummary != null) {
+                report.createSheetAndLoad("Changes Since Last Snapshot");
+                report.addHeading("CHANGES SINCE THE PREVIOUS RUN", 3);
+                report.addDeltaData(DELTA_FILENAME_WITH_PATH, "ADDED / REMOVED / CHANGED RESOURCES", this.deltaSummary, DELTA_MAX_ROWS_IN_REPORT);
+                report.addRowGaps(2);
+            }
+
             report.create();
         } catch (FileNotFoundException e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * Method to shut down all the AWS clients created so far, they are created again if the object is used afterwards
+     */
+    public void shutdown() {
+        clients.close();
+    }
+
     /**
      * Abstract method in the AwsCredentialsProvider interface
      */
     @Override
     public AwsCredentials resolveCredentials() {
-        return CREDS;
+        return clients.getCredentialsProvider().resolveCredentials();
     }
 
     @Override
@@ -472,7 +908,7 @@ class AWSCostOptimizerAndReportGenerator implements AwsCredentialsProvider {
         /*
          * Namespace for EC2 AWS*/
         String namespace = "AWS/EC2";
-        CloudWatchClient cw = CloudWatchClient.builder().credentialsProvider(this).region(REGION).build();
+        CloudWatchClient cw = clients.cloudWatch(REGION);
 
         /*
          * We need to pass the instance id of the Instance for which we want the data. So
@@ -492,7 +928,7 @@ class AWSCostOptimizerAndReportGenerator implements AwsCredentialsProvider {
 
         /*
          * Making the API call*/
-        GetMetricDataResponse res = cw.getMetricData(GetMetricDataRequest.builder().startTime(startInstant).endTime(endInstant).metricDataQueries(queries).build());
+        GetMetricDataResponse res = getMetricData(REGION, cw, GetMetricDataRequest.builder().startTime(startInstant).endTime(endInstant).metricDataQueries(queries).build());
         List<MetricDataResult> queryResults = res.metricDataResults();
 
         /*
@@ -506,7 +942,6 @@ class AWSCostOptimizerAndReportGenerator implements AwsCredentialsProvider {
                 currentEc2Instance.setMaximumCpuUtilizationData(StatisticRecord.listGenerator(current.timestamps(), current.values()));
             }
         }
-        cw.close();
     }
 
     /**
@@ -537,68 +972,60 @@ class AWSCostOptimizerAndReportGenerator implements AwsCredentialsProvider {
     }
 
     /**
-     * Helper Method to check if the ec2 Instance in loop matches the description of a purchased reserved instance
-     *
-     * @param instance The current instance in loop
-     * @return Return true if it matches to a reserved instance else return false
+     * Helper Method to find which of the running (non spot) instances are covered by the reserved instances, and to insert
+     * every one of them into either the reserved or the on demand list. The instances claim the reserved instances of their
+     * type as they are collected, but which of them are covered is only reconciled once all of them are collected, so that
+     * the same instances are covered on every run, and because a size flexible reserved instance can cover an instance of
+     * any size of its family, so the best assignment is only known when all of them are seen.
      */
-    private boolean isReserved(Ec2InstanceData instance) {
-        if (reservedInstancesData == null)
-            return false;
-        /*
-        // Linear search to search from the reserved instances ArrayList
-        for (ReservedInstanceData reservedInstance : reservedInstancesData) {
-            if (reservedInstance.isActive() && reservedInstance.isRemaining() && reservedInstance.matchInstance(instance)) {
-                reservedInstance.foundOne();
-                return true;
-            }
+    private void matchReservedInstances() {
+        boolean[] covered;
+        try {
+            covered = reservedInstanceLedger.reconcile(claimedInstances);
+        } catch (Exception e) {
+            e.printStackTrace();
+            covered = new boolean[claimedInstances.size()];
         }
-         */
-
-        /*
-         * New Way using Hashmaps, Supposed to be faster than the above one
-         * */
-        String representativeString = instance.getAvailabilityZone() + instance.getTenancy() + instance.getType() + instance.getPlatformDetails();
-        if (reservedInstanceMatcher.containsKey(representativeString)) {
-            ArrayList<Integer> indices = reservedInstanceMatcher.get(representativeString);
-            for (Integer index : indices) {
-                ReservedInstanceData reservedInstance = reservedInstancesData.get(index);
-                if (reservedInstance.isActive() && reservedInstance.isRemaining()) {
-                    reservedInstance.foundOne();
-                    return true;
+        for (int i = 0; i < claimedInstances.size(); i++) {
+            if (covered[i]) {
+                ec2ReservedInstancesData.add(claimedInstances.get(i));
+            } else {
+                ec2OnDemandInstancesData.add(claimedInstances.get(i));
+                if(PRICE_COMPARISON) {
+                    reservedOfferingPrices.add(claimedInstances.get(i)); // The price is fetched once all the instances are collected
+                    spotPrices.add(claimedInstances.get(i));
                 }
             }
         }
+        claimedInstances.clear();
+        reservedInstanceLedger.recordCapacityInUse();
+        if(DEBUG)
+            System.out.println("Instances covered by Reserved Instances: " + ec2ReservedInstancesData.size() + " of " + (ec2ReservedInstancesData.size() + ec2OnDemandInstancesData.size()));
 
-        representativeString = instance.getRegion() + instance.getTenancy() + instance.getType() + instance.getPlatformDetails();
-        if (reservedInstanceMatcher.containsKey(representativeString)) {
-            ArrayList<Integer> indices = reservedInstanceMatcher.get(representativeString);
-            for (Integer index : indices) {
-                ReservedInstanceData reservedInstance = reservedInstancesData.get(index);
-                if (reservedInstance.isActive() && reservedInstance.isRemaining()) {
-                    reservedInstance.foundOne();
-                    return true;
-                }
-            }
+        ArrayList<Ec2InstanceData> running = new ArrayList<>(ec2ReservedInstancesData);
+        running.addAll(ec2OnDemandInstancesData);
+        try {
+            reservedPoolTimelines = new ReservedCoverageTimeline(Instant.now(), RESERVED_TIMELINE_LOOKBACK_DAYS, RESERVED_TIMELINE_FORWARD_DAYS, RESERVED_TIMELINE_THREADS)
+                    .build(reservedInstancesData, running, SUGGEST_RESERVATION_PURCHASES);
+        } catch (Exception e) {
+            e.printStackTrace();
         }
-        return false;
     }
 
     /**
      * Helper method to find the instance type and to insert the instance into its
-     * respective ArrayList. This method makes use of isSpot and isReserved methods
-     * to check if the instance is a spot instance or a reserved instance. If both
-     * these methods return false then the instance in question is an On Demand Instance.
+     * respective ArrayList. This method makes use of isSpot to check if the instance is a spot
+     * instance. A running, non spot, instance claims a reserved instance of its type right away, but
+     * whether it is reserved or on demand is decided once all the instances are collected (by
+     * matchReservedInstances).
      *
      * @param instance The instance in loop of which we want to find the type
-     * @param client the EC2 Client Object which will be used to get pricing information if PRICE_COMPARISON is set to true
-     * @return Returns an integer value corresponding to its type [On demand(0), Spot(1), Reserved(2)].
+     * @return Returns an integer value corresponding to its type [On demand or not yet known(0), Spot(1)].
      */
-    private int getInstanceTypeAndInsert(Ec2InstanceData instance, AmazonEC2 client) {
+    private int getInstanceTypeAndInsert(Ec2InstanceData instance) {
         /*
-         * Returns 0 if on demand instance or state not running
+         * Returns 0 if on demand instance (or not yet known) or state not running
          * Returns 1 is spot instance
-         * Returns 2 if reserved instance
          * */
         int type = 0;
         /*
@@ -616,17 +1043,11 @@ class AWSCostOptimizerAndReportGenerator implements AwsCredentialsProvider {
             if (instance.isSpot()) {
                 type = 1;
                 ec2SpotInstancesData.add(instance);
-            } else if (isReserved(instance)) {
-                /*
-                Earlier this was o(n), isReserved method
-                Now it has been improved to constant time by making use of hashmaps
-                 */
-                type = 2;
-                ec2ReservedInstancesData.add(instance);
+                if(PRICE_COMPARISON)
+                    spotPrices.add(instance); // The price is fetched once all the instances are collected
             } else {
-                ec2OnDemandInstancesData.add(instance);
-                if(PRICE_COMPARISON && !instance.getAvailabilityZone().equals(""))
-                    instance.getAndStoreCostImplication(client);
+                reservedInstanceLedger.claim(instance);
+                claimedInstances.add(instance);
             }
         }
         return type;
@@ -644,7 +1065,7 @@ class AWSCostOptimizerAndReportGenerator implements AwsCredentialsProvider {
         /*
          * Namespace for Cloud Watch Agent AWS*/
         String namespace = "CWAgent";
-        CloudWatchClient cw = CloudWatchClient.builder().credentialsProvider(this).region(REGION).build();
+        CloudWatchClient cw = clients.cloudWatch(REGION);
 
         /*
          * We need to pass the instance id of the Instance for which we want the data. So
@@ -664,7 +1085,7 @@ class AWSCostOptimizerAndReportGenerator implements AwsCredentialsProvider {
 
         /*
          * Making the API call*/
-        GetMetricDataResponse res = cw.getMetricData(GetMetricDataRequest.builder().startTime(startInstant).endTime(endInstant).metricDataQueries(queries).build());
+        GetMetricDataResponse res = getMetricData(REGION, cw, GetMetricDataRequest.builder().startTime(startInstant).endTime(endInstant).metricDataQueries(queries).build());
         List<MetricDataResult> queryResults = res.metricDataResults();
 
         /*
@@ -681,7 +1102,6 @@ class AWSCostOptimizerAndReportGenerator implements AwsCredentialsProvider {
             }
         }
          */
-        cw.close();
     }
 
     /**
@@ -693,7 +1113,7 @@ class AWSCostOptimizerAndReportGenerator implements AwsCredentialsProvider {
      * @param days    The number of days of data which we have to retrieve from cloudwatch
      * @param cw      The cloudwatch client object
      */
-    private void ec2GetMetrics(ArrayList<MetricDataQuery> queries, int days, CloudWatchClient cw) {
+    private void ec2GetMetrics(ArrayList<MetricDataQuery> queries, int days, Region region, CloudWatchClient cw) {
         if(DEBUG){
             System.out.println("Fetching Data of a batch of EC2 Instances from cloudwatch");
         }
@@ -703,7 +1123,7 @@ class AWSCostOptimizerAndReportGenerator implements AwsCredentialsProvider {
 
         /*
          * Making the API call*/
-        GetMetricDataResponse res = cw.getMetricData(GetMetricDataRequest.builder().startTime(startInstant).endTime(endInstant).metricDataQueries(queries).build());
+        GetMetricDataResponse res = getMetricData(region, cw, GetMetricDataRequest.builder().startTime(startInstant).endTime(endInstant).metricDataQueries(queries).build());
         String prevToken = null;
         while (true) {
             List<MetricDataResult> queryResults = res.metricDataResults();
@@ -751,7 +1171,7 @@ class AWSCostOptimizerAndReportGenerator implements AwsCredentialsProvider {
             if (res.nextToken() == null || res.nextToken().equals("") || res.nextToken().equals(prevToken) || allEmpty)
                 break;
             prevToken = res.nextToken();
-            res = cw.getMetricData(GetMetricDataRequest.builder().startTime(startInstant).endTime(endInstant).metricDataQueries(queries).nextToken(res.nextToken()).build());
+            res = getMetricData(region, cw, GetMetricDataRequest.builder().startTime(startInstant).endTime(endInstant).metricDataQueries(queries).nextToken(res.nextToken()).build());
         }
 
         if(DEBUG){
@@ -813,30 +1233,46 @@ class AWSCostOptimizerAndReportGenerator implements AwsCredentialsProvider {
          * */
 //        AmazonEC2 client = AmazonEC2Client.builder().withCredentials(CREDENTIALS).withRegion(region.toString()).build();
 
+        String regionName = region.toString();
+
         /*
-         * Making a request to describe the purchased Reserved Instances by using the ec2 Client
+         * Restoring the purchased Reserved Instances from the journal if the run is being resumed
          * */
-        DescribeReservedInstancesResult resultReserved = client.describeReservedInstances();
-        for (ReservedInstances instance : resultReserved.getReservedInstances()) {
+        ArrayList<CollectionJournal.Page<ReservedInstanceData>> reservedPages = journal.restorePages(regionName, "reserved-instances");
+        if (!reservedPages.isEmpty()) {
+            for (ReservedInstanceData currentInstance : reservedPages.get(0).getItems()) {
+                reservedInstanceLedger.add(currentInstance);
+                reservedInstancesData.add(currentInstance);
+            }
+        } else {
             /*
-             * Using builder to build the Reserved Instance Object. And it is necessary to provide
-             * all the information which is provided below by chaining different methods.
+             * Making a request to describe the purchased Reserved Instances by using the ec2 Client
              * */
-            try {
-                ReservedInstanceData currentInstance = new ReservedInstanceData.ReservedInstanceDataBuilder(instance.getReservedInstancesId(), instance.getState())
-                        .withInstanceTypeAndCount(instance.getInstanceType(), instance.getInstanceCount())
-                        .withDurationInfo(instance.getDuration(), instance.getStart(), instance.getEnd())
-                        .withScope(instance.getScope())
-                        .withProductDescription(instance.getProductDescription())
-                        .withAvailabilityZone(instance.getAvailabilityZone())
-                        .withTenancy(instance.getInstanceTenancy())
-                        .build();
-                currentInstance.setRegion(region);
-                currentInstance.insertIntoHashmap(reservedInstanceMatcher,reservedInstancesData.size());
-                reservedInstancesData.add(currentInstance);
-            } catch (Exception e) {
-                e.printStackTrace();
+            ArrayList<ReservedInstanceData> pageItems = new ArrayList<>();
+            DescribeReservedInstancesResult resultReserved = rateController.call(region.id(), "DescribeReservedInstances", () -> client.describeReservedInstances());
+            for (ReservedInstances instance : resultReserved.getReservedInstances()) {
+                /*
+                 * Using builder to build the Reserved Instance Object. And it is necessary to provide
+                 * all the information which is provided below by chaining different methods.
+                 * */
+                try {
+                    ReservedInstanceData currentInstance = new ReservedInstanceData.ReservedInstanceDataBuilder(instance.getReservedInstancesId(), instance.getState())
+                            .withInstanceTypeAndCount(instance.getInstanceType(), instance.getInstanceCount())
+                            .withDurationInfo(instance.getDuration(), instance.getStart(), instance.getEnd())
+                            .withScope(instance.getScope())
+                            .withProductDescription(instance.getProductDescription())
+                            .withAvailabilityZone(instance.getAvailabilityZone())
+                            .withTenancy(instance.getInstanceTenancy())
+                            .build();
+                    currentInstance.setRegion(region);
+                    reservedInstanceLedger.add(currentInstance);
+                    reservedInstancesData.add(currentInstance);
+                    pageItems.add(currentInstance);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
             }
+            checkpoint(regionName, "reserved-instances", 0, pageItems, null, true);
         }
 
         if(DEBUG){
@@ -845,38 +1281,55 @@ class AWSCostOptimizerAndReportGenerator implements AwsCredentialsProvider {
             System.out.println();
         }
 
+        /*
+         * Restoring the already collected pages of Spot Instance Requests from the journal
+         * */
+        int page = 0;
+        String nextToken = null;
+        for (CollectionJournal.Page<SpotRequestData> savedPage : journal.<SpotRequestData>restorePages(regionName, "spot-requests")) {
+            spotRequestsData.addAll(savedPage.getItems());
+            nextToken = savedPage.getNextToken();
+            page += 1;
+        }
+
         /*
          * Making a request to describe the Spot Instance Requests which have been made
          * using our account. To make the request we use the ec2 Client.
          * */
-        DescribeSpotInstanceRequestsResult result = client.describeSpotInstanceRequests(new DescribeSpotInstanceRequestsRequest());
-        while (true) {
-            for (SpotInstanceRequest request : result.getSpotInstanceRequests()) {
-                /*
-                 * Using the builder to build the Spot Request Object. And it is necessary to provide all the information
-                 * which is provided below by chaining different methods
-                 * */
-                try {
-                    SpotRequestData currentRequest = new SpotRequestData.SpotRequestDataBuilder(request.getSpotInstanceRequestId(), request.getCreateTime())
-                            .withState(request.getState())
-                            .withRequestType(request.getType())
-                            .withStatusCode(request.getStatus().getCode())
-                            .withInstanceId(request.getInstanceId())
-                            .withInstanceType(request.getLaunchSpecification().getInstanceType())
-                            .withInstanceAvailabilityZone(request.getLaunchedAvailabilityZone())
-                            .withInstanceDescription(request.getProductDescription())
-                            .withRequestUpdateTime(request.getStatus().getUpdateTime())
-                            .withValidFromUntil(request.getValidFrom(), request.getValidUntil())
-                            .build();
-                    currentRequest.setRegion(region);
-                    spotRequestsData.add(currentRequest);
-                } catch (Exception e) {
-                    e.printStackTrace();
+        if (page == 0 || nextToken != null) {
+            DescribeSpotInstanceRequestsResult result = rateController.call(region.id(), "DescribeSpotInstanceRequests", client::describeSpotInstanceRequests, new DescribeSpotInstanceRequestsRequest().withNextToken(nextToken));
+            while (true) {
+                ArrayList<SpotRequestData> pageItems = new ArrayList<>();
+                for (SpotInstanceRequest request : result.getSpotInstanceRequests()) {
+                    /*
+                     * Using the builder to build the Spot Request Object. And it is necessary to provide all the information
+                     * which is provided below by chaining different methods
+                     * */
+                    try {
+                        SpotRequestData currentRequest = new SpotRequestData.SpotRequestDataBuilder(request.getSpotInstanceRequestId(), request.getCreateTime())
+                                .withState(request.getState())
+                                .withRequestType(request.getType())
+                                .withStatusCode(request.getStatus().getCode())
+                                .withInstanceId(request.getInstanceId())
+                                .withInstanceType(request.getLaunchSpecification().getInstanceType())
+                                .withInstanceAvailabilityZone(request.getLaunchedAvailabilityZone())
+                                .withInstanceDescription(request.getProductDescription())
+                                .withRequestUpdateTime(request.getStatus().getUpdateTime())
+                                .withValidFromUntil(request.getValidFrom(), request.getValidUntil())
+                                .build();
+                        currentRequest.setRegion(region);
+                        spotRequestsData.add(currentRequest);
+                        pageItems.add(currentRequest);
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    }
                 }
+                checkpoint(regionName, "spot-requests", page, pageItems, result.getNextToken(), true);
+                page += 1;
+                if (result.getNextToken() == null || result.getNextToken().equals(""))
+                    break;
+                result = rateController.call(region.id(), "DescribeSpotInstanceRequests", client::describeSpotInstanceRequests, new DescribeSpotInstanceRequestsRequest().withNextToken(result.getNextToken()));
             }
-            if (result.getNextToken() == null || result.getNextToken().equals(""))
-                break;
-            result = client.describeSpotInstanceRequests(new DescribeSpotInstanceRequestsRequest().withNextToken(result.getNextToken()));
         }
 
         if(DEBUG){
@@ -885,6 +1338,31 @@ class AWSCostOptimizerAndReportGenerator implements AwsCredentialsProvider {
             System.out.println();
         }
 
+        ArrayList<MetricDataQuery> queries = new ArrayList<>();
+        String description = "EC2 metrics of " + regionName;
+
+        /*
+         * Restoring the already collected pages of instances from the journal. The instances are inserted in the same
+         * order in which they were collected, so the indices used in the metric query ids stay the same. If a metric
+         * batch of a page had failed then the metrics of its instances are fetched again.
+         * */
+        page = 0;
+        nextToken = null;
+        for (CollectionJournal.Page<Ec2InstanceData> savedPage : journal.<Ec2InstanceData>restorePages(regionName, "ec2-instances")) {
+            for (Ec2InstanceData currentEc2Instance : savedPage.getItems()) {
+                if (!savedPage.isMetricsComplete() && SAVETIME && currentEc2Instance.getState().equals("running"))
+                    ec2AttachMetrics(currentEc2Instance, hours, queries, ec2InstancesData.size());
+                getInstanceTypeAndInsert(currentEc2Instance);
+                ec2InstancesData.add(currentEc2Instance);
+
+                if (queries.size() == (numberInstancesClub * metricsPerInstance))
+                    flushMetricBatch(description, queries, batch -> ec2GetMetrics(batch, days, region, cw));
+            }
+            nextToken = savedPage.getNextToken();
+            page += 1;
+        }
+        flushMetricBatch(description, queries, batch -> ec2GetMetrics(batch, days, region, cw));
+
         /*
          * Describing Actual instances which exist in our account. Above two calls
          * are just for describing what we have reserved and what we have requested
@@ -892,77 +1370,85 @@ class AWSCostOptimizerAndReportGenerator implements AwsCredentialsProvider {
          * which AWS has allocated for our use, and they actually exist physically somewhere
          * in the AWS data centres
          * */
-        DescribeInstancesResult res = client.describeInstances(new DescribeInstancesRequest());
-        ArrayList<MetricDataQuery> queries = new ArrayList<>();
+        if (page == 0 || nextToken != null) {
+            DescribeInstancesResult res = rateController.call(region.id(), "DescribeInstances", client::describeInstances, filters.describeInstances(nextToken));
 //        CloudWatchClient cw = CloudWatchClient.builder().credentialsProvider(this).region(REGION).build();
-        while (true) {
-            for (Reservation reservation : res.getReservations()) {
-                for (Instance instance : reservation.getInstances()) {
-                    Ec2InstanceData currentEc2Instance;
-
-                    String instanceId = instance.getInstanceId();
-                    String state = instance.getState().getName();
-                    try {
-                        if (state.equals("running")) {
-                            /*
-                             * Since Instance is in running state, we will have ipv4 and ipv6 both type
-                             * of ip Addresses associated with it. So while building the object we have
-                             * to provide them. Furthermore, since this instance is in running state we
-                             * have to provide the details of the platform, Availability zone, tenancy
-                             * value and the instance type. All this is necessary because we have to run
-                             * search and matching algorithms down the line. Those algorithms will
-                             * basically map these instances to their respective spot request or reserved instance.
-                             * */
-                            currentEc2Instance = new Ec2InstanceData.Ec2InstanceDataBuilder(instanceId, state)
-                                    .withIpv4(instance.getPublicIpAddress(), instance.getPublicDnsName())
-                                    .withIpv6(instance.getPrivateIpAddress(), instance.getPrivateDnsName())
-                                    .withPlatformDetails(instance.getPlatformDetails())
-                                    .withAvailabilityZone(instance.getPlacement().getAvailabilityZone())
-                                    .withTenancy(instance.getPlacement().getTenancy())
-                                    .withInstanceType(instance.getInstanceType())
-                                    .withVcpus(instance.getCpuOptions().getCoreCount())
-                                    .build();
-                            if (!SAVETIME) {
-                                getCpuUtilization(currentEc2Instance, days, hours);
-                                getCWAgentMetrics(currentEc2Instance, days, hours);
+            while (true) {
+                ArrayList<Ec2InstanceData> pageItems = new ArrayList<>();
+                boolean metricsComplete = true;
+                for (Reservation reservation : res.getReservations()) {
+                    for (Instance instance : reservation.getInstances()) {
+                        Ec2InstanceData currentEc2Instance;
+
+                        String instanceId = instance.getInstanceId();
+                        String state = instance.getState().getName();
+                        try {
+                            if (state.equals("running")) {
+                                /*
+                                 * Since Instance is in running state, we will have ipv4 and ipv6 both type
+                                 * of ip Addresses associated with it. So while building the object we have
+                                 * to provide them. Furthermore, since this instance is in running state we
+                                 * have to provide the details of the platform, Availability zone, tenancy
+                                 * value and the instance type. All this is necessary because we have to run
+                                 * search and matching algorithms down the line. Those algorithms will
+                                 * basically map these instances to their respective spot request or reserved instance.
+                                 * */
+                                currentEc2Instance = new Ec2InstanceData.Ec2InstanceDataBuilder(instanceId, state)
+                                        .withIpv4(instance.getPublicIpAddress(), instance.getPublicDnsName())
+                                        .withIpv6(instance.getPrivateIpAddress(), instance.getPrivateDnsName())
+                                        .withPlatformDetails(instance.getPlatformDetails())
+                                        .withAvailabilityZone(instance.getPlacement().getAvailabilityZone())
+                                        .withTenancy(instance.getPlacement().getTenancy())
+                                        .withInstanceType(instance.getInstanceType())
+                                        .withVcpus(instance.getCpuOptions().getCoreCount())
+                                        .build();
+                                if (!SAVETIME) {
+                                    getCpuUtilization(currentEc2Instance, days, hours);
+                                    getCWAgentMetrics(currentEc2Instance, days, hours);
+                                } else {
+                                    ec2AttachMetrics(currentEc2Instance, hours, queries, ec2InstancesData.size());
+                                }
+                            } else if (state.equals("stopped")) {
+                                /*
+                                 * Since instance is in stopped state, the only necessary things are instanceId, state and
+                                 * ipv6 address values. All the other parameters are optional.
+                                 * */
+                                currentEc2Instance = new Ec2InstanceData.Ec2InstanceDataBuilder(instanceId, state)
+                                        .withIpv6(instance.getPrivateIpAddress(), instance.getPrivateDnsName())
+                                        .build();
                             } else {
-                                ec2AttachMetrics(currentEc2Instance, hours, queries, ec2InstancesData.size());
+                                /*
+                                 * Only state and instance id are the required parameters here*/
+                                currentEc2Instance = new Ec2InstanceData.Ec2InstanceDataBuilder(instanceId, state)
+                                        .build();
                             }
-                        } else if (state.equals("stopped")) {
-                            /*
-                             * Since instance is in stopped state, the only necessary things are instanceId, state and
-                             * ipv6 address values. All the other parameters are optional.
-                             * */
-                            currentEc2Instance = new Ec2InstanceData.Ec2InstanceDataBuilder(instanceId, state)
-                                    .withIpv6(instance.getPrivateIpAddress(), instance.getPrivateDnsName())
-                                    .build();
-                        } else {
-                            /*
-                             * Only state and instance id are the required parameters here*/
-                            currentEc2Instance = new Ec2InstanceData.Ec2InstanceDataBuilder(instanceId, state)
-                                    .build();
-                        }
-                        currentEc2Instance.setSpotRequestId(instance.getSpotInstanceRequestId());
-                        currentEc2Instance.setRegion(region);
-                        getInstanceTypeAndInsert(currentEc2Instance,client);
-                        ec2InstancesData.add(currentEc2Instance);
-
-                        if (queries.size() == (numberInstancesClub * metricsPerInstance)) {
-                            ec2GetMetrics(queries, days, cw);
-                            queries.clear();
+                            currentEc2Instance.setSpotRequestId(instance.getSpotInstanceRequestId());
+                            currentEc2Instance.setLaunchTime(instance.getLaunchTime());
+                            currentEc2Instance.setRegion(region);
+                            getInstanceTypeAndInsert(currentEc2Instance);
+                            ec2InstancesData.add(currentEc2Instance);
+                            pageItems.add(currentEc2Instance);
+
+                            if (queries.size() == (numberInstancesClub * metricsPerInstance)) {
+                                metricsComplete &= flushMetricBatch(description, queries, batch -> ec2GetMetrics(batch, days, region, cw));
+                            }
+                        } catch (Exception e) {
+                            e.printStackTrace();
                         }
-                    } catch (Exception e) {
-                        e.printStackTrace();
                     }
                 }
+
+                /*
+                 * The metrics of the page are fetched before the page is checkpointed, so a checkpointed page is complete
+                 * */
+                metricsComplete &= flushMetricBatch(description, queries, batch -> ec2GetMetrics(batch, days, region, cw));
+                checkpoint(regionName, "ec2-instances", page, pageItems, res.getNextToken(), metricsComplete);
+                page += 1;
+
+                if (res.getNextToken() == null || res.getNextToken().equals(""))
+                    break;
+                res = rateController.call(region.id(), "DescribeInstances", client::describeInstances, filters.describeInstances(res.getNextToken()));
             }
-            if (res.getNextToken() == null || res.getNextToken().equals(""))
-                break;
-            res = client.describeInstances(new DescribeInstancesRequest().withNextToken(res.getNextToken()));
-        }
-        if (queries.size() != 0) {
-            ec2GetMetrics(queries, days, cw);
-            queries.clear();
         }
 
         if(DEBUG){
@@ -1008,7 +1494,7 @@ class AWSCostOptimizerAndReportGenerator implements AwsCredentialsProvider {
             metricName = "ActiveFlowCount";
             currentOne = gatewayLoadBalancersData;
         }
-        CloudWatchClient cw = CloudWatchClient.builder().credentialsProvider(this).region(REGION).build();
+        CloudWatchClient cw = clients.cloudWatch(REGION);
 
         Dimension dimen = Dimension.builder().name("LoadBalancer").value(lbname).build();
         ArrayList<Dimension> dimensions = new ArrayList<>();
@@ -1023,7 +1509,7 @@ class AWSCostOptimizerAndReportGenerator implements AwsCredentialsProvider {
 
         Instant endInstant = Instant.now();
         Instant startInstant = Instant.ofEpochSecond(endInstant.getEpochSecond() - (long) days * 24 * 3600);
-        GetMetricDataResponse res = cw.getMetricData(GetMetricDataRequest.builder().startTime(startInstant).endTime(endInstant).metricDataQueries(queries).build());
+        GetMetricDataResponse res = getMetricData(REGION, cw, GetMetricDataRequest.builder().startTime(startInstant).endTime(endInstant).metricDataQueries(queries).build());
 
         List<MetricDataResult> queryResults = res.metricDataResults();
 
@@ -1051,7 +1537,6 @@ class AWSCostOptimizerAndReportGenerator implements AwsCredentialsProvider {
         }
         currentOne.add(currentLoadBalancer);
 
-        cw.close();
     }
 
     /**
@@ -1062,7 +1547,7 @@ class AWSCostOptimizerAndReportGenerator implements AwsCredentialsProvider {
      * @param days    the number of days of data which we want to get from cloudwatch
      * @param cw      the cloudwatch client object
      */
-    private void lbGetMetrics(ArrayList<MetricDataQuery> queries, int days, CloudWatchClient cw) {
+    private void lbGetMetrics(ArrayList<MetricDataQuery> queries, int days, Region region, CloudWatchClient cw) {
         if(DEBUG){
             System.out.println("Fetching Data of a batch of Load Balancers from cloudwatch");
         }
@@ -1072,7 +1557,7 @@ class AWSCostOptimizerAndReportGenerator implements AwsCredentialsProvider {
 
         /*
          * Making the API call*/
-        GetMetricDataResponse res = cw.getMetricData(GetMetricDataRequest.builder().startTime(startInstant).endTime(endInstant).metricDataQueries(queries).build());
+        GetMetricDataResponse res = getMetricData(region, cw, GetMetricDataRequest.builder().startTime(startInstant).endTime(endInstant).metricDataQueries(queries).build());
         String prevToken = null;
         while (true) {
             List<MetricDataResult> queryResults = res.metricDataResults();
@@ -1112,7 +1597,7 @@ class AWSCostOptimizerAndReportGenerator implements AwsCredentialsProvider {
             if (res.nextToken() == null || res.nextToken().equals("") || res.nextToken().equals(prevToken) || allEmpty)
                 break;
             prevToken = res.nextToken();
-            res = cw.getMetricData(GetMetricDataRequest.builder().startTime(startInstant).endTime(endInstant).metricDataQueries(queries).nextToken(res.nextToken()).build());
+            res = getMetricData(region, cw, GetMetricDataRequest.builder().startTime(startInstant).endTime(endInstant).metricDataQueries(queries).nextToken(res.nextToken()).build());
         }
 
         if(DEBUG){
@@ -1187,56 +1672,91 @@ class AWSCostOptimizerAndReportGenerator implements AwsCredentialsProvider {
         Integer numberLbClub = 120; // max can be 124
         Integer metricsPerLb = 4;
 
-        /*
-         * Making the request to describe the load balancers
-         * */
-        DescribeLoadBalancersResult result = elbc.describeLoadBalancers(new DescribeLoadBalancersRequest());
+        String regionName = region.toString();
+        String description = "Load Balancer metrics of " + regionName;
         ArrayList<MetricDataQuery> queries = new ArrayList<>();
 //        CloudWatchClient cw = CloudWatchClient.builder().credentialsProvider(this).region(REGION).build();
 
         HashMap<String, Integer> mapperLoadBalancerToIndex = new HashMap<>();
 
-        while (true) {
-            for (LoadBalancer lb : result.getLoadBalancers()) {
-                /*
-                 * Using builder methods to create the load balancer object. And it is necessary to provide all the information
-                 * which is provided below by chaining methods.
-                 * */
-                try {
-                    ElasticLoadBalancerData currentLoadBalancer = new ElasticLoadBalancerData.ElasticLoadBalancerDataBuilder(lb.getLoadBalancerName(), lb.getType())
-                            .withArn(lb.getLoadBalancerArn())
-                            .withState(lb.getState().getCode())
-                            .withDnsName(lb.getDNSName())
-                            .withIpAddressType(lb.getIpAddressType())
-                            .build();
+        /*
+         * Restoring the already collected pages of load balancers from the journal. If a metric batch of a page had
+         * failed then the metrics of its load balancers are fetched again.
+         * */
+        int page = 0;
+        String nextMarker = null;
+        for (CollectionJournal.Page<ElasticLoadBalancerData> savedPage : journal.<ElasticLoadBalancerData>restorePages(regionName, "load-balancers")) {
+            for (ElasticLoadBalancerData currentLoadBalancer : savedPage.getItems()) {
+                String arn = currentLoadBalancer.getArn();
+                mapperLoadBalancerToIndex.put(arn, elasticLoadBalancersData.size());
+                if (!savedPage.isMetricsComplete() && SAVETIME) {
+                    lbAttachMetrics(arn.substring(arn.indexOf("loadbalancer") + 13), currentLoadBalancer, hours, queries, elasticLoadBalancersData.size());
+                } else if (currentLoadBalancer.getType().equals("application")) {
+                    applicationLoadBalancersData.add(currentLoadBalancer);
+                } else if (currentLoadBalancer.getType().equals("network")) {
+                    networkLoadBalancersData.add(currentLoadBalancer);
+                } else {
+                    gatewayLoadBalancersData.add(currentLoadBalancer);
+                }
+                elasticLoadBalancersData.add(currentLoadBalancer);
 
-                    mapperLoadBalancerToIndex.put(lb.getLoadBalancerArn(),elasticLoadBalancersData.size());
-                    String arn = lb.getLoadBalancerArn();
-                    String lbName = arn.substring(arn.indexOf("loadbalancer") + 13);
+                if (queries.size() == (numberLbClub * metricsPerLb))
+                    flushMetricBatch(description, queries, batch -> lbGetMetrics(batch, days, region, cw));
+            }
+            nextMarker = savedPage.getNextToken();
+            page += 1;
+        }
+        flushMetricBatch(description, queries, batch -> lbGetMetrics(batch, days, region, cw));
 
-                    if (!SAVETIME) {
-                        getMetricsOfLoadBalancer(lbName, days, hours, currentLoadBalancer);
-                    } else {
-                        lbAttachMetrics(lbName, currentLoadBalancer, hours, queries, elasticLoadBalancersData.size());
-                    }
-                    currentLoadBalancer.setRegion(region);
-                    elasticLoadBalancersData.add(currentLoadBalancer);
+        /*
+         * Making the request to describe the load balancers
+         * */
+        if (page == 0 || nextMarker != null) {
+            DescribeLoadBalancersResult result = rateController.call(region.id(), "DescribeLoadBalancers", elbc::describeLoadBalancers, new DescribeLoadBalancersRequest().withMarker(nextMarker));
+            while (true) {
+                ArrayList<ElasticLoadBalancerData> pageItems = new ArrayList<>();
+                boolean metricsComplete = true;
+                for (LoadBalancer lb : result.getLoadBalancers()) {
+                    /*
+                     * Using builder methods to create the load balancer object. And it is necessary to provide all the information
+                     * which is provided below by chaining methods.
+                     * */
+                    try {
+                        ElasticLoadBalancerData currentLoadBalancer = new ElasticLoadBalancerData.ElasticLoadBalancerDataBuilder(lb.getLoadBalancerName(), lb.getType())
+                                .withArn(lb.getLoadBalancerArn())
+                                .withState(lb.getState().getCode())
+                                .withDnsName(lb.getDNSName())
+                                .withIpAddressType(lb.getIpAddressType())
+                                .build();
+
+                        mapperLoadBalancerToIndex.put(lb.getLoadBalancerArn(),elasticLoadBalancersData.size());
+                        String arn = lb.getLoadBalancerArn();
+                        String lbName = arn.substring(arn.indexOf("loadbalancer") + 13);
+
+                        if (!SAVETIME) {
+                            getMetricsOfLoadBalancer(lbName, days, hours, currentLoadBalancer);
+                        } else {
+                            lbAttachMetrics(lbName, currentLoadBalancer, hours, queries, elasticLoadBalancersData.size());
+                        }
+                        currentLoadBalancer.setRegion(region);
+                        elasticLoadBalancersData.add(currentLoadBalancer);
+                        pageItems.add(currentLoadBalancer);
 
-                    if (queries.size() == (numberLbClub * metricsPerLb)) {
-                        lbGetMetrics(queries, days, cw);
-                        queries.clear();
+                        if (queries.size() == (numberLbClub * metricsPerLb)) {
+                            metricsComplete &= flushMetricBatch(description, queries, batch -> lbGetMetrics(batch, days, region, cw));
+                        }
+                    } catch (Exception e) {
+                        e.printStackTrace();
                     }
-                } catch (Exception e) {
-                    e.printStackTrace();
                 }
+                metricsComplete &= flushMetricBatch(description, queries, batch -> lbGetMetrics(batch, days, region, cw));
+                checkpoint(regionName, "load-balancers", page, pageItems, result.getNextMarker(), metricsComplete);
+                page += 1;
+
+                if (result.getNextMarker() == null || result.getNextMarker().equals(""))
+                    break;
+                result = rateController.call(region.id(), "DescribeLoadBalancers", elbc::describeLoadBalancers, new DescribeLoadBalancersRequest().withMarker(result.getNextMarker()));
             }
-            if (result.getNextMarker() == null || result.getNextMarker().equals(""))
-                break;
-            result = elbc.describeLoadBalancers(new DescribeLoadBalancersRequest().withMarker(result.getNextMarker()));
-        }
-        if (queries.size() != 0) {
-            lbGetMetrics(queries, days, cw);
-            queries.clear();
         }
 
         if(DEBUG){
@@ -1246,30 +1766,72 @@ class AWSCostOptimizerAndReportGenerator implements AwsCredentialsProvider {
             System.out.println("Now fetching data of target Groups");
         }
 
-        DescribeTargetGroupsResult describeResults = elbc.describeTargetGroups(new DescribeTargetGroupsRequest());
-        while(true) {
-            for (TargetGroup targetGroup : describeResults.getTargetGroups()) {
-                int totalTargets = 0;
-                int totalUnHealthyTargets = 0;
-                int totalHealthyTargets;
-                DescribeTargetHealthResult targetGroupHeath = elbc.describeTargetHealth(new DescribeTargetHealthRequest().withTargetGroupArn(targetGroup.getTargetGroupArn()));
-                for(TargetHealthDescription description : targetGroupHeath.getTargetHealthDescriptions()){
-                    if(description.getTarget().getId()!=null)
-                        totalTargets += 1;
-                    if(!description.getTargetHealth().getState().equals("healthy"))
-                        totalUnHealthyTargets += 1;
+        /*
+         * Restoring the targets information of the already collected pages of target groups. Each item is
+         * {index of the load balancer in elasticLoadBalancersData, total targets, healthy targets}
+         * */
+        page = 0;
+        nextMarker = null;
+        for (CollectionJournal.Page<int[]> savedPage : journal.<int[]>restorePages(regionName, "target-groups")) {
+            for (int[] targetsInfo : savedPage.getItems())
+                elasticLoadBalancersData.get(targetsInfo[0]).setTargetsInfo(targetsInfo[1], targetsInfo[2]);
+            nextMarker = savedPage.getNextToken();
+            page += 1;
+        }
+
+        if (page == 0 || nextMarker != null) {
+            DescribeTargetGroupsResult describeResults = rateController.call(region.id(), "DescribeTargetGroups", elbc::describeTargetGroups, new DescribeTargetGroupsRequest().withMarker(nextMarker));
+            ExecutorService pool = Executors.newFixedThreadPool(TARGET_HEALTH_THREADS);
+            try {
+                while(true) {
+                    ArrayList<int[]> pageItems = new ArrayList<>();
+
+                    /*
+                     * Only the target groups attached to a known load balancer are of any use. Their health is fetched in
+                     * parallel (unless cached) and is then applied in the order of the page, as it was done sequentially
+                     * */
+                    ArrayList<TargetGroup> attachedTargetGroups = new ArrayList<>();
+                    ArrayList<Future<int[]>> targetsInfos = new ArrayList<>();
+                    for (TargetGroup targetGroup : describeResults.getTargetGroups()) {
+                        boolean attached = false;
+                        for (String curArn : targetGroup.getLoadBalancerArns())
+                            attached |= mapperLoadBalancerToIndex.containsKey(curArn);
+                        if (!attached)
+                            continue;
+                        attachedTargetGroups.add(targetGroup);
+                        targetsInfos.add(pool.submit(() -> getTargetsInfo(region, elbc, targetGroup.getTargetGroupArn())));
+                    }
+
+                    for (int i = 0; i < attachedTargetGroups.size(); i++) {
+                        int[] targetsInfo;
+                        try {
+                            targetsInfo = targetsInfos.get(i).get();
+                        } catch (InterruptedException | ExecutionException e) {
+                            throw new RuntimeException("Unable to fetch the health of the target group " + attachedTargetGroups.get(i).getTargetGroupArn(), e);
+                        }
+                        for(String curArn: attachedTargetGroups.get(i).getLoadBalancerArns()){
+                            if(!mapperLoadBalancerToIndex.containsKey(curArn))
+                                continue;
+                            Integer index = mapperLoadBalancerToIndex.get(curArn);
+                            elasticLoadBalancersData.get(index).setTargetsInfo(targetsInfo[0], targetsInfo[1]);
+                            pageItems.add(new int[]{index, targetsInfo[0], targetsInfo[1]});
+                        }
+                    }
+                    checkpoint(regionName, "target-groups", page, pageItems, describeResults.getNextMarker(), true);
+                    page += 1;
+
+                    if(describeResults.getNextMarker() == null || describeResults.getNextMarker().equals(""))
+                        break;
+                    describeResults = rateController.call(region.id(), "DescribeTargetGroups", elbc::describeTargetGroups, new DescribeTargetGroupsRequest().withMarker(describeResults.getNextMarker()));
                 }
-                totalHealthyTargets = totalTargets - totalUnHealthyTargets;
-                for(String curArn: targetGroup.getLoadBalancerArns()){
-                    if(!mapperLoadBalancerToIndex.containsKey(curArn))
-                        continue;
-                    Integer index = mapperLoadBalancerToIndex.get(curArn);
-                    elasticLoadBalancersData.get(index).setTargetsInfo(totalTargets, totalHealthyTargets);
+            } finally {
+                pool.shutdownNow();
+                try {
+                    targetHealthCache.save();
+                } catch (IOException e) {
+                    e.printStackTrace();
                 }
             }
-            if(describeResults.getNextMarker() == null || describeResults.getNextMarker().equals(""))
-                break;
-            describeResults = elbc.describeTargetGroups(new DescribeTargetGroupsRequest().withMarker(describeResults.getNextMarker()));
         }
 
         if(DEBUG){
@@ -1278,6 +1840,35 @@ class AWSCostOptimizerAndReportGenerator implements AwsCredentialsProvider {
         }
     }
 
+    /**
+     * Method to fetch the number of targets of a target group and the number of them which are healthy. The result is
+     * cached by the arn of the target group for TARGET_HEALTH_CACHE_TTL_MINUTES, so a group is not fetched again by the
+     * runs made within that time.
+     *
+     * @param region         the region of the target group
+     * @param elbc           the Elastic load Balancing Client to be used
+     * @param targetGroupArn the arn of the target group
+     * @return {total targets, healthy targets}
+     */
+    private int[] getTargetsInfo(Region region, AmazonElasticLoadBalancing elbc, String targetGroupArn) {
+        int[] cached = targetHealthCache.get(targetGroupArn);
+        if (cached != null)
+            return cached;
+
+        int totalTargets = 0;
+        int totalUnHealthyTargets = 0;
+        DescribeTargetHealthResult targetGroupHeath = rateController.call(region.id(), "DescribeTargetHealth", elbc::describeTargetHealth, new DescribeTargetHealthRequest().withTargetGroupArn(targetGroupArn));
+        for(TargetHealthDescription targetDescription : targetGroupHeath.getTargetHealthDescriptions()){
+            if(targetDescription.getTarget().getId()!=null)
+                totalTargets += 1;
+            if(!targetDescription.getTargetHealth().getState().equals("healthy"))
+                totalUnHealthyTargets += 1;
+        }
+        int[] targetsInfo = new int[]{totalTargets, totalTargets - totalUnHealthyTargets};
+        targetHealthCache.put(targetGroupArn, targetsInfo);
+        return targetsInfo;
+    }
+
     /**
      * Method to retrieve the cloudwatch metrics related to the S3 Bucket in loop. We first create a cloudwatch client
      * and then use it to make get metric data requests by specifying appropriate dimension.
@@ -1295,7 +1886,7 @@ class AWSCostOptimizerAndReportGenerator implements AwsCredentialsProvider {
          * */
 
         String namespace = "AWS/S3";
-        CloudWatchClient cw = CloudWatchClient.builder().credentialsProvider(this).region(curRegion).build();
+        CloudWatchClient cw = clients.cloudWatch(curRegion);
         /*
          * NumberOfObjects
          * For Number of Objects, provide storage type as AllStorageTypes
@@ -1322,7 +1913,7 @@ class AWSCostOptimizerAndReportGenerator implements AwsCredentialsProvider {
 
         Instant endInstant = Instant.now();
         Instant startInstant = Instant.ofEpochSecond(endInstant.getEpochSecond() - (long) days * 24 * 3600);
-        GetMetricDataResponse res = cw.getMetricData(GetMetricDataRequest.builder().startTime(startInstant).endTime(endInstant).metricDataQueries(queries).build());
+        GetMetricDataResponse res = getMetricData(curRegion, cw, GetMetricDataRequest.builder().startTime(startInstant).endTime(endInstant).metricDataQueries(queries).build());
 
         List<MetricDataResult> queryResults = res.metricDataResults();
 
@@ -1333,7 +1924,6 @@ class AWSCostOptimizerAndReportGenerator implements AwsCredentialsProvider {
                 currentBucket.setAverageBucketSizeBytes(StatisticRecord.listGenerator(current.timestamps(), current.values()));
             }
         }
-        cw.close();
     }
 
     /**
@@ -1345,7 +1935,7 @@ class AWSCostOptimizerAndReportGenerator implements AwsCredentialsProvider {
      * @param days    The number of days of data which we have to retrieve from cloudwatch
      * @param cw      The cloudwatch client object
      */
-    private void s3GetMetrics(ArrayList<MetricDataQuery> queries, int days, CloudWatchClient cw) {
+    private void s3GetMetrics(ArrayList<MetricDataQuery> queries, int days, Region region, CloudWatchClient cw) {
         if(DEBUG){
             System.out.println("Fetching data of a batch of S3 buckets from cloudwatch");
         }
@@ -1355,7 +1945,7 @@ class AWSCostOptimizerAndReportGenerator implements AwsCredentialsProvider {
 
         /*
          * Making the API call*/
-        GetMetricDataResponse res = cw.getMetricData(GetMetricDataRequest.builder().startTime(startInstant).endTime(endInstant).metricDataQueries(queries).build());
+        GetMetricDataResponse res = getMetricData(region, cw, GetMetricDataRequest.builder().startTime(startInstant).endTime(endInstant).metricDataQueries(queries).build());
         String prevToken = null;
 
         while (true) {
@@ -1387,7 +1977,7 @@ class AWSCostOptimizerAndReportGenerator implements AwsCredentialsProvider {
             if (res.nextToken() == null || res.nextToken().equals("") || res.nextToken().equals(prevToken) || allEmpty)
                 break;
             prevToken = res.nextToken();
-            res = cw.getMetricData(GetMetricDataRequest.builder().startTime(startInstant).endTime(endInstant).metricDataQueries(queries).nextToken(res.nextToken()).build());
+            res = getMetricData(region, cw, GetMetricDataRequest.builder().startTime(startInstant).endTime(endInstant).metricDataQueries(queries).nextToken(res.nextToken()).build());
         }
 
         if(DEBUG){
@@ -1469,6 +2059,42 @@ class AWSCostOptimizerAndReportGenerator implements AwsCredentialsProvider {
                 );
     }
 
+    /**
+     * Method to fetch the region in which a S3 bucket is located
+     *
+     * @param s3c        the s3 client to be used
+     * @param bucketName the name of the bucket in context
+     * @return the id of the region of the bucket
+     */
+    private String getBucketLocation(AmazonS3 s3c, String bucketName) {
+        String location = rateController.call("global", "GetBucketLocation", s3c::getBucketLocation, new GetBucketLocationRequest(bucketName));
+
+        /*
+         * HardCode for "US" output
+         * On studying the Output I found that each of the other regions were coming out to be correct but fot us-east-1 it gives US as output.
+         * I tried to go into the reasons of it but could not find one.
+         * */
+        if (location.equals("US")) {
+            location = "us-east-1";
+        }
+        return location;
+    }
+
+    /**
+     * Method to return the region of an S3 client, the location of the buckets of which GetBucketLocation fails
+     *
+     * @param s3c the s3 client in context
+     * @return the id of the region of the client, us-east-1 if it can not be found
+     */
+    private String clientRegion(AmazonS3 s3c) {
+        try {
+            String region = s3c.getRegionName();
+            return region == null || region.isEmpty() || region.equals("US") ? "us-east-1" : region;
+        } catch (Exception e) {
+            return "us-east-1";
+        }
+    }
+
     /**
      * Method to retrieve the basic information of the S3 buckets present in our AWS
      * account. There is no region dependency for S3 buckets that is information of
@@ -1513,120 +2139,243 @@ class AWSCostOptimizerAndReportGenerator implements AwsCredentialsProvider {
         }
 
 
-        for (Bucket bucket : s3c.listBuckets()) {
-            /*
-             * We need location information of each bucket to get the cloudwatch metrics for that bucket.
-             * */
-
-
-            GetBucketLocationRequest rqst = new GetBucketLocationRequest(bucket.getName());
-            String location = s3c.getBucketLocation(rqst);
-
-
-            /*
-             * HardCode for "US" output
-             * On studying the Output I found that each of the other regions were coming out to be correct but fot us-east-1 it gives US as output.
-             * I tried to go into the reasons of it but could not find one.
-             * */
+        String description = "S3 metrics";
+        boolean metricsComplete = true;
 
+        /*
+         * Restoring the buckets from the journal if the run is being resumed. Buckets are checkpointed only once all
+         * of them are collected, as listing them is a single call. If a metric batch had failed then the metrics of
+         * the buckets are fetched again.
+         * */
+        ArrayList<CollectionJournal.Page<S3BucketData>> savedPages = journal.restorePages("global", "s3-buckets");
+        if (!savedPages.isEmpty()) {
+            for (S3BucketData currentBucket : savedPages.get(0).getItems()) {
+                if (!savedPages.get(0).isMetricsComplete() && SAVETIME) {
+                    Region curRegion = Region.of(currentBucket.getLocation());
+                    if (!mapperRegionCwClient.containsKey(curRegion)) {
+                        CloudWatchClient cloudWatchClient = clients.cloudWatch(curRegion);
+                        mapperRegionCwClient.put(curRegion, cloudWatchClient);
+                        mapperRegionQueries.put(curRegion, new ArrayList<>());
+                    }
+                    queries = mapperRegionQueries.get(curRegion);
+                    CloudWatchClient cw = mapperRegionCwClient.get(curRegion);
+                    s3AttachMetrics(currentBucket, queries, hours, s3bucketsData.size());
+                    s3bucketsData.add(currentBucket);
 
-            if (location.equals("US")) {
-                location = "us-east-1";
+                    if (queries.size() == (numberBucketsClub * metricsPerBucket)) {
+                        metricsComplete &= flushMetricBatch(description, queries, batch -> s3GetMetrics(batch, days, curRegion, cw));
+                    }
+                } else {
+                    s3bucketsData.add(currentBucket);
+                }
             }
-
-//            ObjectListing objects = s3c.listObjects(bucket.getName());
+        } else {
             /*
-             * Using builder to build the object. All the information provided below
-             * while creating the object is necessary
+             * We need location information of each bucket to get the cloudwatch metrics for that bucket. The location
+             * of a bucket never changes, so only the buckets which are not in the cache are resolved, in parallel. A
+             * bucket is added (and its queries are enqueued in the batch of its region) as soon as its location is known
              * */
-            try {
-                S3BucketData currentBucket = new S3BucketData
-                        .S3BucketDataBuilder(bucket.getName())
-                        .withOwner(bucket.getOwner().getDisplayName(), bucket.getOwner().getId())
-                        .withLocation(location)
-//                        .withNumberOfObjects(objects.getObjectSummaries().size())
-                        .withNumberOfObjects(0)
-                        .build();
-
-
-                Region curRegion = Region.of(location);
-                if (!mapperRegionCwClient.containsKey(curRegion)) {
-                    CloudWatchClient cloudWatchClient = CloudWatchClient.builder().credentialsProvider(this).region(curRegion).build();
-                    mapperRegionCwClient.put(curRegion, cloudWatchClient);
-                    mapperRegionQueries.put(curRegion, new ArrayList<>());
-                }
-                queries = mapperRegionQueries.get(curRegion);
-                CloudWatchClient cw = mapperRegionCwClient.get(curRegion);
-                if (!SAVETIME) {
-                    getCloudWatchMetricsS3(currentBucket, days, hours, curRegion);
+            List<Bucket> buckets = rateController.call("global", "ListBuckets", () -> s3c.listBuckets());
+            HashSet<String> bucketNames = new HashSet<>();
+            for (Bucket bucket : buckets)
+                bucketNames.add(bucket.getName());
+            bucketLocationCache.retainKeys(bucketNames);
+
+            ExecutorService pool = Executors.newFixedThreadPool(BUCKET_LOCATION_THREADS);
+            ExecutorCompletionService<Map.Entry<Bucket, String>> resolved = new ExecutorCompletionService<>(pool);
+            ArrayList<Map.Entry<Bucket, String>> cachedLocations = new ArrayList<>();
+            int pending = 0;
+            for (Bucket bucket : buckets) {
+                String location = bucketLocationCache.get(bucket.getName());
+                if (location != null) {
+                    cachedLocations.add(new AbstractMap.SimpleEntry<>(bucket, location));
                 } else {
-                    s3AttachMetrics(currentBucket, queries, hours, s3bucketsData.size());
+                    resolved.submit(() -> {
+                        try {
+                            return new AbstractMap.SimpleEntry<>(bucket, getBucketLocation(s3c, bucket.getName()));
+                        } catch (Exception e) {
+                            e.printStackTrace();
+                            return new AbstractMap.SimpleEntry<>(bucket, null); // Resolved to the region of the client below
+                        }
+                    });
+                    pending += 1;
                 }
+            }
+
+            try {
+                for (int i = 0; i < cachedLocations.size() + pending; i++) {
+                    Bucket bucket;
+                    String location;
+                    if (i < cachedLocations.size()) {
+                        bucket = cachedLocations.get(i).getKey();
+                        location = cachedLocations.get(i).getValue();
+                    } else {
+                        try {
+                            Map.Entry<Bucket, String> bucketLocation = resolved.take().get();
+                            bucket = bucketLocation.getKey();
+                            location = bucketLocation.getValue();
+                        } catch (ExecutionException e) {
+                            e.getCause().printStackTrace();
+                            continue;
+                        } catch (InterruptedException e) {
+                            throw new RuntimeException("Interrupted while resolving the locations of the buckets", e);
+                        }
+                        if (location == null) {
+                            location = clientRegion(s3c);
+                            System.out.println("Could not get the location of the bucket " + bucket.getName() + ", it is assumed to be in " + location + ", the region of the client");
+                        } else {
+                            bucketLocationCache.put(bucket.getName(), location);
+                        }
+                    }
 
+                    try {
+                        S3BucketData currentBucket = new S3BucketData
+                                .S3BucketDataBuilder(bucket.getName())
+                                .withOwner(bucket.getOwner().getDisplayName(), bucket.getOwner().getId())
+                                .withLocation(location)
+    //                            .withNumberOfObjects(objects.getObjectSummaries().size())
+                                .withNumberOfObjects(0)
+                                .build();
+
+
+                        Region curRegion = Region.of(location);
+                        if (!mapperRegionCwClient.containsKey(curRegion)) {
+                            CloudWatchClient cloudWatchClient = clients.cloudWatch(curRegion);
+                            mapperRegionCwClient.put(curRegion, cloudWatchClient);
+                            mapperRegionQueries.put(curRegion, new ArrayList<>());
+                        }
+                        queries = mapperRegionQueries.get(curRegion);
+                        CloudWatchClient cw = mapperRegionCwClient.get(curRegion);
+                        if (!SAVETIME) {
+                            getCloudWatchMetricsS3(currentBucket, days, hours, curRegion);
+                        } else {
+                            s3AttachMetrics(currentBucket, queries, hours, s3bucketsData.size());
+                        }
 
-                /*
-                 * Files stored in S3 are referred to as Objects
-                 * */
 
-//                if (objects.getObjectSummaries().size() != 0) {
-//                    /*
-//                     * Storing metadata of the objects/files stored in S3 bucket in form of
-//                     * a collection in the associated bucket
-//                     * */
-//                    Instant maxInstant = null;
-//                    while (true) {
-//                        for (S3ObjectSummary summary : objects.getObjectSummaries()) {
-//                            currentBucket.addObject(summary.getKey(), summary.getStorageClass(), summary.getLastModified(), summary.getSize());
-//                            Instant curInstant = summary.getLastModified().toInstant();
-//                            if (maxInstant == null) {
-//                                maxInstant = curInstant;
-//                            } else {
-//                                if (curInstant.isAfter(maxInstant)) {
-//                                    maxInstant = curInstant;
-//                                }
-//                            }
-//                        }
-//                        if (objects.isTruncated()) {
-//                            objects = s3c.listNextBatchOfObjects(objects);
-//                            currentBucket.addInNumberOfObjects(objects.getObjectSummaries().size());
-//                        } else {
-//                            break;
-//                        }
-//                    }
-//                    currentBucket.setLastModifiedDate(maxInstant);
-//                }
-//                if(ADD_S3_DATA_TO_ELASTIC_SEARCH) {
-//                    IndexResponse response;
-//                    try {
-//                        response = currentBucket.pushToElasticSearch(esClient, indexName);
-//                        if (DEBUG) {
-//                            System.out.println("Index Insert Response" + response);
-//                        }
-//                    } catch (Exception e) {
-//                        e.printStackTrace();
-//                    }
-//                }
-                s3bucketsData.add(currentBucket);
-
-
-                if (queries.size() == (numberBucketsClub * metricsPerBucket)) {
-                    s3GetMetrics(queries, days, cw);
-                    queries.clear();
-                }
+                        /*
+                         * Files stored in S3 are referred to as Objects
+                         * */
+
+    //                    if (objects.getObjectSummaries().size() != 0) {
+    //                        /*
+    //                         * Storing metadata of the objects/files stored in S3 bucket in form of
+    //                         * a collection in the associated bucket
+    //                         * */
+    //                        Instant maxInstant = null;
+    //                        while (true) {
+    //                            for (S3ObjectSummary summary : objects.getObjectSummaries()) {
+    //                                currentBucket.addObject(summary.getKey(), summary.getStorageClass(), summary.getLastModified(), summary.getSize());
+    //                                Instant curInstant = summary.getLastModified().toInstant();
+    //                                if (maxInstant == null) {
+    //                                    maxInstant = curInstant;
+    //                                } else {
+    //                                    if (curInstant.isAfter(maxInstant)) {
+    //                                        maxInstant = curInstant;
+    //                                    }
+    //                                }
+    //                            }
+    //                            if (objects.isTruncated()) {
+    //                                objects = s3c.listNextBatchOfObjects(objects);
+    //                                currentBucket.addInNumberOfObjects(objects.getObjectSummaries().size());
+    //                            } else {
+    //                                break;
+    //                            }
+    //                        }
+    //                        currentBucket.setLastModifiedDate(maxInstant);
+    //                    }
+    //                    if(ADD_S3_DATA_TO_ELASTIC_SEARCH) {
+    //                        IndexResponse response;
+    //                        try {
+    //                            response = currentBucket.pushToElasticSearch(esClient, indexName);
+    //                            if (DEBUG) {
+    //                                System.out.println("Index Insert Response" + response);
+    //                            }
+    //                        } catch (Exception e) {
+    //                            e.printStackTrace();
+    //                        }
+    //                    }
+                        s3bucketsData.add(currentBucket);
+
+
+                        if (queries.size() == (numberBucketsClub * metricsPerBucket)) {
+                            metricsComplete &= flushMetricBatch(description, queries, batch -> s3GetMetrics(batch, days, curRegion, cw));
+                        }
 
-            } catch (Exception e) {
-                e.printStackTrace();
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                }
+            } finally {
+                pool.shutdownNow();
+                try {
+                    bucketLocationCache.save();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
             }
+            if (DEBUG)
+                System.out.println("Bucket locations cache: " + bucketLocationCache.getStatistics());
         }
 
         for (Map.Entry<Region, ArrayList<MetricDataQuery>> entry : mapperRegionQueries.entrySet()) {
-            queries = entry.getValue();
-            if (queries.size() != 0) {
-                s3GetMetrics(queries, days, mapperRegionCwClient.get(entry.getKey()));
-                queries.clear();
+            Region region = entry.getKey();
+            CloudWatchClient cw = mapperRegionCwClient.get(region);
+            metricsComplete &= flushMetricBatch(description, entry.getValue(), batch -> s3GetMetrics(batch, days, region, cw));
+        }
+
+        if (savedPages.isEmpty() && (LIST_S3_OBJECTS || !S3_INVENTORY_DIRECTORY.isEmpty())) {
+            /*
+             * Objects/files of every bucket, for the "S3" sheet. The buckets having an S3 Inventory report are read
+             * from it, the buckets having more than S3_SAMPLING_MIN_OBJECTS objects (as per cloudwatch, so this is
+             * done once the metrics are fetched) are sampled and the rest are listed. Buckets which could not be
+             * read/listed completely are still reported, with whatever objects were found
+             * */
+            S3InventoryReader inventoryReader = null;
+            if (!S3_INVENTORY_DIRECTORY.isEmpty()) {
+                try {
+                    inventoryReader = new S3InventoryReader(S3_INVENTORY_DIRECTORY, S3_INVENTORY_READER_THREADS);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+            LinkedHashMap<S3BucketData, S3ObjectConsumer> consumers = new LinkedHashMap<>();
+            ArrayList<S3BucketData> sampledBuckets = new ArrayList<>();
+            for (S3BucketData bucket : s3bucketsData) {
+                if (S3_TOP_COLD_OBJECTS > 0)
+                    bucket.trackColdObjects(S3_OBJECTS_THRESHOLD_DAYS, S3_TOP_COLD_OBJECTS, S3_KEEP_ALL_OBJECTS);
+                bucket.trackPrefixes(S3_OBJECTS_THRESHOLD_DAYS, S3_PREFIX_DEPTH, S3_PREFIX_FAN_OUT, S3_PREFIX_MAX_NODES);
+                if (inventoryReader != null && inventoryReader.hasInventory(bucket.getName())) {
+                    try {
+                        inventoryReader.read(bucket.getName(), bucket);
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                } else if (LIST_S3_OBJECTS && S3_SAMPLING_MIN_OBJECTS > 0 && bucket.getNumberOfObjects() >= S3_SAMPLING_MIN_OBJECTS) {
+                    sampledBuckets.add(bucket);
+                } else if (LIST_S3_OBJECTS) {
+                    consumers.put(bucket, bucket);
+                }
+            }
+            if (!sampledBuckets.isEmpty()) {
+                new S3ObjectSampler(clients, rateController, S3_SAMPLING_TARGET_RELATIVE_ERROR, S3_SAMPLING_MAX_REQUESTS, S3_SAMPLING_MAX_SECONDS, S3_SAMPLING_THREADS)
+                        .sampleAll(sampledBuckets, S3_OBJECTS_THRESHOLD_DAYS);
+                if (DEBUG) {
+                    for (S3BucketData bucket : sampledBuckets)
+                        System.out.println("Estimated old objects of " + bucket.getName() + ": " + bucket.getColdObjectsEstimate());
+                }
+            }
+            Set<String> failedBuckets = new S3ObjectLister(clients, rateController, S3_LISTING_THREADS).listAll(consumers);
+            if (DEBUG) {
+                System.out.println("Objects of the buckets listed");
+                if (!failedBuckets.isEmpty())
+                    System.out.println("Buckets listed partially: " + failedBuckets);
             }
         }
 
+        if (savedPages.isEmpty())
+            checkpoint("global", "s3-buckets", 0, s3bucketsData, null, metricsComplete);
+
         if(ADD_S3_DATA_TO_ELASTIC_SEARCH){
             for(S3BucketData bucket : s3bucketsData) {
                 IndexResponse response;
@@ -1660,7 +2409,7 @@ class AWSCostOptimizerAndReportGenerator implements AwsCredentialsProvider {
         /*
          * Namespace for EBS AWS*/
         String namespace = "AWS/EBS";
-        CloudWatchClient cw = CloudWatchClient.builder().credentialsProvider(this).region(REGION).build();
+        CloudWatchClient cw = clients.cloudWatch(REGION);
 
         /*
          * We need to pass the volume id of the volume for which we want the data. So
@@ -1680,7 +2429,7 @@ class AWSCostOptimizerAndReportGenerator implements AwsCredentialsProvider {
 
         /*
          * Making the API call*/
-        GetMetricDataResponse res = cw.getMetricData(GetMetricDataRequest.builder().startTime(startInstant).endTime(endInstant).metricDataQueries(queries).build());
+        GetMetricDataResponse res = getMetricData(REGION, cw, GetMetricDataRequest.builder().startTime(startInstant).endTime(endInstant).metricDataQueries(queries).build());
         List<MetricDataResult> queryResults = res.metricDataResults();
 
         /*
@@ -1693,7 +2442,6 @@ class AWSCostOptimizerAndReportGenerator implements AwsCredentialsProvider {
             }
         }
         currentVolume.setStatHours(hours);
-        cw.close();
     }
 
     /**
@@ -1705,7 +2453,7 @@ class AWSCostOptimizerAndReportGenerator implements AwsCredentialsProvider {
      * @param days    The number of days of data which we have to retrieve from cloudwatch
      * @param cw      The cloudwatch client object
      */
-    private void ebsGetMetrics(ArrayList<MetricDataQuery> queries, int days, CloudWatchClient cw) {
+    private void ebsGetMetrics(ArrayList<MetricDataQuery> queries, int days, Region region, CloudWatchClient cw) {
         if(DEBUG){
             System.out.println("Fetching data of a batch of EBS Volumes from cloudwatch");
         }
@@ -1715,7 +2463,7 @@ class AWSCostOptimizerAndReportGenerator implements AwsCredentialsProvider {
 
         /*
          * Making the API call*/
-        GetMetricDataResponse res = cw.getMetricData(GetMetricDataRequest.builder().startTime(startInstant).endTime(endInstant).metricDataQueries(queries).build());
+        GetMetricDataResponse res = getMetricData(region, cw, GetMetricDataRequest.builder().startTime(startInstant).endTime(endInstant).metricDataQueries(queries).build());
         String prevToken = null;
 
         while (true) {
@@ -1747,7 +2495,7 @@ class AWSCostOptimizerAndReportGenerator implements AwsCredentialsProvider {
             if (res.nextToken() == null || res.nextToken().equals("") || res.nextToken().equals(prevToken) || allEmpty)
                 break;
             prevToken = res.nextToken();
-            res = cw.getMetricData(GetMetricDataRequest.builder().startTime(startInstant).endTime(endInstant).metricDataQueries(queries).nextToken(res.nextToken()).build());
+            res = getMetricData(region, cw, GetMetricDataRequest.builder().startTime(startInstant).endTime(endInstant).metricDataQueries(queries).nextToken(res.nextToken()).build());
         }
 
         if(DEBUG){
@@ -1804,46 +2552,73 @@ class AWSCostOptimizerAndReportGenerator implements AwsCredentialsProvider {
         int numberClubVolumes = 240; // max value can be 249
         int metricsPerVolume = 2;
 //        AmazonEC2 client = AmazonEC2Client.builder().withCredentials(CREDENTIALS).withRegion(region.toString()).build();
-        DescribeVolumesResult result = client.describeVolumes(new DescribeVolumesRequest().withMaxResults(500));
+        String regionName = region.toString();
+        String description = "EBS metrics of " + regionName;
         ArrayList<MetricDataQuery> queries = new ArrayList<>();
 //        CloudWatchClient cw = CloudWatchClient.builder().credentialsProvider(this).region(REGION).build();
-        while (true) {
-            for (Volume volume : result.getVolumes()) {
-                try {
-                    EbsVolumeData currentVolume = new EbsVolumeData.EbsVolumeDataBuilder(volume.getVolumeId(), volume.getState(), volume.getCreateTime(), volume.getSize())
-                            .withAvailabilityZone(volume.getAvailabilityZone())
-                            .withMultiAttachStatus(volume.getMultiAttachEnabled())
-                            .withSnapshotId(volume.getSnapshotId())
-                            .withIops(volume.getIops())
-                            .build();
-                    currentVolume.setAttachments(volume.getAttachments());
 
-                    /*
-                     * Fetching data from cloudwatch
-                     * */
-                    if (!SAVETIME) {
-                        getCloudWatchDataEbsVolumes(currentVolume, days, hours);
-                    } else {
-                        ebsAttachMetrics(currentVolume, queries, hours, ebsVolumesData.size());
-                    }
-                    currentVolume.setRegion(region);
-                    ebsVolumesData.add(currentVolume);
+        /*
+         * Restoring the already collected pages of volumes from the journal. If a metric batch of a page had failed
+         * then the metrics of its volumes are fetched again.
+         * */
+        int page = 0;
+        String nextToken = null;
+        for (CollectionJournal.Page<EbsVolumeData> savedPage : journal.<EbsVolumeData>restorePages(regionName, "ebs-volumes")) {
+            for (EbsVolumeData currentVolume : savedPage.getItems()) {
+                if (!savedPage.isMetricsComplete() && SAVETIME)
+                    ebsAttachMetrics(currentVolume, queries, hours, ebsVolumesData.size());
+                ebsVolumesData.add(currentVolume);
+
+                if (queries.size() == (numberClubVolumes * metricsPerVolume))
+                    flushMetricBatch(description, queries, batch -> ebsGetMetrics(batch, days, region, cw));
+            }
+            nextToken = savedPage.getNextToken();
+            page += 1;
+        }
+        flushMetricBatch(description, queries, batch -> ebsGetMetrics(batch, days, region, cw));
 
-                    if (queries.size() == (numberClubVolumes * metricsPerVolume)) {
-                        ebsGetMetrics(queries, days, cw);
-                        queries.clear();
+        if (page == 0 || nextToken != null) {
+            DescribeVolumesResult result = rateController.call(region.id(), "DescribeVolumes", client::describeVolumes, filters.describeVolumes(nextToken, 500));
+            while (true) {
+                ArrayList<EbsVolumeData> pageItems = new ArrayList<>();
+                boolean metricsComplete = true;
+                for (Volume volume : result.getVolumes()) {
+                    try {
+                        EbsVolumeData currentVolume = new EbsVolumeData.EbsVolumeDataBuilder(volume.getVolumeId(), volume.getState(), volume.getCreateTime(), volume.getSize())
+                                .withAvailabilityZone(volume.getAvailabilityZone())
+                                .withMultiAttachStatus(volume.getMultiAttachEnabled())
+                                .withSnapshotId(volume.getSnapshotId())
+                                .withIops(volume.getIops())
+                                .build();
+                        currentVolume.setAttachments(volume.getAttachments());
+
+                        /*
+                         * Fetching data from cloudwatch
+                         * */
+                        if (!SAVETIME) {
+                            getCloudWatchDataEbsVolumes(currentVolume, days, hours);
+                        } else {
+                            ebsAttachMetrics(currentVolume, queries, hours, ebsVolumesData.size());
+                        }
+                        currentVolume.setRegion(region);
+                        ebsVolumesData.add(currentVolume);
+                        pageItems.add(currentVolume);
+
+                        if (queries.size() == (numberClubVolumes * metricsPerVolume)) {
+                            metricsComplete &= flushMetricBatch(description, queries, batch -> ebsGetMetrics(batch, days, region, cw));
+                        }
+                    } catch (Exception e) {
+                        e.printStackTrace();
                     }
-                } catch (Exception e) {
-                    e.printStackTrace();
                 }
+                metricsComplete &= flushMetricBatch(description, queries, batch -> ebsGetMetrics(batch, days, region, cw));
+                checkpoint(regionName, "ebs-volumes", page, pageItems, result.getNextToken(), metricsComplete);
+                page += 1;
+
+                if (result.getNextToken() == null || result.getNextToken().equals(""))
+                    break;
+                result = rateController.call(region.id(), "DescribeVolumes", client::describeVolumes, filters.describeVolumes(result.getNextToken(), 500));
             }
-            if (result.getNextToken() == null || result.getNextToken().equals(""))
-                break;
-            result = client.describeVolumes(new DescribeVolumesRequest().withMaxResults(500).withNextToken(result.getNextToken()));
-        }
-        if (queries.size() != 0) {
-            ebsGetMetrics(queries, days, cw);
-            queries.clear();
         }
 
         if(DEBUG){
@@ -1867,24 +2642,32 @@ class AWSCostOptimizerAndReportGenerator implements AwsCredentialsProvider {
         }
 
 //        AmazonEC2 client = AmazonEC2Client.builder().withCredentials(CREDENTIALS).withRegion(region.toString()).build();
-        DescribeAddressesResult addressesResult = client.describeAddresses();
+        ArrayList<CollectionJournal.Page<ElasticIpData>> savedPages = journal.restorePages(region.toString(), "elastic-ips");
+        if (!savedPages.isEmpty()) {
+            elasticIpsData.addAll(savedPages.get(0).getItems());
+        } else {
+            ArrayList<ElasticIpData> pageItems = new ArrayList<>();
+            DescribeAddressesResult addressesResult = rateController.call(region.id(), "DescribeAddresses", () -> client.describeAddresses());
 
-        for (Address address : addressesResult.getAddresses()) {
-            /*
-             * All the below provided information using chaining of methods of the
-             * inner builder class is necessary to provide
-             * */
-            try {
-                ElasticIpData currentIp = new ElasticIpData.ElasticIpDataBuilder(address.getPublicIp(), address.getAllocationId(), address.getPublicIpv4Pool())
-                        .withInstanceId(address.getInstanceId())
-                        .withPrivateIp(address.getPrivateIpAddress())
-                        .withAssociationId(address.getAssociationId())
-                        .build();
-                currentIp.setRegion(region);
-                elasticIpsData.add(currentIp);
-            } catch (Exception e) {
-                e.printStackTrace();
+            for (Address address : addressesResult.getAddresses()) {
+                /*
+                 * All the below provided information using chaining of methods of the
+                 * inner builder class is necessary to provide
+                 * */
+                try {
+                    ElasticIpData currentIp = new ElasticIpData.ElasticIpDataBuilder(address.getPublicIp(), address.getAllocationId(), address.getPublicIpv4Pool())
+                            .withInstanceId(address.getInstanceId())
+                            .withPrivateIp(address.getPrivateIpAddress())
+                            .withAssociationId(address.getAssociationId())
+                            .build();
+                    currentIp.setRegion(region);
+                    elasticIpsData.add(currentIp);
+                    pageItems.add(currentIp);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
             }
+            checkpoint(region.toString(), "elastic-ips", 0, pageItems, null, true);
         }
 
         if(DEBUG){
@@ -1911,62 +2694,85 @@ class AWSCostOptimizerAndReportGenerator implements AwsCredentialsProvider {
          * */
 //        AWSBackup client = AWSBackupClient.builder().withCredentials(CREDENTIALS).withRegion(region.toString()).build();
 
+        String regionName = region.toString();
+
         /*
-         * Listing the vaults present in our account
+         * Restoring the already collected pages of vaults from the journal
          * */
-        ListBackupVaultsResult response = client.listBackupVaults(new ListBackupVaultsRequest());
-        while (true) {
-            for (BackupVaultListMember vault : response.getBackupVaultList()) {
-                /*
-                 * Creating the vault object to store vault information. The information which is provided
-                 * below is necessary to provide. I have used builder to build the object and have used further
-                 * chaining of the methods to provide the other necessary information
-                 * */
-                try {
-                    BackupVaultData currentVault = new BackupVaultData.BackupVaultDataBuilder(vault.getBackupVaultName(), vault.getBackupVaultArn())
-                            .withCreationDate(vault.getCreationDate())
-                            .withRetentionDays(vault.getMinRetentionDays(), vault.getMaxRetentionDays())
-                            .withNumberOfRecoveryPoints(vault.getNumberOfRecoveryPoints())
-                            .build();
-                    currentVault.setRegion(region);
+        int page = 0;
+        String nextToken = null;
+        for (CollectionJournal.Page<BackupData> savedPage : journal.<BackupData>restorePages(regionName, "backups")) {
+            backupsData.addAll(savedPage.getItems());
+            nextToken = savedPage.getNextToken();
+            page += 1;
+        }
+
+        if (page == 0 || nextToken != null) {
+            /*
+             * Listing the vaults present in our account
+             * */
+            ListBackupVaultsResult response = rateController.call(region.id(), "ListBackupVaults", client::listBackupVaults, new ListBackupVaultsRequest().withNextToken(nextToken));
+            while (true) {
+                ArrayList<BackupData> pageItems = new ArrayList<>();
+                for (BackupVaultListMember vault : response.getBackupVaultList()) {
                     /*
-                     * Listing recovery points/backups/snapshots for the backup vault in context
+                     * Creating the vault object to store vault information. The information which is provided
+                     * below is necessary to provide. I have used builder to build the object and have used further
+                     * chaining of the methods to provide the other necessary information
                      * */
-                    ListRecoveryPointsByBackupVaultResult result = client.listRecoveryPointsByBackupVault(new ListRecoveryPointsByBackupVaultRequest().withBackupVaultName(vault.getBackupVaultName()));
-                    while (true) {
-                        for (RecoveryPointByBackupVault recoveryPoint : result.getRecoveryPoints()) {
-                            /*
-                             * Creating the BackupData object with the necessary information. The below provided information
-                             * is necessary to provide. I have used builder to build the object and have chained methods to
-                             * provide other necessary information.
-                             * */
-                            BackupData currentRecoveryPoint = new BackupData.BackupDataBuilder(currentVault, recoveryPoint.getBackupVaultArn())
-                                    .withCreationDate(recoveryPoint.getCreationDate())
-                                    .withCompletionDate(recoveryPoint.getCompletionDate())
-                                    .withBackupSize(recoveryPoint.getBackupSizeInBytes())
-                                    .withStatus(recoveryPoint.getStatus())
-                                    .withResourceType(recoveryPoint.getResourceType())
-                                    .withLastRestoreTime(recoveryPoint.getLastRestoreTime())
-                                    .withMoveToColdStorageInfo(recoveryPoint.getCalculatedLifecycle().getMoveToColdStorageAt(), recoveryPoint.getLifecycle().getMoveToColdStorageAfterDays())
-                                    .withDeleteInfo(recoveryPoint.getCalculatedLifecycle().getDeleteAt(), recoveryPoint.getLifecycle().getDeleteAfterDays())
-                                    .build();
-                            currentRecoveryPoint.setRegion(region);
-                            backupsData.add(currentRecoveryPoint);
-                        }
-                        if (result.getNextToken() == null || result.getNextToken().equals("")) {
-                            break;
-                        } else {
-                            result = client.listRecoveryPointsByBackupVault(new ListRecoveryPointsByBackupVaultRequest().withBackupVaultName(vault.getBackupVaultName()).withNextToken(result.getNextToken()));
+                    try {
+                        BackupVaultData currentVault = new BackupVaultData.BackupVaultDataBuilder(vault.getBackupVaultName(), vault.getBackupVaultArn())
+                                .withCreationDate(vault.getCreationDate())
+                                .withRetentionDays(vault.getMinRetentionDays(), vault.getMaxRetentionDays())
+                                .withNumberOfRecoveryPoints(vault.getNumberOfRecoveryPoints())
+                                .build();
+                        currentVault.setRegion(region);
+                        /*
+                         * Listing recovery points/backups/snapshots for the backup vault in context
+                         * */
+                        ListRecoveryPointsByBackupVaultResult result = rateController.call(region.id(), "ListRecoveryPointsByBackupVault", client::listRecoveryPointsByBackupVault, filters.listRecoveryPoints(vault.getBackupVaultName(), null));
+                        while (true) {
+                            for (RecoveryPointByBackupVault recoveryPoint : result.getRecoveryPoints()) {
+                                /*
+                                 * Creating the BackupData object with the necessary information. The below provided information
+                                 * is necessary to provide. I have used builder to build the object and have chained methods to
+                                 * provide other necessary information.
+                                 * */
+                                BackupData currentRecoveryPoint = new BackupData.BackupDataBuilder(currentVault, recoveryPoint.getRecoveryPointArn())
+                                        .withCreationDate(recoveryPoint.getCreationDate())
+                                        .withCompletionDate(recoveryPoint.getCompletionDate())
+                                        .withBackupSize(recoveryPoint.getBackupSizeInBytes())
+                                        .withStatus(recoveryPoint.getStatus())
+                                        .withResourceType(recoveryPoint.getResourceType())
+                                        .withLastRestoreTime(recoveryPoint.getLastRestoreTime())
+                                        .withMoveToColdStorageInfo(recoveryPoint.getCalculatedLifecycle().getMoveToColdStorageAt(), recoveryPoint.getLifecycle().getMoveToColdStorageAfterDays())
+                                        .withDeleteInfo(recoveryPoint.getCalculatedLifecycle().getDeleteAt(), recoveryPoint.getLifecycle().getDeleteAfterDays())
+                                        .build();
+                                currentRecoveryPoint.setRegion(region);
+                                backupsData.add(currentRecoveryPoint);
+                                pageItems.add(currentRecoveryPoint);
+                            }
+                            if (result.getNextToken() == null || result.getNextToken().equals("")) {
+                                break;
+                            } else {
+                                result = rateController.call(region.id(), "ListRecoveryPointsByBackupVault", client::listRecoveryPointsByBackupVault, filters.listRecoveryPoints(vault.getBackupVaultName(), result.getNextToken()));
+                            }
                         }
+                    } catch (Exception e) {
+                        e.printStackTrace();
                     }
-                } catch (Exception e) {
-                    e.printStackTrace();
                 }
+                /*
+                 * A page here is a page of vaults along with all the recovery points of those vaults
+                 * */
+                checkpoint(regionName, "backups", page, pageItems, response.getNextToken(), true);
+                page += 1;
+
+                if (response.getNextToken() == null || response.getNextToken().equals(""))
+                    break;
+                else
+                    response = rateController.call(region.id(), "ListBackupVaults", client::listBackupVaults, new ListBackupVaultsRequest().withNextToken(response.getNextToken()));
             }
-            if (response.getNextToken() == null || response.getNextToken().equals(""))
-                break;
-            else
-                response = client.listBackupVaults(new ListBackupVaultsRequest().withNextToken(response.getNextToken()));
         }
 
         if(DEBUG){
@@ -1977,220 +2783,215 @@ class AWSCostOptimizerAndReportGenerator implements AwsCredentialsProvider {
     }
 
     /**
-     * Method to retrieve the information of memory and vcpu for all the instance types
-     * available in a region
-     * @param region the region of which we want. It is to passed as the Region class Object
-     * @param getData if it is true then we retrieve the data form AWS and store them in local files else we read the data from the files which have been made earlier
-     *                this helps in saving the time which the API call takes to get the data
+     * Method to retrieve the tags of the resources of a region in bulk, with GetResources of the Resource Groups Tagging
+     * API. A call returns the tags of up to 100 resources of every service, instead of one describe call per resource
+     * per service, and only the resource types which are part of the report are asked for. The tags are kept in the
+     * ResourceTagIndex, to be joined with the resources once all of them are collected
+     *
+     * @param region The Region Object associated with the location for which we want our data
+     * @param client the Resource Groups Tagging API client to be used
      */
-    private void getAllInstanceTypesInfo(Region region, boolean getData) {
-        if (getData) {
-            AmazonEC2 client = AmazonEC2Client.builder().withCredentials(CREDENTIALS).withRegion(region.toString()).build();
+    private void tagsBasicInfo(Region region, AWSResourceGroupsTaggingAPI client) {
+        if(DEBUG){
+            System.out.println("Fetching Tags of the Resources");
+        }
 
-            /*
-             * Making the API call to get the data
-             * */
-            DescribeInstanceTypesResult result = client.describeInstanceTypes(new DescribeInstanceTypesRequest());
+        String regionName = region.toString();
+
+        /*
+         * Restoring the already collected pages of tags from the journal
+         * */
+        int page = 0;
+        String paginationToken = null;
+        int before = resourceTags.size();
+        for (CollectionJournal.Page<ResourceTagMapping> savedPage : journal.<ResourceTagMapping>restorePages(regionName, "tags")) {
+            for (ResourceTagMapping mapping : savedPage.getItems())
+                resourceTags.add(mapping);
+            paginationToken = savedPage.getNextToken();
+            page += 1;
+        }
 
+        if (page == 0 || paginationToken != null) {
             while (true) {
-                for (InstanceTypeInfo currentType : result.getInstanceTypes()) {
-                    ec2InstanceTypeToMemorySizeInMB.put(currentType.getInstanceType(), currentType.getMemoryInfo().getSizeInMiB());
-                    ec2InstanceTypeToVcpuCount.put(currentType.getInstanceType(), currentType.getVCpuInfo().getDefaultVCpus());
-                }
-                if (result.getNextToken() == null || result.getNextToken().equals("") || result.getInstanceTypes().size() == 0)
+                GetResourcesRequest request = new GetResourcesRequest()
+                        .withResourceTypeFilters("ec2:instance", "ec2:volume", "ec2:elastic-ip", "ec2:snapshot", "elasticloadbalancing:loadbalancer", "backup", "s3")
+                        .withResourcesPerPage(100)
+                        .withPaginationToken(paginationToken);
+                GetResourcesResult result = rateController.call(region.id(), "GetResources", client::getResources, request);
+                ArrayList<ResourceTagMapping> pageItems = new ArrayList<>(result.getResourceTagMappingList());
+                for (ResourceTagMapping mapping : pageItems)
+                    resourceTags.add(mapping);
+                checkpoint(regionName, "tags", page, pageItems, result.getPaginationToken(), true);
+                page += 1;
+
+                paginationToken = result.getPaginationToken();
+                if (paginationToken == null || paginationToken.equals(""))
                     break;
-                result = client.describeInstanceTypes(new DescribeInstanceTypesRequest().withNextToken(result.getNextToken()));
             }
+        }
 
-            /*
-             * Saving in Files
-             * */
-            try {
-                FileOutputStream outstream = new FileOutputStream("instanceTypeSize.data");
-                Properties props = new Properties();
-                for (Map.Entry<String, Long> entry : ec2InstanceTypeToMemorySizeInMB.entrySet()) {
-                    props.setProperty(entry.getKey(), entry.getValue().toString());
-                }
-                props.store(outstream, "");
+        if(DEBUG){
+            System.out.println("Tags Fetched in " + page + " pages...");
+            System.out.println("Number of Tagged Resources Found: " + (resourceTags.size() - before));
+            System.out.println("Distinct Tag Keys and Values So Far: " + Arrays.toString(resourceTags.getDictionarySize()));
+            System.out.println();
+        }
+    }
 
-                outstream = new FileOutputStream("instanceTypeVcpu.data");
-                props = new Properties();
-                for (Map.Entry<String, Integer> entry : ec2InstanceTypeToVcpuCount.entrySet()) {
-                    props.setProperty(entry.getKey(), entry.getValue().toString());
+    /**
+     * Method to collect the findings of the report along with the resources they are about, to be summed up per tag
+     * value. A resource is given by its id, or by its ARN where the report knows it by its ARN
+     * @return the category of the findings -> the resources of the category
+     */
+    private LinkedHashMap<String, ArrayList<String>> getFindings() {
+        LinkedHashMap<String, ArrayList<String>> findings = new LinkedHashMap<>();
+
+        ArrayList<String> instances = new ArrayList<>();
+        for (ArrayList<Ec2InstanceData> group : Arrays.asList(ec2ReservedInstancesData, ec2SpotInstancesData, ec2OnDemandInstancesData)) {
+            for (Ec2InstanceData instance : group) {
+                try {
+                    if (instance.isUnderUtilizedCpu(EC2_CPU_STATISTIC_UNDER, EC2_CPU_THRESHOLD_IN_PERCENT_UNDER) || (instance.ifMemoryDataAvailable() && instance.isUnderUtilizedMemory(EC2_MEMORY_STATISTIC_UNDER, EC2_MEMORY_THRESHOLD_IN_PERCENT_UNDER)))
+                        instances.add(instance.getId());
+                } catch (Exception e) {
+                    /*
+                     * No utilization data for this instance, so nothing can be said about it
+                     * */
+                    if(DEBUG)
+                        System.out.println("No utilization data for the instance " + instance.getId());
                 }
-                props.store(outstream, "");
-            } catch (Exception e) {
-                e.printStackTrace();
             }
+        }
+        findings.put("Under Utilized EC2 Instances", instances);
 
-        } else {
+        ArrayList<String> loadBalancers = new ArrayList<>();
+        for (ElasticLoadBalancerData loadBalancer : elasticLoadBalancersData) {
+            if (loadBalancer.isIdle())
+                loadBalancers.add(loadBalancer.getArn());
+        }
+        findings.put("Idle Load Balancers", loadBalancers);
 
-            /*
-             * Reading from Files
-             * */
-            try {
-                ec2InstanceTypeToMemorySizeInMB = new HashMap<>();
-                FileInputStream istream = new FileInputStream("instanceTypeSize.data");
-                Properties property = new Properties();
-                property.load(istream);
-                for (String prop : property.stringPropertyNames()) {
-                    ec2InstanceTypeToMemorySizeInMB.put(prop, Long.valueOf(property.getProperty(prop)));
-                }
+        ArrayList<String> volumes = new ArrayList<>();
+        for (EbsVolumeData volume : EbsVolumeData.getVolumes(ebsVolumesData, false))
+            volumes.add(volume.getVolumeId());
+        findings.put("Unattached EBS Volumes", volumes);
 
-                ec2InstanceTypeToVcpuCount = new HashMap<>();
-                istream = new FileInputStream("instanceTypeVcpu.data");
-                property = new Properties();
-                property.load(istream);
-                for (String prop : property.stringPropertyNames()) {
-                    ec2InstanceTypeToVcpuCount.put(prop, Integer.valueOf(property.getProperty(prop)));
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
+        ArrayList<String> ips = new ArrayList<>();
+        for (ElasticIpData ip : elasticIpsData) {
+            if (!ip.isUsed())
+                ips.add(ip.getAllocationId());
+        }
+        findings.put("Unused Elastic IPs", ips);
 
+        ArrayList<String> backups = new ArrayList<>();
+        for (BackupData backup : BackupData.getBackupsOlderThan(BACKUPS_THRESHOLD_DAYS, backupsData))
+            backups.add(backup.getArn());
+        findings.put("Backups Older Than " + BACKUPS_THRESHOLD_DAYS + " Days", backups);
+
+        ArrayList<String> buckets = new ArrayList<>();
+        for (S3BucketData bucket : s3bucketsData) {
+            if (bucket.getRelevantCount() > 0)
+                buckets.add(bucket.getName());
         }
+        findings.put("Buckets Having Objects Older Than " + S3_OBJECTS_THRESHOLD_DAYS + " Days", buckets);
+
+        return findings;
     }
 
     /**
-     * Method to retrieve information of on demand pricing of ec2 instances in a region. Along with that we also fetch the data of vcpus
-     * and memory associated with them in this call. So if a call is made to this function then a call to getAllInstanceTypesInfo is not
-     * necessary
-     * @param region The region of which we want the data
-     * @param fetchData if it is true then we fetch the data using the API call from AWS and store it in files, else we read the data from already existing files
+     * Method to load the index of the EC2 prices, it is built first out of EC2_OFFER_FILE if there is no index, the
+     * offer file is newer than it or it is of an older format. Building it reads the whole offer file (a few minutes), loading it is instant
      */
-    private void getOneTimeEc2Info(Region region, boolean fetchData) {
-        if (fetchData) {
-            HashSet<String> tempo = new HashSet<>();
-            ArrayList<Filter> nuList = new ArrayList<>();
-            nuList.add(new Filter().withType("TERM_MATCH").withField("productFamily").withValue("Compute Instance"));
-            nuList.add(new Filter().withType("TERM_MATCH").withField("regionCode").withValue(region.toString()));
-            nuList.add(new Filter().withType("TERM_MATCH").withField("tenancy").withValue("Shared"));
-            nuList.add(new Filter().withType("TERM_MATCH").withField("preInstalledSw").withValue("NA"));
-            nuList.add(new Filter().withType("TERM_MATCH").withField("operatingSystem").withValue("Linux"));
-            nuList.add(new Filter().withType("TERM_MATCH").withField("licenseModel").withValue("No License required"));
-            nuList.add(new Filter().withType("TERM_MATCH").withField("capacitystatus").withValue("used"));
-
-            /*
-             * Making the API call*/
-            AWSPricing client = AWSPricingClient.builder().withCredentials(CREDENTIALS).withRegion(region.toString()).build();
-            GetProductsResult result = client.getProducts(new GetProductsRequest().withServiceCode("AmazonEC2").withFilters(nuList));
-
-            try {
-                while (true) {
-                    boolean toStop = true;
-                    for (String current : result.getPriceList()) {
-                        /*
-                         * Converting to JSON and using it appropriately so that we can get the exact information which is required*/
-                        JSONObject jsonObject = new JSONObject(current);
-                        JSONObject attributeObject = (JSONObject) ((JSONObject) jsonObject.get("product")).get("attributes");
-                        try {
-                            String memory = (String) attributeObject.get("memory");
-                            JSONObject tempObj = ((JSONObject) ((JSONObject) jsonObject.get("terms")).get("OnDemand"));
-                            JSONObject currObj = (JSONObject) ((JSONObject) tempObj.get((String) tempObj.keys().next())).get("priceDimensions");
-                            JSONObject priceDimensions = (JSONObject) currObj.get((String) currObj.keys().next());
-                            if (!memory.equals("NA")) {
-                                Long mem = (long) (Double.parseDouble(memory.substring(0, memory.indexOf(" "))) * 1024.0);
-                                Integer vcpu = Integer.valueOf((String) attributeObject.get("vcpu"));
-                                Double moneyVal = Double.valueOf((String) ((JSONObject) priceDimensions.get("pricePerUnit")).get("USD"));
-                                String itype = (String) attributeObject.get("instanceType");
-
-                                if (!tempo.contains(itype)) {
-                                    tempo.add(itype);
-                                    toStop = false;
-                                    ec2InstanceTypeToMemorySizeInMB.put(itype, mem);
-                                    ec2InstanceTypeToVcpuCount.put(itype, vcpu);
-                                    ec2InstanceTypeToPrice.put(itype, moneyVal);
-                                }
-                            }
-                        } catch (Exception e) {
-                            e.printStackTrace();
-                        }
-                    }
-                    if (result.getNextToken() == null || result.getNextToken().equals("") || result.getPriceList().size() == 0 || toStop)
-                        break;
-                    result = client.getProducts(new GetProductsRequest().withServiceCode("AmazonEC2").withNextToken(result.getNextToken()).withFilters(nuList));
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
+    private void loadPriceIndex() {
+        try {
+            File offerFile = new File(EC2_OFFER_FILE);
+            File indexFile = new File(EC2_PRICE_INDEX_FILE);
+            if (!EC2_OFFER_FILE.isEmpty() && (!indexFile.exists() || offerFile.lastModified() > indexFile.lastModified() || !InstancePriceIndex.isCurrentFormat(EC2_PRICE_INDEX_FILE))) {
+                long start = System.currentTimeMillis();
+                int prices = InstancePriceIndex.build(EC2_OFFER_FILE, EC2_PRICE_INDEX_FILE);
+                if (DEBUG)
+                    System.out.println("Built the price index of " + prices + " prices in " + (System.currentTimeMillis() - start) + " ms");
             }
+            if (!indexFile.exists()) {
+                System.out.println("No price index found, set EC2_OFFER_FILE to build it. The prices are not added to the report");
+                return;
+            }
+            priceIndex = new InstancePriceIndex(EC2_PRICE_INDEX_FILE);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
 
-            /*
-             * Saving in files
-             * */
-
-            try {
-                FileOutputStream outstream = new FileOutputStream("instanceTypeSizeN.data");
-                Properties props = new Properties();
-                for (Map.Entry<String, Long> entry : ec2InstanceTypeToMemorySizeInMB.entrySet()) {
-                    props.setProperty(entry.getKey(), entry.getValue().toString());
-                }
-                props.store(outstream, "");
+}
 
-                outstream = new FileOutputStream("instanceTypeVcpuN.data");
-                props = new Properties();
-                for (Map.Entry<String, Integer> entry : ec2InstanceTypeToVcpuCount.entrySet()) {
-                    props.setProperty(entry.getKey(), entry.getValue().toString());
-                }
-                props.store(outstream, "");
+public class Main {
+    public static void main(String[] args) {
+        boolean debug = true;
 
-                outstream = new FileOutputStream("instanceTypePriceN.data");
-                props = new Properties();
-                for (Map.Entry<String, Double> entry : ec2InstanceTypeToPrice.entrySet()) {
-                    props.setProperty(entry.getKey(), entry.getValue().toString());
-                }
-                props.store(outstream, "");
+        /*
+         * Two already persisted snapshots can also be compared without making any call to AWS
+         * Usage: --delta <previous snapshot> <current snapshot> <output file>
+         * */
+        if(args.length == 4 && args[0].equals("--delta")) {
+            try {
+                InventoryDeltaEngine engine = new InventoryDeltaEngine(64, Runtime.getRuntime().availableProcessors());
+                System.out.println(engine.compare(args[1], args[2], args[3]));
             } catch (Exception e) {
                 e.printStackTrace();
+                System.exit(1);
             }
-        } else {
-            /*
-             * Reading from files
-             * */
-            try {
-                ec2InstanceTypeToMemorySizeInMB = new HashMap<>();
-                FileInputStream istream = new FileInputStream("instanceTypeSizeN.data");
-                Properties property = new Properties();
-                property.load(istream);
-                for (String prop : property.stringPropertyNames()) {
-                    ec2InstanceTypeToMemorySizeInMB.put(prop, Long.valueOf(property.getProperty(prop)));
-                }
-
-                ec2InstanceTypeToVcpuCount = new HashMap<>();
-                istream = new FileInputStream("instanceTypeVcpuN.data");
-                property = new Properties();
-                property.load(istream);
-                for (String prop : property.stringPropertyNames()) {
-                    ec2InstanceTypeToVcpuCount.put(prop, Integer.valueOf(property.getProperty(prop)));
-                }
+            System.exit(0);
+        }
 
-                ec2InstanceTypeToPrice = new HashMap<>();
-                istream = new FileInputStream("instanceTypePriceN.data");
-                property = new Properties();
-                property.load(istream);
-                for (String prop : property.stringPropertyNames()) {
-                    ec2InstanceTypeToPrice.put(prop, Double.valueOf(property.getProperty(prop)));
-                }
+        /*
+         * The rate controller can be exercised against a local stub of a throttling API, without any call to AWS
+         * Usage: --simulate-throttling [limit per second] [threads] [calls per thread]
+         * */
+        if(args.length >= 1 && args[0].equals("--simulate-throttling")) {
+            try {
+                double limit = args.length > 1 ? Double.parseDouble(args[1]) : 20;
+                int threads = args.length > 2 ? Integer.parseInt(args[2]) : 16;
+                int calls = args.length > 3 ? Integer.parseInt(args[3]) : 50;
+                RateController controller = new RateController();
+                controller.configure("StubApi", limit * 4, threads); // Above the limit of the stub, so that the controller has to adapt
+                new ThrottlingSimulator(limit).run(controller, threads, calls);
             } catch (Exception e) {
                 e.printStackTrace();
+                System.exit(1);
             }
+            System.exit(0);
         }
-    }
-}
 
-public class Main {
-    public static void main(String[] args) {
-        boolean debug = true;
+        /*
+         * Starts up as a normal run does till the first API call and exits, used by the build to measure the startup time
+         * and to record the classes for the AppCDS archive. Needs neither credentials nor network.
+         * Usage: --startup-probe
+         * */
+        if(args.length == 1 && args[0].equals("--startup-probe")) {
+            ClientRegistry clients = new ClientRegistry("probe", "probe", 1);
+            clients.ec2(Region.US_EAST_1);
+            clients.cloudWatch(Region.US_EAST_1);
+            new RateController().call(Region.US_EAST_1.id(), "DescribeInstances", () -> null);
+            clients.close();
+            System.exit(0);
+        }
 
         /*
          * Credentials to the AWS account are to be read from the project.properties file
          * */
         AWSCostOptimizerAndReportGenerator optimizer = new AWSCostOptimizerAndReportGenerator(debug);
 
+        /*
+         * With --resume the journal of the previous (failed) run is replayed and only what is missing is fetched
+         * */
+        if(args.length == 1 && args[0].equals("--resume"))
+            optimizer.setResumeMode(true);
+
         /*
          * No Need to set Region now, as the code is programmed to run for multiple regions automatically
          * optimizer.setRegion(Region.US_EAST_1); // Check Bottom of the file for reference
          * */
         optimizer.getDataAndGenerateReport();
+        optimizer.shutdown();
 
         if(debug)
             System.out.println(optimizer);
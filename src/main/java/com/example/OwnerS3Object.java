@@ -1,5 +1,7 @@
 package com.example;
 
+import java.io.Serializable;
+
 /*
 * Object here refers to files stored inside a S3 bucket, terminology used by aws.
 * This class stores the information about the owner of an object in s3 bucket.
@@ -9,7 +11,8 @@ package com.example;
 /**
  * Class to store information about an owner of a S3 Object, object here is a file stored inside a S3 bucket
  */
-class OwnerS3Object {
+class OwnerS3Object implements Serializable {
+    private static final long serialVersionUID = 1L;
     private String ownerName;
     private String id;
 
@@ -0,0 +1,140 @@
+package com.example;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Class to cache the results of API calls across runs. Every entry has the time at which it was stored and is ignored
+ * once it is older than the time to live of the cache, so the call is made again for it.
+ *
+ * The cache is read from its file when it is created and is written back by save, first to a temporary file which is
+ * then renamed, so a crash never leaves a half written cache. A cache file which can not be read is ignored.
+ * @param <V> the type of the values cached
+ */
+class PersistentTtlCache<V extends Serializable> {
+    private final File file;
+    private final long ttlMillis;
+    private HashMap<String, Entry<V>> entries = new HashMap<>();
+
+    private long hits = 0;
+    private long misses = 0;
+
+    /**
+     * Class to store a cached value along with the time at which it was stored
+     * @param <V> the type of the value
+     */
+    private static class Entry<V extends Serializable> implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private final V value;
+        private final long storedAt;
+
+        private Entry(V value, long storedAt) {
+            this.value = value;
+            this.storedAt = storedAt;
+        }
+    }
+
+    /**
+     * Constructor
+     * @param path the file in which the cache is persisted
+     * @param ttlMillis the time (in milliseconds) for which an entry is valid, Long.MAX_VALUE if it never expires
+     */
+    @SuppressWarnings("unchecked")
+    public PersistentTtlCache(String path, long ttlMillis) {
+        this.file = new File(path);
+        this.ttlMillis = ttlMillis;
+        if (this.file.exists()) {
+            try (ObjectInputStream input = new ObjectInputStream(new BufferedInputStream(new FileInputStream(this.file)))) {
+                this.entries = (HashMap<String, Entry<V>>) input.readObject();
+            } catch (Exception e) {
+                e.printStackTrace();
+                this.entries = new HashMap<>();
+            }
+        }
+    }
+
+    /**
+     * Method to return the cached value of a key
+     * @param key the key in context
+     * @return the value, null if the key is not cached or its entry has expired
+     */
+    public synchronized V get(String key) {
+        Entry<V> entry = this.entries.get(key);
+        if (entry == null || isExpired(entry, System.currentTimeMillis())) {
+            this.misses += 1;
+            return null;
+        }
+        this.hits += 1;
+        return entry.value;
+    }
+
+    /**
+     * Method to cache the value of a key, replacing the earlier value if any
+     * @param key the key in context
+     * @param value the value to be cached
+     */
+    public synchronized void put(String key, V value) {
+        this.entries.put(key, new Entry<>(value, System.currentTimeMillis()));
+    }
+
+    /**
+     * Method to drop the entries of the keys which are not in the given set, for example of the resources which no
+     * longer exist
+     * @param keys the keys to be kept
+     */
+    public synchronized void retainKeys(Set<String> keys) {
+        this.entries.keySet().retainAll(keys);
+    }
+
+    /**
+     * Method to write the cache to its file, the expired entries are dropped
+     * @throws IOException if the file can not be written
+     */
+    public synchronized void save() throws IOException {
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<String, Entry<V>>> iterator = this.entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            if (isExpired(iterator.next().getValue(), now))
+                iterator.remove();
+        }
+
+        File directory = this.file.getAbsoluteFile().getParentFile();
+        if (directory != null && !directory.exists() && !directory.mkdirs())
+            throw new IOException("Unable to create the cache directory " + directory);
+        File temporary = new File(directory, this.file.getName() + ".tmp");
+        try (ObjectOutputStream output = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)))) {
+            output.writeObject(this.entries);
+        }
+        try {
+            Files.move(temporary.toPath(), this.file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Method to return the number of lookups served from the cache and the number which were not
+     * @return the hits and misses in a human-readable format
+     */
+    public synchronized String getStatistics() {
+        return "hits=" + this.hits + ", misses=" + this.misses;
+    }
+
+    private boolean isExpired(Entry<V> entry, long now) {
+        return this.ttlMillis != Long.MAX_VALUE && now - entry.storedAt > this.ttlMillis;
+    }
+}
@@ -0,0 +1,332 @@
+package com.example;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.retry.RetryUtils;
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+import software.amazon.awssdk.core.exception.ApiCallAttemptTimeoutException;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.core.exception.SdkServiceException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Class to control the rate at which the AWS APIs are called. Every API call (SDK v1 as well as v2) is made through
+ * this class so that the per account throttling limits of the APIs are respected.
+ *
+ * For every (region, API) pair there is a limiter having
+ * 1. A token bucket, which limits the number of calls made per second
+ * 2. A concurrency window, which limits the number of calls in flight at a time
+ *
+ * Both of them follow AIMD (additive increase, multiplicative decrease), that is they are halved whenever the API
+ * throttles and are increased slowly back to their configured values as the calls succeed. A throttled call is
+ * retried after a random (full jitter) exponential backoff, so that the retries of many threads do not line up.
+ * The other failures the SDKs would retry (server errors, I/O errors and timeouts, see isRetryableException) are retried
+ * with the same backoff but fewer times, and do not decrease the limits since they do not mean the API is overloaded.
+ * The retries of the SDK itself should be turned off for the clients, else the two retry loops multiply.
+ */
+class RateController {
+    private static final HashSet<String> THROTTLING_ERROR_CODES = new HashSet<>(Arrays.asList(
+            "Throttling", "ThrottlingException", "ThrottledException", "RequestThrottledException", "RequestThrottled",
+            "RequestLimitExceeded", "TooManyRequestsException", "ProvisionedThroughputExceededException",
+            "SlowDown", "PriorRequestNotComplete", "EC2ThrottledException", "BandwidthLimitExceeded"));
+
+    private static final double DEFAULT_RATE = 20.0; // calls per second for the APIs not configured explicitly
+    private static final int DEFAULT_CONCURRENCY = 8; // calls in flight for the APIs not configured explicitly
+    private static final int MAX_ATTEMPTS = 8; // number of times a throttled call is tried before giving up
+    private static final int MAX_ERROR_ATTEMPTS = 4; // number of times a call failing for another retryable reason is tried, as the SDKs do by default
+    private static final long BASE_BACKOFF_MILLIS = 100;
+    private static final long MAX_BACKOFF_MILLIS = 20000;
+
+    private final HashMap<String, double[]> configuredLimits = new HashMap<>(); // API name -> {calls per second, concurrency}
+    private final HashMap<String, Limiter> limiters = new HashMap<>(); // "region|API" -> limiter
+    private final Sleeper sleeper;
+
+    /**
+     * Interface for the way the controller waits, it is the thread sleep by default and can be replaced while
+     * exercising the controller against a stub
+     */
+    public interface Sleeper {
+        void sleep(long millis) throws InterruptedException;
+    }
+
+    /**
+     * Class having the token bucket and the concurrency window of one (region, API) pair
+     */
+    private static class Limiter {
+        private final String key;
+        private final double maxRate;
+        private final int maxConcurrency;
+        private double rate;
+        private double concurrency;
+        private double tokens;
+        private long lastRefill;
+        private int inFlight = 0;
+
+        private long calls = 0;
+        private long throttles = 0;
+
+        private Limiter(String key, double maxRate, int maxConcurrency) {
+            this.key = key;
+            this.maxRate = maxRate;
+            this.maxConcurrency = maxConcurrency;
+            this.rate = maxRate;
+            this.concurrency = maxConcurrency;
+            this.tokens = Math.max(1.0, maxRate);
+            this.lastRefill = System.nanoTime();
+        }
+
+        /**
+         * Method to wait till a token is available and a slot in the concurrency window is free
+         * @throws InterruptedException if the thread is interrupted while waiting
+         */
+        private synchronized void acquire() throws InterruptedException {
+            while (true) {
+                refill();
+                if (this.tokens >= 1.0 && this.inFlight < (int) this.concurrency) {
+                    this.tokens -= 1.0;
+                    this.inFlight += 1;
+                    this.calls += 1;
+                    return;
+                }
+                long waitMillis = 1;
+                if (this.tokens < 1.0)
+                    waitMillis = Math.max(1, (long) Math.ceil((1.0 - this.tokens) * 1000.0 / this.rate));
+                /*
+                 * Woken up earlier by release if a slot gets free
+                 * */
+                wait(waitMillis);
+            }
+        }
+
+        /**
+         * Method to release the slot after the call has completed and to adjust the limits
+         * @param throttled true if the call was throttled by AWS
+         */
+        private synchronized void release(boolean throttled) {
+            this.inFlight -= 1;
+            if (throttled) {
+                /*
+                 * Multiplicative decrease, the bucket is also emptied so that the calls already waiting slow down
+                 * */
+                this.throttles += 1;
+                this.concurrency = Math.max(1.0, this.concurrency / 2.0);
+                this.rate = Math.max(this.maxRate / 64.0, this.rate / 2.0);
+                this.tokens = Math.min(this.tokens, 0.0);
+            } else {
+                /*
+                 * Additive increase, the concurrency grows by about one per window of successful calls
+                 * */
+                this.concurrency = Math.min(this.maxConcurrency, this.concurrency + 1.0 / this.concurrency);
+                this.rate = Math.min(this.maxRate, this.rate + this.maxRate / 100.0);
+            }
+            notifyAll();
+        }
+
+        /**
+         * Method to add the tokens accumulated since the last refill, the bucket can hold at most one second of tokens
+         */
+        private void refill() {
+            long now = System.nanoTime();
+            this.tokens = Math.min(Math.max(1.0, this.rate), this.tokens + (now - this.lastRefill) / 1e9 * this.rate);
+            this.lastRefill = now;
+        }
+    }
+
+    /**
+     * Default Constructor, the limits are set as per the documented defaults of the APIs used by the code
+     */
+    public RateController() {
+        this(Thread::sleep);
+        configure("GetMetricData", 50, 10);
+        configure("DescribeTargetHealth", 10, 4);
+        configure("DescribeTargetGroups", 10, 2);
+        configure("DescribeLoadBalancers", 10, 2);
+        configure("GetBucketLocation", 50, 16);
+        configure("ListObjectsV2", 200, 32);
+        configure("ListBuckets", 5, 1);
+        configure("ListBackupVaults", 5, 2);
+        configure("ListRecoveryPointsByBackupVault", 10, 4);
+        configure("GetProducts", 5, 2);
+        configure("DescribeReservedInstancesOfferings", 10, 4);
+    }
+
+    /**
+     * Constructor to be used while exercising the controller against a stub
+     * @param sleeper the way the controller waits between the retries
+     */
+    public RateController(Sleeper sleeper) {
+        this.sleeper = sleeper;
+    }
+
+    /**
+     * Method to set the limits of an API, it applies to every region and should be called before the API is used
+     * @param api the name of the API, for example "GetMetricData"
+     * @param callsPerSecond the maximum number of calls to be made per second
+     * @param concurrency the maximum number of calls to be in flight at a time
+     */
+    public synchronized void configure(String api, double callsPerSecond, int concurrency) {
+        this.configuredLimits.put(api, new double[]{callsPerSecond, concurrency});
+    }
+
+    /**
+     * Method to make an API call under the limits of the (region, API) pair. A throttled call, or a call failing for
+     * another reason the SDKs retry, is retried with a jittered exponential backoff, any other failure is thrown back
+     * to the caller as it is.
+     * @param region the region in which the call is made, "global" for global endpoints
+     * @param api the name of the API
+     * @param request the actual call to be made
+     * @param <T> the type of the response of the call
+     * @return the response of the call
+     */
+    public <T> T call(String region, String api, Supplier<T> request) {
+        Limiter limiter = getLimiter(region, api);
+        for (int attempt = 1; ; attempt++) {
+            try {
+                limiter.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting to call " + api, e);
+            }
+
+            boolean throttled = false;
+            try {
+                StartupTimer.apiCallStarting();
+                return request.get();
+            } catch (RuntimeException e) {
+                throttled = isThrottlingException(e);
+                if (throttled ? attempt >= MAX_ATTEMPTS : !isRetryableException(e) || attempt >= MAX_ERROR_ATTEMPTS)
+                    throw e;
+            } finally {
+                limiter.release(throttled);
+            }
+
+            /*
+             * Full jitter, the wait is anywhere between 0 and the exponential backoff
+             * */
+            long backoff = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << Math.min(attempt, 20));
+            try {
+                this.sleeper.sleep(ThreadLocalRandom.current().nextLong(backoff + 1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting to retry " + api, e);
+            }
+        }
+    }
+
+    /**
+     * Method to make an API call which takes a request object under the limits of the (region, API) pair, for
+     * example call(region, "DescribeInstances", client::describeInstances, request)
+     * @param region the region in which the call is made, "global" for global endpoints
+     * @param api the name of the API
+     * @param method the method of the client to be called
+     * @param request the request to be passed to the method
+     * @param <R> the type of the request
+     * @param <T> the type of the response of the call
+     * @return the response of the call
+     */
+    public <R, T> T call(String region, String api, Function<R, T> method, R request) {
+        return call(region, api, () -> method.apply(request));
+    }
+
+    /**
+     * Method to return the summary of the calls made and the throttles faced, per (region, API) pair
+     * @return the summary in a human-readable format
+     */
+    public synchronized String getSummary() {
+        StringBuilder summary = new StringBuilder();
+        for (Map.Entry<String, Limiter> entry : this.limiters.entrySet()) {
+            Limiter limiter = entry.getValue();
+            synchronized (limiter) {
+                summary.append(limiter.key).append(": calls=").append(limiter.calls)
+                        .append(", throttles=").append(limiter.throttles)
+                        .append(", rate=").append(String.format("%.1f", limiter.rate)).append("/s")
+                        .append(", concurrency=").append((int) limiter.concurrency)
+                        .append("\n");
+            }
+        }
+        return summary.toString();
+    }
+
+    /**
+     * Method to tell if an exception thrown by the SDK (v1 or v2) is because of throttling
+     * @param e the exception thrown by the call
+     * @return true if the call was throttled
+     */
+    public static boolean isThrottlingException(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof AmazonServiceException) {
+                AmazonServiceException exception = (AmazonServiceException) cause;
+                if (THROTTLING_ERROR_CODES.contains(exception.getErrorCode()) || exception.getStatusCode() == 429)
+                    return true;
+            }
+            if (cause instanceof AwsServiceException) {
+                AwsServiceException exception = (AwsServiceException) cause;
+                if (exception.isThrottlingException())
+                    return true;
+                if (exception.awsErrorDetails() != null && THROTTLING_ERROR_CODES.contains(exception.awsErrorDetails().errorCode()))
+                    return true;
+            }
+            if (cause.getCause() == cause)
+                break;
+        }
+        return false;
+    }
+
+    /**
+     * Method to tell if an exception thrown by the SDK (v1 or v2) is one the SDK would have retried by default, other
+     * than throttling: a server error (5xx), a clock skew, an I/O error or a timeout of an attempt
+     * @param e the exception thrown by the call
+     * @return true if the call may succeed when made again
+     */
+    public static boolean isRetryableException(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof IOException || cause instanceof UncheckedIOException || cause instanceof ApiCallAttemptTimeoutException)
+                return true;
+            if (cause instanceof AmazonServiceException) {
+                AmazonServiceException exception = (AmazonServiceException) cause;
+                return RetryUtils.isRetryableServiceException(exception) || RetryUtils.isClockSkewError(exception);
+            }
+            if (cause instanceof SdkServiceException) {
+                SdkServiceException exception = (SdkServiceException) cause;
+                return exception.statusCode() >= 500 || exception.retryable()
+                        || (exception instanceof AwsServiceException && ((AwsServiceException) exception).isClockSkewException());
+            }
+            if (cause instanceof SdkException && ((SdkException) cause).retryable())
+                return true;
+            if (cause instanceof AmazonClientException && !((AmazonClientException) cause).isRetryable())
+                return false;
+            if (cause.getCause() == cause)
+                break;
+        }
+        return false;
+    }
+
+    /**
+     * Method to return the limiter of a (region, API) pair, creating it if it does not exist
+     * @param region the region in which the call is made
+     * @param api the name of the API
+     * @return the limiter of the pair in context
+     */
+    private synchronized Limiter getLimiter(String region, String api) {
+        String key = region + "|" + api;
+        Limiter limiter = this.limiters.get(key);
+        if (limiter == null) {
+            double[] limits = this.configuredLimits.get(api);
+            if (limits == null)
+                limiter = new Limiter(key, DEFAULT_RATE, DEFAULT_CONCURRENCY);
+            else
+                limiter = new Limiter(key, limits[0], (int) limits[1]);
+            this.limiters.put(key, limiter);
+        }
+        return limiter;
+    }
+}
@@ -0,0 +1,185 @@
+package com.example;
+
+import com.amazonaws.services.backup.model.ListBackupVaultsRequest;
+import com.amazonaws.services.ec2.AmazonEC2;
+import com.amazonaws.services.ec2.model.DescribeInstancesResult;
+import com.amazonaws.services.ec2.model.DescribeRegionsRequest;
+import com.amazonaws.services.ec2.model.DescribeSpotInstanceRequestsRequest;
+import com.amazonaws.services.ec2.model.DescribeSpotInstanceRequestsResult;
+import com.amazonaws.services.ec2.model.DescribeVolumesResult;
+import com.amazonaws.services.ec2.model.Filter;
+import com.amazonaws.services.elasticloadbalancingv2.model.DescribeLoadBalancersRequest;
+import software.amazon.awssdk.regions.Region;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Class to find the regions which are to be scanned and, for each of them, the services which have anything in them.
+ *
+ * The regions are found with DescribeRegions, which only returns the regions enabled for the account (the ones which
+ * do not need an opt-in and the ones which have been opted into). Every (region, service) pair is then probed with the
+ * smallest possible describe call, so that the collectors (and the cloudwatch work planned by them) are run only for
+ * the pairs which have at least one resource. A probe which fails is treated as non-empty, so that nothing is missed.
+ */
+class RegionDiscovery {
+    public static final String EC2 = "ec2"; // instances, reserved instances and spot requests
+    public static final String LOAD_BALANCERS = "load-balancers";
+    public static final String EBS_VOLUMES = "ebs-volumes";
+    public static final String ELASTIC_IPS = "elastic-ips";
+    public static final String BACKUPS = "backups";
+
+    private final ClientRegistry clients;
+    private final RateController rateController;
+    private final FilterPushdown filters;
+    private final int threads;
+
+    /**
+     * Constructor
+     * @param clients the registry from which the clients are taken
+     * @param rateController the rate controller through which the API calls are made
+     * @param filters the filters of the collectors, a probe only looks for what the collector would fetch
+     * @param threads the number of (region, service) pairs probed in parallel
+     */
+    public RegionDiscovery(ClientRegistry clients, RateController rateController, FilterPushdown filters, int threads) {
+        this.clients = clients;
+        this.rateController = rateController;
+        this.filters = filters;
+        this.threads = threads;
+    }
+
+    /**
+     * Method to find the regions enabled for the account
+     * @param fallback the regions to be used if DescribeRegions can not be called
+     * @return the enabled regions without any duplicates, the fallback regions (without duplicates) if the call fails
+     */
+    public ArrayList<Region> discoverRegions(Collection<Region> fallback) {
+        LinkedHashSet<Region> regions = new LinkedHashSet<>();
+        try {
+            AmazonEC2 client = this.clients.ec2(Region.US_EAST_1);
+            DescribeRegionsRequest request = new DescribeRegionsRequest()
+                    .withFilters(new Filter("opt-in-status").withValues("opt-in-not-required", "opted-in"));
+            for (com.amazonaws.services.ec2.model.Region region : this.rateController.call(Region.US_EAST_1.id(), "DescribeRegions", client::describeRegions, request).getRegions())
+                regions.add(Region.of(region.getRegionName()));
+        } catch (Exception e) {
+            e.printStackTrace();
+            regions.clear();
+            regions.addAll(fallback);
+        }
+        return new ArrayList<>(regions);
+    }
+
+    /**
+     * Method to probe every (region, service) pair in parallel
+     * @param regions the regions to be probed
+     * @return the services having at least one resource, per region. A region with nothing in it has an empty set
+     */
+    public HashMap<Region, HashSet<String>> probe(List<Region> regions) {
+        HashMap<Region, HashSet<String>> nonEmpty = new HashMap<>();
+        HashMap<Region, HashMap<String, Future<Boolean>>> probes = new HashMap<>();
+        ExecutorService pool = Executors.newFixedThreadPool(this.threads);
+        try {
+            for (Region region : regions) {
+                HashMap<String, Future<Boolean>> regionProbes = new HashMap<>();
+                regionProbes.put(EC2, pool.submit(() -> hasEc2Resources(region)));
+                regionProbes.put(LOAD_BALANCERS, pool.submit(() -> hasLoadBalancers(region)));
+                regionProbes.put(EBS_VOLUMES, pool.submit(() -> hasEbsVolumes(region)));
+                regionProbes.put(ELASTIC_IPS, pool.submit(() -> hasElasticIps(region)));
+                regionProbes.put(BACKUPS, pool.submit(() -> hasBackupVaults(region)));
+                probes.put(region, regionProbes);
+            }
+            for (Region region : regions) {
+                HashSet<String> services = new HashSet<>();
+                for (Map.Entry<String, Future<Boolean>> entry : probes.get(region).entrySet()) {
+                    boolean hasResources;
+                    try {
+                        hasResources = entry.getValue().get();
+                    } catch (Exception e) {
+                        /*
+                         * Not known, so the service is collected as it would have been without the probe
+                         * */
+                        e.printStackTrace();
+                        hasResources = true;
+                    }
+                    if (hasResources)
+                        services.add(entry.getKey());
+                }
+                nonEmpty.put(region, services);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return nonEmpty;
+    }
+
+    /**
+     * Method to tell if a region has any EC2 instance, reserved instance or spot request
+     * @param region the region in context
+     * @return true if the region has any of them
+     */
+    private boolean hasEc2Resources(Region region) {
+        AmazonEC2 client = this.clients.ec2(region);
+        String id = region.id();
+        DescribeInstancesResult instances = this.rateController.call(id, "DescribeInstances", client::describeInstances, this.filters.describeInstances(null).withMaxResults(5));
+        if (!instances.getReservations().isEmpty() || hasNextPage(instances.getNextToken()))
+            return true;
+        if (!this.rateController.call(id, "DescribeReservedInstances", () -> client.describeReservedInstances()).getReservedInstances().isEmpty())
+            return true;
+        DescribeSpotInstanceRequestsResult spotRequests = this.rateController.call(id, "DescribeSpotInstanceRequests", client::describeSpotInstanceRequests, new DescribeSpotInstanceRequestsRequest().withMaxResults(5));
+        return !spotRequests.getSpotInstanceRequests().isEmpty() || hasNextPage(spotRequests.getNextToken());
+    }
+
+    /**
+     * Method to tell if a region has any load balancer
+     * @param region the region in context
+     * @return true if the region has a load balancer
+     */
+    private boolean hasLoadBalancers(Region region) {
+        return !this.rateController.call(region.id(), "DescribeLoadBalancers", this.clients.elb(region)::describeLoadBalancers, new DescribeLoadBalancersRequest().withPageSize(1)).getLoadBalancers().isEmpty();
+    }
+
+    /**
+     * Method to tell if a region has any EBS volume
+     * @param region the region in context
+     * @return true if the region has a volume
+     */
+    private boolean hasEbsVolumes(Region region) {
+        DescribeVolumesResult volumes = this.rateController.call(region.id(), "DescribeVolumes", this.clients.ec2(region)::describeVolumes, this.filters.describeVolumes(null, 5));
+        return !volumes.getVolumes().isEmpty() || hasNextPage(volumes.getNextToken());
+    }
+
+    /**
+     * Method to tell if a region has any elastic ip allocated
+     * @param region the region in context
+     * @return true if the region has an elastic ip
+     */
+    private boolean hasElasticIps(Region region) {
+        AmazonEC2 client = this.clients.ec2(region);
+        return !this.rateController.call(region.id(), "DescribeAddresses", () -> client.describeAddresses()).getAddresses().isEmpty();
+    }
+
+    /**
+     * Method to tell if a region has any backup vault
+     * @param region the region in context
+     * @return true if the region has a backup vault
+     */
+    private boolean hasBackupVaults(Region region) {
+        return !this.rateController.call(region.id(), "ListBackupVaults", this.clients.backup(region)::listBackupVaults, new ListBackupVaultsRequest().withMaxResults(1)).getBackupVaultList().isEmpty();
+    }
+
+    /**
+     * Method to tell if a probe has more pages. With filters EC2 can return an empty page along with the token of the
+     * next one, which does not mean that the region is empty
+     */
+    private static boolean hasNextPage(String nextToken) {
+        return nextToken != null && !nextToken.isEmpty();
+    }
+}
@@ -1,13 +1,20 @@
 package com.example;
 
+import com.google.gson.Gson;
 import org.apache.poi.hssf.usermodel.HSSFRow;
 import org.apache.poi.hssf.usermodel.HSSFSheet;
 import org.apache.poi.hssf.usermodel.HSSFWorkbook;
 import org.apache.poi.ss.util.CellRangeAddress;
+import software.amazon.awssdk.regions.Region;
 
+import java.io.BufferedReader;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -18,14 +25,16 @@ import java.util.HashMap;
 class Report {
     private int rowNum;
     private boolean SUGGESTION_MODE;
-    private HashMap<String,Integer> typeToVcpu;
-    private HashMap<String,Long> typeToSize;
-    private HashMap<String, Double> typeToPrice;
+    private InstanceTypeCatalog instanceTypeCatalog;
+    private HashMap<String, RightSizingIndex> rightSizingIndexes = new HashMap<>(); // (Region, operating system, tenancy) -> index of the priced instance types
+    private HashMap<String, InstanceTypeCatalog.Table> instanceTypeTables = new HashMap<>(); // Region -> catalog of the region, null if it could not be loaded
+    private InstancePriceIndex priceIndex;
     private HSSFWorkbook workbook;
     private HSSFSheet sheet;
     private FileOutputStream file;
     private static final Double BUFFER_EC2_UTIL_PERCENTAGE = 30.0;
     private static final Double EC2_REQUIRED_UTIL = 75.0;
+    private static final boolean SUGGEST_SAME_FAMILY = false; // If true then the suggested instance type is of the same family (like "m5") as the instance, else of any family supporting the same architecture
     private final String separator = "============================================================================";
 
 
@@ -33,13 +42,12 @@ class Report {
      * Constructor
      * @param filename filename with appropriate path for the report to be generated
      * @param SUGGESTION_MODE If true then we have to make suggestion of the optimal vcpu and memory requirement and some other suggestions too
-     * @param typeToVcpu Hashmap storing the mapping of the instance type to the vcpu count
-     * @param typeToSize Hashmap storing the mapping of the instance type to the Memory Size
-     * @param typeToPrice Hashmap storing the mapping of the instance type to the On Demand Price
+     * @param instanceTypeCatalog the catalog from which the vcpus and memory of the instance types are looked up
+     * @param priceIndex the index from which the On Demand Prices are looked up, null if the prices are not known
      * @throws FileNotFoundException in case the path provided is not correct, it may be due to the non-existence of
      *                              certain directories in the path provided
      */
-    public Report(String filename, boolean SUGGESTION_MODE, HashMap<String ,Integer> typeToVcpu, HashMap<String ,Long> typeToSize, HashMap<String, Double> typeToPrice) throws FileNotFoundException {
+    public Report(String filename, boolean SUGGESTION_MODE, InstanceTypeCatalog instanceTypeCatalog, InstancePriceIndex priceIndex) throws FileNotFoundException {
         this.rowNum = 0;
         /*
         Creating Workbook
@@ -56,9 +64,8 @@ class Report {
          */
         this.file = new FileOutputStream(filename);
         this.SUGGESTION_MODE = SUGGESTION_MODE;
-        this.typeToSize = typeToSize;
-        this.typeToVcpu = typeToVcpu;
-        this.typeToPrice = typeToPrice;
+        this.instanceTypeCatalog = instanceTypeCatalog;
+        this.priceIndex = priceIndex;
     }
 
     /**
@@ -91,6 +98,69 @@ class Report {
         rowNum += num;
     }
 
+    /**
+     * Method to look up the memory of the instance type of an instance in the catalog of its region, the catalog of a
+     * region is loaded only once
+     * @param instance the instance in context
+     * @return the memory in MiB, null if the instance type (or the catalog of the region) is not known
+     */
+    private Long getMemorySizeInMB(Ec2InstanceData instance){
+        InstanceTypeCatalog.Table table = getInstanceTypeTable(instance.getRegion());
+        int id = table == null ? -1 : table.getId(instance.getType());
+        return id < 0 ? null : table.getMemorySizeInMB(id);
+    }
+
+    private InstanceTypeCatalog.Table getInstanceTypeTable(String region){
+        if(!this.instanceTypeTables.containsKey(region)) {
+            InstanceTypeCatalog.Table table = null;
+            try {
+                table = this.instanceTypeCatalog.get(Region.of(region));
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+            this.instanceTypeTables.put(region, table);
+        }
+        return this.instanceTypeTables.get(region);
+    }
+
+    /**
+     * Method to add the cheapest instance type having the suggested vcpus and memory, and the hourly savings of moving
+     * the instance to it. The types are looked up in a RightSizingIndex built once per (region, operating system,
+     * tenancy), the suggested type supports the architecture of the current type so that the same image can be used
+     * @param instance the instance in context
+     * @param suggestedVcpus the vcpus the instance needs
+     * @param suggestedMemory the memory (in MiB) the instance needs
+     * @param currentRow the row object corresponding to the row in which the data is being added currently
+     */
+    private void addSuggestedType(Ec2InstanceData instance, int suggestedVcpus, long suggestedMemory, HSSFRow currentRow){
+        InstanceTypeCatalog.Table table = getInstanceTypeTable(instance.getRegion());
+        String suggestedType = "No Prices(Price Index Not Built)";
+        String savings = "-";
+        if(this.priceIndex != null && table != null) {
+            String operatingSystem = InstancePriceIndex.operatingSystem(instance.getPlatformDetails());
+            String preInstalledSoftware = InstancePriceIndex.preInstalledSoftware(instance.getPlatformDetails());
+            String tenancy = InstancePriceIndex.tenancy(instance.getTenancy());
+            RightSizingIndex index = this.rightSizingIndexes.computeIfAbsent(instance.getRegion() + "|" + operatingSystem + "|" + preInstalledSoftware + "|" + tenancy,
+                    key -> new RightSizingIndex(table, this.priceIndex, instance.getRegion(), operatingSystem, preInstalledSoftware, tenancy));
+
+            int id = table.getId(instance.getType());
+            RightSizingIndex.Suggestion suggestion = index.getCheapest(suggestedVcpus, suggestedMemory, id < 0 ? 0 : table.getArchitectures(id),
+                    SUGGEST_SAME_FAMILY ? RightSizingIndex.family(instance.getType()) : null);
+            Double currentPrice = index.getHourlyPrice(instance.getType());
+            if(suggestion == null) {
+                suggestedType = "No Suggestion";
+            } else {
+                suggestedType = suggestion.getType();
+                if(currentPrice != null)
+                    savings = String.format("%.4f", currentPrice - suggestion.getHourlyPrice());
+            }
+        }
+        currentRow.createCell(26).setCellValue(suggestedType);
+        sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 26, 28));
+        currentRow.createCell(30).setCellValue(savings);
+        sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 30, 31));
+    }
+
     /**
      * Method to add the Suggestion info of the on demand ec2 instances in the report
      * @param cpuUtil the cpu utilization value of the instance in context
@@ -104,12 +174,21 @@ class Report {
         Double cpuRequired = cpuUtil*(instance.getVcpuCount().doubleValue());
         Integer suggestedVcpus = (int)Math.ceil(cpuRequired/EC2_REQUIRED_UTIL);
 
+        Long memorySize = getMemorySizeInMB(instance);
+        if(memorySize == null) {
+            currentRow.createCell(19).setCellValue(suggestedVcpus.toString());
+            sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 19, 20));
+            currentRow.createCell(22).setCellValue("No Data(Unknown Instance Type)");
+            sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 22, 24));
+            return;
+        }
+
         Double suggestedMemory;
         if(memUtil == null){
-            suggestedMemory = Math.ceil(this.typeToSize.get(instance.getType()).doubleValue()/1024.0);
+            suggestedMemory = Math.ceil(memorySize.doubleValue()/1024.0);
         } else {
             memUtil = Math.min(memUtil*((BUFFER_EC2_UTIL_PERCENTAGE/100)+1.0),100.0);
-            Double memRequired = memUtil*(this.typeToSize.get(instance.getType()).doubleValue());
+            Double memRequired = memUtil*(memorySize.doubleValue());
             suggestedMemory = Math.ceil(Math.ceil(memRequired/EC2_REQUIRED_UTIL)/1024.0);
         }
 
@@ -137,37 +216,7 @@ class Report {
 
         sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 22, 24));
 
-        /*
-        ArrayList<String> possibleInstances = new ArrayList<>();
-        Double minCost = Double.MAX_VALUE;
-        String minTpe = null;
-        for(String tpe : typeToSize.keySet()){
-            double mem = Math.ceil((double)typeToSize.get(tpe)/1024.0);
-            double vcpus = typeToVcpu.get(tpe);
-
-            if((mem-suggestedMemory)>=0 && (mem-suggestedMemory)<=2 && (vcpus-suggestedVcpus)>=0 && (vcpus-suggestedVcpus)<=1) {
-                possibleInstances.add(tpe);
-                if(this.typeToPrice.containsKey(tpe)){
-                    Double curPrice = this.typeToPrice.get(tpe);
-                    if(curPrice < minCost){
-                        minCost = curPrice;
-                        minTpe = tpe;
-                    }
-                }
-            }
-        }
-
-        if(possibleInstances.size() == 0){
-            currentRow.createCell(26).setCellValue("No Suggestion");
-            sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 26, 30));
-        } else if(minTpe == null){
-            currentRow.createCell(26).setCellValue(possibleInstances.get(0));
-            sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 26, 30));
-        } else {
-            currentRow.createCell(26).setCellValue(minTpe);
-            sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 26, 30));
-        }
-        */
+        addSuggestedType(instance, suggestedVcpus, (long)(suggestedMemory*1024.0), currentRow);
     }
 
     /**
@@ -225,8 +274,10 @@ class Report {
             sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 19, 20));
             currentRow.createCell(22).setCellValue("Suggested Memory(GBs)");
             sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 22, 24));
-//            currentRow.createCell(26).setCellValue("Suggested Instance Type(Linux)");
-//            sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 26, 30));
+            currentRow.createCell(26).setCellValue("Suggested Type");
+            sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 26, 28));
+            currentRow.createCell(30).setCellValue("Hourly Savings(USD)");
+            sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 30, 31));
         }
         this.rowNum += 1;
 
@@ -310,7 +361,7 @@ class Report {
 
     /**
      * Method to add data of cost implication of the on demand instances. Here we compare the prices of on demand
-     * instance to that of spot(REMOVED) and reserved instances
+     * instance to that of spot and reserved instances
      * @param instances the instances for which we have to do this analysis
      * @param heading the heading to be given for this section of the report
      */
@@ -335,15 +386,19 @@ class Report {
         currentRow.createCell(2).setCellValue("Instance ID");
         currentRow.createCell(5).setCellValue("Region");
         currentRow.createCell(8).setCellValue("Instance Type");
-        currentRow.createCell(11).setCellValue("On Demand Price(Linux)");
-//        currentRow.createCell(15).setCellValue("Spot Price(Actual Platform)");
+        currentRow.createCell(11).setCellValue("On Demand Price(Actual Platform)");
         currentRow.createCell(15).setCellValue("Reserved Price(Actual Platform)");
+        currentRow.createCell(19).setCellValue("Spot Price(Actual Platform)");
+        currentRow.createCell(23).setCellValue("Spot Savings(In %)");
+        currentRow.createCell(26).setCellValue("Interruption Risk");
         sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 2, 3));
         sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 5, 6));
         sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 8, 9));
         sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 11, 13));
         sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 15, 17));
-//        sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 16, 18));
+        sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 19, 21));
+        sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 23, 24));
+        sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 26, 27));
 
         this.rowNum += 1;
 
@@ -355,14 +410,11 @@ class Report {
             currentRow.createCell(2).setCellValue(instance.getId());
             currentRow.createCell(5).setCellValue(instance.getRegion());
             currentRow.createCell(8).setCellValue(instance.getType());
-            if(typeToPrice.containsKey(instance.getType()))
-                currentRow.createCell(11).setCellValue(typeToPrice.get(instance.getType()).toString());
+            Double onDemandPrice = getOnDemandPrice(instance);
+            if(onDemandPrice != null)
+                currentRow.createCell(11).setCellValue(onDemandPrice.toString());
             else
                 currentRow.createCell(11).setCellValue("-");
-//            if(instance.getSpotPrice() != null)
-//                currentRow.createCell(15).setCellValue(instance.getSpotPrice().toString());
-//            else
-//                currentRow.createCell(15).setCellValue("-");
 
             if(instance.getReservedPrice() != null)
                 currentRow.createCell(15).setCellValue(instance.getReservedPrice().toString());
@@ -374,7 +426,10 @@ class Report {
             sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 8, 9));
             sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 11, 13));
             sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 15, 17));
-//            sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 16, 18));
+            addSpotPriceInfo(instance, onDemandPrice, currentRow, 19, 23, 26);
+            sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 19, 21));
+            sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 23, 24));
+            sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 26, 27));
 
             this.rowNum += 1;
             ctr += 1;
@@ -382,6 +437,105 @@ class Report {
         insertSeparator();
     }
 
+    /**
+     * Method to add the spot instances along with the savings they make over the on demand price of the same
+     * configuration and the risk of them being interrupted
+     * @param instances the running spot instances
+     * @param heading the heading to be given for this section of the report
+     */
+    public void addSpotInstancesSavings(ArrayList<Ec2InstanceData> instances, String heading){
+        /*
+         * Adding the heading and the columns which we need to add for EC2 spot instances data
+         * */
+        HSSFRow currentRow = this.sheet.createRow(this.rowNum);
+        currentRow.createCell(0).setCellValue(heading);
+        sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 0, 6));
+        this.rowNum += 1;
+
+        currentRow = this.sheet.createRow(this.rowNum);
+
+        /*
+         * Adding the columns
+         * */
+        currentRow.createCell(0).setCellValue("Sr. No.");
+        currentRow.createCell(2).setCellValue("Instance ID");
+        currentRow.createCell(5).setCellValue("Region");
+        currentRow.createCell(8).setCellValue("Instance Type");
+        currentRow.createCell(11).setCellValue("On Demand Price(Actual Platform)");
+        currentRow.createCell(15).setCellValue("Spot Price(Actual Platform)");
+        currentRow.createCell(19).setCellValue("Spot Savings(In %)");
+        currentRow.createCell(22).setCellValue("Interruption Risk");
+        addSpotInstancesSavingsMergedRegions();
+        this.rowNum += 1;
+
+        Integer ctr = 1;
+
+        for (Ec2InstanceData instance : instances) {
+            currentRow = sheet.createRow(rowNum);
+            currentRow.createCell(0).setCellValue(ctr.toString());
+            currentRow.createCell(2).setCellValue(instance.getId());
+            currentRow.createCell(5).setCellValue(instance.getRegion());
+            currentRow.createCell(8).setCellValue(instance.getType());
+            Double onDemandPrice = getOnDemandPrice(instance);
+            if(onDemandPrice != null)
+                currentRow.createCell(11).setCellValue(onDemandPrice.toString());
+            else
+                currentRow.createCell(11).setCellValue("-");
+            addSpotPriceInfo(instance, onDemandPrice, currentRow, 15, 19, 22);
+            addSpotInstancesSavingsMergedRegions();
+            this.rowNum += 1;
+            ctr += 1;
+        }
+        insertSeparator();
+    }
+
+    private void addSpotInstancesSavingsMergedRegions(){
+        sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 2, 3));
+        sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 5, 6));
+        sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 8, 9));
+        sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 11, 13));
+        sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 15, 17));
+        sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 19, 20));
+        sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 22, 23));
+    }
+
+    /**
+     * Method to add the spot price of an instance, the savings of the spot price over the on demand price and the
+     * interruption risk to a row
+     * @param instance the instance in context
+     * @param onDemandPrice the on demand price of the instance, null if not known
+     * @param currentRow the row to add to
+     * @param priceColumn the column of the spot price
+     * @param savingsColumn the column of the savings
+     * @param riskColumn the column of the interruption risk
+     */
+    private void addSpotPriceInfo(Ec2InstanceData instance, Double onDemandPrice, HSSFRow currentRow, int priceColumn, int savingsColumn, int riskColumn){
+        if(instance.getSpotPrice() == null) {
+            currentRow.createCell(priceColumn).setCellValue("No Data(No Spot Price History)");
+            currentRow.createCell(savingsColumn).setCellValue("-");
+            currentRow.createCell(riskColumn).setCellValue("-");
+            return;
+        }
+        currentRow.createCell(priceColumn).setCellValue(instance.getSpotPrice().toString());
+        if(onDemandPrice != null && onDemandPrice > 0)
+            currentRow.createCell(savingsColumn).setCellValue(String.format("%.2f", (onDemandPrice - instance.getSpotPrice()) * 100.0 / onDemandPrice));
+        else
+            currentRow.createCell(savingsColumn).setCellValue("-");
+        currentRow.createCell(riskColumn).setCellValue(SpotPriceCache.interruptionRisk(instance.getSpotPriceMaximum(), instance.getSpotPriceVolatility(), onDemandPrice));
+    }
+
+    /**
+     * Method to look up the on demand price of the configuration of an instance
+     * @return the price per hour, null if there is no price index or no such price
+     */
+    private Double getOnDemandPrice(Ec2InstanceData instance){
+        if(this.priceIndex == null || instance.getType().equals("") || instance.getPlatformDetails().equals(""))
+            return null;
+        return this.priceIndex.getEffectiveHourlyPrice(instance.getRegion(), instance.getType(),
+                InstancePriceIndex.operatingSystem(instance.getPlatformDetails()), InstancePriceIndex.preInstalledSoftware(instance.getPlatformDetails()),
+                InstancePriceIndex.tenancy(instance.getTenancy()), InstancePriceIndex.ON_DEMAND);
+    }
+
     /**
      * Method to add the Reserved instances which are underutilized in terms of the capacity
      * bought. Let's say if we have bought 10 instances and out of them we are only using 4 then
@@ -428,7 +582,7 @@ class Report {
                 currentRow.createCell(0).setCellValue(ctr.toString());
                 currentRow.createCell(2).setCellValue(instance.getReservedInstanceId());
                 currentRow.createCell(6).setCellValue(instance.getInstanceType());
-                currentRow.createCell(9).setCellValue(instance.getCapacityInUse().toString());
+                currentRow.createCell(9).setCellValue(BigDecimal.valueOf(instance.getCapacityInUse()).stripTrailingZeros().toPlainString());
                 currentRow.createCell(12).setCellValue(instance.getInstanceCount().toString());
                 currentRow.createCell(15).setCellValue(instance.getRegion());
                 sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 2, 4));
@@ -492,6 +646,158 @@ class Report {
         insertSeparator();
     }
 
+    /**
+     * Method to add the hourly coverage and utilization of every pool having reserved instances, summed up over the past
+     * days and the coming days of the timeline. The coverage is the part of the usage covered by the reserved capacity
+     * and the utilization is the part of the reserved capacity in use.
+     * @param timelines the timelines of the pools
+     * @param heading the heading to be given to this section of the report
+     * @param lookbackDays the number of days before now the timelines start at
+     * @param forwardDays the number of days after now the timelines end at
+     */
+    public void addReservedCoverageTimeline(ArrayList<ReservedCoverageTimeline.PoolTimeline> timelines, String heading, int lookbackDays, int forwardDays){
+        /*
+         * Adding the heading and the columns which we need to add for the reserved instance pools
+         * */
+        HSSFRow currentRow = this.sheet.createRow(this.rowNum);
+        currentRow.createCell(0).setCellValue(heading);
+        sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 0, 6));
+        currentRow.createCell(7).setCellValue("(Last " + lookbackDays + " days, Next " + forwardDays + " days)");
+        sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 7, 10));
+
+        this.rowNum += 1;
+        currentRow = this.sheet.createRow(this.rowNum);
+
+        /*
+         * Adding the columns
+         * */
+        currentRow.createCell(0).setCellValue("Sr. No.");
+        currentRow.createCell(2).setCellValue("Region");
+        currentRow.createCell(4).setCellValue("Instance Type");
+        currentRow.createCell(7).setCellValue("Platform");
+        currentRow.createCell(9).setCellValue("Tenancy");
+        currentRow.createCell(11).setCellValue("Reserved Now");
+        currentRow.createCell(13).setCellValue("Average Usage(Past)");
+        currentRow.createCell(15).setCellValue("Coverage % (Past)");
+        currentRow.createCell(17).setCellValue("Utilization % (Past)");
+        currentRow.createCell(19).setCellValue("Coverage % (Coming)");
+        currentRow.createCell(21).setCellValue("Utilization % (Coming)");
+        currentRow.createCell(23).setCellValue("Coverage Falls At");
+        addReservedCoverageMergedRegions();
+        this.rowNum += 1;
+
+        Integer ctr = 1;
+
+        for (ReservedCoverageTimeline.PoolTimeline timeline : timelines) {
+            if (!timeline.hasReservations())
+                continue;
+            int now = timeline.getCurrentHour();
+            currentRow = sheet.createRow(rowNum);
+            currentRow.createCell(0).setCellValue(ctr.toString());
+            currentRow.createCell(2).setCellValue(timeline.getRegion());
+            currentRow.createCell(4).setCellValue(timeline.getType());
+            currentRow.createCell(7).setCellValue(timeline.getPlatform());
+            currentRow.createCell(9).setCellValue(timeline.getTenancy());
+            currentRow.createCell(11).setCellValue(String.format("%.2f", timeline.getReserved(now)) + (timeline.isSizeFlexible() ? " units" : ""));
+            currentRow.createCell(13).setCellValue(String.format("%.2f", timeline.getAverageUsed(0, now)) + (timeline.isSizeFlexible() ? " units" : ""));
+            currentRow.createCell(15).setCellValue(String.format("%.2f", timeline.getCoverageInPercent(0, now)));
+            currentRow.createCell(17).setCellValue(String.format("%.2f", timeline.getUtilizationInPercent(0, now)));
+            currentRow.createCell(19).setCellValue(String.format("%.2f", timeline.getCoverageInPercent(now, timeline.getHours())));
+            currentRow.createCell(21).setCellValue(String.format("%.2f", timeline.getUtilizationInPercent(now, timeline.getHours())));
+            currentRow.createCell(23).setCellValue(timeline.getCoverageDropTime() == null ? "-" : timeline.getCoverageDropTime().toString());
+            addReservedCoverageMergedRegions();
+            this.rowNum += 1;
+            ctr += 1;
+        }
+        insertSeparator();
+    }
+
+    private void addReservedCoverageMergedRegions(){
+        sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 4, 6));
+        sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 7, 8));
+        sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 9, 10));
+        sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 11, 12));
+        sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 13, 14));
+        sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 15, 16));
+        sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 17, 18));
+        sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 19, 20));
+        sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 21, 22));
+        sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 23, 25));
+    }
+
+    /**
+     * Method to add the reserved instances to buy for every pool, along with the cost of its on demand usage before and
+     * after buying them
+     * @param recommendations the commitments found for the pools
+     * @param heading the heading to be given to this section of the report
+     * @param lookbackDays the number of past days the usage was taken from
+     */
+    public void addReservationPurchases(ArrayList<CommitmentOptimizer.Recommendation> recommendations, String heading, int lookbackDays){
+        /*
+         * Adding the heading and the columns which we need to add for the reserved instance purchases
+         * */
+        HSSFRow currentRow = this.sheet.createRow(this.rowNum);
+        currentRow.createCell(0).setCellValue(heading);
+        sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 0, 8));
+        currentRow.createCell(9).setCellValue("(Usage of last " + lookbackDays + " days)");
+        sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 9, 12));
+
+        this.rowNum += 1;
+        currentRow = this.sheet.createRow(this.rowNum);
+
+        /*
+         * Adding the columns
+         * */
+        currentRow.createCell(0).setCellValue("Sr. No.");
+        currentRow.createCell(2).setCellValue("Region");
+        currentRow.createCell(4).setCellValue("Instance Type");
+        currentRow.createCell(7).setCellValue("Platform");
+        currentRow.createCell(9).setCellValue("Tenancy");
+        currentRow.createCell(11).setCellValue("Term");
+        currentRow.createCell(13).setCellValue("Buy");
+        currentRow.createCell(15).setCellValue("Average On Demand Usage");
+        currentRow.createCell(17).setCellValue("Cost/Hour Now(USD)");
+        currentRow.createCell(19).setCellValue("Cost/Hour After(USD)");
+        currentRow.createCell(21).setCellValue("Yearly Savings(USD)");
+        addReservationPurchaseMergedRegions();
+        this.rowNum += 1;
+
+        Integer ctr = 1;
+
+        for (CommitmentOptimizer.Recommendation recommendation : recommendations) {
+            ReservedCoverageTimeline.PoolTimeline pool = recommendation.getPool();
+            String units = pool.isSizeFlexible() ? " units" : "";
+            currentRow = sheet.createRow(rowNum);
+            currentRow.createCell(0).setCellValue(ctr.toString());
+            currentRow.createCell(2).setCellValue(pool.getRegion());
+            currentRow.createCell(4).setCellValue(pool.getType());
+            currentRow.createCell(7).setCellValue(pool.getPlatform());
+            currentRow.createCell(9).setCellValue(pool.getTenancy());
+            currentRow.createCell(11).setCellValue(recommendation.getTerm());
+            currentRow.createCell(13).setCellValue(BigDecimal.valueOf(recommendation.getCommitment()).stripTrailingZeros().toPlainString() + units);
+            currentRow.createCell(15).setCellValue(String.format("%.2f", recommendation.getAverageOnDemandUsage()) + units);
+            currentRow.createCell(17).setCellValue(String.format("%.4f", recommendation.getCurrentCostPerHour()));
+            currentRow.createCell(19).setCellValue(String.format("%.4f", recommendation.getOptimizedCostPerHour()));
+            currentRow.createCell(21).setCellValue(String.format("%.2f", recommendation.getYearlySavings()));
+            addReservationPurchaseMergedRegions();
+            this.rowNum += 1;
+            ctr += 1;
+        }
+        insertSeparator();
+    }
+
+    private void addReservationPurchaseMergedRegions(){
+        sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 4, 6));
+        sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 7, 8));
+        sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 9, 10));
+        sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 11, 12));
+        sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 13, 14));
+        sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 15, 16));
+        sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 17, 18));
+        sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 19, 20));
+        sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 21, 22));
+    }
+
     /**
      * Method to add the EBS volumes which are not in "in-use" state, this method takes a general list
      * of EbsVolumeData Objects and will make another list of the volumes which are not in "in-use" state
@@ -801,6 +1107,51 @@ class Report {
         insertSeparator();
     }
 
+    /**
+     * Method to add the number of findings of every category per value of a tag key, so that every finding can be
+     * routed to the team owning the resources
+     * @param groups the findings grouped by the values of the tag key, as returned by ResourceTagIndex.groupBy
+     * @param categories the categories of the findings, in the order of the counts of the groups
+     * @param heading the heading which is to be added before the table
+     */
+    public void addFindingsByTag(ArrayList<ResourceTagIndex.TagGroup> groups, ArrayList<String> categories, String heading) {
+        /*
+         * Adding the heading and a column per category of findings, three cells wide each
+         * */
+        HSSFRow currentRow = this.sheet.createRow(this.rowNum);
+        currentRow.createCell(0).setCellValue(heading);
+        sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 0, 6));
+        this.rowNum += 1;
+        currentRow = this.sheet.createRow(this.rowNum);
+        currentRow.createCell(0).setCellValue("Sr. No.");
+        currentRow.createCell(2).setCellValue("Tag Value");
+        for (int i = 0; i < categories.size(); i++)
+            currentRow.createCell(6 + 4 * i).setCellValue(categories.get(i));
+        currentRow.createCell(6 + 4 * categories.size()).setCellValue("Total");
+        addFindingsByTagMergedRegions(categories.size());
+        this.rowNum += 1;
+
+        Integer ctr = 1;
+        for (ResourceTagIndex.TagGroup group : groups) {
+            currentRow = sheet.createRow(rowNum);
+            currentRow.createCell(0).setCellValue(ctr.toString());
+            currentRow.createCell(2).setCellValue(group.getValue());
+            for (int i = 0; i < categories.size(); i++)
+                currentRow.createCell(6 + 4 * i).setCellValue(group.getCount(i));
+            currentRow.createCell(6 + 4 * categories.size()).setCellValue(group.getTotal());
+            addFindingsByTagMergedRegions(categories.size());
+            this.rowNum += 1;
+            ctr += 1;
+        }
+        insertSeparator();
+    }
+
+    private void addFindingsByTagMergedRegions(int categories){
+        sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 2, 4));
+        for (int i = 0; i <= categories; i++)
+            sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 6 + 4 * i, 8 + 4 * i));
+    }
+
     /**
      * Method to add meta data of s3 buckets to the excel report we have
      * @param buckets the list of buckets
@@ -844,6 +1195,68 @@ class Report {
         insertSeparator();
     }
 
+    /**
+     * Method to add the prefixes of the S3 buckets which hold the most bytes of the objects which have not been
+     * modified in the last x days, across all the buckets
+     * @param buckets the collection of the buckets whose prefixes were rolled up while listing them
+     * @param heading the heading which is to be given for this section of the report
+     * @param days the value x, as defined in the description of the function
+     * @param maxRows the number of prefixes to be added at most
+     */
+    public void addColdPrefixes(ArrayList<S3BucketData> buckets, String heading, int days, int maxRows) {
+        ArrayList<S3PrefixTrie.PrefixSummary> prefixes = new ArrayList<>();
+        for (S3BucketData bucket : buckets)
+            prefixes.addAll(bucket.getColdPrefixes());
+        prefixes.sort((a, b) -> Long.compare(b.getColdBytes(), a.getColdBytes()));
+
+        /*
+         * Adding the heading and the required columns
+         * */
+        HSSFRow currentRow = this.sheet.createRow(this.rowNum);
+        currentRow.createCell(0).setCellValue(heading + " " + days + " DAYS (SORTED IN DESCENDING ORDER ACCORDING TO THE SIZE OF THE OLD OBJECTS)");
+        sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 0, 9));
+        this.rowNum += 1;
+
+        currentRow = this.sheet.createRow(this.rowNum);
+        currentRow.createCell(0).setCellValue("Sr. No.");
+        currentRow.createCell(1).setCellValue("Bucket Name");
+        currentRow.createCell(3).setCellValue("Prefix");
+        currentRow.createCell(6).setCellValue("Old Objects");
+        currentRow.createCell(7).setCellValue("Old Objects Size (In Bytes)");
+        currentRow.createCell(9).setCellValue("Other Objects");
+        currentRow.createCell(10).setCellValue("Other Objects Size (In Bytes)");
+        currentRow.createCell(12).setCellValue("Size Per Storage Class (In Bytes)");
+        sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 1, 2));
+        sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 3, 5));
+        sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 7, 8));
+        sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 10, 11));
+        sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 12, 15));
+        this.rowNum += 1;
+
+        Integer ctr = 1;
+        for (S3PrefixTrie.PrefixSummary prefix : prefixes) {
+            if (ctr > maxRows)
+                break;
+            currentRow = sheet.createRow(rowNum);
+            currentRow.createCell(0).setCellValue(ctr.toString());
+            currentRow.createCell(1).setCellValue(prefix.getBucketName());
+            currentRow.createCell(3).setCellValue(prefix.getPrefix());
+            currentRow.createCell(6).setCellValue(prefix.getColdObjects());
+            currentRow.createCell(7).setCellValue(prefix.getColdBytes());
+            currentRow.createCell(9).setCellValue(prefix.getHotObjects());
+            currentRow.createCell(10).setCellValue(prefix.getHotBytes());
+            currentRow.createCell(12).setCellValue(prefix.getStorageClassBreakdown());
+            sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 1, 2));
+            sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 3, 5));
+            sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 7, 8));
+            sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 10, 11));
+            sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 12, 15));
+            this.rowNum += 1;
+            ctr += 1;
+        }
+        insertSeparator();
+    }
+
     /**
      * Method to add the data of backups. Only those backups out of a collection which have been there for
      * more than x days
@@ -952,7 +1365,11 @@ class Report {
              * Adding the heading for a bucket
              * */
             currentRow = this.sheet.createRow(this.rowNum);
-            currentRow.createCell(0).setCellValue("FOR BUCKET '" + bucket.getName() + "'");
+            S3ObjectSampler.Estimate estimate = bucket.getColdObjectsEstimate();
+            if (estimate != null && estimate.getDays() == days)
+                currentRow.createCell(0).setCellValue("FOR BUCKET '" + bucket.getName() + "' (ESTIMATED ~" + bucket.getRelevantCount() + " OBJECTS, ~" + bucket.getRelevantSize() + " +- " + estimate.getColdBytesHalfWidth() + " BYTES FROM " + estimate.getSampledPartitions() + " OF " + estimate.getTotalPartitions() + " PARTITIONS)");
+            else
+                currentRow.createCell(0).setCellValue("FOR BUCKET '" + bucket.getName() + "' (" + bucket.getRelevantCount() + " OBJECTS, " + bucket.getRelevantSize() + " BYTES)");
             sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 0, 9));
             this.rowNum += 1;
 
@@ -1005,6 +1422,76 @@ class Report {
         insertSeparator();
     }
 
+    /**
+     * Method to add the changes found between the previous and the current inventory snapshot. The changes are read
+     * from the delta file (one change per line) in a streaming manner, and only the first maxRows of them are added
+     * as a sheet can not hold more than 65536 rows. The delta file itself always has all the changes.
+     * @param deltaFilename the file having the changes written by InventoryDeltaEngine
+     * @param heading the heading to be given to this section of the report
+     * @param summary the summary of the number of changes
+     * @param maxRows the maximum number of changes to be added in the report
+     */
+    public void addDeltaData(String deltaFilename, String heading, InventoryDeltaEngine.DeltaSummary summary, int maxRows) {
+        /*
+         * Adding the heading and the required columns
+         * */
+        HSSFRow currentRow = this.sheet.createRow(this.rowNum);
+        currentRow.createCell(0).setCellValue(heading);
+        sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 0, 6));
+        currentRow.createCell(7).setCellValue("(Added: " + summary.getAdded() + ", Removed: " + summary.getRemoved() + ", Changed: " + summary.getChanged()
+                + (summary.getNotCompared().isEmpty() ? "" : ", Not compared (collected with other filters): " + String.join(", ", summary.getNotCompared())) + ")");
+        sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 7, 13));
+        this.rowNum += 1;
+
+        currentRow = this.sheet.createRow(this.rowNum);
+        currentRow.createCell(0).setCellValue("Sr. No.");
+        currentRow.createCell(1).setCellValue("CHANGE");
+        currentRow.createCell(3).setCellValue("RESOURCE TYPE");
+        currentRow.createCell(6).setCellValue("RESOURCE ID");
+        currentRow.createCell(11).setCellValue("Region");
+        currentRow.createCell(14).setCellValue("DETAILS");
+        sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 1, 2));
+        sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 3, 5));
+        sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 6, 10));
+        sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 11, 12));
+        sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 14, 24));
+        this.rowNum += 1;
+
+        Integer ctr = 1;
+        Gson gson = new Gson();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(deltaFilename), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null && ctr <= maxRows) {
+                InventoryDelta delta = gson.fromJson(line, InventoryDelta.class);
+                currentRow = sheet.createRow(rowNum);
+                currentRow.createCell(0).setCellValue(ctr.toString());
+                currentRow.createCell(1).setCellValue(delta.getChange());
+                currentRow.createCell(3).setCellValue(delta.getType());
+                currentRow.createCell(6).setCellValue(delta.getId());
+                currentRow.createCell(11).setCellValue(delta.getRegion());
+                currentRow.createCell(14).setCellValue(delta.describe());
+                sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 1, 2));
+                sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 3, 5));
+                sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 6, 10));
+                sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 11, 12));
+                sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 14, 24));
+                this.rowNum += 1;
+                ctr += 1;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        int total = summary.getAdded() + summary.getRemoved() + summary.getChanged();
+        if (total > maxRows) {
+            currentRow = sheet.createRow(rowNum);
+            currentRow.createCell(0).setCellValue((total - maxRows) + " more changes, refer to " + deltaFilename);
+            sheet.addMergedRegion(new CellRangeAddress(this.rowNum, this.rowNum, 0, 9));
+            this.rowNum += 1;
+        }
+        insertSeparator();
+    }
+
     /**
      * Method to write the entire report to the file
      */
@@ -0,0 +1,369 @@
+package com.example;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Class to find the hourly coverage (the part of the usage covered by reserved instances) and utilization (the part of
+ * the reserved capacity in use) of every pool of reserved instances, over the last N days and the next M days.
+ *
+ * The reserved instances are pooled per (region, tenancy, platform, family) in normalized units when they are size
+ * flexible, else per (region, tenancy, platform, type) in instances. Zonal reserved instances are never size flexible,
+ * so they are counted in instances in the pool of their type and region. As in ReservedInstanceLedger, an instance of a
+ * size flexible configuration whose type has such a pool is counted in it, and only the usage beyond the capacity of
+ * that pool, hour by hour, is counted (in normalized units) in the pool of its family.
+ *
+ * Every reserved instance is an interval [start, end) and every running instance an interval [launch time, end of the
+ * window), since only its current state and last launch time are known. The intervals of a pool are swept once: every
+ * interval adds its units at the hour it starts and takes them out at the hour it ends, and a running sum over the hours
+ * gives the reserved capacity and the usage of every hour. A pool therefore costs time in the number of its intervals
+ * plus the number of hours of the window, and the pools are swept in parallel.
+ *
+ * The current instant is taken once, so all the pools are swept against the same hours.
+ */
+class ReservedCoverageTimeline {
+    private static final long HOUR_IN_MILLIS = 3600L * 1000L;
+
+    private final long windowStart; // Epoch milli of the first hour of the window
+    private final int hours;
+    private final int currentHour; // Index of the hour holding the current instant
+    private final int threads;
+
+    /**
+     * Class to hold the hourly reserved capacity and usage of a pool
+     */
+    public static class PoolTimeline {
+        private final String region;
+        private final String tenancy;
+        private final String platform;
+        private final String type; // Instance type, or the family for the size flexible pools
+        private final boolean sizeFlexible;
+        private final long windowStart;
+        private final int currentHour;
+        private float[] reserved; // Units reserved in every hour of the window
+        private float[] used; // Units running in every hour of the window
+        private boolean reservations = false;
+        private boolean spillsOver = false;
+        private final HashMap<String, Double> unitsByType = new HashMap<>(); // Units running now, by the instance type
+
+        private PoolTimeline(String region, String tenancy, String platform, String type, boolean sizeFlexible, long windowStart, int currentHour) {
+            this.region = region;
+            this.tenancy = tenancy;
+            this.platform = platform;
+            this.type = type;
+            this.sizeFlexible = sizeFlexible;
+            this.windowStart = windowStart;
+            this.currentHour = currentHour;
+        }
+
+        public String getRegion() {
+            return this.region;
+        }
+
+        public String getTenancy() {
+            return this.tenancy;
+        }
+
+        public String getPlatform() {
+            return this.platform;
+        }
+
+        /**
+         * Method to return the instance type of the pool
+         * @return the instance type, or the family followed by " (any size)" for a size flexible pool
+         */
+        public String getType() {
+            return this.sizeFlexible ? this.type + " (any size)" : this.type;
+        }
+
+        /**
+         * Method to return if the pool is counted in normalized units (size flexible) or in instances
+         */
+        public boolean isSizeFlexible() {
+            return this.sizeFlexible;
+        }
+
+        /**
+         * Method to return if the usage beyond the reserved capacity of the pool is counted in the size flexible pool of
+         * its family too
+         */
+        public boolean spillsOver() {
+            return this.spillsOver;
+        }
+
+        /**
+         * Method to return if any reserved instance of the pool is active within the window
+         */
+        public boolean hasReservations() {
+            return this.reservations;
+        }
+
+        /**
+         * Method to return the units of every instance type of the pool running now
+         * @return the units by the instance type
+         */
+        public HashMap<String, Double> getUnitsByType() {
+            return this.unitsByType;
+        }
+
+        public int getHours() {
+            return this.reserved.length;
+        }
+
+        /**
+         * Method to return the index of the hour holding the instant the timeline was built at. The hours before it are
+         * the past ones
+         */
+        public int getCurrentHour() {
+            return this.currentHour;
+        }
+
+        public double getReserved(int hour) {
+            return this.reserved[hour];
+        }
+
+        public double getUsed(int hour) {
+            return this.used[hour];
+        }
+
+        /**
+         * Method to return the part of the usage of an hour covered by the reserved capacity
+         * @return the coverage in percent, 100 if nothing was running
+         */
+        public double getCoverageInPercent(int hour) {
+            return this.used[hour] == 0 ? 100.0 : Math.min(this.reserved[hour], this.used[hour]) * 100.0 / this.used[hour];
+        }
+
+        /**
+         * Method to return the part of the reserved capacity of an hour in use
+         * @return the utilization in percent, 100 if nothing was reserved
+         */
+        public double getUtilizationInPercent(int hour) {
+            return this.reserved[hour] == 0 ? 100.0 : Math.min(this.reserved[hour], this.used[hour]) * 100.0 / this.reserved[hour];
+        }
+
+        /**
+         * Method to return the average usage over a range of hours
+         * @param from the first hour (inclusive)
+         * @param to the last hour (exclusive)
+         */
+        public double getAverageUsed(int from, int to) {
+            double sum = 0;
+            for (int hour = from; hour < to; hour++)
+                sum += this.used[hour];
+            return to > from ? sum / (to - from) : 0;
+        }
+
+        /**
+         * Method to return the coverage over a range of hours
+         * @param from the first hour (inclusive)
+         * @param to the last hour (exclusive)
+         * @return the covered usage over the usage in percent, 100 if nothing was running
+         */
+        public double getCoverageInPercent(int from, int to) {
+            double covered = 0, used = 0;
+            for (int hour = from; hour < to; hour++) {
+                covered += Math.min(this.reserved[hour], this.used[hour]);
+                used += this.used[hour];
+            }
+            return used == 0 ? 100.0 : covered * 100.0 / used;
+        }
+
+        /**
+         * Method to return the utilization over a range of hours
+         * @param from the first hour (inclusive)
+         * @param to the last hour (exclusive)
+         * @return the covered usage over the reserved capacity in percent, 100 if nothing was reserved
+         */
+        public double getUtilizationInPercent(int from, int to) {
+            double covered = 0, reserved = 0;
+            for (int hour = from; hour < to; hour++) {
+                covered += Math.min(this.reserved[hour], this.used[hour]);
+                reserved += this.reserved[hour];
+            }
+            return reserved == 0 ? 100.0 : covered * 100.0 / reserved;
+        }
+
+        /**
+         * Method to find the first coming hour in which the reserved capacity (because of the reserved instances expiring)
+         * falls short of the usage while it did not in the current hour
+         * @return the start of that hour, null if the coverage does not fall within the window
+         */
+        public Date getCoverageDropTime() {
+            if (this.reserved[this.currentHour] < this.used[this.currentHour])
+                return null;
+            for (int hour = this.currentHour + 1; hour < this.reserved.length; hour++) {
+                if (this.reserved[hour] < this.used[hour] && this.reserved[hour] < this.reserved[hour - 1])
+                    return new Date(this.windowStart + hour * HOUR_IN_MILLIS);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Constructor
+     * @param now the current instant
+     * @param lookbackDays the number of days before now the window starts at
+     * @param forwardDays the number of days after now the window ends at
+     * @param threads the number of pools swept in parallel
+     */
+    public ReservedCoverageTimeline(Instant now, int lookbackDays, int forwardDays, int threads) {
+        long currentHourStart = now.toEpochMilli() - now.toEpochMilli() % HOUR_IN_MILLIS;
+        this.windowStart = currentHourStart - lookbackDays * 24L * HOUR_IN_MILLIS;
+        this.currentHour = lookbackDays * 24;
+        this.hours = (lookbackDays + forwardDays) * 24;
+        this.threads = threads;
+    }
+
+    /**
+     * Method to build the timeline of every pool having a reserved instance within the window, and optionally of the
+     * pools having only running instances
+     * @param reservedInstances the purchased reserved instances of all the regions
+     * @param instances the running, non spot, instances of all the regions
+     * @param everyPool if true then the pools without any reserved instance are built too
+     * @return the timelines, sorted by region and type
+     * @throws Exception if the sweep of a pool fails or is interrupted
+     */
+    public ArrayList<PoolTimeline> build(ArrayList<ReservedInstanceData> reservedInstances, ArrayList<Ec2InstanceData> instances, boolean everyPool) throws Exception {
+        /*
+         * Every pool gets a list of intervals, as {start hour, end hour, units}
+         * */
+        LinkedHashMap<String, PoolTimeline> pools = new LinkedHashMap<>();
+        LinkedHashMap<String, ArrayList<double[]>> intervals = new LinkedHashMap<>();
+        for (ReservedInstanceData reservedInstance : reservedInstances) {
+            if (reservedInstance.getInstanceType() == null || reservedInstance.getInstanceCount() == null || reservedInstance.getStartTime() == null || reservedInstance.getEndTime() == null)
+                continue;
+            int start = hourOf(reservedInstance.getStartTime().getTime(), false);
+            int end = hourOf(reservedInstance.getEndTime().getTime(), true);
+            if (start >= end)
+                continue;
+            String platform = ReservedInstanceMatcher.platform(reservedInstance.getProductDescription());
+            boolean zonal = "Availability Zone".equals(reservedInstance.getScope());
+            boolean flexible = !zonal && ReservedInstanceMatcher.isSizeFlexible(platform, reservedInstance.getTenancy(), reservedInstance.getInstanceType());
+            String type = flexible ? RightSizingIndex.family(reservedInstance.getInstanceType()) : reservedInstance.getInstanceType();
+            String key = reservedInstance.getRegion() + "|" + reservedInstance.getTenancy() + "|" + platform + "|" + type;
+            pools.computeIfAbsent(key, k -> new PoolTimeline(reservedInstance.getRegion(), reservedInstance.getTenancy(), platform, type, flexible, this.windowStart, this.currentHour));
+            double units = (flexible ? ReservedInstanceMatcher.normalizationFactor(reservedInstance.getInstanceType()) : 1) * reservedInstance.getInstanceCount();
+            intervals.computeIfAbsent(key, k -> new ArrayList<>()).add(new double[]{start, end, -units});
+        }
+        LinkedHashMap<String, String> spills = new LinkedHashMap<>(); // Key of a pool of a type -> key of the size flexible pool its usage beyond its capacity is counted in
+        for (Ec2InstanceData instance : instances) {
+            if (instance.getType() == null || instance.getType().equals(""))
+                continue;
+            String platform = ReservedInstanceMatcher.platform(instance.getPlatformDetails());
+            String typeKey = instance.getRegion() + "|" + instance.getTenancy() + "|" + platform + "|" + instance.getType();
+            boolean sizeFlexible = ReservedInstanceMatcher.isSizeFlexible(platform, instance.getTenancy(), instance.getType());
+            boolean flexible = sizeFlexible && !pools.containsKey(typeKey); // Counted in the pool of the zonal reserved instances of its type first
+            if (sizeFlexible && !flexible)
+                spills.put(typeKey, instance.getRegion() + "|" + instance.getTenancy() + "|" + platform + "|" + RightSizingIndex.family(instance.getType()));
+            String type = flexible ? RightSizingIndex.family(instance.getType()) : instance.getType();
+            String key = instance.getRegion() + "|" + instance.getTenancy() + "|" + platform + "|" + type;
+            if (!pools.containsKey(key) && !everyPool)
+                continue;
+            PoolTimeline timeline = pools.computeIfAbsent(key, k -> new PoolTimeline(instance.getRegion(), instance.getTenancy(), platform, type, flexible, this.windowStart, this.currentHour));
+            int start = instance.getLaunchTime() == null ? 0 : hourOf(instance.getLaunchTime().getTime(), false);
+            double units = flexible ? ReservedInstanceMatcher.normalizationFactor(instance.getType()) : 1;
+            intervals.computeIfAbsent(key, k -> new ArrayList<>()).add(new double[]{start, this.hours, units});
+            timeline.unitsByType.merge(instance.getType(), units, Double::sum);
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(this.threads);
+        try {
+            ArrayList<Future<?>> sweeps = new ArrayList<>();
+            for (Map.Entry<String, PoolTimeline> entry : pools.entrySet()) {
+                PoolTimeline timeline = entry.getValue();
+                ArrayList<double[]> poolIntervals = intervals.get(entry.getKey());
+                sweeps.add(pool.submit(() -> sweep(timeline, poolIntervals)));
+            }
+            for (Future<?> sweep : sweeps) {
+                try {
+                    sweep.get();
+                } catch (ExecutionException e) {
+                    throw new Exception("Could not build the timeline of a reserved instance pool", e.getCause());
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        for (Map.Entry<String, String> spill : spills.entrySet())
+            spillOver(pools.get(spill.getKey()), spill.getValue(), pools, everyPool);
+
+        ArrayList<PoolTimeline> timelines = new ArrayList<>(pools.values());
+        Collections.sort(timelines, Comparator.comparing(PoolTimeline::getRegion).thenComparing(PoolTimeline::getType).thenComparing(PoolTimeline::getPlatform).thenComparing(PoolTimeline::getTenancy));
+        return timelines;
+    }
+
+    /**
+     * Method to sweep the intervals of a pool over the hours of the window. The units reserved are the ones with a
+     * negative sign
+     */
+    private void sweep(PoolTimeline timeline, ArrayList<double[]> poolIntervals) {
+        double[] reservedChanges = new double[this.hours + 1];
+        double[] usedChanges = new double[this.hours + 1];
+        for (double[] interval : poolIntervals) {
+            double[] changes = interval[2] < 0 ? reservedChanges : usedChanges;
+            double units = Math.abs(interval[2]);
+            changes[(int) interval[0]] += units;
+            changes[(int) interval[1]] -= units;
+            if (interval[2] < 0)
+                timeline.reservations = true;
+        }
+        timeline.reserved = new float[this.hours];
+        timeline.used = new float[this.hours];
+        double reserved = 0, used = 0;
+        for (int hour = 0; hour < this.hours; hour++) {
+            reserved += reservedChanges[hour];
+            used += usedChanges[hour];
+            timeline.reserved[hour] = (float) reserved;
+            timeline.used[hour] = (float) used;
+        }
+    }
+
+    /**
+     * Method to add the usage of a pool of a type beyond its reserved capacity, hour by hour, to the size flexible pool of
+     * its family. Must be called once the pools are swept
+     * @param timeline the swept pool of the type
+     * @param familyKey the key of the size flexible pool
+     * @param pools the pools by their key, the size flexible pool is added to them if it is not there yet and everyPool is true
+     */
+    private void spillOver(PoolTimeline timeline, String familyKey, LinkedHashMap<String, PoolTimeline> pools, boolean everyPool) {
+        timeline.spillsOver = true;
+        PoolTimeline family = pools.get(familyKey);
+        if (family == null) {
+            if (!everyPool)
+                return;
+            family = new PoolTimeline(timeline.region, timeline.tenancy, timeline.platform, RightSizingIndex.family(timeline.type), true, this.windowStart, this.currentHour);
+            sweep(family, new ArrayList<>());
+            pools.put(familyKey, family);
+        }
+        double factor = ReservedInstanceMatcher.normalizationFactor(timeline.type);
+        for (int hour = 0; hour < this.hours; hour++)
+            family.used[hour] += Math.max(0, timeline.used[hour] - timeline.reserved[hour]) * factor;
+        double overflowNow = this.currentHour < this.hours ? Math.max(0, timeline.used[this.currentHour] - timeline.reserved[this.currentHour]) * factor : 0;
+        if (overflowNow > 0)
+            family.unitsByType.merge(timeline.type, overflowNow, Double::sum);
+    }
+
+    /**
+     * Method to return the hour of the window an instant falls in, clamped to the window
+     * @param epochMilli the instant
+     * @param roundUp if true then an instant within an hour gives the next hour (used for the ends of the intervals)
+     */
+    private int hourOf(long epochMilli, boolean roundUp) {
+        long offset = epochMilli - this.windowStart;
+        long hour = Math.floorDiv(offset, HOUR_IN_MILLIS);
+        if (roundUp && Math.floorMod(offset, HOUR_IN_MILLIS) != 0)
+            hour += 1;
+        return (int) Math.max(0, Math.min(this.hours, hour));
+    }
+}
@@ -3,15 +3,15 @@ package com.example;
 import software.amazon.awssdk.regions.Region;
 
 
+import java.io.Serializable;
 import java.time.Instant;
-import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashMap;
 
 /**
  * Class to store the configuration information of a purchased reserved instance
  */
-class ReservedInstanceData {
+class ReservedInstanceData implements Serializable {
+    private static final long serialVersionUID = 1L;
     private String reservedInstanceId;
     private String state;
     private String scope;
@@ -23,8 +23,8 @@ class ReservedInstanceData {
     private Long duration;
     private Date endTime;
     private Date startTime;
-    private Integer found = 0;
-    private Region region;
+    private Double found = 0.0; // Number of instances (of the type of this reserved instance) covered, fractional for the size flexible ones
+    private String region; // Stored as the region id, so that the object can be serialized to the journal
 
     /**
      * The builder class to help in creating objects of the parent class. The only way to create an object of the parent class ReservedInstanceData is by
@@ -162,66 +162,53 @@ class ReservedInstanceData {
     }
 
     /**
-     * method to check if the details of the ec2 instance (passed as a param) match with the details
-     * of reserved instance in context.
-     * @param instance the ec2 instance whose configuration we want to match
-     * @return return true if the
-     *         platform details/instance description,
-     *         the instance type,
-     *         the availability zone and
-     *         the tenancy
-     *         matches for the ec2 instance passed as a param to that of the current reserved instance
+     * Method to return the Date object of the time at which a reserved instance was purchased
+     * @return the date object of the start time of the reserved instance in context
      */
-    public boolean matchInstance(Ec2InstanceData instance){
-        if(this.productDescription.equals(instance.getPlatformDetails())){
-            if(this.instanceType.equals(instance.getType())){
-                if(this.availabilityZone.equals(instance.getAvailabilityZone())){
-                    return this.tenancy.equals(instance.getTenancy());
-                }
-            }
-        }
-        return false;
+    public Date getStartTime(){
+        return this.startTime;
     }
 
     /**
-     * Check if we still have instances remaining that are yet to be found of the same configuration
-     * as that of the reserved instance in context
-     * @return true if the number of found ec2 instances which match the configuration is less than the capacity we bought else returns false
+     * Method to retrieve the scope of the reserved instance
+     * @return "Region" or "Availability Zone"
      */
-    public boolean isRemaining(){
-        return this.found < this.instanceCount;
+    public String getScope(){
+        return this.scope;
     }
 
     /**
-     * If we find an ec2 instance which has the exact same configuration to that of the reserved instance in context
-     * then we increment a counter variable. This counter variable keeps track of the number of the instances found.
-     * Which further helps us in assuring that we are maintaining an upper bound of the capacity we bought.
+     * Method to retrieve the product description of the reserved instance
+     * @return the platform the reserved instance was bought for, like "Linux/UNIX"
      */
-    public void foundOne(){
-        this.found = this.found + 1;
+    public String getProductDescription(){
+        return this.productDescription;
     }
 
     /**
-     * Method to add the details of the configuration of a reserved instance into hashmap for faster matching
-     * @param matcher the hashmap into which we want to insert
-     * @param index the index at which the reserved instance in context will occur in reservedInstanceData arraylist
+     * Method to retrieve the availability zone of the reserved instance
+     * @return the availability zone of a zonal reserved instance, null for a regional one
      */
-    public void insertIntoHashmap(HashMap<String,ArrayList<Integer>> matcher, int index){
-        /*
-        * Order of Insertion
-        * Availability Zone
-        * Tenancy
-        * Instance Type
-        * Product Description*/
+    public String getAvailabilityZone(){
+        return this.availabilityZone;
+    }
 
-        if(this.availabilityZone == null)
-            this.availabilityZone = this.region.toString();
+    /**
+     * Method to retrieve the tenancy of the reserved instance
+     * @return the tenancy of the reserved instance in context
+     */
+    public String getTenancy(){
+        return this.tenancy;
+    }
 
-        String representativeString = this.availabilityZone + this.tenancy + this.instanceType + this.productDescription;
-        if(!matcher.containsKey(representativeString))
-            matcher.put(representativeString,new ArrayList<>());
-        ArrayList<Integer> relatedIndices = matcher.get(representativeString);
-        relatedIndices.add(index);
+    /**
+     * Method to set the number of instances found to be covered by the reserved instance in context. The number is in
+     * instances of the type of the reserved instance, so a size flexible reserved instance covering an instance of half
+     * its size counts 0.5. Which further helps us in finding how much of the capacity we bought is in use.
+     * @param count the number of instances (of the type of the reserved instance) found
+     */
+    public void setCapacityInUse(double count){
+        this.found = count;
     }
 
     /**
@@ -231,7 +218,7 @@ class ReservedInstanceData {
      * @return returns true if the instance is underutilized and returns false otherwise
      */
     public boolean isUnderUtilized(double thresholdInPercent){
-        double currentUsage = (((double)this.found)/((double)this.instanceCount))*100.0;
+        double currentUsage = (this.found/((double)this.instanceCount))*100.0;
         if(currentUsage > thresholdInPercent)
             return false;
         return true;
@@ -257,7 +244,7 @@ class ReservedInstanceData {
      * Method to return the Number of instances that actually exist which correspond to the reserved instance in context
      * @return Number of existing instances (EC2) which match the configuration of the reserved instance in context
      */
-    public Integer getCapacityInUse(){
+    public Double getCapacityInUse(){
         return this.found;
     }
 
@@ -274,7 +261,7 @@ class ReservedInstanceData {
      * @param region The Region class object of the region of the reserved instance in context
      */
     public void setRegion(Region region){
-        this.region = region;
+        this.region = region.toString();
     }
 
     /**
@@ -282,7 +269,7 @@ class ReservedInstanceData {
      * @return The region in the String format of reserved instance in context
      */
     public String getRegion(){
-        return this.region.toString();
+        return this.region;
     }
 
     @Override
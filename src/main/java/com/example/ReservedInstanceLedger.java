@@ -0,0 +1,197 @@
+package com.example;
+
+import com.example.ReservedInstanceMatcher.Key;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.example.ReservedInstanceMatcher.isSizeFlexible;
+import static com.example.ReservedInstanceMatcher.platform;
+
+/**
+ * Class to keep the capacity left of the purchased reserved instances of a single type, and to find which of the
+ * running (non spot) instances it covers, the way EC2 applies them:
+ * 1. Zonal reserved instances cover the instances of the same availability zone, tenancy, platform and type
+ * 2. Regional reserved instances cover the instances of the same region, tenancy, platform and type
+ * The size flexible reserved instances are handed over to a ReservedInstanceMatcher, which matches the instances left
+ * over by the first two.
+ *
+ * The reserved instances of a region are added before its instances are collected, and the instances are claimed (by
+ * claim) as they stream in, from as many collector threads as there are. The capacity left of every reserved instance is
+ * an atomic counter which is only decreased by a compare and set, and the pools are kept by their Key in a concurrent
+ * map (locked per bucket of keys), so no capacity is ever booked twice. Since every instance tries the zonal capacity
+ * before the regional one, the number of instances a pool covers does not depend on the order of the claims, but which
+ * of them it covers does. So every pool also keeps the instances which claimed from it, and reconcile hands the claimed
+ * capacity of every pool to its instances by instance id (zonal pools first), which makes the instances covered the same
+ * whatever order they were collected in.
+ */
+class ReservedInstanceLedger {
+    private final ConcurrentHashMap<Key, Pool> pools = new ConcurrentHashMap<>();
+    private final ReservedInstanceMatcher flexiblePools = new ReservedInstanceMatcher(); // The size flexible reserved instances, matched once the pools of a single type are reconciled
+
+    /**
+     * Class to hold a reserved instance along with the capacity it has left
+     */
+    private static class Slot {
+        private final ReservedInstanceData reservedInstance;
+        private final long purchased;
+        private final AtomicLong remaining;
+
+        private Slot(ReservedInstanceData reservedInstance) {
+            this.reservedInstance = reservedInstance;
+            this.purchased = reservedInstance.getInstanceCount();
+            this.remaining = new AtomicLong(this.purchased);
+        }
+
+        /**
+         * Method to take an instance out of the slot, if it has one left
+         * @return true if the instance was taken
+         */
+        private boolean claim() {
+            while (true) {
+                long left = this.remaining.get();
+                if (left < 1)
+                    return false;
+                if (this.remaining.compareAndSet(left, left - 1))
+                    return true;
+            }
+        }
+    }
+
+    /**
+     * Class to hold the reserved instances sharing a key, along with the instances which claimed from them. The
+     * reserved instances are claimed from in the order they were added
+     */
+    private static class Pool {
+        private final boolean zonal;
+        private final CopyOnWriteArrayList<Slot> slots = new CopyOnWriteArrayList<>();
+        private final ConcurrentLinkedQueue<Ec2InstanceData> claimants = new ConcurrentLinkedQueue<>();
+
+        private Pool(boolean zonal) {
+            this.zonal = zonal;
+        }
+
+        /**
+         * Method to take an instance out of a single reserved instance of the pool
+         * @return true if some reserved instance had an instance left
+         */
+        private boolean claim() {
+            for (Slot slot : this.slots) {
+                if (slot.claim())
+                    return true;
+            }
+            return false;
+        }
+
+        private long getClaimed() {
+            long claimed = 0;
+            for (Slot slot : this.slots)
+                claimed += slot.purchased - slot.remaining.get();
+            return claimed;
+        }
+    }
+
+    /**
+     * Method to add a purchased reserved instance to the ledger, the expired ones are left out. A reserved instance must
+     * be added before the instances it may cover are claimed
+     * @param reservedInstance the reserved instance in context
+     */
+    public void add(ReservedInstanceData reservedInstance) {
+        if (!reservedInstance.isActive() || reservedInstance.getInstanceType() == null || reservedInstance.getInstanceCount() == null)
+            return;
+        String platform = platform(reservedInstance.getProductDescription());
+        boolean zonal = "Availability Zone".equals(reservedInstance.getScope()) && reservedInstance.getAvailabilityZone() != null;
+        Key key;
+        if (zonal) {
+            key = new Key(reservedInstance.getAvailabilityZone(), reservedInstance.getTenancy(), platform, reservedInstance.getInstanceType());
+        } else if (isSizeFlexible(platform, reservedInstance.getTenancy(), reservedInstance.getInstanceType())) {
+            this.flexiblePools.add(reservedInstance);
+            return;
+        } else {
+            key = new Key(reservedInstance.getRegion(), reservedInstance.getTenancy(), platform, reservedInstance.getInstanceType());
+        }
+        this.pools.computeIfAbsent(key, k -> new Pool(zonal)).slots.add(new Slot(reservedInstance));
+    }
+
+    /**
+     * Method to claim a zonal, or else a regional, reserved instance of the same type for an instance, as it is
+     * collected. Can be called from several threads. Which instances end up covered is only known once reconcile is called
+     * @param instance the running, non spot, instance in context
+     * @return true if a reserved instance of the type of the instance had capacity left for it
+     */
+    public boolean claim(Ec2InstanceData instance) {
+        String platform = platform(instance.getPlatformDetails());
+        Pool zonal = this.pools.get(new Key(instance.getAvailabilityZone(), instance.getTenancy(), platform, instance.getType()));
+        Pool regional = this.pools.get(new Key(instance.getRegion(), instance.getTenancy(), platform, instance.getType()));
+        if (zonal != null)
+            zonal.claimants.add(instance);
+        if (regional != null)
+            regional.claimants.add(instance);
+        if (zonal != null && zonal.claim())
+            return true;
+        return regional != null && regional.claim();
+    }
+
+    /**
+     * Method to find which of the instances are covered by the reserved instances. The capacity claimed from every pool
+     * of a single type is handed to its instances in the order of their ids, the zonal pools first, and the instances
+     * left over are matched against the size flexible reserved instances. Must be called once all the instances are
+     * claimed
+     * @param instances the instances claimed (all the running, non spot, instances)
+     * @return for every instance (at the same index) true if it is covered by a reserved instance
+     */
+    public boolean[] reconcile(ArrayList<Ec2InstanceData> instances) {
+        boolean[] covered = new boolean[instances.size()];
+        IdentityHashMap<Ec2InstanceData, Integer> indices = new IdentityHashMap<>();
+        for (int i = 0; i < instances.size(); i++)
+            indices.put(instances.get(i), i);
+
+        for (boolean zonal : new boolean[]{true, false}) {
+            for (Pool pool : this.pools.values()) {
+                if (pool.zonal != zonal)
+                    continue;
+                ArrayList<Ec2InstanceData> claimants = new ArrayList<>(pool.claimants);
+                claimants.sort(Comparator.comparing(Ec2InstanceData::getId, Comparator.nullsLast(Comparator.naturalOrder())));
+                long claimed = pool.getClaimed();
+                for (Ec2InstanceData instance : claimants) {
+                    if (claimed == 0)
+                        break;
+                    Integer i = indices.get(instance);
+                    if (i == null || covered[i])
+                        continue;
+                    covered[i] = true;
+                    claimed -= 1;
+                }
+            }
+        }
+
+        ArrayList<Integer> leftOver = new ArrayList<>();
+        ArrayList<Ec2InstanceData> leftOverInstances = new ArrayList<>();
+        for (int i = 0; i < instances.size(); i++) {
+            if (!covered[i]) {
+                leftOver.add(i);
+                leftOverInstances.add(instances.get(i));
+            }
+        }
+        boolean[] flexible = this.flexiblePools.assign(leftOverInstances);
+        for (int i = 0; i < flexible.length; i++)
+            covered[leftOver.get(i)] = flexible[i];
+        return covered;
+    }
+
+    /**
+     * Method to record the capacity in use of every reserved instance of the ledger, from the capacity claimed out of it
+     */
+    public void recordCapacityInUse() {
+        for (Pool pool : this.pools.values()) {
+            for (Slot slot : pool.slots)
+                slot.reservedInstance.setCapacityInUse(slot.purchased - slot.remaining.get());
+        }
+        this.flexiblePools.recordCapacityInUse();
+    }
+}
@@ -0,0 +1,203 @@
+package com.example;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Objects;
+
+/**
+ * Class to find which of the running (non spot) instances are covered by the size flexible reserved instances, the
+ * way EC2 applies them. Regional Linux/UNIX reserved instances of default tenancy are pooled per family in normalized
+ * units (small = 1, medium = 2, large = 4, xlarge = 8, 2xlarge = 16 ...) and cover any size of the family. The reserved
+ * instances of a single type (the zonal ones, and the regional ones of any other platform or tenancy) are claimed
+ * through the ReservedInstanceLedger first, the instances they leave over are matched here.
+ *
+ * The instances of a family pool are visited once, smallest first (and by instance id among the same size), so that the
+ * pool covers as many instances as it can and the same instances are covered on every run. The units left over once the
+ * next instance does not fit any more are applied to that instance (as EC2 does), so they count towards the usage of the
+ * reserved instances even though the instance itself stays on demand.
+ *
+ * Every lookup is a hash map look up of a Key, so matching is linear in the number of instances and reserved instances
+ * (plus the sort of the instances of every family pool).
+ */
+class ReservedInstanceMatcher {
+    private static final String FLEXIBLE_PLATFORM = "Linux/UNIX";
+    private static final String FLEXIBLE_TENANCY = "default";
+
+    private final HashMap<Key, Pool> pools = new HashMap<>();
+
+    /**
+     * Class to identify a pool of reserved instances, in place of the concatenation of its fields
+     */
+    static final class Key {
+        private final String location; // Availability zone for zonal reserved instances, region for regional ones
+        private final String tenancy;
+        private final String platform;
+        private final String type; // Instance type, or the family for the size flexible pools
+
+        Key(String location, String tenancy, String platform, String type) {
+            this.location = location;
+            this.tenancy = tenancy;
+            this.platform = platform;
+            this.type = type;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof Key))
+                return false;
+            Key key = (Key) o;
+            return Objects.equals(this.location, key.location) && Objects.equals(this.tenancy, key.tenancy)
+                    && Objects.equals(this.platform, key.platform) && Objects.equals(this.type, key.type);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(this.location, this.tenancy, this.platform, this.type);
+        }
+    }
+
+    /**
+     * Class to hold the reserved instances of a family, along with the units each of them has left
+     */
+    private static class Pool {
+        private final ArrayList<ReservedInstanceData> reservedInstances = new ArrayList<>();
+        private final ArrayList<Double> unitsPerInstance = new ArrayList<>(); // Units that make up one instance of the reserved instance at the same index
+        private final ArrayList<Double> remaining = new ArrayList<>();
+        private int current = 0; // Index of the first reserved instance having units left
+        private double total = 0;
+
+        private void add(ReservedInstanceData reservedInstance, double units) {
+            this.reservedInstances.add(reservedInstance);
+            this.unitsPerInstance.add(units);
+            this.remaining.add(units * reservedInstance.getInstanceCount());
+            this.total += units * reservedInstance.getInstanceCount();
+        }
+
+        /**
+         * Method to take units out of the pool, from the reserved instances in order
+         * @param units the units to take, at most the total left
+         */
+        private void take(double units) {
+            this.total -= units;
+            while (units > 0 && this.current < this.remaining.size()) {
+                double taken = Math.min(units, this.remaining.get(this.current));
+                this.remaining.set(this.current, this.remaining.get(this.current) - taken);
+                units -= taken;
+                if (this.remaining.get(this.current) <= 0)
+                    this.current += 1;
+            }
+        }
+    }
+
+    /**
+     * Method to add a size flexible reserved instance to the pool of its family
+     * @param reservedInstance the active, regional, size flexible reserved instance in context
+     */
+    public void add(ReservedInstanceData reservedInstance) {
+        Key key = new Key(reservedInstance.getRegion(), reservedInstance.getTenancy(), platform(reservedInstance.getProductDescription()), RightSizingIndex.family(reservedInstance.getInstanceType()));
+        this.pools.computeIfAbsent(key, k -> new Pool()).add(reservedInstance, normalizationFactor(reservedInstance.getInstanceType()));
+    }
+
+    /**
+     * Method to find the instances covered by the size flexible reserved instances. Must be called once
+     * @param instances the running, non spot, instances which no reserved instance of their own type covers
+     * @return for every instance (at the same index) true if it is covered by a reserved instance
+     */
+    public boolean[] assign(ArrayList<Ec2InstanceData> instances) {
+        boolean[] covered = new boolean[instances.size()];
+        HashMap<Key, ArrayList<Integer>> instancesByPool = new HashMap<>();
+        for (int i = 0; i < instances.size(); i++) {
+            Ec2InstanceData instance = instances.get(i);
+            if (instance.getType() == null || normalizationFactor(instance.getType()) <= 0)
+                continue;
+            Key key = new Key(instance.getRegion(), instance.getTenancy(), platform(instance.getPlatformDetails()), RightSizingIndex.family(instance.getType()));
+            if (this.pools.containsKey(key))
+                instancesByPool.computeIfAbsent(key, k -> new ArrayList<>()).add(i);
+        }
+        for (HashMap.Entry<Key, ArrayList<Integer>> entry : instancesByPool.entrySet()) {
+            Pool pool = this.pools.get(entry.getKey());
+            ArrayList<Integer> indices = entry.getValue();
+            indices.sort(Comparator.<Integer>comparingDouble(i -> normalizationFactor(instances.get(i).getType()))
+                    .thenComparing(i -> instances.get(i).getId(), Comparator.nullsLast(Comparator.naturalOrder())));
+            for (Integer i : indices) {
+                double units = normalizationFactor(instances.get(i).getType());
+                if (pool.total < units) {
+                    pool.take(pool.total); // Applied to the part of this instance, the rest of it is billed on demand
+                    break;
+                }
+                pool.take(units);
+                covered[i] = true;
+            }
+        }
+        return covered;
+    }
+
+    /**
+     * Method to record the capacity in use of every size flexible reserved instance, from the units taken out of it
+     */
+    public void recordCapacityInUse() {
+        for (Pool pool : this.pools.values()) {
+            for (int i = 0; i < pool.reservedInstances.size(); i++) {
+                double purchased = pool.unitsPerInstance.get(i) * pool.reservedInstances.get(i).getInstanceCount();
+                pool.reservedInstances.get(i).setCapacityInUse((purchased - pool.remaining.get(i)) / pool.unitsPerInstance.get(i));
+            }
+        }
+    }
+
+    /**
+     * Method to return the normalization factor of the size of an instance type
+     * @param instanceType the instance type, like "m5.2xlarge"
+     * @return the factor (like 16 for 2xlarge), 0 if the size is not size flexible (like metal)
+     */
+    public static double normalizationFactor(String instanceType) {
+        int dot = instanceType.indexOf('.');
+        String size = dot < 0 ? "" : instanceType.substring(dot + 1);
+        switch (size) {
+            case "nano":
+                return 0.25;
+            case "micro":
+                return 0.5;
+            case "small":
+                return 1;
+            case "medium":
+                return 2;
+            case "large":
+                return 4;
+            case "xlarge":
+                return 8;
+            default:
+                if (size.endsWith("xlarge")) {
+                    try {
+                        return 8 * Integer.parseInt(size.substring(0, size.length() - "xlarge".length()));
+                    } catch (NumberFormatException e) {
+                        return 0;
+                    }
+                }
+                return 0;
+        }
+    }
+
+    /**
+     * Method to check if the regional reserved instances of a configuration are size flexible
+     * @param platform the platform, as returned by platform
+     * @param tenancy the tenancy
+     * @param instanceType the instance type
+     * @return true if they cover any size of the family of the type
+     */
+    static boolean isSizeFlexible(String platform, String tenancy, String instanceType) {
+        return FLEXIBLE_PLATFORM.equals(platform) && FLEXIBLE_TENANCY.equals(tenancy) && instanceType != null && normalizationFactor(instanceType) > 0;
+    }
+
+    /**
+     * Method to bring the product description of a reserved instance and the platform details of an instance to the
+     * same name, the reserved instances bought for EC2-VPC are named like "Linux/UNIX (Amazon VPC)"
+     */
+    static String platform(String description) {
+        if (description == null)
+            return null;
+        return description.endsWith(" (Amazon VPC)") ? description.substring(0, description.length() - " (Amazon VPC)".length()) : description;
+    }
+}
@@ -0,0 +1,145 @@
+package com.example;
+
+import com.amazonaws.services.ec2.AmazonEC2;
+import com.amazonaws.services.ec2.model.DescribeReservedInstancesOfferingsRequest;
+import com.amazonaws.services.ec2.model.DescribeReservedInstancesOfferingsResult;
+import software.amazon.awssdk.regions.Region;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Class to find the price of the 3 year, all upfront, standard reserved instance matching an on demand instance, for the
+ * "EC2 Cost Implication" sheet. The price depends only on (availability zone, tenancy, instance type, platform), which
+ * most of the instances share with many others, so the offerings are described once per such key instead of once per
+ * instance.
+ *
+ * The instances are added while they are collected and the distinct keys are resolved together (in parallel) once the
+ * collection is over. A lookup of a key already being fetched waits for that fetch instead of making another one. The
+ * prices are persisted with a time to live, so the following runs make a call only for the keys they have not seen.
+ */
+class ReservedOfferingPriceCache {
+    private static final long THREE_YEARS_IN_SECONDS = 94608000L;
+    private static final double NO_OFFERING = -1.0; // Cached for the keys having no offering, so that they are not described again either
+
+    private final ClientRegistry clients;
+    private final RateController rateController;
+    private final PersistentTtlCache<Double> prices;
+    private final int threads;
+    private final ConcurrentHashMap<String, CompletableFuture<Double>> inFlight = new ConcurrentHashMap<>(); // Key -> price being fetched (or fetched) in this run
+    private final LinkedHashMap<String, ArrayList<Ec2InstanceData>> pending = new LinkedHashMap<>(); // Key -> instances waiting for its price
+
+    /**
+     * Constructor
+     * @param clients the registry from which the ec2 client of a region is taken
+     * @param rateController the rate controller through which DescribeReservedInstancesOfferings is called
+     * @param path the file in which the prices are persisted
+     * @param ttlMillis the time (in milliseconds) for which a persisted price is used
+     * @param threads the number of keys fetched in parallel
+     */
+    public ReservedOfferingPriceCache(ClientRegistry clients, RateController rateController, String path, long ttlMillis, int threads) {
+        this.clients = clients;
+        this.rateController = rateController;
+        this.prices = new PersistentTtlCache<>(path, ttlMillis);
+        this.threads = threads;
+    }
+
+    /**
+     * Method to add an instance of which the reserved price is to be found by resolveAll
+     * @param instance the on demand instance in context
+     */
+    public synchronized void add(Ec2InstanceData instance) {
+        if (instance.getType().equals("") || instance.getPlatformDetails().equals("") || instance.getTenancy().equals("") || instance.getAvailabilityZone().equals(""))
+            return;
+        this.pending.computeIfAbsent(key(instance), key -> new ArrayList<>()).add(instance);
+    }
+
+    /**
+     * Method to fetch the prices of the distinct keys of the instances added so far (in parallel) and to set the
+     * reserved price of every instance. The prices are persisted afterwards
+     * @throws InterruptedException if the wait for the prices is interrupted
+     */
+    public void resolveAll() throws InterruptedException {
+        LinkedHashMap<String, ArrayList<Ec2InstanceData>> instancesByKey;
+        synchronized (this) {
+            instancesByKey = new LinkedHashMap<>(this.pending);
+            this.pending.clear();
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(this.threads);
+        try {
+            LinkedHashMap<String, CompletableFuture<Double>> lookups = new LinkedHashMap<>();
+            for (Map.Entry<String, ArrayList<Ec2InstanceData>> entry : instancesByKey.entrySet())
+                lookups.put(entry.getKey(), lookup(entry.getValue().get(0), pool));
+
+            for (Map.Entry<String, CompletableFuture<Double>> lookup : lookups.entrySet()) {
+                Double price;
+                try {
+                    price = lookup.getValue().get();
+                } catch (ExecutionException e) {
+                    e.printStackTrace();
+                    continue;
+                }
+                for (Ec2InstanceData instance : instancesByKey.get(lookup.getKey()))
+                    instance.setReservedPrice(price);
+            }
+        } finally {
+            pool.shutdownNow();
+            try {
+                this.prices.save();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Method to return the reserved price of the key of an instance, from the persisted prices if it is there, else
+     * from the fetch of the key already in flight, else by starting a fetch of it
+     * @param instance an instance of the key in context
+     * @param pool the pool in which the fetch is made
+     * @return the price per hour (null if there is no offering) once it is known
+     */
+    private CompletableFuture<Double> lookup(Ec2InstanceData instance, ExecutorService pool) {
+        String key = key(instance);
+        Double cached = this.prices.get(key);
+        if (cached != null)
+            return CompletableFuture.completedFuture(cached == NO_OFFERING ? null : cached);
+        return this.inFlight.computeIfAbsent(key, k -> CompletableFuture.supplyAsync(() -> {
+            Double price = fetch(instance);
+            this.prices.put(k, price == null ? NO_OFFERING : price);
+            return price;
+        }, pool));
+    }
+
+    /**
+     * Method to describe the cheapest offering matching an instance
+     * @return the fixed price spread over the hours of the term, null if there is no such offering
+     */
+    private Double fetch(Ec2InstanceData instance) {
+        AmazonEC2 client = this.clients.ec2(Region.of(instance.getRegion()));
+        DescribeReservedInstancesOfferingsResult result = this.rateController.call(instance.getRegion(), "DescribeReservedInstancesOfferings", client::describeReservedInstancesOfferings, new DescribeReservedInstancesOfferingsRequest()
+                .withAvailabilityZone(instance.getAvailabilityZone())
+                .withInstanceTenancy(instance.getTenancy())
+                .withInstanceType(instance.getType())
+                .withMaxInstanceCount(1)
+                .withMaxDuration(THREE_YEARS_IN_SECONDS)
+                .withMinDuration(THREE_YEARS_IN_SECONDS)
+                .withOfferingType("All Upfront")
+                .withOfferingClass("standard")
+                .withProductDescription(instance.getPlatformDetails()));
+        if (result.getReservedInstancesOfferings().size() == 0)
+            return null;
+        return (result.getReservedInstancesOfferings().get(0).getFixedPrice() * 3600.0) / THREE_YEARS_IN_SECONDS;
+    }
+
+    private static String key(Ec2InstanceData instance) {
+        return instance.getAvailabilityZone() + "|" + instance.getTenancy() + "|" + instance.getType() + "|" + instance.getPlatformDetails();
+    }
+}
@@ -0,0 +1,184 @@
+package com.example;
+
+import com.amazonaws.services.resourcegroupstaggingapi.model.ResourceTagMapping;
+import com.amazonaws.services.resourcegroupstaggingapi.model.Tag;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Class to hold the tags of the resources of the account, as returned by GetResources of the Resource Groups Tagging API
+ * (a page of up to 100 resources, of every service, per call), and to join them onto the resources of the report.
+ *
+ * Every distinct tag key and tag value is interned once in a dictionary and given an id, so a resource only holds the
+ * ids of its tags. The tags of a resource are indexed by its ARN and also by the id the collectors know it by (the
+ * instance, volume or allocation id of the EC2 resources and the name of the buckets), so joining a resource is a single
+ * hash map look up whichever of the two it is known by.
+ */
+class ResourceTagIndex {
+    public static final String UNTAGGED = "(untagged)";
+
+    private final HashMap<String, Integer> keyIds = new HashMap<>();
+    private final ArrayList<String> keys = new ArrayList<>();
+    private final HashMap<String, Integer> valueIds = new HashMap<>();
+    private final ArrayList<String> values = new ArrayList<>();
+    private final HashMap<String, int[]> tagsByResource = new HashMap<>(); // ARN or id -> {key id, value id, key id, value id ...}
+    private int resourceCount = 0;
+
+    /**
+     * Class to hold the number of findings of every category for a value of a tag key
+     */
+    public static class TagGroup {
+        private final String value;
+        private final int[] counts;
+        private int total = 0;
+
+        private TagGroup(String value, int categories) {
+            this.value = value;
+            this.counts = new int[categories];
+        }
+
+        /**
+         * Method to return the value of the tag key shared by the resources of the group
+         * @return the tag value, UNTAGGED for the resources not having the key
+         */
+        public String getValue() {
+            return this.value;
+        }
+
+        /**
+         * Method to return the number of findings of a category in the group
+         * @param category the index of the category, in the order they were passed to groupBy
+         * @return the number of resources
+         */
+        public int getCount(int category) {
+            return this.counts[category];
+        }
+
+        public int getTotal() {
+            return this.total;
+        }
+    }
+
+    /**
+     * Method to add the tags of a resource, as returned by GetResources
+     * @param mapping the resource along with its tags
+     */
+    public synchronized void add(ResourceTagMapping mapping) {
+        List<Tag> tags = mapping.getTags();
+        if (mapping.getResourceARN() == null || tags == null || tags.isEmpty())
+            return;
+        int[] ids = new int[tags.size() * 2];
+        for (int i = 0; i < tags.size(); i++) {
+            ids[2 * i] = intern(tags.get(i).getKey(), this.keyIds, this.keys);
+            ids[2 * i + 1] = intern(tags.get(i).getValue(), this.valueIds, this.values);
+        }
+        this.tagsByResource.put(mapping.getResourceARN(), ids);
+        String id = resourceId(mapping.getResourceARN());
+        if (id != null)
+            this.tagsByResource.put(id, ids);
+        this.resourceCount += 1;
+    }
+
+    /**
+     * Method to return the value of a tag of a resource
+     * @param resource the ARN of the resource, or its id for the EC2 resources and its name for the buckets
+     * @param key the tag key
+     * @return the tag value, null if the resource does not have the key
+     */
+    public String getTag(String resource, String key) {
+        Integer keyId = this.keyIds.get(key);
+        if (keyId == null || resource == null)
+            return null;
+        int valueId = valueId(this.tagsByResource.get(resource), keyId);
+        return valueId < 0 ? null : this.values.get(valueId);
+    }
+
+    /**
+     * Method to count the findings of every category by the value of a tag key of the resources they are about
+     * @param key the tag key to group by
+     * @param findings the category of the findings -> the resources (ARN or id) of the category
+     * @return a group per value of the key (along with UNTAGGED), the ones having the most findings first
+     */
+    public ArrayList<TagGroup> groupBy(String key, LinkedHashMap<String, ArrayList<String>> findings) {
+        Integer keyId = this.keyIds.get(key);
+        TagGroup[] groups = new TagGroup[this.values.size() + 1]; // By value id, the last one for the untagged resources
+        int category = 0;
+        for (ArrayList<String> resources : findings.values()) {
+            for (String resource : resources) {
+                int valueId = keyId == null || resource == null ? -1 : valueId(this.tagsByResource.get(resource), keyId);
+                int slot = valueId < 0 ? this.values.size() : valueId;
+                if (groups[slot] == null)
+                    groups[slot] = new TagGroup(valueId < 0 ? UNTAGGED : this.values.get(valueId), findings.size());
+                groups[slot].counts[category] += 1;
+                groups[slot].total += 1;
+            }
+            category += 1;
+        }
+        ArrayList<TagGroup> found = new ArrayList<>();
+        for (TagGroup group : groups) {
+            if (group != null)
+                found.add(group);
+        }
+        found.sort(Comparator.comparingInt(TagGroup::getTotal).reversed().thenComparing(TagGroup::getValue));
+        return found;
+    }
+
+    /**
+     * Method to return the number of tagged resources added
+     * @return the number of resources
+     */
+    public int size() {
+        return this.resourceCount;
+    }
+
+    /**
+     * Method to return the number of distinct tag keys and values of the dictionary
+     * @return {keys, values}
+     */
+    public int[] getDictionarySize() {
+        return new int[]{this.keys.size(), this.values.size()};
+    }
+
+    /**
+     * Method to return the id the collectors know a resource by, out of its ARN. The ARN of an EC2 resource ends with
+     * its type and id (like "instance/i-0abc"), the ARN of a bucket is "arn:aws:s3:::name"
+     * @param arn the ARN of the resource
+     * @return the id, null if the resource is only known by its ARN
+     */
+    static String resourceId(String arn) {
+        String[] parts = arn.split(":", 6);
+        if (parts.length < 6)
+            return null;
+        if (parts[2].equals("s3"))
+            return parts[5].isEmpty() || parts[5].contains("/") ? null : parts[5];
+        if (parts[2].equals("ec2")) {
+            int slash = parts[5].lastIndexOf('/');
+            return slash < 0 ? null : parts[5].substring(slash + 1);
+        }
+        return null;
+    }
+
+    private static int valueId(int[] tags, int keyId) {
+        if (tags == null)
+            return -1;
+        for (int i = 0; i < tags.length; i += 2) {
+            if (tags[i] == keyId)
+                return tags[i + 1];
+        }
+        return -1;
+    }
+
+    private static int intern(String text, HashMap<String, Integer> ids, ArrayList<String> texts) {
+        Integer id = ids.get(text);
+        if (id == null) {
+            id = texts.size();
+            ids.put(text, id);
+            texts.add(text);
+        }
+        return id;
+    }
+}
@@ -0,0 +1,90 @@
+package com.example;
+
+import java.util.ArrayDeque;
+
+/**
+ * Class to hold the work (mostly cloudwatch metric batches) which failed during collection, so that it can be retried
+ * at the end of the run instead of being dropped.
+ */
+class RetryQueue {
+    private final ArrayDeque<Entry> entries = new ArrayDeque<>();
+
+    /**
+     * Interface for the work which is to be retried
+     */
+    public interface Task {
+        void run() throws Exception;
+    }
+
+    /**
+     * Class to store a task along with its description and the number of times it has been tried
+     */
+    private static class Entry {
+        private final String description;
+        private final Task task;
+        private int attempts = 1;
+
+        private Entry(String description, Task task){
+            this.description = description;
+            this.task = task;
+        }
+    }
+
+    /**
+     * Method to add a failed task to the queue
+     * @param description the description of the task, used while logging
+     * @param task the task which is to be retried
+     */
+    public synchronized void add(String description, Task task){
+        this.entries.add(new Entry(description, task));
+    }
+
+    /**
+     * Method to return the number of tasks waiting to be retried
+     * @return the size of the queue
+     */
+    public synchronized int size(){
+        return this.entries.size();
+    }
+
+    /**
+     * Method to retry all the tasks in the queue. A task which fails again is put back at the end of the queue until
+     * it has been tried maxAttempts times, the wait between two rounds grows exponentially.
+     * @param maxAttempts the maximum number of times a task is to be tried (including the first failed try)
+     * @param backoffMillis the wait before the first round of retries
+     * @return the number of tasks which could not be completed
+     */
+    public synchronized int drain(int maxAttempts, long backoffMillis){
+        int failed = 0;
+        long wait = backoffMillis;
+        while (!this.entries.isEmpty()) {
+            try {
+                Thread.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            wait *= 2;
+
+            int round = this.entries.size();
+            for (int i = 0; i < round; i++) {
+                Entry entry = this.entries.poll();
+                entry.attempts += 1;
+                try {
+                    entry.task.run();
+                } catch (Exception e) {
+                    if (entry.attempts < maxAttempts) {
+                        this.entries.add(entry);
+                    } else {
+                        System.out.println("Giving up on " + entry.description + " after " + entry.attempts + " attempts");
+                        e.printStackTrace();
+                        failed += 1;
+                    }
+                }
+            }
+        }
+        failed += this.entries.size();
+        this.entries.clear();
+        return failed;
+    }
+}
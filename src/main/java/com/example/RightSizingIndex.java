@@ -0,0 +1,172 @@
+package com.example;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.TreeSet;
+
+/**
+ * Class to find the cheapest instance type having at least the given vcpus and memory, among the instance types of a
+ * region which have an on demand price for a given operating system and tenancy.
+ *
+ * For every constraint asked for (the architectures and optionally the family to stick to) a grid is built once over
+ * the distinct vcpu counts and memory sizes of the matching types. The cell (i, j) of the grid holds the cheapest type
+ * having at least the i-th vcpu count and the j-th memory size, filled from the last row and column backwards. A query
+ * is then two binary searches and a look up of the cell.
+ */
+class RightSizingIndex {
+    private final InstanceTypeCatalog.Table types;
+    private final double[] prices; // Price per hour by the id of the type, NaN if the type has no price
+    private final HashMap<String, Grid> grids = new HashMap<>(); // Constraint -> grid of the types meeting it
+
+    /**
+     * Class to hold the cheapest type of every (vcpus, memory) cell
+     */
+    private static class Grid {
+        private int[] vcpus;
+        private long[] memorySizes;
+        private int[][] cheapest; // Id of the type, -1 if no type is large enough
+    }
+
+    /**
+     * Class to return a suggested type along with its price
+     */
+    public static class Suggestion {
+        private final String type;
+        private final double hourlyPrice;
+
+        private Suggestion(String type, double hourlyPrice) {
+            this.type = type;
+            this.hourlyPrice = hourlyPrice;
+        }
+
+        public String getType() {
+            return this.type;
+        }
+
+        public double getHourlyPrice() {
+            return this.hourlyPrice;
+        }
+    }
+
+    /**
+     * Constructor
+     * @param types the catalog of the region
+     * @param priceIndex the index of the prices
+     * @param region the region code
+     * @param operatingSystem the operating system as named in the price list
+     * @param preInstalledSoftware the pre installed software as named in the price list
+     * @param tenancy the tenancy as named in the price list
+     */
+    public RightSizingIndex(InstanceTypeCatalog.Table types, InstancePriceIndex priceIndex, String region, String operatingSystem, String preInstalledSoftware, String tenancy) {
+        this.types = types;
+        this.prices = new double[types.size()];
+        for (int id = 0; id < types.size(); id++) {
+            Double price = priceIndex.getEffectiveHourlyPrice(region, types.getName(id), operatingSystem, preInstalledSoftware, tenancy, InstancePriceIndex.ON_DEMAND);
+            this.prices[id] = price == null ? Double.NaN : price;
+        }
+    }
+
+    /**
+     * Method to return the price of a type of the region
+     * @param instanceType the instance type in context
+     * @return the price per hour, null if the type is not known or has no price
+     */
+    public Double getHourlyPrice(String instanceType) {
+        int id = this.types.getId(instanceType);
+        return id < 0 || Double.isNaN(this.prices[id]) ? null : this.prices[id];
+    }
+
+    /**
+     * Method to find the cheapest type which is large enough
+     * @param vcpus the number of vcpus needed
+     * @param memorySizeInMB the memory needed
+     * @param architectures the InstanceTypeCatalog.ARCHITECTURE_* flags of which the type must support at least one,
+     *                      0 for any architecture
+     * @param family the family (like "m5") the type must be of, null for any family
+     * @return the cheapest type, null if no type is large enough
+     */
+    public Suggestion getCheapest(int vcpus, long memorySizeInMB, int architectures, String family) {
+        Grid grid = this.grids.computeIfAbsent(architectures + "|" + family, key -> buildGrid(architectures, family));
+        int row = lowerBound(grid.vcpus, vcpus);
+        int column = lowerBound(grid.memorySizes, memorySizeInMB);
+        if (row == grid.vcpus.length || column == grid.memorySizes.length || grid.cheapest[row][column] < 0)
+            return null;
+        int id = grid.cheapest[row][column];
+        return new Suggestion(this.types.getName(id), this.prices[id]);
+    }
+
+    /**
+     * Method to return the family of an instance type
+     * @param instanceType the instance type, like "m5.large"
+     * @return the family, like "m5"
+     */
+    public static String family(String instanceType) {
+        int dot = instanceType.indexOf('.');
+        return dot < 0 ? instanceType : instanceType.substring(0, dot);
+    }
+
+    private Grid buildGrid(int architectures, String family) {
+        TreeSet<Integer> vcpus = new TreeSet<>();
+        TreeSet<Long> memorySizes = new TreeSet<>();
+        for (int id = 0; id < this.types.size(); id++) {
+            if (matches(id, architectures, family)) {
+                vcpus.add(this.types.getVcpuCount(id));
+                memorySizes.add(this.types.getMemorySizeInMB(id));
+            }
+        }
+        Grid grid = new Grid();
+        grid.vcpus = vcpus.stream().mapToInt(Integer::intValue).toArray();
+        grid.memorySizes = memorySizes.stream().mapToLong(Long::longValue).toArray();
+        grid.cheapest = new int[grid.vcpus.length][grid.memorySizes.length];
+        for (int[] row : grid.cheapest)
+            Arrays.fill(row, -1);
+
+        for (int id = 0; id < this.types.size(); id++) {
+            if (!matches(id, architectures, family))
+                continue;
+            int row = Arrays.binarySearch(grid.vcpus, this.types.getVcpuCount(id));
+            int column = Arrays.binarySearch(grid.memorySizes, this.types.getMemorySizeInMB(id));
+            grid.cheapest[row][column] = cheaper(grid.cheapest[row][column], id);
+        }
+        for (int row = grid.vcpus.length - 1; row >= 0; row--) {
+            for (int column = grid.memorySizes.length - 1; column >= 0; column--) {
+                if (row + 1 < grid.vcpus.length)
+                    grid.cheapest[row][column] = cheaper(grid.cheapest[row][column], grid.cheapest[row + 1][column]);
+                if (column + 1 < grid.memorySizes.length)
+                    grid.cheapest[row][column] = cheaper(grid.cheapest[row][column], grid.cheapest[row][column + 1]);
+            }
+        }
+        return grid;
+    }
+
+    private boolean matches(int id, int architectures, String family) {
+        return !Double.isNaN(this.prices[id])
+                && (architectures == 0 || (this.types.getArchitectures(id) & architectures) != 0)
+                && (family == null || family.equals(family(this.types.getName(id))));
+    }
+
+    /**
+     * Method to return the cheaper of two types, the smaller of the two if they cost the same
+     */
+    private int cheaper(int first, int second) {
+        if (first < 0)
+            return second;
+        if (second < 0)
+            return first;
+        if (this.prices[first] != this.prices[second])
+            return this.prices[first] < this.prices[second] ? first : second;
+        long firstSize = (long) this.types.getVcpuCount(first) << 32 | this.types.getMemorySizeInMB(first);
+        long secondSize = (long) this.types.getVcpuCount(second) << 32 | this.types.getMemorySizeInMB(second);
+        return firstSize <= secondSize ? first : second;
+    }
+
+    private static int lowerBound(int[] values, int value) {
+        int index = Arrays.binarySearch(values, value);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    private static int lowerBound(long[] values, long value) {
+        int index = Arrays.binarySearch(values, value);
+        return index >= 0 ? index : -index - 1;
+    }
+}
@@ -3,31 +3,37 @@ package com.example;
 import co.elastic.clients.elasticsearch.ElasticsearchClient;
 import co.elastic.clients.elasticsearch.core.IndexRequest;
 import co.elastic.clients.elasticsearch.core.IndexResponse;
-import com.amazonaws.services.kafka.model.S3;
 import com.google.gson.Gson;
 
 import java.io.IOException;
 import java.io.Serializable;
 import java.time.Instant;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Date;
 
 /**
  * Class to store a S3 bucket's data in form of Objects
  */
-class S3BucketData implements Comparable<S3BucketData>{
+class S3BucketData implements Serializable, Comparable<S3BucketData>, S3ObjectConsumer {
+    private static final long serialVersionUID = 1L;
     private String bucketName;
     private String location;
     private Long bucketSize = 0L;
     private int numberOfObjects;
     private OwnerS3Object owner;
     private Date lastModified;
-    private ArrayList<S3ObjectData> objects = new ArrayList<>();
+    private S3ObjectStore objects = new S3ObjectStore();
     private ArrayList<StatisticRecord> averageNumberOfObjects = new ArrayList<>();
     private ArrayList<StatisticRecord> averageBucketSizeBytes = new ArrayList<>();
-    private ArrayList<S3ObjectData> currentRelevant = null;
+    private boolean sortObjectsBySize = false;
+    private int[] currentRelevant = null;
+    private ArrayList<S3ObjectData> currentRelevantLargest = null;
     private Long relevantSize;
+    private long relevantCount = 0;
+    private S3ColdObjectsTracker coldObjects = null; // Largest cold objects selected while listing, null if not tracked
+    private S3PrefixTrie prefixes = null; // Cold/hot totals per prefix rolled up while listing, null if not tracked
+    private S3ObjectSampler.Estimate coldObjectsEstimate = null; // Cold objects estimated from a sample of the bucket, null if the bucket was not sampled
+    private boolean keepAllObjects = true;
 
     /**
      * Builder class to help in building objects of the parent class. The parent class's constructor is made private
@@ -102,8 +108,91 @@ class S3BucketData implements Comparable<S3BucketData>{
      * @param size the size(in bytes) of the S3 object/file
      */
     public void addObject(String name,String storageClass,Date date,long size) throws Exception {
+        if(name == null)
+            throw new Exception("Name of the S3 object/file is a mandatory field");
+        if(storageClass == null)
+            throw new Exception("Storage Class of the S3 object/file is a mandatory field");
+        if(date == null)
+            throw new Exception("Last Modified Date of the S3 object/file is a mandatory field");
+        if(size < 0)
+            throw new Exception("Size of the S3 object/file provided is not acceptable");
         this.addInBucketSize(size);
-        objects.add(new S3ObjectData(name,storageClass,date,size));
+        objects.add(name,storageClass,date,size);
+    }
+
+    /**
+     * Method to add an object found while listing the bucket, along with counting it and updating the last modified
+     * date of the bucket. The partitions of the bucket are listed in parallel so this method is synchronized
+     * @param key the key of the S3 object/file
+     * @param storageClass the storage class of the S3 object/file
+     * @param lastModified the last modified Date of the S3 object/file
+     * @param size the size(in bytes) of the S3 object/file
+     * @throws Exception if any of the relevant parameters of the object is not provided
+     */
+    @Override
+    public synchronized void accept(String key, String storageClass, Date lastModified, long size) throws Exception {
+        if (this.coldObjects != null)
+            this.coldObjects.offer(key, storageClass, lastModified, size);
+        if (this.prefixes != null)
+            this.prefixes.offer(key, storageClass, lastModified, size);
+        if (this.keepAllObjects)
+            this.addObject(key, storageClass, lastModified, size);
+        else
+            this.addInBucketSize(size);
+        this.numberOfObjects += 1;
+        if (this.lastModified == null || lastModified.after(this.lastModified))
+            this.lastModified = lastModified;
+    }
+
+    /**
+     * Method to select the largest cold objects (and to count all of them) while the bucket is being listed, instead of
+     * sorting and filtering all of its objects for the report. It has to be called before the objects are listed
+     * @param days the objects not modified in these many days are cold
+     * @param topK the number of the largest cold objects to be kept for the report
+     * @param keepAllObjects if false then the objects are not stored at all, only the largest cold ones are kept
+     */
+    public synchronized void trackColdObjects(int days, int topK, boolean keepAllObjects) {
+        this.coldObjects = new S3ColdObjectsTracker(days, topK);
+        this.keepAllObjects = keepAllObjects;
+    }
+
+    /**
+     * Method to roll the objects up by their prefixes while the bucket is being listed. It has to be called before the
+     * objects are listed
+     * @param days the objects not modified in these many days are cold
+     * @param maxDepth the number of levels of prefixes kept
+     * @param maxFanOut the number of sub prefixes kept per prefix
+     * @param maxNodes the number of prefixes kept in all
+     */
+    public synchronized void trackPrefixes(int days, int maxDepth, int maxFanOut, int maxNodes) {
+        this.prefixes = new S3PrefixTrie(days, maxDepth, maxFanOut, maxNodes);
+    }
+
+    /**
+     * Method to return the prefixes of the bucket having any cold data
+     * @return the prefixes along with their totals, empty if the prefixes were not tracked
+     */
+    public synchronized ArrayList<S3PrefixTrie.PrefixSummary> getColdPrefixes() {
+        if (this.prefixes == null)
+            return new ArrayList<>();
+        return this.prefixes.getColdPrefixes(this.bucketName);
+    }
+
+    /**
+     * Method to set the estimate of the cold objects of a sampled bucket. The estimate then stands for the number and
+     * the size of the relevant objects, and so for the ordering of the buckets
+     * @param estimate the estimate made from the sample
+     */
+    public synchronized void setColdObjectsEstimate(S3ObjectSampler.Estimate estimate) {
+        this.coldObjectsEstimate = estimate;
+    }
+
+    /**
+     * Method to return the estimate of the cold objects
+     * @return the estimate, null if the bucket was not sampled
+     */
+    public synchronized S3ObjectSampler.Estimate getColdObjectsEstimate() {
+        return this.coldObjectsEstimate;
     }
 
     /**
@@ -144,10 +233,11 @@ class S3BucketData implements Comparable<S3BucketData>{
     }
 
     /**
-     * Function to reverse sort the objects array(based on their size) of S3BucketData Object
+     * Function to reverse sort the objects (based on their size) of S3BucketData Object. The objects are kept in the
+     * compact store in the order they were listed, so only the relevant objects are sorted, when they are computed
      */
     public void sortObjects(){
-        Collections.sort(this.objects,Collections.reverseOrder());
+        this.sortObjectsBySize = true;
     }
 
     public String getLocation(){
@@ -164,15 +254,28 @@ class S3BucketData implements Comparable<S3BucketData>{
      * @return returns the collection of the relevant objects
      */
     public void getAndStoreRelevantObjects(int days){
-        ArrayList<S3ObjectData> toBeReturned = new ArrayList<>();
-        this.relevantSize = 0L;
-        for(S3ObjectData object : this.objects){
-            if(object.isRelevant(days)) {
-                toBeReturned.add(object);
-                this.relevantSize += object.getSize();
-            }
+        if(this.coldObjects != null && this.coldObjects.getDays() == days) {
+            this.relevantSize = this.coldObjects.getColdBytes();
+            this.relevantCount = this.coldObjects.getColdCount();
+            this.currentRelevantLargest = this.coldObjects.getLargest();
+        } else {
+            int[] relevant = this.objects.modifiedBefore(Instant.now().getEpochSecond() - (long) days*24*3600);
+            this.relevantSize = 0L;
+            for(int index : relevant)
+                this.relevantSize += this.objects.getSize(index);
+            if(this.sortObjectsBySize)
+                this.objects.sortBySizeDescending(relevant);
+            this.relevantCount = relevant.length;
+            this.currentRelevant = relevant;
+        }
+
+        /*
+         * Only a sample of a sampled bucket was listed, the totals are extrapolated
+         * */
+        if(this.coldObjectsEstimate != null && this.coldObjectsEstimate.getDays() == days) {
+            this.relevantSize = this.coldObjectsEstimate.getColdBytes();
+            this.relevantCount = this.coldObjectsEstimate.getColdObjects();
         }
-        this.currentRelevant = toBeReturned;
     }
 
     /**
@@ -182,9 +285,17 @@ class S3BucketData implements Comparable<S3BucketData>{
      * @throws Exception if the prerequisite method is not called before making a call to this function.
      */
     public ArrayList<S3ObjectData> getRelevantObjects() throws Exception {
+        if(this.currentRelevantLargest != null) {
+            ArrayList<S3ObjectData> toBeReturned = this.currentRelevantLargest;
+            this.currentRelevantLargest = null;
+            this.relevantSize = 0L;
+            return toBeReturned;
+        }
         if(this.currentRelevant == null)
             throw new Exception("Method called without making a call to the prerequisite method (check in description)");
-        ArrayList<S3ObjectData> toBeReturned = this.currentRelevant;
+        ArrayList<S3ObjectData> toBeReturned = new ArrayList<>();
+        for(int index : this.currentRelevant)
+            toBeReturned.add(this.objects.get(index));
         this.currentRelevant = null;
         this.relevantSize = 0L;
         return toBeReturned;
@@ -219,6 +330,15 @@ class S3BucketData implements Comparable<S3BucketData>{
         return this.relevantSize;
     }
 
+    /**
+     * Method to return the number of the relevant objects inside that bucket, all of them and not only the ones which
+     * are returned by getRelevantObjects
+     * @return The number of relevant objects
+     */
+    public long getRelevantCount() {
+        return this.relevantCount;
+    }
+
     /**
      * Method to provide an ordering in the objects of this class
      * @param bucket the object to be compared.
@@ -288,7 +408,7 @@ class S3BucketData implements Comparable<S3BucketData>{
                 ", numberOfObjects=" + numberOfObjects +
                 ", owner=" + owner +
                 ", lastModified=" + lastModified +
-                ", objects=" + objects +
+                ", objects=" + objects.size() +
                 ", averageNumberOfObjects=" + averageNumberOfObjects +
                 ", averageBucketSizeBytes=" + averageBucketSizeBytes +
                 '}';
@@ -0,0 +1,94 @@
+package com.example;
+
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.PriorityQueue;
+
+/**
+ * Class to select the largest cold objects of a S3 bucket while the bucket is being listed, so the objects never
+ * have to be stored and sorted as a whole. An object is cold if it has not been modified in the given number of days.
+ *
+ * A min-heap (on size) of at most K objects is kept, an object larger than the smallest one in the heap replaces it.
+ * The number and the total size of all the cold objects are counted exactly, not just of the ones in the heap.
+ * The tracker is not thread safe, the S3BucketData owning it synchronizes the offers.
+ */
+class S3ColdObjectsTracker implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private final int days;
+    private final long thresholdSeconds;
+    private final int capacity;
+    private final PriorityQueue<S3ObjectData> largest = new PriorityQueue<>(); // Smallest of the K largest on the top
+    private long coldCount = 0;
+    private long coldBytes = 0;
+
+    /**
+     * Constructor
+     * @param days the objects not modified in these many days (from now) are cold
+     * @param capacity the number of largest cold objects to be kept, K
+     */
+    public S3ColdObjectsTracker(int days, int capacity) {
+        this.days = days;
+        this.thresholdSeconds = Instant.now().getEpochSecond() - (long) days * 24 * 3600;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Method to offer an object of the bucket, it is kept only if it is cold and among the K largest so far
+     * @param key the key of the object
+     * @param storageClass the storage class of the object
+     * @param lastModified the date on which the object was last modified
+     * @param size the size of the object in bytes
+     * @throws Exception if the object is kept and can not be created
+     */
+    public void offer(String key, String storageClass, Date lastModified, long size) throws Exception {
+        if (lastModified.getTime() / 1000 >= this.thresholdSeconds)
+            return;
+        this.coldCount += 1;
+        this.coldBytes += size;
+        if (this.capacity <= 0)
+            return;
+        if (this.largest.size() < this.capacity) {
+            this.largest.add(new S3ObjectData(key, storageClass, lastModified, size));
+        } else if (this.largest.peek().getSize() < size) {
+            this.largest.poll();
+            this.largest.add(new S3ObjectData(key, storageClass, lastModified, size));
+        }
+    }
+
+    /**
+     * Method to return the number of days after which an object is cold
+     * @return the days the tracker was created with
+     */
+    public int getDays() {
+        return this.days;
+    }
+
+    /**
+     * Method to return the number of the cold objects
+     * @return the number of all the cold objects offered
+     */
+    public long getColdCount() {
+        return this.coldCount;
+    }
+
+    /**
+     * Method to return the total size of the cold objects
+     * @return the size in bytes of all the cold objects offered
+     */
+    public long getColdBytes() {
+        return this.coldBytes;
+    }
+
+    /**
+     * Method to return the largest cold objects
+     * @return at most K objects, largest first
+     */
+    public ArrayList<S3ObjectData> getLargest() {
+        ArrayList<S3ObjectData> objects = new ArrayList<>(this.largest);
+        Collections.sort(objects, Collections.reverseOrder());
+        return objects;
+    }
+}
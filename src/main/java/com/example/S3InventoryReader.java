@@ -0,0 +1,280 @@
+package com.example;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Class to read the objects of the S3 buckets from a local copy of their S3 Inventory reports, instead of listing the
+ * buckets. An inventory report is a manifest.json along with the data files it lists, which hold one row per object.
+ *
+ * The directory given is searched for manifests (the layout of the inventory destination bucket can be copied as it
+ * is), and the latest manifest of every source bucket is used. The data files of a manifest are decoded in parallel and
+ * every row is streamed to the S3ObjectConsumer of the bucket, so the reader itself never holds more than a line per
+ * data file being read. Only the CSV format is supported, the ORC and Parquet reports are skipped, and so are the
+ * reports without the LastModifiedDate field since the objects could not be told cold or hot. The rows without a last
+ * modified date are skipped and counted for the same reason.
+ */
+class S3InventoryReader {
+    private static final String MANIFEST = "manifest.json";
+
+    private final File directory;
+    private final int threads;
+    private final HashMap<String, Manifest> latestManifests = new HashMap<>(); // Source bucket -> latest manifest of its inventory
+
+    /**
+     * Class to map the fields of manifest.json which are of use
+     */
+    private static class Manifest {
+        private String sourceBucket;
+        private String fileFormat;
+        private String fileSchema;
+        private String creationTimestamp;
+        private List<DataFile> files;
+
+        private transient File location;
+    }
+
+    /**
+     * Class to map a data file listed in manifest.json
+     */
+    private static class DataFile {
+        private String key;
+    }
+
+    /**
+     * Constructor, it finds the latest manifest of every bucket present in the directory
+     * @param directory the local directory holding the inventory reports
+     * @param threads the number of data files decoded in parallel
+     * @throws IOException if a manifest can not be read or is not valid JSON
+     */
+    public S3InventoryReader(String directory, int threads) throws IOException {
+        this.directory = new File(directory);
+        this.threads = threads;
+        ArrayList<File> manifests = new ArrayList<>();
+        findManifests(this.directory, manifests);
+
+        Gson gson = new Gson();
+        for (File file : manifests) {
+            Manifest manifest;
+            try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+                manifest = gson.fromJson(reader, Manifest.class);
+            } catch (JsonParseException e) {
+                throw new IOException("The inventory manifest " + file + " is not valid", e);
+            }
+            if (manifest == null || manifest.sourceBucket == null || manifest.files == null)
+                continue;
+            if (!"CSV".equalsIgnoreCase(manifest.fileFormat)) {
+                System.out.println("Skipping the inventory " + file + ", the " + manifest.fileFormat + " format is not supported");
+                continue;
+            }
+            if (manifest.fileSchema == null || !schema(manifest).containsKey("LastModifiedDate")) {
+                System.out.println("Skipping the inventory " + file + ", it does not have the LastModifiedDate field");
+                continue;
+            }
+            manifest.location = file;
+            Manifest latest = this.latestManifests.get(manifest.sourceBucket);
+            if (latest == null || creationTime(manifest) > creationTime(latest))
+                this.latestManifests.put(manifest.sourceBucket, manifest);
+        }
+    }
+
+    /**
+     * Method to tell if the inventory of a bucket is present
+     * @param bucketName the name of the bucket in context
+     * @return true if the bucket has an inventory which can be read
+     */
+    public boolean hasInventory(String bucketName) {
+        return this.latestManifests.containsKey(bucketName);
+    }
+
+    /**
+     * Method to read the latest inventory of a bucket, the data files are decoded in parallel
+     * @param bucketName the name of the bucket in context
+     * @param consumer the consumer to which every object of the bucket is streamed, it must be thread safe
+     * @throws Exception if the bucket has no inventory or a data file can not be read
+     */
+    public void read(String bucketName, S3ObjectConsumer consumer) throws Exception {
+        Manifest manifest = this.latestManifests.get(bucketName);
+        if (manifest == null)
+            throw new Exception("No inventory found for the bucket " + bucketName);
+
+        HashMap<String, Integer> columns = schema(manifest);
+        if (!columns.containsKey("Key"))
+            throw new Exception("The inventory of the bucket " + bucketName + " does not have the Key field");
+
+        AtomicLong undated = new AtomicLong();
+        ExecutorService pool = Executors.newFixedThreadPool(this.threads);
+        try {
+            ArrayList<Future<Void>> files = new ArrayList<>();
+            for (DataFile dataFile : manifest.files) {
+                File file = resolve(manifest, dataFile.key);
+                files.add(pool.submit(() -> {
+                    readDataFile(file, columns, consumer, undated);
+                    return null;
+                }));
+            }
+            for (Future<Void> file : files)
+                file.get();
+        } finally {
+            pool.shutdownNow();
+        }
+        if (undated.get() > 0)
+            System.out.println("Skipped " + undated.get() + " objects of the inventory of the bucket " + bucketName + " without a last modified date");
+    }
+
+    /**
+     * Method to stream the rows of a gzipped CSV data file to the consumer. Delete markers and the versions which are
+     * not the latest (present only in the inventories of the versioned buckets) are skipped, and so are the rows
+     * without a last modified date
+     * @param file the data file
+     * @param columns the index of every field of the schema
+     * @param consumer the consumer of the objects
+     * @param undated the count of the rows skipped for the lack of a last modified date
+     * @throws Exception if the file can not be read or a row is not valid
+     */
+    private void readDataFile(File file, HashMap<String, Integer> columns, S3ObjectConsumer consumer, AtomicLong undated) throws Exception {
+        InputStream input = new FileInputStream(file);
+        if (file.getName().endsWith(".gz"))
+            input = new GZIPInputStream(input, 1 << 16);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8), 1 << 16)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty())
+                    continue;
+                String[] row = parseCsvLine(line);
+                if ("true".equalsIgnoreCase(field(row, columns, "IsDeleteMarker")) || "false".equalsIgnoreCase(field(row, columns, "IsLatest")))
+                    continue;
+
+                String lastModified = field(row, columns, "LastModifiedDate");
+                if (lastModified == null || lastModified.isEmpty()) {
+                    undated.incrementAndGet();
+                    continue;
+                }
+                String key = URLDecoder.decode(field(row, columns, "Key"), "UTF-8");
+                String size = field(row, columns, "Size");
+                String storageClass = field(row, columns, "StorageClass");
+                consumer.accept(key,
+                        storageClass == null || storageClass.isEmpty() ? "STANDARD" : storageClass,
+                        Date.from(Instant.parse(lastModified)),
+                        size == null || size.isEmpty() ? 0 : Long.parseLong(size));
+            }
+        }
+    }
+
+    /**
+     * Method to split a line of the CSV data file into its fields. All the fields of the inventory are quoted and a
+     * quote inside a field is escaped by another quote. The bulk price list of EC2 is read with it too
+     * @param line the line in context
+     * @return the fields of the line without the quotes
+     */
+    static String[] parseCsvLine(String line) {
+        ArrayList<String> fields = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    current.append('"');
+                    i += 1;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    current.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(current.toString());
+                current.setLength(0);
+            } else {
+                current.append(c);
+            }
+        }
+        fields.add(current.toString());
+        return fields.toArray(new String[0]);
+    }
+
+    private static String field(String[] row, HashMap<String, Integer> columns, String name) {
+        Integer index = columns.get(name);
+        if (index == null || index >= row.length)
+            return null;
+        return row[index];
+    }
+
+    /**
+     * Method to return the index of every field of the schema of a manifest
+     * @param manifest the manifest in context, having a schema
+     * @return the name of every field -> its index in the rows
+     */
+    private static HashMap<String, Integer> schema(Manifest manifest) {
+        String[] schema = manifest.fileSchema.split(",");
+        HashMap<String, Integer> columns = new HashMap<>();
+        for (int i = 0; i < schema.length; i++)
+            columns.put(schema[i].trim(), i);
+        return columns;
+    }
+
+    private static long creationTime(Manifest manifest) {
+        try {
+            return Long.parseLong(manifest.creationTimestamp);
+        } catch (NumberFormatException e) {
+            return manifest.location.lastModified();
+        }
+    }
+
+    /**
+     * Method to find the local copy of a data file. The key of the data file is relative to the destination bucket, so
+     * it is looked up from the directory given and, as the reports may be copied from any level of the destination
+     * bucket, in the data directory next to the one of the manifest
+     * @param manifest the manifest listing the data file
+     * @param key the key of the data file
+     * @return the local data file
+     * @throws IOException if the data file is not present
+     */
+    private File resolve(Manifest manifest, String key) throws IOException {
+        String name = key.substring(key.lastIndexOf('/') + 1);
+        File manifestDirectory = manifest.location.getParentFile();
+        File[] candidates = {
+                new File(this.directory, key),
+                new File(new File(manifestDirectory.getParentFile(), "data"), name),
+                new File(manifestDirectory, name)
+        };
+        for (File candidate : candidates)
+            if (candidate.isFile())
+                return candidate;
+        throw new IOException("The data file " + key + " of the inventory " + manifest.location + " is not present");
+    }
+
+    private static void findManifests(File directory, ArrayList<File> manifests) {
+        File[] children = directory.listFiles();
+        if (children == null)
+            return;
+        for (File child : children) {
+            if (child.isDirectory())
+                findManifests(child, manifests);
+            else if (child.getName().equals(MANIFEST))
+                manifests.add(child);
+        }
+    }
+}
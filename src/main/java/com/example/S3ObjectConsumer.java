@@ -0,0 +1,20 @@
+package com.example;
+
+import java.util.Date;
+
+/**
+ * Interface of the aggregators to which the objects of a S3 bucket are streamed while the bucket is being listed.
+ * The partitions of a bucket are listed in parallel, so an implementation must be safe to be called from several
+ * threads at the same time.
+ */
+interface S3ObjectConsumer {
+    /**
+     * Method to be invoked for every object/file of the bucket, exactly once per object
+     * @param key the key (name) of the object
+     * @param storageClass the storage class of the object
+     * @param lastModified the date on which the object was last modified
+     * @param size the size of the object in bytes
+     * @throws Exception if the object can not be stored
+     */
+    void accept(String key, String storageClass, Date lastModified, long size) throws Exception;
+}
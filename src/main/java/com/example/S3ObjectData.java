@@ -1,5 +1,6 @@
 package com.example;
 
+import java.io.Serializable;
 import java.time.Instant;
 import java.util.Date;
 
@@ -11,7 +12,8 @@ import java.util.Date;
 /**
  * Class to store information of S3 objects, object here refers to the files stored inside a S3 bucket
  */
-class S3ObjectData implements Comparable<S3ObjectData>{
+class S3ObjectData implements Serializable, Comparable<S3ObjectData>{
+    private static final long serialVersionUID = 1L;
     private String objectName;
     private String storageClass;
     private Date lastModified;
@@ -0,0 +1,235 @@
+package com.example;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import software.amazon.awssdk.regions.Region;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Class to list the objects of many S3 buckets at once. A single ListObjectsV2 pagination is sequential, so the key
+ * space of every bucket is split into disjoint partitions which are listed in parallel, on one pool shared by all the
+ * buckets.
+ *
+ * 1. The key space is discovered with delimiter listings, starting at the root of the bucket. The objects found at a
+ *    level are consumed right away and every common prefix becomes a partition of its own, down to MAX_DEPTH levels
+ * 2. A prefix deeper than MAX_DEPTH is listed as a whole, without any delimiter
+ * 3. A level which has no common prefix but more than one page of objects (a flat key space) is split into StartAfter
+ *    ranges on the first character after the prefix
+ *
+ * The objects are streamed to the S3ObjectConsumer of their bucket as the pages arrive. If any partition of a bucket
+ * fails then the bucket is reported as failed, as its objects are then incomplete.
+ *
+ * The partitions outstanding are counted with an atomic counter (a Phaser can not have more than 65535 parties, which
+ * thousands of buckets with a wide fan out of prefixes can reach), and listAll waits on a monitor until it drops to 0.
+ */
+class S3ObjectLister {
+    private static final int MAX_DEPTH = 3; // The number of levels of prefixes discovered with delimiter listings
+    private static final String DELIMITER = "/";
+    private static final String[] RANGE_BOUNDARIES = {"0", "4", "8", "A", "G", "M", "S", "Y", "a", "e", "i", "m", "q", "u", "y"}; // The first characters at which a flat key space is split
+
+    private final ClientRegistry clients;
+    private final RateController rateController;
+    private final int threads;
+
+    private ExecutorService pool;
+    private final Object idle = new Object(); // Notified once no partition is outstanding
+    private AtomicInteger pending; // Partitions submitted but not yet listed, plus one held by listAll while it submits
+    private Set<String> failedBuckets;
+
+    /**
+     * Class to identify the bucket a partition belongs to along with the consumer of the objects of the bucket
+     */
+    private static class BucketContext {
+        private final String name;
+        private final Region region;
+        private final AmazonS3 client;
+        private final S3ObjectConsumer consumer;
+
+        private BucketContext(String name, Region region, AmazonS3 client, S3ObjectConsumer consumer) {
+            this.name = name;
+            this.region = region;
+            this.client = client;
+            this.consumer = consumer;
+        }
+    }
+
+    /**
+     * Constructor
+     * @param clients the registry from which the S3 clients are taken
+     * @param rateController the rate controller through which the API calls are made
+     * @param threads the number of partitions listed in parallel, across all the buckets
+     */
+    public S3ObjectLister(ClientRegistry clients, RateController rateController, int threads) {
+        this.clients = clients;
+        this.rateController = rateController;
+        this.threads = threads;
+    }
+
+    /**
+     * Method to list all the objects of the given buckets, it returns once every partition of every bucket is listed
+     * @param consumers the consumer of the objects of every bucket, by the bucket
+     * @return the names of the buckets which could not be listed completely
+     */
+    public synchronized Set<String> listAll(Map<S3BucketData, S3ObjectConsumer> consumers) {
+        this.pool = Executors.newFixedThreadPool(this.threads);
+        this.pending = new AtomicInteger(1);
+        this.failedBuckets = ConcurrentHashMap.newKeySet();
+        try {
+            for (Map.Entry<S3BucketData, S3ObjectConsumer> entry : consumers.entrySet()) {
+                Region region = entry.getKey().getLocation().isEmpty() ? Region.US_EAST_1 : Region.of(entry.getKey().getLocation());
+                BucketContext bucket = new BucketContext(entry.getKey().getName(), region, this.clients.s3(region), entry.getValue());
+                submit(bucket, () -> discover(bucket, "", 0));
+            }
+            finishPartition();
+            synchronized (this.idle) {
+                while (this.pending.get() > 0)
+                    this.idle.wait();
+            }
+        } catch (InterruptedException e) {
+            /*
+             * The listings still running are abandoned, so none of the buckets is complete
+             * */
+            Thread.currentThread().interrupt();
+            for (S3BucketData bucket : consumers.keySet())
+                this.failedBuckets.add(bucket.getName());
+        } finally {
+            this.pool.shutdownNow();
+        }
+        return Collections.unmodifiableSet(new HashSet<>(this.failedBuckets));
+    }
+
+    /**
+     * Method to list a partition on the pool. The partition is counted before it is queued, so listAll waits for
+     * the partitions submitted by the other partitions as well
+     * @param bucket the bucket of the partition
+     * @param partition the listing of the partition
+     */
+    private void submit(BucketContext bucket, Partition partition) {
+        this.pending.incrementAndGet();
+        this.pool.execute(() -> {
+            try {
+                if (!this.failedBuckets.contains(bucket.name))
+                    partition.list();
+            } catch (Exception e) {
+                e.printStackTrace();
+                this.failedBuckets.add(bucket.name);
+            } finally {
+                finishPartition();
+            }
+        });
+    }
+
+    /**
+     * Method to count a partition as listed, and to wake up listAll once it was the last one outstanding. The counter
+     * is decreased before the monitor is taken, but listAll checks it under the monitor, so the wake up is never missed
+     */
+    private void finishPartition() {
+        if (this.pending.decrementAndGet() == 0) {
+            synchronized (this.idle) {
+                this.idle.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Interface of the listing of a single partition
+     */
+    private interface Partition {
+        void list() throws Exception;
+    }
+
+    /**
+     * Method to list a level of the key space with the delimiter. The objects of the level are consumed and its
+     * common prefixes are submitted as partitions of their own
+     * @param bucket the bucket in context
+     * @param prefix the prefix of the level
+     * @param depth the depth of the level, 0 for the root of the bucket
+     * @throws Exception if the listing fails or an object can not be consumed
+     */
+    private void discover(BucketContext bucket, String prefix, int depth) throws Exception {
+        if (depth >= MAX_DEPTH) {
+            listRange(bucket, prefix, null, null);
+            return;
+        }
+
+        ListObjectsV2Request request = new ListObjectsV2Request().withBucketName(bucket.name).withPrefix(prefix).withDelimiter(DELIMITER);
+        boolean foundPrefixes = false;
+        while (true) {
+            ListObjectsV2Result result = this.rateController.call(bucket.region.id(), "ListObjectsV2", bucket.client::listObjectsV2, request);
+            String lastKey = null;
+            for (S3ObjectSummary summary : result.getObjectSummaries()) {
+                bucket.consumer.accept(summary.getKey(), summary.getStorageClass(), summary.getLastModified(), summary.getSize());
+                lastKey = summary.getKey();
+            }
+            for (String commonPrefix : result.getCommonPrefixes()) {
+                foundPrefixes = true;
+                submit(bucket, () -> discover(bucket, commonPrefix, depth + 1));
+            }
+            if (!result.isTruncated())
+                return;
+
+            if (!foundPrefixes && lastKey != null) {
+                /*
+                 * A flat level, the remaining keys are split into ranges instead of being paged one after the other
+                 * */
+                splitIntoRanges(bucket, prefix, lastKey);
+                return;
+            }
+            request.setContinuationToken(result.getNextContinuationToken());
+        }
+    }
+
+    /**
+     * Method to submit the ranges of the keys of a prefix which come after a key, the ranges are split at
+     * RANGE_BOUNDARIES. Every range covers the keys after its start up to (and including) the start of the next range
+     * @param bucket the bucket in context
+     * @param prefix the prefix of the keys
+     * @param startAfter the key after which the ranges start
+     */
+    private void splitIntoRanges(BucketContext bucket, String prefix, String startAfter) {
+        String rangeStart = startAfter;
+        for (String boundary : RANGE_BOUNDARIES) {
+            String rangeEnd = prefix + boundary;
+            if (rangeEnd.compareTo(rangeStart) <= 0)
+                continue;
+            String from = rangeStart;
+            submit(bucket, () -> listRange(bucket, prefix, from, rangeEnd));
+            rangeStart = rangeEnd;
+        }
+        String from = rangeStart;
+        submit(bucket, () -> listRange(bucket, prefix, from, null));
+    }
+
+    /**
+     * Method to list all the keys of a prefix within a range, without any delimiter
+     * @param bucket the bucket in context
+     * @param prefix the prefix of the keys
+     * @param startAfter the key after which the range starts, null to start at the first key
+     * @param endAt the last key of the range (inclusive), null to list up to the last key
+     * @throws Exception if the listing fails or an object can not be consumed
+     */
+    private void listRange(BucketContext bucket, String prefix, String startAfter, String endAt) throws Exception {
+        ListObjectsV2Request request = new ListObjectsV2Request().withBucketName(bucket.name).withPrefix(prefix).withStartAfter(startAfter);
+        while (true) {
+            ListObjectsV2Result result = this.rateController.call(bucket.region.id(), "ListObjectsV2", bucket.client::listObjectsV2, request);
+            for (S3ObjectSummary summary : result.getObjectSummaries()) {
+                if (endAt != null && summary.getKey().compareTo(endAt) > 0)
+                    return;
+                bucket.consumer.accept(summary.getKey(), summary.getStorageClass(), summary.getLastModified(), summary.getSize());
+            }
+            if (!result.isTruncated())
+                return;
+            request.setContinuationToken(result.getNextContinuationToken());
+        }
+    }
+}
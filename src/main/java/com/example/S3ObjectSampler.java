@@ -0,0 +1,339 @@
+package com.example;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import software.amazon.awssdk.regions.Region;
+
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Class to estimate the number and the size of the cold objects of the huge S3 buckets from a sample of their key
+ * space, instead of listing them completely. An object is cold if it has not been modified in the given number of days.
+ *
+ * The key space of a bucket is split into partitions, the top level prefixes (or, if there are too few of them, the
+ * ranges of keys under them starting with every character). The partitions are listed fully in a random order and the
+ * cold share of the objects of the listed partitions is extrapolated to the number of objects of the bucket reported by
+ * cloudwatch, with a ratio estimator. The sampling stops once the 95% confidence interval of the cold bytes is within
+ * the target relative error, or once the request/time budget of the bucket is used up.
+ *
+ * The objects of the listed partitions are streamed to the consumer of the bucket, so the largest cold objects and the
+ * prefixes found in the sample are still reported.
+ */
+class S3ObjectSampler {
+    private static final String DELIMITER = "/";
+    private static final int MIN_PARTITIONS = 50; // Below this many top level prefixes, they are split into character ranges
+    private static final int MIN_SAMPLED_PARTITIONS = 10; // The confidence interval is not trusted before these many partitions
+    private static final double Z_95 = 1.96;
+    private static final String RANGE_CHARACTERS = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
+
+    private final ClientRegistry clients;
+    private final RateController rateController;
+    private final double targetRelativeError;
+    private final int maxRequests;
+    private final long maxMillis;
+    private final int threads;
+    private final Random random = new Random();
+
+    /**
+     * Class to hold the estimate of the cold objects of a bucket
+     */
+    public static class Estimate implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private final int days;
+        private final double coldObjects;
+        private final double coldBytes;
+        private final double coldBytesHalfWidth;
+        private final int sampledPartitions;
+        private final int totalPartitions;
+        private final boolean converged;
+
+        private Estimate(int days, double coldObjects, double coldBytes, double coldBytesHalfWidth, int sampledPartitions, int totalPartitions, boolean converged) {
+            this.days = days;
+            this.coldObjects = coldObjects;
+            this.coldBytes = coldBytes;
+            this.coldBytesHalfWidth = coldBytesHalfWidth;
+            this.sampledPartitions = sampledPartitions;
+            this.totalPartitions = totalPartitions;
+            this.converged = converged;
+        }
+
+        public int getDays() {
+            return this.days;
+        }
+
+        public long getColdObjects() {
+            return Math.round(this.coldObjects);
+        }
+
+        public long getColdBytes() {
+            return Math.round(this.coldBytes);
+        }
+
+        /**
+         * Method to return the half width of the 95% confidence interval of the cold bytes
+         * @return the cold bytes are within getColdBytes() +- this value
+         */
+        public long getColdBytesHalfWidth() {
+            return Math.round(this.coldBytesHalfWidth);
+        }
+
+        public int getSampledPartitions() {
+            return this.sampledPartitions;
+        }
+
+        public int getTotalPartitions() {
+            return this.totalPartitions;
+        }
+
+        /**
+         * Method to tell if the target relative error was reached, false if the budget ran out before that
+         * @return true if the interval is within the target
+         */
+        public boolean isConverged() {
+            return this.converged;
+        }
+
+        @Override
+        public String toString() {
+            return getColdObjects() + " objects, " + getColdBytes() + " +- " + getColdBytesHalfWidth() + " bytes from "
+                    + this.sampledPartitions + " of " + this.totalPartitions + " partitions" + (this.converged ? "" : " (budget exhausted)");
+        }
+    }
+
+    /**
+     * Class to identify a partition of the key space, the keys with the prefix after startAfter up to endAt (inclusive)
+     */
+    private static class Partition {
+        private final String prefix;
+        private final String startAfter;
+        private final String endAt;
+
+        private Partition(String prefix, String startAfter, String endAt) {
+            this.prefix = prefix;
+            this.startAfter = startAfter;
+            this.endAt = endAt;
+        }
+    }
+
+    /**
+     * Class to count the requests and the time used for a bucket
+     */
+    private class Budget {
+        private final long deadline = System.currentTimeMillis() + maxMillis;
+        private int requests = 0;
+
+        private boolean exhausted() {
+            return this.requests >= maxRequests || System.currentTimeMillis() >= this.deadline;
+        }
+    }
+
+    /**
+     * Constructor
+     * @param clients the registry from which the S3 clients are taken
+     * @param rateController the rate controller through which the API calls are made
+     * @param targetRelativeError the sampling of a bucket stops once the confidence interval of its cold bytes is within this fraction of the estimate
+     * @param maxRequests the number of list calls allowed per bucket
+     * @param maxSeconds the time allowed per bucket
+     * @param threads the number of buckets sampled in parallel
+     */
+    public S3ObjectSampler(ClientRegistry clients, RateController rateController, double targetRelativeError, int maxRequests, int maxSeconds, int threads) {
+        this.clients = clients;
+        this.rateController = rateController;
+        this.targetRelativeError = targetRelativeError;
+        this.maxRequests = maxRequests;
+        this.maxMillis = maxSeconds * 1000L;
+        this.threads = threads;
+    }
+
+    /**
+     * Method to sample the buckets in parallel, the estimate of every bucket is stored in the bucket. A bucket which
+     * can not be sampled is left without an estimate
+     * @param buckets the buckets to be sampled, their objects are streamed to them
+     * @param days the objects not modified in these many days are cold
+     */
+    public void sampleAll(List<S3BucketData> buckets, int days) {
+        ExecutorService pool = Executors.newFixedThreadPool(this.threads);
+        try {
+            ArrayList<Future<Estimate>> estimates = new ArrayList<>();
+            for (S3BucketData bucket : buckets)
+                estimates.add(pool.submit(() -> sample(bucket, bucket, days)));
+            for (int i = 0; i < buckets.size(); i++) {
+                try {
+                    buckets.get(i).setColdObjectsEstimate(estimates.get(i).get());
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Method to estimate the cold objects of a bucket
+     * @param bucket the bucket in context, its cloudwatch number of objects is the population extrapolated to
+     * @param consumer the consumer to which the objects of the sampled partitions are streamed
+     * @param days the objects not modified in these many days are cold
+     * @return the estimate
+     * @throws Exception if the bucket can not be listed
+     */
+    public Estimate sample(S3BucketData bucket, S3ObjectConsumer consumer, int days) throws Exception {
+        long thresholdMillis = (Instant.now().getEpochSecond() - (long) days * 24 * 3600) * 1000;
+        Region region = bucket.getLocation().isEmpty() ? Region.US_EAST_1 : Region.of(bucket.getLocation());
+        AmazonS3 client = this.clients.s3(region);
+        Budget budget = new Budget();
+
+        /*
+         * Discovering the partitions. The objects at the root (outside every prefix) are counted exactly, they are
+         * not part of the sampled population
+         * */
+        double[] census = new double[3]; // objects, cold objects, cold bytes
+        ArrayList<String> prefixes = new ArrayList<>();
+        boolean flat = false;
+        ListObjectsV2Request request = new ListObjectsV2Request().withBucketName(bucket.getName()).withDelimiter(DELIMITER);
+        while (true) {
+            ListObjectsV2Result result = list(region, client, request, budget);
+            if (prefixes.isEmpty() && result.getCommonPrefixes().isEmpty() && result.isTruncated()) {
+                flat = true;
+                break;
+            }
+            prefixes.addAll(result.getCommonPrefixes());
+            for (S3ObjectSummary summary : result.getObjectSummaries())
+                consume(summary, consumer, thresholdMillis, census);
+            if (!result.isTruncated() || budget.exhausted())
+                break;
+            request.setContinuationToken(result.getNextContinuationToken());
+        }
+
+        ArrayList<Partition> partitions = new ArrayList<>();
+        if (flat) {
+            addRanges("", partitions);
+        } else if (prefixes.size() < MIN_PARTITIONS) {
+            for (String prefix : prefixes)
+                addRanges(prefix, partitions);
+        } else {
+            for (String prefix : prefixes)
+                partitions.add(new Partition(prefix, null, null));
+        }
+        Collections.shuffle(partitions, this.random);
+
+        /*
+         * Listing the partitions in the random order, till the interval is tight enough or the budget runs out. A
+         * partition cut short by the budget is left out of the sample
+         * */
+        double population = Math.max(0, bucket.getNumberOfObjects() - census[0]);
+        ArrayList<double[]> sampled = new ArrayList<>(); // objects, cold objects, cold bytes of every listed partition
+        Estimate estimate = extrapolate(days, census, sampled, partitions.size(), population, false);
+        for (Partition partition : partitions) {
+            if (budget.exhausted())
+                break;
+            double[] totals = new double[3];
+            if (!listPartition(region, client, bucket.getName(), partition, consumer, thresholdMillis, totals, budget))
+                break;
+            sampled.add(totals);
+            boolean complete = sampled.size() == partitions.size();
+            estimate = extrapolate(days, census, sampled, partitions.size(), population, complete);
+            if (complete || (sampled.size() >= MIN_SAMPLED_PARTITIONS && estimate.coldBytesHalfWidth <= this.targetRelativeError * estimate.coldBytes))
+                return new Estimate(days, estimate.coldObjects, estimate.coldBytes, estimate.coldBytesHalfWidth, estimate.sampledPartitions, estimate.totalPartitions, true);
+        }
+        return estimate;
+    }
+
+    /**
+     * Method to extrapolate the sampled partitions to the population with a ratio estimator (cold objects and cold
+     * bytes per object listed). The variance of the ratio is computed from the residuals of the partitions, with the
+     * finite population correction
+     * @param days the days after which an object is cold
+     * @param census the exact totals of the objects outside the partitions
+     * @param sampled the totals of every sampled partition
+     * @param totalPartitions the number of partitions
+     * @param population the number of objects in the partitions, as per cloudwatch. If it is not known then it is estimated from the sample
+     * @param complete true if every partition was listed, the totals are then exact
+     * @return the estimate
+     */
+    private Estimate extrapolate(int days, double[] census, List<double[]> sampled, int totalPartitions, double population, boolean complete) {
+        int n = sampled.size();
+        double objects = 0, coldObjects = 0, coldBytes = 0;
+        for (double[] totals : sampled) {
+            objects += totals[0];
+            coldObjects += totals[1];
+            coldBytes += totals[2];
+        }
+        if (complete)
+            return new Estimate(days, census[1] + coldObjects, census[2] + coldBytes, 0, n, totalPartitions, true);
+        if (n == 0 || objects == 0)
+            return new Estimate(days, census[1], census[2], Double.MAX_VALUE, n, totalPartitions, false);
+
+        if (population <= 0)
+            population = objects / n * totalPartitions;
+        double coldObjectsRatio = coldObjects / objects;
+        double coldBytesRatio = coldBytes / objects;
+        double meanObjects = objects / n;
+        double residuals = 0;
+        for (double[] totals : sampled)
+            residuals += Math.pow(totals[2] - coldBytesRatio * totals[0], 2);
+        double variance = n > 1 ? (1 - (double) n / totalPartitions) * residuals / (n - 1) / (n * meanObjects * meanObjects) : Double.MAX_VALUE;
+        double halfWidth = Z_95 * Math.sqrt(Math.max(0, variance)) * population;
+        return new Estimate(days, census[1] + coldObjectsRatio * population, census[2] + coldBytesRatio * population, halfWidth, n, totalPartitions, false);
+    }
+
+    /**
+     * Method to list a partition completely
+     * @return false if the budget ran out before the partition was listed completely
+     */
+    private boolean listPartition(Region region, AmazonS3 client, String bucketName, Partition partition, S3ObjectConsumer consumer, long thresholdMillis, double[] totals, Budget budget) throws Exception {
+        ListObjectsV2Request request = new ListObjectsV2Request().withBucketName(bucketName).withPrefix(partition.prefix).withStartAfter(partition.startAfter);
+        while (true) {
+            ListObjectsV2Result result = list(region, client, request, budget);
+            for (S3ObjectSummary summary : result.getObjectSummaries()) {
+                if (partition.endAt != null && summary.getKey().compareTo(partition.endAt) > 0)
+                    return true;
+                consume(summary, consumer, thresholdMillis, totals);
+            }
+            if (!result.isTruncated())
+                return true;
+            if (budget.exhausted())
+                return false;
+            request.setContinuationToken(result.getNextContinuationToken());
+        }
+    }
+
+    private ListObjectsV2Result list(Region region, AmazonS3 client, ListObjectsV2Request request, Budget budget) {
+        budget.requests += 1;
+        return this.rateController.call(region.id(), "ListObjectsV2", client::listObjectsV2, request);
+    }
+
+    private static void consume(S3ObjectSummary summary, S3ObjectConsumer consumer, long thresholdMillis, double[] totals) throws Exception {
+        consumer.accept(summary.getKey(), summary.getStorageClass(), summary.getLastModified(), summary.getSize());
+        totals[0] += 1;
+        if (summary.getLastModified().getTime() < thresholdMillis) {
+            totals[1] += 1;
+            totals[2] += summary.getSize();
+        }
+    }
+
+    /**
+     * Method to split the keys of a prefix into ranges on their first character after the prefix. Every range covers
+     * the keys after its start up to (and including) the start of the next range, the first range has no start and
+     * the last one has no end, so that every key falls in exactly one range
+     */
+    private static void addRanges(String prefix, ArrayList<Partition> partitions) {
+        String startAfter = null;
+        for (int i = 0; i < RANGE_CHARACTERS.length(); i++) {
+            String endAt = prefix + RANGE_CHARACTERS.charAt(i);
+            partitions.add(new Partition(prefix, startAfter, endAt));
+            startAfter = endAt;
+        }
+        partitions.add(new Partition(prefix, startAfter, null));
+    }
+}
@@ -0,0 +1,365 @@
+package com.example;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ * Class to store the objects/files of a S3 bucket compactly, outside the heap. Keeping one S3ObjectData per object
+ * costs hundreds of bytes per object, which does not fit the buckets having hundreds of millions of objects.
+ *
+ * 1. Keys : front coded in an off-heap arena. Every key stores the length of the prefix it shares with the previous key
+ *    and the remaining bytes, the first key of every block of BLOCK_SIZE keys is stored in full so that any key can be
+ *    decoded from the start of its block. Keys listed in order share long prefixes, so most keys take a few bytes
+ * 2. Storage classes : a byte per object, the index of the class in a dictionary
+ * 3. Last modified : an int per object, the epoch seconds (unsigned, which lasts until 2106)
+ * 4. Size : a long per object
+ *
+ * The columns are off-heap as well (direct buffers), so they are bounded by -XX:MaxDirectMemorySize (which is the size
+ * of the heap unless set) and not by the heap. Objects are referred to by their index, in the order they were added.
+ * The store is not thread safe, the S3BucketData owning it synchronizes the additions.
+ */
+class S3ObjectStore implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final int BLOCK_SIZE = 32; // Keys per front coding block
+    private static final int CHUNK_BITS = 24; // Every arena is made of chunks of 16 MB
+    private static final int MIN_FIRST_CHUNK = 1 << 10; // The first chunk grows from 1 KB, so a small bucket takes little memory
+    private static final String[] KNOWN_STORAGE_CLASSES = {"STANDARD", "REDUCED_REDUNDANCY", "GLACIER", "STANDARD_IA", "ONEZONE_IA", "INTELLIGENT_TIERING", "DEEP_ARCHIVE", "OUTPOSTS", "GLACIER_IR"};
+
+    private transient Arena keys;
+    private transient Arena storageClasses;
+    private transient Arena lastModified;
+    private transient Arena sizes;
+    private transient long[] blockPositions; // Position in the keys arena of the first key of every block
+    private transient long keyEnd; // Position at which the next key record is written
+    private transient byte[] previousKey;
+    private transient ArrayList<String> storageClassDictionary;
+    private transient int count;
+
+    /**
+     * Class to hold the bytes of a column in chunks of direct buffers. Only the first chunk is reallocated (doubling)
+     * as it grows, so a position once written never moves
+     */
+    private static class Arena {
+        private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+        private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+        private final ArrayList<ByteBuffer> chunks = new ArrayList<>();
+        private final ArrayList<Integer> used = new ArrayList<>(); // Bytes used in every chunk, a key record never spans two chunks
+
+        private Arena() {
+            this.chunks.add(ByteBuffer.allocateDirect(MIN_FIRST_CHUNK));
+            this.used.add(0);
+        }
+
+        /**
+         * Method to make the bytes [position, position + length) writable, the length never exceeds a chunk
+         */
+        private void ensure(long position, int length) {
+            int chunk = (int) (position >>> CHUNK_BITS);
+            int end = (int) (position & CHUNK_MASK) + length;
+            while (this.chunks.size() <= chunk) {
+                this.chunks.add(ByteBuffer.allocateDirect(CHUNK_SIZE));
+                this.used.add(0);
+            }
+            if (chunk == 0 && end > this.chunks.get(0).capacity()) {
+                int capacity = this.chunks.get(0).capacity();
+                while (capacity < end)
+                    capacity = Math.min(capacity * 2, CHUNK_SIZE);
+                ByteBuffer grown = ByteBuffer.allocateDirect(capacity);
+                ByteBuffer old = this.chunks.get(0).duplicate();
+                old.clear();
+                grown.put(old);
+                this.chunks.set(0, grown);
+            }
+            if (end > this.used.get(chunk))
+                this.used.set(chunk, end);
+        }
+
+        private ByteBuffer chunk(long position) {
+            return this.chunks.get((int) (position >>> CHUNK_BITS));
+        }
+
+        private int offset(long position) {
+            return (int) (position & CHUNK_MASK);
+        }
+
+        /**
+         * Method to return the position at which the next record is to be read, moving to the next chunk if the
+         * current one has no more records
+         */
+        private long nextRecord(long position) {
+            if (offset(position) >= this.used.get((int) (position >>> CHUNK_BITS)))
+                return ((position >>> CHUNK_BITS) + 1) << CHUNK_BITS;
+            return position;
+        }
+    }
+
+    /**
+     * Constructor, an empty store
+     */
+    public S3ObjectStore() {
+        initialize();
+    }
+
+    private void initialize() {
+        this.keys = new Arena();
+        this.storageClasses = new Arena();
+        this.lastModified = new Arena();
+        this.sizes = new Arena();
+        this.blockPositions = new long[4];
+        this.keyEnd = 0;
+        this.previousKey = new byte[0];
+        this.storageClassDictionary = new ArrayList<>(Arrays.asList(KNOWN_STORAGE_CLASSES));
+        this.count = 0;
+    }
+
+    /**
+     * Method to add an object to the store
+     * @param key the key of the object
+     * @param storageClass the storage class of the object
+     * @param date the date on which the object was last modified
+     * @param size the size of the object in bytes
+     * @return the index of the object
+     * @throws Exception if the storage classes can not be encoded in a byte any more
+     */
+    public int add(String key, String storageClass, Date date, long size) throws Exception {
+        int index = this.count;
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+
+        int shared = 0;
+        if (index % BLOCK_SIZE != 0) {
+            int limit = Math.min(keyBytes.length, this.previousKey.length);
+            while (shared < limit && keyBytes[shared] == this.previousKey[shared])
+                shared += 1;
+        }
+        int recordLength = varIntLength(shared) + varIntLength(keyBytes.length - shared) + keyBytes.length - shared;
+        long position = this.keyEnd;
+        if ((position & Arena.CHUNK_MASK) + recordLength > Arena.CHUNK_SIZE)
+            position = ((position >>> CHUNK_BITS) + 1) << CHUNK_BITS;
+        this.keys.ensure(position, recordLength);
+        ByteBuffer chunk = this.keys.chunk(position);
+        int offset = this.keys.offset(position);
+        offset = writeVarInt(chunk, offset, shared);
+        offset = writeVarInt(chunk, offset, keyBytes.length - shared);
+        for (int i = shared; i < keyBytes.length; i++)
+            chunk.put(offset++, keyBytes[i]);
+        if (index % BLOCK_SIZE == 0) {
+            if (index / BLOCK_SIZE == this.blockPositions.length)
+                this.blockPositions = Arrays.copyOf(this.blockPositions, this.blockPositions.length * 2);
+            this.blockPositions[index / BLOCK_SIZE] = position;
+        }
+        this.keyEnd = position + recordLength;
+        this.previousKey = keyBytes;
+
+        int storageClassIndex = this.storageClassDictionary.indexOf(storageClass);
+        if (storageClassIndex < 0) {
+            if (this.storageClassDictionary.size() == 256)
+                throw new Exception("More than 256 storage classes found, " + storageClass + " can not be stored");
+            this.storageClassDictionary.add(storageClass);
+            storageClassIndex = this.storageClassDictionary.size() - 1;
+        }
+        this.storageClasses.ensure(index, 1);
+        this.storageClasses.chunk(index).put(this.storageClasses.offset(index), (byte) storageClassIndex);
+
+        long seconds = Math.floorDiv(date.getTime(), 1000L);
+        long lastModifiedPosition = (long) index * 4;
+        this.lastModified.ensure(lastModifiedPosition, 4);
+        this.lastModified.chunk(lastModifiedPosition).putInt(this.lastModified.offset(lastModifiedPosition), (int) Math.max(0, seconds));
+
+        long sizePosition = (long) index * 8;
+        this.sizes.ensure(sizePosition, 8);
+        this.sizes.chunk(sizePosition).putLong(this.sizes.offset(sizePosition), size);
+
+        this.count += 1;
+        return index;
+    }
+
+    /**
+     * Method to return the number of objects in the store
+     * @return the number of objects
+     */
+    public int size() {
+        return this.count;
+    }
+
+    /**
+     * Method to return the key of an object, decoded from the start of its block
+     * @param index the index of the object
+     * @return the key of the object
+     */
+    public String getKey(int index) {
+        long position = this.blockPositions[index / BLOCK_SIZE];
+        byte[] key = new byte[0];
+        for (int i = index - index % BLOCK_SIZE; i <= index; i++) {
+            position = this.keys.nextRecord(position);
+            ByteBuffer chunk = this.keys.chunk(position);
+            int[] cursor = {this.keys.offset(position)};
+            int shared = readVarInt(chunk, cursor);
+            int suffix = readVarInt(chunk, cursor);
+            byte[] current = Arrays.copyOf(key, shared + suffix);
+            for (int j = 0; j < suffix; j++)
+                current[shared + j] = chunk.get(cursor[0] + j);
+            key = current;
+            position += cursor[0] + suffix - this.keys.offset(position);
+        }
+        return new String(key, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Method to return the storage class of an object
+     * @param index the index of the object
+     * @return the storage class of the object
+     */
+    public String getStorageClass(int index) {
+        return this.storageClassDictionary.get(this.storageClasses.chunk(index).get(this.storageClasses.offset(index)) & 0xFF);
+    }
+
+    /**
+     * Method to return the time at which an object was last modified
+     * @param index the index of the object
+     * @return the epoch seconds of the last modification
+     */
+    public long getLastModifiedSeconds(int index) {
+        long position = (long) index * 4;
+        return Integer.toUnsignedLong(this.lastModified.chunk(position).getInt(this.lastModified.offset(position)));
+    }
+
+    /**
+     * Method to return the size of an object
+     * @param index the index of the object
+     * @return the size of the object in bytes
+     */
+    public long getSize(int index) {
+        long position = (long) index * 8;
+        return this.sizes.chunk(position).getLong(this.sizes.offset(position));
+    }
+
+    /**
+     * Method to return the object at an index as a S3ObjectData, to be used only for the few objects which are reported
+     * @param index the index of the object
+     * @return the object
+     * @throws Exception if the object can not be created
+     */
+    public S3ObjectData get(int index) throws Exception {
+        return new S3ObjectData(getKey(index), getStorageClass(index), new Date(getLastModifiedSeconds(index) * 1000), getSize(index));
+    }
+
+    /**
+     * Method to find the objects which were last modified before a time, working on the columns only
+     * @param epochSeconds the time in context
+     * @return the indexes of the objects, in the order they were added
+     */
+    public int[] modifiedBefore(long epochSeconds) {
+        int[] found = new int[16];
+        int total = 0;
+        for (int i = 0; i < this.count; i++) {
+            if (getLastModifiedSeconds(i) < epochSeconds) {
+                if (total == found.length)
+                    found = Arrays.copyOf(found, found.length * 2);
+                found[total++] = i;
+            }
+        }
+        return Arrays.copyOf(found, total);
+    }
+
+    /**
+     * Method to sort the indexes of objects by their size, largest first. A heap sort is used as it sorts the
+     * primitive indexes in place, without any boxing
+     * @param indexes the indexes of the objects, sorted in place
+     */
+    public void sortBySizeDescending(int[] indexes) {
+        int n = indexes.length;
+        for (int i = n / 2 - 1; i >= 0; i--)
+            siftDown(indexes, i, n);
+        for (int end = n - 1; end > 0; end--) {
+            int top = indexes[0];
+            indexes[0] = indexes[end];
+            indexes[end] = top;
+            siftDown(indexes, 0, end);
+        }
+    }
+
+    /**
+     * Method to move an index down a min-heap (on size) so that the heap sort leaves the largest sizes first
+     */
+    private void siftDown(int[] heap, int i, int n) {
+        while (true) {
+            int smallest = i;
+            int left = 2 * i + 1;
+            int right = left + 1;
+            if (left < n && getSize(heap[left]) < getSize(heap[smallest]))
+                smallest = left;
+            if (right < n && getSize(heap[right]) < getSize(heap[smallest]))
+                smallest = right;
+            if (smallest == i)
+                return;
+            int swap = heap[i];
+            heap[i] = heap[smallest];
+            heap[smallest] = swap;
+            i = smallest;
+        }
+    }
+
+    private static int varIntLength(int value) {
+        int length = 1;
+        while ((value >>>= 7) != 0)
+            length += 1;
+        return length;
+    }
+
+    private static int writeVarInt(ByteBuffer buffer, int offset, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put(offset++, (byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put(offset++, (byte) value);
+        return offset;
+    }
+
+    private static int readVarInt(ByteBuffer buffer, int[] cursor) {
+        int value = 0;
+        int shift = 0;
+        while (true) {
+            byte b = buffer.get(cursor[0]++);
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+            shift += 7;
+        }
+    }
+
+    /**
+     * The direct buffers are not serializable, so the objects are written one after the other
+     */
+    private void writeObject(ObjectOutputStream output) throws IOException {
+        output.defaultWriteObject();
+        output.writeInt(this.count);
+        for (int i = 0; i < this.count; i++) {
+            output.writeUTF(getKey(i));
+            output.writeUTF(getStorageClass(i));
+            output.writeLong(getLastModifiedSeconds(i));
+            output.writeLong(getSize(i));
+        }
+    }
+
+    private void readObject(ObjectInputStream input) throws IOException, ClassNotFoundException {
+        input.defaultReadObject();
+        initialize();
+        int total = input.readInt();
+        try {
+            for (int i = 0; i < total; i++)
+                add(input.readUTF(), input.readUTF(), new Date(input.readLong() * 1000), input.readLong());
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.example;
+
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Class to roll the objects of a S3 bucket up by their "/" delimited prefixes while the bucket is being listed, so
+ * that the cold data can be reported per prefix instead of per object. An object is cold if it has not been modified
+ * in the given number of days.
+ *
+ * Every node of the trie is a prefix and holds the cold/hot objects and bytes under it along with the bytes per
+ * storage class. The memory is bounded
+ * 1. Only the prefixes up to maxDepth levels are kept, the objects deeper are counted in their ancestor at maxDepth
+ * 2. A node has at most maxFanOut children, the objects under the other prefixes are counted in an OTHER child
+ * 3. The trie has at most maxNodes nodes, past which the objects are counted in the deepest existing ancestor
+ *
+ * The trie is not thread safe, the S3BucketData owning it synchronizes the offers.
+ */
+class S3PrefixTrie implements Serializable {
+    private static final long serialVersionUID = 1L;
+    public static final String OTHER = "(other prefixes)";
+    private static final String DELIMITER = "/";
+
+    private final long thresholdSeconds;
+    private final int maxDepth;
+    private final int maxFanOut;
+    private final int maxNodes;
+    private final Node root = new Node();
+    private int nodes = 1;
+
+    /**
+     * Class to hold the totals of a prefix
+     */
+    private static class Node implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private final HashMap<String, Node> children = new HashMap<>();
+        private final HashMap<String, Long> bytesPerStorageClass = new HashMap<>();
+        private long coldObjects = 0;
+        private long coldBytes = 0;
+        private long hotObjects = 0;
+        private long hotBytes = 0;
+
+        private void add(boolean cold, String storageClass, long objects, long bytes) {
+            if (cold) {
+                this.coldObjects += objects;
+                this.coldBytes += bytes;
+            } else {
+                this.hotObjects += objects;
+                this.hotBytes += bytes;
+            }
+            this.bytesPerStorageClass.merge(storageClass, bytes, Long::sum);
+        }
+    }
+
+    /**
+     * Class to report a prefix along with its totals
+     */
+    public static class PrefixSummary {
+        private final String bucketName;
+        private final String prefix;
+        private final Node node;
+
+        private PrefixSummary(String bucketName, String prefix, Node node) {
+            this.bucketName = bucketName;
+            this.prefix = prefix;
+            this.node = node;
+        }
+
+        public String getBucketName() {
+            return this.bucketName;
+        }
+
+        public String getPrefix() {
+            return this.prefix;
+        }
+
+        public long getColdObjects() {
+            return this.node.coldObjects;
+        }
+
+        public long getColdBytes() {
+            return this.node.coldBytes;
+        }
+
+        public long getHotObjects() {
+            return this.node.hotObjects;
+        }
+
+        public long getHotBytes() {
+            return this.node.hotBytes;
+        }
+
+        /**
+         * Method to return the bytes per storage class in a human-readable format
+         * @return the storage classes (sorted by name) along with their bytes
+         */
+        public String getStorageClassBreakdown() {
+            StringBuilder breakdown = new StringBuilder();
+            for (Map.Entry<String, Long> entry : new TreeMap<>(this.node.bytesPerStorageClass).entrySet()) {
+                if (breakdown.length() > 0)
+                    breakdown.append(", ");
+                breakdown.append(entry.getKey()).append("=").append(entry.getValue());
+            }
+            return breakdown.toString();
+        }
+    }
+
+    /**
+     * Constructor
+     * @param days the objects not modified in these many days (from now) are cold
+     * @param maxDepth the number of levels of prefixes kept
+     * @param maxFanOut the number of children kept per prefix
+     * @param maxNodes the number of prefixes kept in all
+     */
+    public S3PrefixTrie(int days, int maxDepth, int maxFanOut, int maxNodes) {
+        this.thresholdSeconds = Instant.now().getEpochSecond() - (long) days * 24 * 3600;
+        this.maxDepth = maxDepth;
+        this.maxFanOut = maxFanOut;
+        this.maxNodes = maxNodes;
+    }
+
+    /**
+     * Method to add an object to the totals of the bucket and of every prefix it is under
+     * @param key the key of the object
+     * @param storageClass the storage class of the object
+     * @param lastModified the date on which the object was last modified
+     * @param size the size of the object in bytes
+     */
+    public void offer(String key, String storageClass, Date lastModified, long size) {
+        boolean cold = lastModified.getTime() / 1000 < this.thresholdSeconds;
+        Node node = this.root;
+        node.add(cold, storageClass, 1, size);
+        int start = 0;
+        for (int depth = 0; depth < this.maxDepth; depth++) {
+            int end = key.indexOf(DELIMITER, start);
+            if (end < 0)
+                break;
+            Node parent = node;
+            node = child(parent, key.substring(start, end + 1));
+            if (node == null)
+                break;
+            node.add(cold, storageClass, 1, size);
+            if (node == parent.children.get(OTHER))
+                break;
+            start = end + 1;
+        }
+    }
+
+    /**
+     * Method to return the child of a node for a segment of the key, created if the limits allow it. Beyond the
+     * fan-out the OTHER child is returned instead
+     * @return the child, null if no node can be created any more
+     */
+    private Node child(Node node, String segment) {
+        Node child = node.children.get(segment);
+        if (child != null)
+            return child;
+        if (node.children.size() >= this.maxFanOut)
+            segment = OTHER;
+        child = node.children.get(segment);
+        if (child == null && this.nodes < this.maxNodes) {
+            child = new Node();
+            node.children.put(segment, child);
+            this.nodes += 1;
+        }
+        return child;
+    }
+
+    /**
+     * Method to return the prefixes having any cold data. A prefix having a single child with the same totals (no
+     * objects of its own) is left out, its child stands for it, which keeps the report compressed
+     * @param bucketName the name of the bucket the trie belongs to
+     * @return the prefixes in no particular order, without the bucket as a whole
+     */
+    public ArrayList<PrefixSummary> getColdPrefixes(String bucketName) {
+        ArrayList<PrefixSummary> prefixes = new ArrayList<>();
+        for (Map.Entry<String, Node> entry : this.root.children.entrySet())
+            collect(bucketName, entry.getKey(), entry.getValue(), prefixes);
+        return prefixes;
+    }
+
+    private void collect(String bucketName, String prefix, Node node, ArrayList<PrefixSummary> prefixes) {
+        boolean passThrough = false;
+        for (Map.Entry<String, Node> entry : node.children.entrySet()) {
+            Node child = entry.getValue();
+            passThrough = node.children.size() == 1
+                    && child.coldObjects == node.coldObjects && child.hotObjects == node.hotObjects;
+            String childPrefix = entry.getKey().equals(OTHER) ? prefix + OTHER : prefix + entry.getKey();
+            collect(bucketName, childPrefix, child, prefixes);
+        }
+        if (node.coldBytes > 0 && !passThrough)
+            prefixes.add(new PrefixSummary(bucketName, prefix, node));
+    }
+}
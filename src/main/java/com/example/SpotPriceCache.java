@@ -0,0 +1,247 @@
+package com.example;
+
+import com.amazonaws.services.ec2.AmazonEC2;
+import com.amazonaws.services.ec2.model.DescribeSpotPriceHistoryRequest;
+import com.amazonaws.services.ec2.model.DescribeSpotPriceHistoryResult;
+import com.amazonaws.services.ec2.model.SpotPrice;
+import software.amazon.awssdk.regions.Region;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Class to find the spot price (and how much it moved) of the instances, for the "EC2 Cost Implication" sheet.
+ *
+ * The instances are added while they are collected. Once the collection is over the spot price history of every
+ * (region, availability zone) in use is described once, paged, over the last N days, for all the instance types and
+ * platforms in use in it, and the availability zones are described in parallel. Only the platforms which have a spot
+ * price (the product descriptions DescribeSpotPriceHistory accepts) are asked for, so a platform like "Windows with SQL
+ * Server Standard" does not fail the request of the whole availability zone. The statistics of the history of every
+ * (availability zone, instance type, platform) are computed once, so the lookup of an instance is a single hash map
+ * look up.
+ */
+class SpotPriceCache {
+    private static final String VPC_SUFFIX = " (Amazon VPC)";
+    private static final HashSet<String> SPOT_PLATFORMS = new HashSet<>(Arrays.asList("Linux/UNIX", "SUSE Linux", "Red Hat Enterprise Linux", "Windows")); // The product descriptions of the spot prices, each also exists with the VPC suffix
+
+    private final ClientRegistry clients;
+    private final RateController rateController;
+    private final int lookbackDays;
+    private final int threads;
+    private final LinkedHashMap<String, LinkedHashMap<String, ZoneUsage>> pending = new LinkedHashMap<>(); // Region -> availability zone -> instance types and platforms in use
+    private final ConcurrentHashMap<String, Series> series = new ConcurrentHashMap<>(); // "availability zone|instance type|platform" -> spot price history
+
+    /**
+     * Class to hold the instance types and the platforms in use in an availability zone
+     */
+    private static class ZoneUsage {
+        private final TreeSet<String> instanceTypes = new TreeSet<>();
+        private final TreeSet<String> platforms = new TreeSet<>();
+    }
+
+    /**
+     * Class to hold the statistics of the spot price history of an (availability zone, instance type, platform) over
+     * the window, weighted by the time for which every price held. The history itself is not kept
+     */
+    public static class Series {
+        private final double latestPrice;
+        private final double averagePrice;
+        private final double maximumPrice;
+        private final double volatility; // Standard deviation of the price over its average
+
+        /**
+         * Constructor
+         * @param prices the spot prices of the history, sorted by time
+         * @param start the start of the window, in milliseconds since the epoch
+         * @param end the end of the window, in milliseconds since the epoch
+         */
+        private Series(ArrayList<SpotPrice> prices, long start, long end) {
+            double sum = 0, sumOfSquares = 0, maximum = 0, price = 0;
+            long duration = 0;
+            for (int i = 0; i < prices.size(); i++) {
+                price = Double.parseDouble(prices.get(i).getSpotPrice());
+                long from = Math.max(start, prices.get(i).getTimestamp().getTime());
+                long to = i + 1 < prices.size() ? prices.get(i + 1).getTimestamp().getTime() : end;
+                long held = Math.max(1, (to - from) / 1000L);
+                sum += price * held;
+                sumOfSquares += price * price * held;
+                duration += held;
+                maximum = Math.max(maximum, price);
+            }
+            this.latestPrice = price;
+            this.averagePrice = sum / duration;
+            this.maximumPrice = maximum;
+            double variance = Math.max(0, sumOfSquares / duration - this.averagePrice * this.averagePrice);
+            this.volatility = this.averagePrice == 0 ? 0 : Math.sqrt(variance) / this.averagePrice;
+        }
+
+        public double getLatestPrice() {
+            return this.latestPrice;
+        }
+
+        public double getAveragePrice() {
+            return this.averagePrice;
+        }
+
+        public double getMaximumPrice() {
+            return this.maximumPrice;
+        }
+
+        /**
+         * Method to return how much the price moved over the window
+         * @return the standard deviation of the price over its average, 0 if it never changed
+         */
+        public double getVolatility() {
+            return this.volatility;
+        }
+
+        /**
+         * Method to rate the risk of the spot instances of the series being interrupted, see interruptionRisk
+         * @param onDemandPrice the on demand price of the same configuration, null if not known
+         * @return "High", "Medium" or "Low"
+         */
+        public String getInterruptionRisk(Double onDemandPrice) {
+            return interruptionRisk(this.maximumPrice, this.volatility, onDemandPrice);
+        }
+    }
+
+    /**
+     * Method to rate the risk of spot instances being interrupted. A spot price which moves a lot or which comes close
+     * to the on demand price means the spare capacity is scarce
+     * @param maximumPrice the highest spot price over the window
+     * @param volatility the standard deviation of the spot price over its average
+     * @param onDemandPrice the on demand price of the same configuration, null if not known
+     * @return "High", "Medium" or "Low"
+     */
+    public static String interruptionRisk(double maximumPrice, double volatility, Double onDemandPrice) {
+        double peakToOnDemand = onDemandPrice == null || onDemandPrice == 0 ? 0 : maximumPrice / onDemandPrice;
+        if (volatility >= 0.15 || peakToOnDemand >= 0.8)
+            return "High";
+        if (volatility >= 0.05 || peakToOnDemand >= 0.5)
+            return "Medium";
+        return "Low";
+    }
+
+    /**
+     * Constructor
+     * @param clients the registry from which the ec2 client of a region is taken
+     * @param rateController the rate controller through which DescribeSpotPriceHistory is called
+     * @param lookbackDays the number of days of history described
+     * @param threads the number of availability zones described in parallel
+     */
+    public SpotPriceCache(ClientRegistry clients, RateController rateController, int lookbackDays, int threads) {
+        this.clients = clients;
+        this.rateController = rateController;
+        this.lookbackDays = lookbackDays;
+        this.threads = threads;
+    }
+
+    /**
+     * Method to add an instance of which the spot price is to be found by resolveAll, the instances of a platform which
+     * has no spot price are left out
+     * @param instance the instance in context
+     */
+    public synchronized void add(Ec2InstanceData instance) {
+        if (instance.getType().equals("") || instance.getPlatformDetails().equals("") || instance.getAvailabilityZone().equals(""))
+            return;
+        String platform = ReservedInstanceMatcher.platform(instance.getPlatformDetails());
+        if (!SPOT_PLATFORMS.contains(platform))
+            return;
+        ZoneUsage inUse = this.pending.computeIfAbsent(instance.getRegion(), region -> new LinkedHashMap<>())
+                .computeIfAbsent(instance.getAvailabilityZone(), zone -> new ZoneUsage());
+        inUse.instanceTypes.add(instance.getType());
+        inUse.platforms.add(platform);
+    }
+
+    /**
+     * Method to describe the spot price history of every availability zone of the instances added so far (in parallel)
+     * @throws InterruptedException if the wait for the histories is interrupted
+     */
+    public void resolveAll() throws InterruptedException {
+        LinkedHashMap<String, LinkedHashMap<String, ZoneUsage>> zonesByRegion;
+        synchronized (this) {
+            zonesByRegion = new LinkedHashMap<>(this.pending);
+            this.pending.clear();
+        }
+        long end = System.currentTimeMillis();
+        long start = end - this.lookbackDays * 24L * 3600L * 1000L;
+        ExecutorService pool = Executors.newFixedThreadPool(this.threads);
+        try {
+            ArrayList<Future<?>> fetches = new ArrayList<>();
+            for (Map.Entry<String, LinkedHashMap<String, ZoneUsage>> region : zonesByRegion.entrySet()) {
+                for (Map.Entry<String, ZoneUsage> zone : region.getValue().entrySet())
+                    fetches.add(pool.submit(() -> fetch(region.getKey(), zone.getKey(), zone.getValue().instanceTypes, zone.getValue().platforms, start, end)));
+            }
+            for (Future<?> fetch : fetches) {
+                try {
+                    fetch.get();
+                } catch (ExecutionException e) {
+                    e.printStackTrace();
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Method to return the spot price history matching an instance
+     * @param instance the instance in context
+     * @return the series, null if there is no spot price for its configuration
+     */
+    public Series get(Ec2InstanceData instance) {
+        return this.series.get(key(instance.getAvailabilityZone(), instance.getType(), ReservedInstanceMatcher.platform(instance.getPlatformDetails())));
+    }
+
+    /**
+     * Method to describe the spot price history of an availability zone, page by page, and to keep the series of
+     * every (instance type, platform) of it
+     */
+    private void fetch(String region, String zone, TreeSet<String> instanceTypes, TreeSet<String> platforms, long start, long end) {
+        AmazonEC2 client = this.clients.ec2(Region.of(region));
+        ArrayList<String> productDescriptions = new ArrayList<>();
+        for (String platform : platforms) {
+            productDescriptions.add(platform);
+            productDescriptions.add(platform + VPC_SUFFIX);
+        }
+        HashMap<String, ArrayList<SpotPrice>> history = new HashMap<>();
+        String nextToken = null;
+        do {
+            DescribeSpotPriceHistoryRequest request = new DescribeSpotPriceHistoryRequest()
+                    .withAvailabilityZone(zone)
+                    .withInstanceTypes(instanceTypes)
+                    .withProductDescriptions(productDescriptions)
+                    .withStartTime(new Date(start))
+                    .withEndTime(new Date(end))
+                    .withMaxResults(1000)
+                    .withNextToken(nextToken);
+            DescribeSpotPriceHistoryResult result = this.rateController.call(region, "DescribeSpotPriceHistory", client::describeSpotPriceHistory, request);
+            for (SpotPrice price : result.getSpotPriceHistory())
+                history.computeIfAbsent(key(zone, price.getInstanceType(), ReservedInstanceMatcher.platform(price.getProductDescription())), key -> new ArrayList<>()).add(price);
+            nextToken = result.getNextToken();
+        } while (nextToken != null && !nextToken.isEmpty());
+
+        for (Map.Entry<String, ArrayList<SpotPrice>> entry : history.entrySet()) {
+            ArrayList<SpotPrice> prices = entry.getValue();
+            Collections.sort(prices, Comparator.comparing(SpotPrice::getTimestamp));
+            this.series.put(entry.getKey(), new Series(prices, start, end));
+        }
+    }
+
+    private static String key(String zone, String instanceType, String platform) {
+        return zone + "|" + instanceType + "|" + platform;
+    }
+}
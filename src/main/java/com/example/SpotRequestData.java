@@ -2,12 +2,14 @@ package com.example;
 
 import software.amazon.awssdk.regions.Region;
 
+import java.io.Serializable;
 import java.util.Date;
 
 /**
  * Class to store information of the spot instance requests in form of objects
  */
-class SpotRequestData {
+class SpotRequestData implements Serializable {
+    private static final long serialVersionUID = 1L;
     private Date requestValidFrom;
     private Date requestValidUntil;
     private Date requestCreateTime;
@@ -23,7 +25,7 @@ class SpotRequestData {
     private String associatedInstanceType = "";
     private String associatedInstanceAvailabilityZone = "";
     private String associatedInstanceDescription = "";
-    private Region region;
+    private String region; // Stored as the region id, so that the object can be serialized to the journal
 
     /**
      * Builder class to help in creating the SpotRequestData class object. This builder class is the only way
@@ -208,7 +210,7 @@ class SpotRequestData {
      * @param region the Region class object for the region of the spot request in context
      */
     public void setRegion(Region region){
-        this.region = region;
+        this.region = region.toString();
     }
 
     /**
@@ -216,7 +218,7 @@ class SpotRequestData {
      * @return the region in string format of the spot request in context
      */
     public String getRegion(){
-        return this.region.toString();
+        return this.region;
     }
 
     @Override
@@ -0,0 +1,23 @@
+package com.example;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Class to measure the time taken from the start of the process to the first AWS API call, which is mostly the time
+ * spent in starting the JVM and loading the classes of the SDKs. It is printed only if the system property
+ * startup.timing is true, the startupReport task of the build compares it across the JVM, AppCDS and native image.
+ */
+class StartupTimer {
+    private static final AtomicBoolean REPORTED = new AtomicBoolean(false);
+
+    /**
+     * Method to be invoked just before an API call is made, only the first invocation is reported
+     */
+    public static void apiCallStarting() {
+        if (!REPORTED.compareAndSet(false, true) || !Boolean.getBoolean("startup.timing"))
+            return;
+        long elapsed = System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+        System.out.println("Startup to first API call: " + elapsed + " ms");
+    }
+}
@@ -1,5 +1,6 @@
 package com.example;
 
+import java.io.Serializable;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Date;
@@ -9,7 +10,8 @@ import java.util.List;
  * Class to bind the timestamp with the value associated with it. This class is primarily designed to
  * store the data returned from cloudwatch.
  */
-class StatisticRecord {
+class StatisticRecord implements Serializable {
+    private static final long serialVersionUID = 1L;
     private Date date;
     private Double value;
 
@@ -0,0 +1,88 @@
+package com.example;
+
+import com.amazonaws.AmazonServiceException;
+
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Class to exercise the RateController without making any call to AWS. It has a local stub of an API which allows a
+ * fixed number of calls per second (per account, like AWS does) and throws the same exception as the SDK with the
+ * error code "Throttling" for every call above that limit.
+ *
+ * Usage: --simulate-throttling [limit per second] [threads] [calls per thread]
+ */
+class ThrottlingSimulator {
+    private final double limitPerSecond;
+    private double tokens;
+    private long lastRefill = System.nanoTime();
+
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * Constructor
+     * @param limitPerSecond the number of calls per second the stub accepts before it starts throttling
+     */
+    public ThrottlingSimulator(double limitPerSecond) {
+        this.limitPerSecond = limitPerSecond;
+        this.tokens = limitPerSecond;
+    }
+
+    /**
+     * The stubbed API call, it throttles the call if the limit of the current second is exhausted
+     * @return a dummy response
+     */
+    public synchronized String call() {
+        long now = System.nanoTime();
+        this.tokens = Math.min(this.limitPerSecond, this.tokens + (now - this.lastRefill) / 1e9 * this.limitPerSecond);
+        this.lastRefill = now;
+        if (this.tokens < 1.0) {
+            this.rejected.incrementAndGet();
+            AmazonServiceException exception = new AmazonServiceException("Rate exceeded");
+            exception.setErrorCode("Throttling");
+            exception.setStatusCode(400);
+            throw exception;
+        }
+        this.tokens -= 1.0;
+        this.accepted.incrementAndGet();
+        return "OK";
+    }
+
+    /**
+     * Method to call the stub through the controller from many threads at once and to print how it went
+     * @param controller the rate controller to be exercised, its limit for the API should be above the stub's limit
+     *                   so that the adaptive part of it is exercised
+     * @param threads the number of threads making the calls
+     * @param callsPerThread the number of calls each thread makes
+     * @throws Exception if any call fails even after the retries
+     */
+    public void run(RateController controller, int threads, int callsPerThread) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        long start = System.nanoTime();
+        try {
+            ArrayList<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(pool.submit(() -> {
+                    for (int j = 0; j < callsPerThread; j++)
+                        controller.call("stub-region", "StubApi", this::call);
+                }));
+            }
+            for (Future<?> future : futures)
+                future.get();
+        } finally {
+            pool.shutdownNow();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.println("Stub limit: " + this.limitPerSecond + " calls/s");
+        System.out.println(String.format("Completed %d calls in %.1f s (%.1f calls/s, %.0f%% of the limit)",
+                this.accepted.get(), seconds, this.accepted.get() / seconds, 100.0 * this.accepted.get() / seconds / this.limitPerSecond));
+        System.out.println(String.format("Throttled calls: %d (%.1f%% of all the attempts)",
+                this.rejected.get(), 100.0 * this.rejected.get() / (this.accepted.get() + this.rejected.get())));
+        System.out.print(controller.getSummary());
+    }
+}
@@ -0,0 +1,73 @@
+package com.example;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Tests of the search of the least cost commitment of CommitmentOptimizer, against the cost of every candidate commitment
+ */
+class CommitmentOptimizerTest {
+    private static final double DELTA = 1e-9;
+
+    @Test
+    void findsTheMinimumOfTheCost() {
+        Random random = new Random(42);
+        for (int run = 0; run < 1000; run++) {
+            double[] usage = new double[1 + random.nextInt(200)];
+            for (int hour = 0; hour < usage.length; hour++)
+                usage[hour] = random.nextInt(4) == 0 ? 0 : random.nextInt(50) * (random.nextBoolean() ? 1 : 0.5);
+            Arrays.sort(usage);
+            double onDemandPrice = 0.1 + random.nextDouble();
+            double reservedPrice = onDemandPrice * random.nextDouble();
+
+            double commitment = CommitmentOptimizer.leastCostCommitment(usage, onDemandPrice, reservedPrice);
+            double leastCost = cost(usage, 0, onDemandPrice, reservedPrice);
+            for (double candidate : usage)
+                leastCost = Math.min(leastCost, cost(usage, candidate, onDemandPrice, reservedPrice));
+            assertEquals(leastCost, cost(usage, commitment, onDemandPrice, reservedPrice), DELTA * (1 + leastCost), "run " + run);
+        }
+    }
+
+    @Test
+    void returnsTheLeastCommitmentOfTheMinimum() {
+        // The reserved price is half of the on demand price, so above 2 the cost is flat until 3 then grows
+        double[] usage = {1, 2, 3, 4};
+        assertEquals(2, CommitmentOptimizer.leastCostCommitment(usage, 1, 0.5), DELTA);
+    }
+
+    @Test
+    void commitsNothingWithoutUsage() {
+        assertEquals(0, CommitmentOptimizer.leastCostCommitment(new double[]{0, 0, 0}, 1, 0.1), DELTA);
+    }
+
+    @Test
+    void commitsNothingWhenTheReservationIsNotCheaper() {
+        double[] usage = {1, 2, 3};
+        assertEquals(0, CommitmentOptimizer.leastCostCommitment(usage, 1, 1), DELTA);
+        assertEquals(0, CommitmentOptimizer.leastCostCommitment(usage, 1, 2), DELTA);
+    }
+
+    @Test
+    void commitsTheUsageOfASingleHour() {
+        assertEquals(5, CommitmentOptimizer.leastCostCommitment(new double[]{5}, 1, 0.7), DELTA);
+    }
+
+    @Test
+    void commitsThePeakWhenTheReservationIsCheapEnough() {
+        // Covering the peak pays off as soon as the reserved price is below the on demand price over the number of hours
+        double[] usage = {0, 1, 2, 2, 8};
+        assertEquals(8, CommitmentOptimizer.leastCostCommitment(usage, 1, 0.19), DELTA);
+        assertEquals(2, CommitmentOptimizer.leastCostCommitment(usage, 1, 0.21), DELTA);
+    }
+
+    private static double cost(double[] usage, double commitment, double onDemandPrice, double reservedPrice) {
+        double cost = commitment * reservedPrice * usage.length;
+        for (double used : usage)
+            cost += onDemandPrice * Math.max(0, used - commitment);
+        return cost;
+    }
+}
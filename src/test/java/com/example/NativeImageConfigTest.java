@@ -0,0 +1,65 @@
+package com.example;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinTask;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests of the native image configuration in src/main/resources/META-INF/native-image, which the tracing agent only
+ * fills in for the code paths of the run it traced. Every Serializable class of the application is to be registered
+ * for serialization, else the native executable fails on the first checkpoint or cache of it
+ */
+class NativeImageConfigTest {
+    private static final String SERIALIZATION_CONFIG = "META-INF/native-image/com.example/aws-cost-optimizer/serialization-config.json";
+
+    @Test
+    void registersEverySerializableClass() throws Exception {
+        HashSet<String> registered = new HashSet<>();
+        try (InputStream input = getClass().getClassLoader().getResourceAsStream(SERIALIZATION_CONFIG)) {
+            assertNotNull(input, SERIALIZATION_CONFIG + " is not on the classpath");
+            for (JsonElement entry : new JsonParser().parse(new InputStreamReader(input, StandardCharsets.UTF_8)).getAsJsonArray())
+                registered.add(entry.getAsJsonObject().get("name").getAsString());
+        }
+
+        TreeSet<String> missing = new TreeSet<>();
+        File classes = new File(Main.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        for (String name : classNames(new File(classes, "com/example"), "com.example.")) {
+            Class<?> type = Class.forName(name, false, getClass().getClassLoader());
+            /*
+             * The fork/join tasks are Serializable through ForkJoinTask but are never serialized
+             * */
+            if (Serializable.class.isAssignableFrom(type) && !ForkJoinTask.class.isAssignableFrom(type) && !registered.contains(name))
+                missing.add(name);
+        }
+        assertTrue(missing.isEmpty(), "Not registered in " + SERIALIZATION_CONFIG + ": " + missing);
+    }
+
+    /**
+     * Method to list the classes compiled into a directory (and its sub directories)
+     */
+    private static TreeSet<String> classNames(File directory, String packagePrefix) {
+        TreeSet<String> names = new TreeSet<>();
+        File[] files = directory.listFiles();
+        if (files == null)
+            return names;
+        for (File file : files) {
+            if (file.isDirectory())
+                names.addAll(classNames(file, packagePrefix + file.getName() + "."));
+            else if (file.getName().endsWith(".class"))
+                names.add(packagePrefix + file.getName().substring(0, file.getName().length() - ".class".length()));
+        }
+        return names;
+    }
+}
@@ -0,0 +1,75 @@
+package com.example;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.SdkClientException;
+import org.junit.jupiter.api.Test;
+
+import java.net.SocketTimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests of the retries of RateController, against calls failing a given number of times
+ */
+class RateControllerTest {
+
+    @Test
+    void retriesTheServerErrors() {
+        AtomicInteger attempts = new AtomicInteger();
+        String response = new RateController(millis -> { }).call("us-east-1", "DescribeInstances", () -> {
+            if (attempts.incrementAndGet() < 3)
+                throw serviceException("InternalError", 500);
+            return "done";
+        });
+        assertEquals("done", response);
+        assertEquals(3, attempts.get());
+    }
+
+    @Test
+    void retriesTheTimeouts() {
+        AtomicInteger attempts = new AtomicInteger();
+        String response = new RateController(millis -> { }).call("us-east-1", "DescribeInstances", () -> {
+            if (attempts.incrementAndGet() < 2)
+                throw new SdkClientException("Unable to execute HTTP request", new SocketTimeoutException("Read timed out"));
+            return "done";
+        });
+        assertEquals("done", response);
+        assertEquals(2, attempts.get());
+    }
+
+    @Test
+    void givesUpOnAServerErrorSoonerThanOnThrottling() {
+        RateController controller = new RateController(millis -> { });
+        AtomicInteger errors = new AtomicInteger();
+        assertThrows(AmazonServiceException.class, () -> controller.call("us-east-1", "DescribeInstances", () -> {
+            errors.incrementAndGet();
+            throw serviceException("ServiceUnavailable", 503);
+        }));
+        AtomicInteger throttles = new AtomicInteger();
+        assertThrows(AmazonServiceException.class, () -> controller.call("us-east-1", "DescribeVolumes", () -> {
+            throttles.incrementAndGet();
+            throw serviceException("RequestLimitExceeded", 503);
+        }));
+        assertEquals(4, errors.get());
+        assertEquals(8, throttles.get());
+    }
+
+    @Test
+    void doesNotRetryTheClientErrors() {
+        AtomicInteger attempts = new AtomicInteger();
+        assertThrows(AmazonServiceException.class, () -> new RateController(millis -> { }).call("us-east-1", "DescribeInstances", () -> {
+            attempts.incrementAndGet();
+            throw serviceException("InvalidParameterValue", 400);
+        }));
+        assertEquals(1, attempts.get());
+    }
+
+    private static AmazonServiceException serviceException(String errorCode, int statusCode) {
+        AmazonServiceException exception = new AmazonServiceException(errorCode);
+        exception.setErrorCode(errorCode);
+        exception.setStatusCode(statusCode);
+        return exception;
+    }
+}
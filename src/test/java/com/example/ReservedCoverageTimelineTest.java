@@ -0,0 +1,76 @@
+package com.example;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests of the pooling of the reserved and the running instances of ReservedCoverageTimeline
+ */
+class ReservedCoverageTimelineTest {
+    private static final Instant NOW = Instant.parse("2024-06-01T12:30:00Z");
+
+    @Test
+    void poolsTheZonalReservedInstancesByType() throws Exception {
+        ArrayList<ReservedInstanceData> reservedInstances = new ArrayList<>();
+        reservedInstances.add(reservedInstance("r-zonal", "Availability Zone", "us-east-1a", "m5.large", 1));
+        reservedInstances.add(reservedInstance("r-regional", "Region", null, "m5.xlarge", 1)); // 8 units of the family
+        ArrayList<Ec2InstanceData> instances = new ArrayList<>();
+        for (int i = 0; i < 3; i++)
+            instances.add(instance("i-" + i, "m5.large"));
+        instances.add(instance("i-3", "m5.2xlarge"));
+
+        ArrayList<ReservedCoverageTimeline.PoolTimeline> timelines = new ReservedCoverageTimeline(NOW, 2, 2, 2).build(reservedInstances, instances, false);
+        assertEquals(2, timelines.size());
+        ReservedCoverageTimeline.PoolTimeline family = timelines.get(0);
+        ReservedCoverageTimeline.PoolTimeline type = timelines.get(1);
+
+        assertEquals("m5 (any size)", family.getType());
+        assertTrue(family.isSizeFlexible());
+        assertFalse(family.spillsOver());
+        assertEquals("m5.large", type.getType());
+        assertFalse(type.isSizeFlexible());
+        assertTrue(type.spillsOver());
+        for (int hour = 0; hour < type.getHours(); hour++) {
+            assertEquals(1, type.getReserved(hour), 1e-6);
+            assertEquals(3, type.getUsed(hour), 1e-6);
+            assertEquals(8, family.getReserved(hour), 1e-6); // The zonal reserved instance is not in the family
+            assertEquals(2 * 4 + 16, family.getUsed(hour), 1e-6); // The two m5.large beyond the zonal one, and the m5.2xlarge
+        }
+        assertEquals(8, family.getUnitsByType().get("m5.large"), 1e-6);
+        assertEquals(16, family.getUnitsByType().get("m5.2xlarge"), 1e-6);
+    }
+
+    @Test
+    void spillsNothingWhileTheZonalCapacityLasts() throws Exception {
+        ArrayList<ReservedInstanceData> reservedInstances = new ArrayList<>();
+        reservedInstances.add(reservedInstance("r-zonal", "Availability Zone", "us-east-1a", "m5.large", 2));
+        ArrayList<Ec2InstanceData> instances = new ArrayList<>();
+        instances.add(instance("i-0", "m5.large"));
+        instances.add(instance("i-1", "m5.xlarge"));
+
+        ArrayList<ReservedCoverageTimeline.PoolTimeline> timelines = new ReservedCoverageTimeline(NOW, 1, 1, 1).build(reservedInstances, instances, true);
+        assertEquals(2, timelines.size());
+        ReservedCoverageTimeline.PoolTimeline family = timelines.get(0);
+        ReservedCoverageTimeline.PoolTimeline type = timelines.get(1);
+        assertEquals(1, type.getUsed(type.getCurrentHour()), 1e-6);
+        assertEquals(50, type.getUtilizationInPercent(type.getCurrentHour()), 1e-6);
+        assertEquals(0, family.getReserved(family.getCurrentHour()), 1e-6);
+        assertEquals(8, family.getUsed(family.getCurrentHour()), 1e-6); // Only the m5.xlarge
+    }
+
+    private static ReservedInstanceData reservedInstance(String id, String scope, String zone, String type, int count) throws Exception {
+        return ReservedInstanceFixtures.reservedInstance(id, scope, zone, type, count, "Linux/UNIX (Amazon VPC)",
+                Date.from(NOW.minusSeconds(86400L * 30)), Date.from(NOW.plusSeconds(86400L * 30)));
+    }
+
+    private static Ec2InstanceData instance(String id, String type) throws Exception {
+        return ReservedInstanceFixtures.instance(id, type, "us-east-1a", "Linux/UNIX", Date.from(NOW.minusSeconds(86400L * 10)));
+    }
+}
@@ -0,0 +1,50 @@
+package com.example;
+
+import software.amazon.awssdk.regions.Region;
+
+import java.util.Date;
+
+/**
+ * Class to build the reserved instances and the running instances (all of them in us-east-1) used by the tests of the
+ * reserved instance coverage
+ */
+final class ReservedInstanceFixtures {
+    private ReservedInstanceFixtures() {
+    }
+
+    /**
+     * Method to build an active, default tenancy, reserved instance
+     * @param start the start of the term
+     * @param end the end of the term
+     */
+    static ReservedInstanceData reservedInstance(String id, String scope, String zone, String type, int count, String description, Date start, Date end) throws Exception {
+        ReservedInstanceData reservedInstance = new ReservedInstanceData.ReservedInstanceDataBuilder(id, "active")
+                .withInstanceTypeAndCount(type, count)
+                .withDurationInfo(94608000L, start, end)
+                .withScope(scope)
+                .withProductDescription(description)
+                .withAvailabilityZone(zone)
+                .withTenancy("default")
+                .build();
+        reservedInstance.setRegion(Region.US_EAST_1);
+        return reservedInstance;
+    }
+
+    /**
+     * Method to build a running, default tenancy, instance of 2 vCPUs
+     * @param launchTime the launch time, left unset if null
+     */
+    static Ec2InstanceData instance(String id, String type, String zone, String platform, Date launchTime) throws Exception {
+        Ec2InstanceData instance = new Ec2InstanceData.Ec2InstanceDataBuilder(id, "running")
+                .withInstanceType(type)
+                .withPlatformDetails(platform)
+                .withTenancy("default")
+                .withVcpus(2)
+                .withAvailabilityZone(zone)
+                .build();
+        instance.setRegion(Region.US_EAST_1);
+        if (launchTime != null)
+            instance.setLaunchTime(launchTime);
+        return instance;
+    }
+}
@@ -0,0 +1,160 @@
+package com.example;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests of the claims of the running instances on the reserved instances of ReservedInstanceLedger, and of their
+ * reconciliation
+ */
+class ReservedInstanceLedgerTest {
+    private static final String[] SIZES = {"nano", "micro", "small", "medium", "large", "xlarge", "2xlarge", "4xlarge", "metal"};
+
+    @Test
+    void coversTheSameInstancesWhateverTheOrder() throws Exception {
+        // The regional pool is shared by us-east-1a, which has a zonal reserved instance too, and us-east-1b
+        ArrayList<ReservedInstanceData> reservedInstances = new ArrayList<>();
+        reservedInstances.add(reservedInstance("r-regional", "Region", null, "m5.large", 1, "Windows"));
+        reservedInstances.add(reservedInstance("r-zonal", "Availability Zone", "us-east-1a", "m5.large", 1, "Windows"));
+        List<Ec2InstanceData> instances = new ArrayList<>();
+        instances.add(instance("i-1", "m5.large", "us-east-1a", "Windows"));
+        instances.add(instance("i-2", "m5.large", "us-east-1b", "Windows"));
+        instances.add(instance("i-3", "m5.large", "us-east-1a", "Windows"));
+
+        for (List<Ec2InstanceData> order : permutations(instances)) {
+            TreeMap<String, Boolean> covered = assign(reservedInstances, new ArrayList<>(order), 1);
+            assertEquals(Boolean.TRUE, covered.get("i-1"));
+            assertEquals(Boolean.TRUE, covered.get("i-2"));
+            assertEquals(Boolean.FALSE, covered.get("i-3"));
+            for (ReservedInstanceData reservedInstance : reservedInstances)
+                assertEquals(1, reservedInstance.getCapacityInUse(), 1e-9);
+        }
+    }
+
+    @Test
+    void appliesTheSizeFlexibleUnitsSmallestFirst() throws Exception {
+        ArrayList<ReservedInstanceData> reservedInstances = new ArrayList<>();
+        reservedInstances.add(reservedInstance("r-flexible", "Region", null, "m5.xlarge", 1, "Linux/UNIX (Amazon VPC)")); // 8 units
+        ArrayList<Ec2InstanceData> instances = new ArrayList<>();
+        instances.add(instance("i-1", "m5.2xlarge", "us-east-1b", "Linux/UNIX")); // 16 units
+        instances.add(instance("i-2", "m5.large", "us-east-1b", "Linux/UNIX")); // 4 units
+        instances.add(instance("i-3", "m5.large", "us-east-1c", "Linux/UNIX")); // 4 units
+        instances.add(instance("i-4", "m5.large", "us-east-1a", "Windows"));
+
+        TreeMap<String, Boolean> covered = assign(reservedInstances, instances, 2);
+        assertEquals(Boolean.FALSE, covered.get("i-1"));
+        assertEquals(Boolean.TRUE, covered.get("i-2"));
+        assertEquals(Boolean.TRUE, covered.get("i-3"));
+        assertEquals(Boolean.FALSE, covered.get("i-4"));
+        assertEquals(1, reservedInstances.get(0).getCapacityInUse(), 1e-9);
+    }
+
+    @Test
+    void reconcilesTheSameCoverageOnOneAndOnEightThreads() throws Exception {
+        Random random = new Random(1);
+        ArrayList<ReservedInstanceData> reservedInstances = new ArrayList<>();
+        for (int i = 0; i < 10000; i++)
+            reservedInstances.add(reservedInstance("r-" + i, random.nextInt(3) == 0 ? "Availability Zone" : "Region", zone(random),
+                    "m" + random.nextInt(30) + "." + SIZES[random.nextInt(SIZES.length)], 1 + random.nextInt(5), platform(random)));
+        ArrayList<Ec2InstanceData> instances = new ArrayList<>();
+        for (int i = 0; i < 100000; i++)
+            instances.add(instance("i-" + i, "m" + random.nextInt(30) + "." + SIZES[random.nextInt(SIZES.length)], zone(random), platform(random)));
+
+        TreeMap<String, Boolean> expected = assign(reservedInstances, instances, 1);
+        double[] expectedInUse = capacityInUse(reservedInstances);
+        Collections.shuffle(instances, random);
+        TreeMap<String, Boolean> covered = assign(reservedInstances, instances, 8);
+
+        assertEquals(expected, covered);
+        assertTrue(expected.containsValue(true));
+        double[] inUse = capacityInUse(reservedInstances);
+        for (int i = 0; i < reservedInstances.size(); i++) {
+            assertEquals(expectedInUse[i], inUse[i], 1e-9);
+            assertTrue(inUse[i] <= reservedInstances.get(i).getInstanceCount() + 1e-9, "overbooked " + reservedInstances.get(i).getReservedInstanceId());
+        }
+    }
+
+    /**
+     * Method to claim the reserved instances for the instances through a new ledger, the instances being split among the
+     * threads as collectors would, and to reconcile the claims
+     * @return the id of every instance -> true if it is covered
+     */
+    private static TreeMap<String, Boolean> assign(ArrayList<ReservedInstanceData> reservedInstances, ArrayList<Ec2InstanceData> instances, int threads) throws Exception {
+        ReservedInstanceLedger ledger = new ReservedInstanceLedger();
+        for (ReservedInstanceData reservedInstance : reservedInstances)
+            ledger.add(reservedInstance);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            ArrayList<Future<?>> claims = new ArrayList<>();
+            for (int thread = 0; thread < threads; thread++) {
+                int first = thread;
+                claims.add(executor.submit(() -> {
+                    for (int i = first; i < instances.size(); i += threads)
+                        ledger.claim(instances.get(i));
+                }));
+            }
+            for (Future<?> claim : claims)
+                claim.get();
+        } finally {
+            executor.shutdown();
+        }
+        boolean[] covered = ledger.reconcile(instances);
+        ledger.recordCapacityInUse();
+        TreeMap<String, Boolean> coveredById = new TreeMap<>();
+        for (int i = 0; i < instances.size(); i++)
+            coveredById.put(instances.get(i).getId(), covered[i]);
+        return coveredById;
+    }
+
+    private static double[] capacityInUse(ArrayList<ReservedInstanceData> reservedInstances) {
+        double[] inUse = new double[reservedInstances.size()];
+        for (int i = 0; i < inUse.length; i++)
+            inUse[i] = reservedInstances.get(i).getCapacityInUse();
+        return inUse;
+    }
+
+    private static ReservedInstanceData reservedInstance(String id, String scope, String zone, String type, int count, String description) throws Exception {
+        return ReservedInstanceFixtures.reservedInstance(id, scope, zone, type, count, description, new Date(0), new Date(System.currentTimeMillis() + 86400000L));
+    }
+
+    private static Ec2InstanceData instance(String id, String type, String zone, String platform) throws Exception {
+        return ReservedInstanceFixtures.instance(id, type, zone, platform, null);
+    }
+
+    private static String zone(Random random) {
+        return "us-east-1" + (char) ('a' + random.nextInt(3));
+    }
+
+    private static String platform(Random random) {
+        return random.nextInt(5) == 0 ? "Windows" : "Linux/UNIX";
+    }
+
+    private static List<List<Ec2InstanceData>> permutations(List<Ec2InstanceData> items) {
+        List<List<Ec2InstanceData>> permutations = new ArrayList<>();
+        if (items.isEmpty()) {
+            permutations.add(new ArrayList<>());
+            return permutations;
+        }
+        for (Ec2InstanceData first : items) {
+            List<Ec2InstanceData> rest = new ArrayList<>(items);
+            rest.remove(first);
+            for (List<Ec2InstanceData> permutation : permutations(rest)) {
+                permutation.add(0, first);
+                permutations.add(permutation);
+            }
+        }
+        return permutations;
+    }
+}
@@ -0,0 +1,154 @@
+package com.example;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Date;
+import java.util.TreeMap;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests of S3InventoryReader, on inventory reports laid out the way they are copied from the destination bucket
+ */
+class S3InventoryReaderTest {
+    private static final String SCHEMA = "Bucket, Key, VersionId, IsLatest, IsDeleteMarker, Size, LastModifiedDate, StorageClass";
+
+    @TempDir
+    File directory;
+
+    /**
+     * Class to collect the objects streamed by the reader, by key
+     */
+    private static class Collector implements S3ObjectConsumer {
+        private final TreeMap<String, Object[]> objects = new TreeMap<>();
+
+        @Override
+        public synchronized void accept(String key, String storageClass, Date lastModified, long size) {
+            objects.put(key, new Object[]{storageClass, lastModified, size});
+        }
+    }
+
+    @Test
+    void readsTheRowsOfAGzippedCsvReport() throws Exception {
+        File report = new File(directory, "inventory/my-bucket/daily");
+        writeManifest(new File(report, "2024-01-02T00-00Z"), "my-bucket", "CSV", "1704153600000", "inventory/my-bucket/daily/data/a.csv.gz", "inventory/my-bucket/daily/data/b.csv.gz");
+        writeGzip(new File(report, "data/a.csv.gz"),
+                "\"my-bucket\",\"logs%2F2024%2Fapp.log\",\"v1\",\"true\",\"false\",\"1024\",\"2024-01-01T10:00:00.000Z\",\"STANDARD_IA\"",
+                "\"my-bucket\",\"logs%2Fold.log\",\"v0\",\"false\",\"false\",\"2048\",\"2023-01-01T10:00:00.000Z\",\"STANDARD\"",
+                "\"my-bucket\",\"logs%2Fdeleted.log\",\"v2\",\"true\",\"true\",\"\",\"2024-01-01T11:00:00.000Z\",\"\"");
+        writeGzip(new File(report, "data/b.csv.gz"),
+                "\"my-bucket\",\"say+%22hi%22.txt\",\"v3\",\"true\",\"false\",\"7\",\"2024-01-01T12:00:00.000Z\",\"\"",
+                "");
+
+        S3InventoryReader reader = new S3InventoryReader(directory.getPath(), 2);
+        assertTrue(reader.hasInventory("my-bucket"));
+        assertFalse(reader.hasInventory("other-bucket"));
+
+        Collector collector = new Collector();
+        reader.read("my-bucket", collector);
+        assertEquals(2, collector.objects.size());
+        assertArrayEquals(new Object[]{"STANDARD_IA", new Date(1704103200000L), 1024L}, collector.objects.get("logs/2024/app.log"));
+        assertArrayEquals(new Object[]{"STANDARD", new Date(1704110400000L), 7L}, collector.objects.get("say \"hi\".txt"));
+    }
+
+    @Test
+    void readsTheLatestManifestOfABucket() throws Exception {
+        writeManifest(new File(directory, "old"), "my-bucket", "CSV", "1000", "old.csv.gz");
+        writeGzip(new File(directory, "old/old.csv.gz"), "\"my-bucket\",\"old\",\"\",\"\",\"\",\"1\",\"2024-01-01T00:00:00Z\",\"STANDARD\"");
+        writeManifest(new File(directory, "new"), "my-bucket", "CSV", "2000", "new.csv.gz");
+        writeGzip(new File(directory, "new/new.csv.gz"), "\"my-bucket\",\"new\",\"\",\"\",\"\",\"1\",\"2024-01-01T00:00:00Z\",\"STANDARD\"");
+
+        Collector collector = new Collector();
+        new S3InventoryReader(directory.getPath(), 1).read("my-bucket", collector);
+        assertEquals(1, collector.objects.size());
+        assertTrue(collector.objects.containsKey("new"));
+    }
+
+    @Test
+    void skipsTheReportsNotInCsv() throws Exception {
+        writeManifest(new File(directory, "orc"), "my-bucket", "ORC", "1000", "a.orc");
+
+        S3InventoryReader reader = new S3InventoryReader(directory.getPath(), 1);
+        assertFalse(reader.hasInventory("my-bucket"));
+        assertThrows(Exception.class, () -> reader.read("my-bucket", new Collector()));
+    }
+
+    @Test
+    void failsOnAMissingDataFile() throws Exception {
+        writeManifest(new File(directory, "report"), "my-bucket", "CSV", "1000", "missing.csv.gz");
+
+        S3InventoryReader reader = new S3InventoryReader(directory.getPath(), 1);
+        assertThrows(Exception.class, () -> reader.read("my-bucket", new Collector()));
+    }
+
+    @Test
+    void skipsTheRowsWithoutALastModifiedDate() throws Exception {
+        writeManifest(new File(directory, "report"), "my-bucket", "CSV", "1000", "a.csv.gz");
+        writeGzip(new File(directory, "report/a.csv.gz"),
+                "\"my-bucket\",\"dated\",\"\",\"\",\"\",\"1\",\"2024-01-01T00:00:00Z\",\"STANDARD\"",
+                "\"my-bucket\",\"undated\",\"\",\"\",\"\",\"1\",\"\",\"STANDARD\"");
+
+        Collector collector = new Collector();
+        new S3InventoryReader(directory.getPath(), 1).read("my-bucket", collector);
+        assertEquals(1, collector.objects.size());
+        assertTrue(collector.objects.containsKey("dated"));
+    }
+
+    @Test
+    void skipsTheReportsWithoutTheLastModifiedDateField() throws Exception {
+        writeManifest(new File(directory, "report"), "my-bucket", "CSV", "1000", "Bucket, Key, Size, StorageClass", new String[]{"a.csv.gz"});
+
+        assertFalse(new S3InventoryReader(directory.getPath(), 1).hasInventory("my-bucket"));
+    }
+
+    @Test
+    void failsOnAManifestWhichIsNotJson() throws Exception {
+        Files.createDirectories(new File(directory, "report").toPath());
+        Files.write(new File(directory, "report/manifest.json").toPath(), "{\"sourceBucket\":".getBytes(StandardCharsets.UTF_8));
+
+        assertThrows(IOException.class, () -> new S3InventoryReader(directory.getPath(), 1));
+    }
+
+    @Test
+    void splitsQuotedCsvFields() {
+        assertArrayEquals(new String[]{"a,b", "say \"hi\"", "", "plain"}, S3InventoryReader.parseCsvLine("\"a,b\",\"say \"\"hi\"\"\",,plain"));
+    }
+
+    private static void writeManifest(File directory, String bucket, String format, String creationTimestamp, String... keys) throws IOException {
+        writeManifest(directory, bucket, format, creationTimestamp, SCHEMA, keys);
+    }
+
+    private static void writeManifest(File directory, String bucket, String format, String creationTimestamp, String schema, String[] keys) throws IOException {
+        StringBuilder files = new StringBuilder();
+        for (String key : keys)
+            files.append(files.length() == 0 ? "" : ",").append("{\"key\":\"").append(key).append("\",\"size\":1,\"MD5checksum\":\"\"}");
+        String manifest = "{\"sourceBucket\":\"" + bucket + "\",\"destinationBucket\":\"arn:aws:s3:::inventory\"," +
+                "\"version\":\"2016-11-30\",\"creationTimestamp\":\"" + creationTimestamp + "\",\"fileFormat\":\"" + format + "\"," +
+                "\"fileSchema\":\"" + schema + "\",\"files\":[" + files + "]}";
+        Files.createDirectories(directory.toPath());
+        Files.write(new File(directory, "manifest.json").toPath(), manifest.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void writeGzip(File file, String... lines) throws IOException {
+        Files.createDirectories(file.getParentFile().toPath());
+        try (OutputStream output = new GZIPOutputStream(new FileOutputStream(file));
+             Writer writer = new OutputStreamWriter(output, StandardCharsets.UTF_8)) {
+            for (String line : lines)
+                writer.write(line + "\n");
+        }
+    }
+}